@@ -40,16 +40,22 @@ public class LoadSecurityHistory {
 			}
 		}
 
+		// Copy price histories so we can consume them as we go
+		final List<List<QPrice>> priceLists = new ArrayList<List<QPrice>>();
+		for (final Security sec : securities) {
+			priceLists.add(new ArrayList<QPrice>(sec.getPrices()));
+		}
+
 		final List<List<QPrice>> mergedPrices = new ArrayList<List<QPrice>>();
-		QDate fd = getFirstDate(securities);
+		QDate fd = getFirstDate(priceLists);
 		final List<QPrice> extraPricesForDate = new ArrayList<QPrice>();
 
 		while (fd != null) {
 			final List<QPrice> pricesForDate = new ArrayList<QPrice>();
 			pricesForDate.add(null);
 
-			for (int ii = 0; ii < securities.size(); ++ii) {
-				final List<QPrice> list = securities.get(ii).prices;
+			for (int ii = 0; ii < priceLists.size(); ++ii) {
+				final List<QPrice> list = priceLists.get(ii);
 
 				if ((list == null) || list.isEmpty()) {
 					pricesForDate.add(null);
@@ -147,17 +153,16 @@ public class LoadSecurityHistory {
 
 			System.out.println(s);
 
-			fd = getFirstDate(securities);
+			fd = getFirstDate(priceLists);
 		}
 
 		System.out.println("NumPrices = " + mergedPrices.size());
 	}
 
-	static QDate getFirstDate(List<Security> securities) {
+	static QDate getFirstDate(List<List<QPrice>> priceLists) {
 		QDate ret = null;
 
-		for (final Security sec : securities) {
-			final List<QPrice> list = sec.prices;
+		for (final List<QPrice> list : priceLists) {
 			if (list.isEmpty()) {
 				continue;
 			}
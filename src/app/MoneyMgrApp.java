@@ -1,9 +1,12 @@
 package app;
 
+import java.io.File;
 import java.util.Scanner;
 
 import moneymgr.io.csv.CSVImport;
 import moneymgr.io.mm.Persistence;
+import moneymgr.io.mm.ChangeJournal;
+import moneymgr.io.mm.Snapshot;
 import moneymgr.io.qif.QifDomReader;
 import moneymgr.model.MoneyMgrModel;
 import moneymgr.report.CashFlow;
@@ -21,6 +24,7 @@ public class MoneyMgrApp {
 	public static final String qifFilename = String.format("%s/%s", DATA_DIR, "DIETRICH.QIF");
 	public static final String jsonFilename = String.format("%s/%s", DATA_DIR, "DIETRICH.json");
 	public static final String csvFilename = String.format("%s/%s", DATA_DIR, "DIETRICH.csv");
+	public static final String snapshotFilename = String.format("%s/%s", DATA_DIR, "DIETRICH.snapshot");
 	
 	public static Scanner scn;
 
@@ -76,12 +80,37 @@ public class MoneyMgrApp {
 		lapTime = startupTime;
 
 		if (loadwin) {
-			qifModel = MoneyMgrModel.changeModel(MoneyMgrModel.QIF_MODEL_NAME);
+			File qifFile = new File(qifFilename);
+			File snapshotFile = new File(snapshotFilename);
 
-			Common.reportInfo("Loading QIF data");
 			MoneyMgrApp.scn = new Scanner(System.in);
-			QifDomReader.loadDom(qifModel, new String[] { qifFilename });
-			Common.reportInfo(String.format("Load complete: %s", elapsedTime()));
+
+			ChangeJournal journal = new ChangeJournal(snapshotFile, qifFile);
+
+			if (Snapshot.isCurrent(snapshotFile, qifFile)) {
+				Common.reportInfo("Loading snapshot");
+				QifDom.qifDir = qifFile.getParentFile();
+				qifModel = journal.loadSnapshot(MoneyMgrModel.QIF_MODEL_NAME);
+
+				if (qifModel != null) {
+					QifDomReader.postSnapshotLoad(qifModel, snapshotFile);
+					Common.reportInfo(String.format("Snapshot loaded: %s", elapsedTime()));
+				}
+			}
+
+			if (qifModel == null) {
+				qifModel = MoneyMgrModel.changeModel(MoneyMgrModel.QIF_MODEL_NAME);
+
+				Common.reportInfo("Loading QIF data");
+				QifDomReader.loadDom(qifModel, new String[] { qifFilename });
+				Common.reportInfo(String.format("Load complete: %s", elapsedTime()));
+
+				journal.saveSnapshot(qifModel);
+				Common.reportInfo(String.format("Snapshot saved: %s", elapsedTime()));
+			}
+
+			// Save changes when the application exits
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> journal.close()));
 		}
 
 		// ----------------------------------------------------------
@@ -0,0 +1,59 @@
+package moneymgr.io;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Scanner;
+
+/** Download quotes from the Alpha Vantage web service */
+public class AlphaVantageQuoteService implements QuoteService {
+	private static final String queryPattern = "%s/query?function=%s&symbol=%s%s&apikey=%s";
+
+	public static final String DOMAIN = "https://www.alphavantage.co";
+	private static final String FULL_HISTORY = "&outputsize=full";
+	private static final String API_KEY = "O7JYIMJXJOWQB9BY";
+
+	private final String domain;
+	private final String apiKey;
+
+	public AlphaVantageQuoteService() {
+		this(DOMAIN, API_KEY);
+	}
+
+	/** Use a different endpoint (e.g. a proxy or test server) and/or key */
+	public AlphaVantageQuoteService(String domain, String apiKey) {
+		this.domain = domain;
+		this.apiKey = apiKey;
+	}
+
+	public String query(String function, String symbol, boolean full) {
+		String charset = "UTF-8";
+
+		URLConnection connection = null;
+		InputStream response = null;
+
+		String urlString = String.format(queryPattern, //
+				this.domain, function, symbol, (full) ? FULL_HISTORY : "", this.apiKey);
+
+		try {
+			connection = new URL(urlString).openConnection();
+			connection.setRequestProperty("Accept-Charset", charset);
+			response = connection.getInputStream();
+
+			try (Scanner scanner = new Scanner(response)) {
+				return scanner.useDelimiter("\\A").next();
+			}
+		} catch (Exception e) {
+			// e.printStackTrace();
+		} finally {
+			try {
+				if (response != null) {
+					response.close();
+				}
+			} catch (Exception e) {
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,152 @@
+package moneymgr.io;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Stand-in for the quote web service that serves responses from files, for
+ * testing and offline use.<br>
+ * The response for a symbol is the contents of SYMBOL.json (or SYMBOL.quote,
+ * so a copy of the quotes directory can be used) in the data directory. Like
+ * the real service, recent (compact) requests return only the latest quotes,
+ * unknown symbols get an error message, and requests beyond a per-minute limit
+ * get the throttle message.
+ */
+public class LocalQuoteService implements QuoteService {
+	/** Number of quotes in a compact response */
+	public static final int COMPACT_SIZE = 100;
+
+	public static final String ERROR_RESPONSE = "{\n" //
+			+ "    \"Error Message\": \"Invalid API call. Please retry or visit the documentation.\"\n" //
+			+ "}";
+
+	public static final String THROTTLE_RESPONSE = "{\n" //
+			+ "    \"Note\": \"Thank you for using Alpha Vantage! Our standard API call frequency " //
+			+ "is 5 calls per minute and 500 calls per day.\"\n" //
+			+ "}";
+
+	private static final String NAME_META = "Meta Data";
+	private static final String NAME_OUTPUT_SIZE = "4. Output Size";
+
+	private final File dataDir;
+
+	/** Maximum requests per minute (0 for no limit) */
+	private final int callsPerMinute;
+
+	/** Times (ms) of recent requests, for the rate limit */
+	private final List<Long> requestTimes = new ArrayList<>();
+
+	private int numRequests = 0;
+
+	public LocalQuoteService(File dataDir) {
+		this(dataDir, 0);
+	}
+
+	public LocalQuoteService(File dataDir, int callsPerMinute) {
+		this.dataDir = dataDir;
+		this.callsPerMinute = callsPerMinute;
+	}
+
+	public String query(String function, String symbol, boolean full) {
+		if (isThrottled()) {
+			return THROTTLE_RESPONSE;
+		}
+
+		File file = new File(this.dataDir, symbol + ".json");
+		if (!file.isFile()) {
+			file = new File(this.dataDir, symbol + ".quote");
+		}
+
+		if (!file.isFile()) {
+			return ERROR_RESPONSE;
+		}
+
+		try {
+			String json = new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+
+			return (full) ? json : getCompactResponse(json);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/** The number of requests made to the service */
+	public synchronized int getRequestCount() {
+		return this.numRequests;
+	}
+
+	/** Record a request, returning whether it exceeds the rate limit */
+	private synchronized boolean isThrottled() {
+		long now = System.currentTimeMillis();
+
+		++this.numRequests;
+
+		if (this.callsPerMinute <= 0) {
+			return false;
+		}
+
+		while (!this.requestTimes.isEmpty() && (now - this.requestTimes.get(0) >= 60000)) {
+			this.requestTimes.remove(0);
+		}
+
+		if (this.requestTimes.size() >= this.callsPerMinute) {
+			return true;
+		}
+
+		this.requestTimes.add(now);
+
+		return false;
+	}
+
+	/** Trim a full response to the most recent quotes */
+	private static String getCompactResponse(String json) {
+		JsonElement root = JsonParser.parseString(json);
+		if (!root.isJsonObject()) {
+			return json;
+		}
+
+		JsonObject response = new JsonObject();
+
+		for (Map.Entry<String, JsonElement> entry : root.getAsJsonObject().entrySet()) {
+			String name = entry.getKey();
+			JsonElement value = entry.getValue();
+
+			if (name.equals(NAME_META) && value.isJsonObject()) {
+				JsonObject meta = value.getAsJsonObject().deepCopy();
+
+				meta.addProperty(NAME_OUTPUT_SIZE, "Compact");
+				value = meta;
+			} else if (name.startsWith("Time Series") && value.isJsonObject()) {
+				value = getLatestQuotes(value.getAsJsonObject());
+			}
+
+			response.add(name, value);
+		}
+
+		return new GsonBuilder().setPrettyPrinting().create().toJson(response);
+	}
+
+	/** Keep the latest quotes in a series (keys are dates YYYY-MM-DD) */
+	private static JsonObject getLatestQuotes(JsonObject series) {
+		List<String> dates = new ArrayList<>(series.keySet());
+
+		dates.sort((d1, d2) -> d2.compareTo(d1));
+
+		JsonObject latest = new JsonObject();
+
+		for (String date : dates.subList(0, Math.min(COMPACT_SIZE, dates.size()))) {
+			latest.add(date, series.get(date));
+		}
+
+		return latest;
+	}
+}
@@ -1,10 +1,18 @@
 package moneymgr.io;
 
 import java.math.BigDecimal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import moneymgr.model.InvestmentTxn;
 import moneymgr.model.Lot;
@@ -44,6 +52,167 @@ public class LotProcessor {
 				}
 			};
 
+	/**
+	 * The lots for a security as they are being built.<br>
+	 * All lots are kept in a linked list in the order of the security's lot
+	 * list. Open lots are also kept in date acquired order, overall and by
+	 * account, so finding where a new lot goes or the open lots in an account
+	 * does not scan every lot ever created. Lots that have been closed are
+	 * dropped from the open lots when they are encountered.
+	 */
+	private static class SecurityLots {
+		/** A lot's place in the list */
+		private static class Node {
+			final Lot lot;
+			final QDate acquisitionDate;
+			final long seq;
+
+			Node prev;
+			Node next;
+
+			Node(Lot lot, QDate acquisitionDate, long seq) {
+				this.lot = lot;
+				this.acquisitionDate = acquisitionDate;
+				this.seq = seq;
+			}
+		}
+
+		/** Open lots by date acquired, then the order they were added */
+		private static final Comparator<Node> openLotOrder = (n1, n2) -> {
+			int diff = n1.acquisitionDate.compareTo(n2.acquisitionDate);
+
+			return (diff != 0) ? diff : Long.compare(n1.seq, n2.seq);
+		};
+
+		private Node head = null;
+		private Node tail = null;
+		private long numLots = 0;
+
+		private final TreeSet<Node> openLots = new TreeSet<>(openLotOrder);
+		private final Map<Integer, TreeSet<Node>> openLotsByAccount = new HashMap<>();
+
+		/**
+		 * Add a lot, before the first open lot acquired after it (the same place
+		 * a scan of the list for that lot would find).
+		 */
+		void addLot(Lot newLot) {
+			Node node = new Node(newLot, newLot.getAcquisitionDate(), this.numLots++);
+
+			Node probe = new Node(null, node.acquisitionDate, Long.MAX_VALUE);
+			Node before = this.openLots.higher(probe);
+
+			while ((before != null) && !before.lot.isOpen()) {
+				this.openLots.remove(before);
+				before = this.openLots.higher(probe);
+			}
+
+			if (before == null) {
+				node.prev = this.tail;
+
+				if (this.tail != null) {
+					this.tail.next = node;
+				} else {
+					this.head = node;
+				}
+
+				this.tail = node;
+			} else {
+				node.prev = before.prev;
+				node.next = before;
+
+				if (before.prev != null) {
+					before.prev.next = node;
+				} else {
+					this.head = node;
+				}
+
+				before.prev = node;
+			}
+
+			this.openLots.add(node);
+
+			TreeSet<Node> acctLots = this.openLotsByAccount.get(newLot.acctid);
+			if (acctLots == null) {
+				acctLots = new TreeSet<>(openLotOrder);
+				this.openLotsByAccount.put(newLot.acctid, acctLots);
+			}
+
+			acctLots.add(node);
+		}
+
+		/** Get the first open lot in any account (null if none) */
+		Lot getFirstOpenLot() {
+			while (!this.openLots.isEmpty()) {
+				Node node = this.openLots.first();
+
+				if (node.lot.isOpen()) {
+					return node.lot;
+				}
+
+				this.openLots.pollFirst();
+			}
+
+			return null;
+		}
+
+		/** Get open lots for an account, in date acquired order */
+		List<Lot> getOpenLots(int acctid) {
+			List<Lot> ret = new ArrayList<Lot>();
+
+			TreeSet<Node> acctLots = this.openLotsByAccount.get(acctid);
+			if (acctLots == null) {
+				return ret;
+			}
+
+			for (Iterator<Node> iter = acctLots.iterator(); iter.hasNext();) {
+				Lot lot = iter.next().lot;
+
+				if (lot.isOpen()) {
+					ret.add(lot);
+				} else {
+					iter.remove();
+				}
+			}
+
+			return ret;
+		}
+
+		/** Get all of the lots, in list order */
+		List<Lot> getLots() {
+			List<Lot> ret = new ArrayList<Lot>();
+
+			for (Node node = this.head; node != null; node = node.next) {
+				ret.add(node.lot);
+			}
+
+			return ret;
+		}
+	}
+
+	/** Open lots chosen to supply shares, with a lookup by lot size */
+	private static class SourceLots {
+		private final List<Lot> lots;
+		private final Map<BigDecimal, ArrayDeque<Lot>> lotsBySize = new HashMap<>();
+		private final Set<Lot> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		/** Index of the first lot that may not have been taken */
+		private int first = 0;
+
+		SourceLots(List<Lot> lots) {
+			this.lots = lots;
+
+			for (Lot lot : lots) {
+				ArrayDeque<Lot> sameSize = this.lotsBySize.get(lot.shares);
+				if (sameSize == null) {
+					sameSize = new ArrayDeque<>();
+					this.lotsBySize.put(lot.shares, sameSize);
+				}
+
+				sameSize.add(lot);
+			}
+		}
+	}
+
 	private final MoneyMgrModel model;
 
 	public LotProcessor(MoneyMgrModel model) {
@@ -52,27 +221,44 @@ public class LotProcessor {
 
 	/** Create lots for all security transactions, all accounts */
 	public void setupSecurityLots() {
-		for (Security sec : this.model.getSecurities()) {
-			List<InvestmentTxn> txns = new ArrayList<InvestmentTxn>(sec.getTransactions());
-			Collections.sort(txns, sortTransactionsForLots);
+		List<Security> securities = new ArrayList<Security>(this.model.getSecurities());
 
-			// We process splits once for all accounts;
-			// So we don't need split tx in each
-			purgeDuplicateSplitTransactions(txns);
+		// Each security's transactions are gathered/sorted independently
+		List<List<InvestmentTxn>> secTxns = securities.parallelStream() //
+				.map(sec -> getTransactionsForLots(sec)) //
+				.collect(Collectors.toList());
 
-			List<Lot> thelots = new ArrayList<Lot>();
+		// Lots are created in security order since the model assigns lot ids
+		// (and ids for split transactions) as they are created
+		for (int idx = 0; idx < securities.size(); ++idx) {
+			Security sec = securities.get(idx);
+			SecurityLots thelots = new SecurityLots();
 
-			createLotsForTransactions(thelots, txns);
-			logLotsHistory(sec, thelots, false);
+			createLotsForTransactions(thelots, secTxns.get(idx));
 
-			sec.setLots(thelots);
+			List<Lot> lots = thelots.getLots();
+			logLotsHistory(sec, lots, false);
+
+			sec.setLots(lots);
 		}
 
 		logLotInfo();
 	}
 
+	/** Get a security's transactions in the order we process them for lots */
+	private List<InvestmentTxn> getTransactionsForLots(Security sec) {
+		List<InvestmentTxn> txns = new ArrayList<InvestmentTxn>(sec.getTransactions());
+		Collections.sort(txns, sortTransactionsForLots);
+
+		// We process splits once for all accounts;
+		// So we don't need split tx in each
+		purgeDuplicateSplitTransactions(txns);
+
+		return txns;
+	}
+
 	/** Analyze a list of transactions, building lots for the investments */
-	private void createLotsForTransactions(List<Lot> thelots, List<InvestmentTxn> txns) {
+	private void createLotsForTransactions(SecurityLots thelots, List<InvestmentTxn> txns) {
 		for (int txIdx = 0; txIdx < txns.size();) {
 //			String txstr = txns.get(txIdx).toString();
 
@@ -99,7 +285,7 @@ public class LotProcessor {
 	}
 
 	/** Analyze a transaction, updating lot information */
-	private int createLotsForTransaction(List<Lot> thelots, List<InvestmentTxn> txns, int txIdx) {
+	private int createLotsForTransaction(SecurityLots thelots, List<InvestmentTxn> txns, int txIdx) {
 		// TODO should these be sets? It would simplify gather func
 		List<InvestmentTxn> srcTxns = new ArrayList<InvestmentTxn>();
 		List<InvestmentTxn> dstTxns = new ArrayList<InvestmentTxn>();
@@ -125,7 +311,7 @@ public class LotProcessor {
 //			System.out.println(printOpenLots(acctid));
 //		}
 
-		List<Lot> srcLots = null;
+		SourceLots srcLots = null;
 		if (!srcTxns.isEmpty()) {
 			srcLots = getSrcLots(thelots, srcTxns);
 		}
@@ -153,48 +339,18 @@ public class LotProcessor {
 		return txIdx;
 	}
 
-	/** Insert a lot into a list sorted by date acquired */
-	private void addLot(List<Lot> thelots, Lot newLot) {
-		int idx = 0;
-		for (; idx < thelots.size(); ++idx) {
-			Lot lot = thelots.get(idx);
-			if (lot.getDisposingTransaction() != null) {
-				continue;
-			}
-
-			if (lot.getAcquisitionDate().compareTo(newLot.getAcquisitionDate()) > 0) {
-				break;
-			}
-		}
-
-		thelots.add(idx, newLot);
-	}
-
 	/** Create a lot for new shares created by a transaction */
-	private void addShares(List<Lot> thelots, InvestmentTxn txn) {
+	private void addShares(SecurityLots thelots, InvestmentTxn txn) {
 		Lot lot = new Lot(txn.getAccountID(), txn.getDate(), txn.getSecurityId(), //
 				txn.getShares(), txn.getShareCost(), txn);
-		addLot(thelots, lot);
+		thelots.addLot(lot);
 
 		txn.addLot(lot);
 	}
 
-	/** Get open lots for account */
-	private List<Lot> getOpenLots(List<Lot> thelots, int acctid) {
-		List<Lot> ret = new ArrayList<Lot>();
-
-		for (Lot lot : thelots) {
-			if (lot.isOpen() && (lot.acctid == acctid)) {
-				ret.add(lot);
-			}
-		}
-
-		return ret;
-	}
-
 	/** Get open lots to satisfy txns that consume lots (sell/xfer out/split) */
-	private List<Lot> getSrcLots(List<Lot> thelots, List<InvestmentTxn> txns) {
-		List<Lot> lots = getOpenLots(thelots, txns.get(0).getAccountID());
+	private SourceLots getSrcLots(SecurityLots thelots, List<InvestmentTxn> txns) {
+		List<Lot> lots = thelots.getOpenLots(txns.get(0).getAccountID());
 		List<Lot> ret = new ArrayList<Lot>();
 		BigDecimal sharesRequired = BigDecimal.ZERO;
 
@@ -204,13 +360,16 @@ public class LotProcessor {
 
 		BigDecimal sharesRemaining = sharesRequired;
 
-		while ((sharesRemaining.signum() > 0) && !lots.isEmpty()) {
-			Lot lot = lots.remove(0);
+		for (Lot lot : lots) {
+			if (sharesRemaining.signum() <= 0) {
+				break;
+			}
+
 			ret.add(lot);
 
 			if (lot.shares.compareTo(sharesRemaining) >= 0 || //
 					Common.isEffectivelyEqual(lot.shares, sharesRemaining)) {
-				return ret;
+				return new SourceLots(ret);
 			}
 
 			sharesRemaining = sharesRemaining.subtract(lot.shares);
@@ -228,28 +387,39 @@ public class LotProcessor {
 	 * Get/remove the best lot to supply shares to remove (prefer size match).<br>
 	 * NOTE: This removes the lot from the source list.
 	 */
-	private Lot getBestLot(BigDecimal shares, List<Lot> lots) {
-		for (Lot lot : lots) {
-			// TODO why do we prefer this rather than the oldest lot?
-			if (lot.shares.equals(shares)) {
-				lots.remove(lot);
+	private Lot getBestLot(BigDecimal shares, SourceLots lots) {
+		// TODO why do we prefer this rather than the oldest lot?
+		ArrayDeque<Lot> sameSize = lots.lotsBySize.get(shares);
+
+		while ((sameSize != null) && !sameSize.isEmpty()) {
+			Lot lot = sameSize.poll();
+
+			if (lots.taken.add(lot)) {
 				return lot;
 			}
 		}
 
-		if (lots.isEmpty()) {
+		while ((lots.first < lots.lots.size()) //
+				&& lots.taken.contains(lots.lots.get(lots.first))) {
+			++lots.first;
+		}
+
+		if (lots.first >= lots.lots.size()) {
 			Common.reportWarning("Attempting to get lot from empty lots");
 			return null;
 		}
 
-		return lots.remove(0);
+		Lot lot = lots.lots.get(lots.first++);
+		lots.taken.add(lot);
+
+		return lot;
 	}
 
 	/**
 	 * Dispose lot(s) removed by a transaction.<br>
 	 * Split the last lot if partially removed.
 	 */
-	private void removeShares(List<Lot> thelots, InvestmentTxn txn, List<Lot> srcLots) {
+	private void removeShares(SecurityLots thelots, InvestmentTxn txn, SourceLots srcLots) {
 		BigDecimal sharesRemaining = txn.getShares().abs();
 
 		while (!Common.isEffectivelyZero(sharesRemaining)) {
@@ -260,8 +430,8 @@ public class LotProcessor {
 			if (srcLot.shares.compareTo(sharesRemaining) > 0) {
 				Lot[] splitLot = srcLot.split(txn, sharesRemaining);
 
-				addLot(thelots, splitLot[0]);
-				addLot(thelots, splitLot[1]);
+				thelots.addLot(splitLot[0]);
+				thelots.addLot(splitLot[1]);
 
 				srcLot = splitLot[0];
 			}
@@ -276,7 +446,7 @@ public class LotProcessor {
 	}
 
 	/** Build a formatted string describing the open lots in an account */
-	private String printOpenLots(List<Lot> thelots, int acctid) {
+	private String printOpenLots(SecurityLots thelots, int acctid) {
 		String s = "";
 		BigDecimal bal = BigDecimal.ZERO;
 		// TODO since lot.addshares is always true, this means "not first lot"
@@ -284,7 +454,7 @@ public class LotProcessor {
 		QDate curdate = null;
 		TxAction curaction = null;
 
-		for (Lot lot : getOpenLots(thelots, acctid)) {
+		for (Lot lot : thelots.getOpenLots(acctid)) {
 			bal = bal.add(lot.shares);
 
 			if (curdate == null || //
@@ -292,7 +462,7 @@ public class LotProcessor {
 							&& curdate.equals(lot.createDate) //
 							&& curaction.equals(lot.createTransaction.getAction()))) {
 				s += String.format("\n%s %s %s", //
-						lot.createDate.longString, //
+						lot.createDate.getLongString(), //
 						lot.createTransaction.getAction().toString(), //
 						Common.formatAmount(lot.shares));
 			} else {
@@ -317,10 +487,10 @@ public class LotProcessor {
 	 * Split the last lot if partially transferred.
 	 */
 	private void transferShares( //
-			List<Lot> thelots, //
+			SecurityLots thelots, //
 			List<InvestmentTxn> srcTxns, //
 			List<InvestmentTxn> dstTxns, //
-			List<Lot> srcLots) {
+			SourceLots srcLots) {
 		InvestmentTxn dstTxn = null;
 		// Note this will be >= 0 (credit shares)
 		BigDecimal sharesLeftInDstTxn = BigDecimal.ZERO;
@@ -358,15 +528,15 @@ public class LotProcessor {
 				if (srcLot.shares.compareTo(sharesLeftInSrcTxn) > 0) {
 					Lot[] splitLot = srcLot.split(srcTxn, sharesLeftInSrcTxn);
 
-					addLot(thelots, splitLot[0]);
-					addLot(thelots, splitLot[1]);
+					thelots.addLot(splitLot[0]);
+					thelots.addLot(splitLot[1]);
 
 					srcLot = splitLot[0];
 				}
 
 				// Consume the entire source lot (dispose lot in src, create in dst)
 				Lot newDstLot = new Lot(srcLot, dstTxn.getAccountID(), dstTxn, srcTxn);
-				addLot(thelots, newDstLot);
+				thelots.addLot(newDstLot);
 
 				sharesLeftInSrcTxn = sharesLeftInSrcTxn.subtract(newDstLot.shares);
 
@@ -384,47 +554,12 @@ public class LotProcessor {
 		}
 	}
 
-	/** Find the first open lot in a list matching an account/number of shares. */
-	private Lot getFirstOpenLot(List<Lot> thelots, int acctid, BigDecimal sharesToMatch) {
-		int idx = 0;
-		for (Lot lot : thelots) {
-			if (lot.isOpen() //
-					&& ((acctid == 0) || (lot.acctid == acctid))) {
-				break;
-			}
-
-			++idx;
-		}
-
-		if (idx >= thelots.size()) {
-			return null;
-		}
-
-		Lot lot = thelots.get(idx);
-
-		if (sharesToMatch != null) {
-			for (int idx2 = idx; idx2 < thelots.size(); ++idx2) {
-				Lot lot2 = thelots.get(idx2);
-
-				if (lot2.getAcquisitionDate().compareTo(lot.getAcquisitionDate()) > 0) {
-					break;
-				}
-
-				if (lot2.shares.equals(sharesToMatch)) {
-					return lot2;
-				}
-			}
-		}
-
-		return thelots.get(idx);
-	}
-
 	/** Apply a split to all open lots in all accounts */
-	private void processSplit(List<Lot> thelots, InvestmentTxn txn) {
+	private void processSplit(SecurityLots thelots, InvestmentTxn txn) {
 		List<Lot> newLots = new ArrayList<Lot>();
 
 		for (;;) {
-			Lot oldlot = getFirstOpenLot(thelots, 0, null);
+			Lot oldlot = thelots.getFirstOpenLot();
 			if (oldlot == null) {
 				break;
 			}
@@ -440,7 +575,7 @@ public class LotProcessor {
 		}
 
 		for (Lot newLot : newLots) {
-			addLot(thelots, newLot);
+			thelots.addLot(newLot);
 		}
 	}
 
@@ -41,7 +41,7 @@ public class QQuoteLoader {
 			return;
 		}
 
-		List<QPrice> prices = sec.prices;
+		List<QPrice> prices = sec.getPrices();
 		List<StockSplitInfo> splits = sec.splits;
 
 		assert prices.isEmpty() && splits.isEmpty();
@@ -143,7 +143,7 @@ public class QQuoteLoader {
 
 				BigDecimal price = null;
 				try {
-					price = new BigDecimal(pricestr);
+					price = Common.parseDecimal(pricestr);
 				} catch (final Exception e) {
 					e.printStackTrace();
 					Common.reportError("Invalid price in quote file");
@@ -181,6 +181,5 @@ public class QQuoteLoader {
 			return;
 		}
 
-		Collections.sort(prices, (o1, o2) -> o1.date.compareTo(o2.date));
 	}
 }
\ No newline at end of file
@@ -1,33 +1,34 @@
 package moneymgr.io;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.InputStream;
-import java.io.LineNumberReader;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.Reader;
 import java.math.BigDecimal;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Set;
 
-import org.json.JSONObject;
+import com.google.gson.stream.JsonReader;
 
 import app.QifDom;
 import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.PriceHistory;
 import moneymgr.model.QPrice;
 import moneymgr.model.Security;
 import moneymgr.model.SecurityPosition;
 import moneymgr.util.Common;
 import moneymgr.util.QDate;
+import moneymgr.util.TokenBucket;
 
 /**
  * Download security history from online service.<br>
- * Use information cached in files instead if available.
+ * Use information cached in files instead if available. Out of date files
+ * are used as they are while they are refreshed in the background (see
+ * QuoteRefreshScheduler).
  */
 public class QuoteDownloader {
 	private static final List<String> whitelist = new ArrayList<>( //
@@ -48,253 +49,524 @@ public class QuoteDownloader {
 					"#2021396", "#2145605" //
 			}));
 
-	private static final String queryPattern = "%s/query?function=%s&symbol=%s%s&apikey=%s";
+	static final String FUNC_DAILY = "TIME_SERIES_DAILY_ADJUSTED";
+	static final String NAME_DAILY = "Time Series (Daily)";
 
-	private static final String DOMAIN = "https://www.alphavantage.co";
-	private static final String FULL_HISTORY = "&outputsize=full";
-	private static final String FUNC_DAILY = "TIME_SERIES_DAILY_ADJUSTED";
-	private static final String NAME_DAILY = "Time Series (Daily)";
-	private static final String API_KEY = "O7JYIMJXJOWQB9BY";
+	/**
+	 * System property naming a directory of quote files to serve instead of
+	 * using the web service (see LocalQuoteService)
+	 */
+	public static final String LOCAL_QUOTE_DIR_PROPERTY = "moneymgr.quoteServiceDir";
+
+	/** How much of a quote file to read to check for a usable response */
+	private static final int QUOTE_FILE_HEADER_SIZE = 1024;
 
-	// If we appear to have hit the 500 api calls per hour limit, simply
-	// disable quote downloads for this session.
-	private static boolean disableDownload = false;
+	/** Service request limits (the free service allows 5 per minute) */
+	private static final int MAX_REQUEST_BURST = 5;
+	private static final int MAX_REQUESTS_PER_MINUTE = 5;
+
+	/** Number of threads fetching quotes */
+	private static final int MAX_FETCH_THREADS = 4;
+
+	private static QuoteService quoteService = null;
+	private static QuoteRefreshScheduler refreshScheduler = null;
 
 	public List<String> securitiesNotDownlaoded = new ArrayList<String>();
 	public final MoneyMgrModel model;
 
+	/** Symbols whose quote files need refreshing */
+	private final Set<String> refreshSymbols = new LinkedHashSet<>();
+	private QuoteRefreshScheduler.Listener refreshListener = null;
+
 	public QuoteDownloader(MoneyMgrModel model) {
 		this.model = model;
 	}
 
-	public List<QPrice> loadPriceHistory(String symbol) {
-		JSONObject quotes = loadQuoteHistory(symbol, FUNC_DAILY, true);
+	/** Use a different source for quotes (e.g. LocalQuoteService) */
+	public static synchronized void setQuoteService(QuoteService service) {
+		quoteService = service;
 
-		return extractQuoteHistory(symbol, quotes);
+		if (refreshScheduler != null) {
+			refreshScheduler.shutdown();
+			refreshScheduler = null;
+		}
 	}
 
-	public List<QPrice> loadQuotes(String symbol) {
-		JSONObject quotes = loadQuoteHistory(symbol, FUNC_DAILY, false);
+	/** Get the source of quotes, the web service unless configured otherwise */
+	public static synchronized QuoteService getQuoteService() {
+		if (quoteService == null) {
+			String localDir = System.getProperty(LOCAL_QUOTE_DIR_PROPERTY);
+
+			quoteService = (localDir != null) //
+					? new LocalQuoteService(new File(localDir)) //
+					: new AlphaVantageQuoteService();
+		}
 
-		return extractQuoteHistory(symbol, quotes);
+		return quoteService;
 	}
 
-	/** Process JSON results to get quote data */
-	private List<QPrice> extractQuoteHistory(String symbol, JSONObject quotes) {
-		if (quotes == null) {
-			return null;
+	/** Get the scheduler that refreshes quote files in the current data directory */
+	public static synchronized QuoteRefreshScheduler getRefreshScheduler() {
+		File quoteDir = new File(QifDom.qifDir, "quotes");
+
+		if ((refreshScheduler != null) && !refreshScheduler.getQuoteDirectory().equals(quoteDir)) {
+			refreshScheduler.shutdown();
+			refreshScheduler = null;
 		}
 
-		JSONObject quoteObj = null;
+		if (refreshScheduler == null) {
+			refreshScheduler = new QuoteRefreshScheduler(quoteDir, getQuoteService(), //
+					new TokenBucket(MAX_REQUEST_BURST, MAX_REQUESTS_PER_MINUTE), //
+					MAX_FETCH_THREADS);
+		}
 
-		try {
-			quoteObj = quotes.getJSONObject(NAME_DAILY);
-		} catch (Exception e) {
-			if (QifDom.verbose) {
-				Common.reportWarning("Couldn't get quotes for " + symbol);
-			}
+		return refreshScheduler;
+	}
 
-			securitiesNotDownlaoded.add(symbol);
+	/**
+	 * Start refreshing the quote files found to be out of date (and any left
+	 * over from the last session) in the background.
+	 * 
+	 * @param listener Notified as each file is refreshed
+	 */
+	public void refreshQuotes(QuoteRefreshScheduler.Listener listener) {
+		File queueFile = new File(new File(QifDom.qifDir, "quotes"), QuoteRefreshScheduler.QUEUE_FILE);
 
-			return null;
+		if (this.refreshSymbols.isEmpty() && !queueFile.isFile()) {
+			return;
+		}
+
+		QuoteRefreshScheduler scheduler = getRefreshScheduler();
+
+		if (this.refreshListener != null) {
+			scheduler.removeListener(this.refreshListener);
 		}
 
-		List<String> dates = new ArrayList<>(quoteObj.keySet());
-		Collections.sort(dates);
+		this.refreshListener = listener;
+
+		if (listener != null) {
+			scheduler.addListener(listener);
+		}
+
+		scheduler.resume();
+
+		for (String symbol : this.refreshSymbols) {
+			scheduler.schedule(symbol);
+		}
+
+		this.refreshSymbols.clear();
+	}
 
-		List<QPrice> prices = new ArrayList<QPrice>();
-		String closePriceKey = null;
-		String splitPriceKey = null;
+	/** Quote history parsed from a quote file, sorted by date */
+	public static class QuoteSeries {
+		/** Fixed point split coefficient for days without a split */
+		public static final long NO_SPLIT = PriceHistory.toFixed(BigDecimal.ONE);
 
-		for (String date : dates) {
-			JSONObject quote = quoteObj.getJSONObject(date);
+		public final String symbol;
 
-			if (closePriceKey == null) {
-				for (Iterator<String> kiter = quote.keys(); kiter.hasNext();) {
-					String k = kiter.next();
-					if (k.endsWith(". close")) {
-						closePriceKey = k;
-					} else if (k.endsWith(". adjusted close")) {
-						splitPriceKey = k;
-					}
+		/** Dates (epoch days) of the quotes */
+		public int[] days;
+
+		/** Closing prices (fixed point, see PriceHistory) */
+		public long[] prices;
+
+		/** Split-adjusted closing prices */
+		public BigDecimal[] splitAdjustedPrices;
+
+		/** Dividends paid (fixed point, zero if none) */
+		public long[] dividends;
+
+		/** Split coefficients (fixed point, NO_SPLIT if none) */
+		public long[] splitCoefficients;
+
+		public int size = 0;
+
+		public QuoteSeries(String symbol) {
+			this(symbol, 256);
+		}
+
+		public QuoteSeries(String symbol, int capacity) {
+			this.symbol = symbol;
+
+			capacity = Math.max(1, capacity);
+			this.days = new int[capacity];
+			this.prices = new long[capacity];
+			this.splitAdjustedPrices = new BigDecimal[capacity];
+			this.dividends = new long[capacity];
+			this.splitCoefficients = new long[capacity];
+		}
+
+		/** Add a quote following those already in the series */
+		public void add(int day, long price, BigDecimal splitAdjustedPrice, //
+				long dividend, long splitCoefficient) {
+			if (this.size == this.days.length) {
+				int newCapacity = this.size * 2;
+
+				this.days = Arrays.copyOf(this.days, newCapacity);
+				this.prices = Arrays.copyOf(this.prices, newCapacity);
+				this.splitAdjustedPrices = Arrays.copyOf(this.splitAdjustedPrices, newCapacity);
+				this.dividends = Arrays.copyOf(this.dividends, newCapacity);
+				this.splitCoefficients = Arrays.copyOf(this.splitCoefficients, newCapacity);
+			}
+
+			this.days[this.size] = day;
+			this.prices[this.size] = price;
+			this.splitAdjustedPrices[this.size] = splitAdjustedPrice;
+			this.dividends[this.size] = dividend;
+			this.splitCoefficients[this.size] = splitCoefficient;
+			++this.size;
+		}
+
+		/** Add the Nth quote from another series */
+		public void add(QuoteSeries other, int idx) {
+			add(other.days[idx], other.prices[idx], other.splitAdjustedPrices[idx], //
+					other.dividends[idx], other.splitCoefficients[idx]);
+		}
+
+		/** Find the index of a date (as Arrays.binarySearch) */
+		public int indexOf(int day) {
+			return Arrays.binarySearch(this.days, 0, this.size, day);
+		}
+
+		/** Put quotes in ascending date order (the service returns newest first) */
+		private void sort() {
+			boolean ascending = true;
+			boolean descending = true;
+
+			for (int ii = 1; ii < this.size; ++ii) {
+				if (this.days[ii] < this.days[ii - 1]) {
+					ascending = false;
+				} else if (this.days[ii] > this.days[ii - 1]) {
+					descending = false;
 				}
 			}
 
-			BigDecimal closingPrice = quote.getBigDecimal(closePriceKey);
-			BigDecimal splitPrice = quote.getBigDecimal(splitPriceKey);
+			if (ascending) {
+				return;
+			}
+
+			Integer[] order = new Integer[this.size];
+			for (int ii = 0; ii < this.size; ++ii) {
+				order[ii] = (descending) ? this.size - 1 - ii : ii;
+			}
+
+			if (!descending) {
+				Arrays.sort(order, (i1, i2) -> Integer.compare(this.days[i1], this.days[i2]));
+			}
+
+			QuoteSeries sorted = new QuoteSeries(this.symbol, this.size);
+
+			for (int ii = 0; ii < this.size; ++ii) {
+				sorted.add(this, order[ii]);
+			}
+
+			this.days = sorted.days;
+			this.prices = sorted.prices;
+			this.splitAdjustedPrices = sorted.splitAdjustedPrices;
+			this.dividends = sorted.dividends;
+			this.splitCoefficients = sorted.splitCoefficients;
+		}
+	}
+
+	public List<QPrice> loadPriceHistory(String symbol) {
+		File quoteFile = getQuoteHistoryFile(symbol);
+
+		return extractQuoteHistory(symbol, quoteFile);
+	}
+
+	public List<QPrice> loadQuotes(String symbol) {
+		File quoteFile = getQuoteHistoryFile(symbol);
 
-			prices.add(new QPrice(this.model, Common.parseQDate(date), //
-					this.model.findSecurity(symbol).secid, //
-					closingPrice, splitPrice));
+		return extractQuoteHistory(symbol, quoteFile);
+	}
+
+	/**
+	 * Locate (downloading if necessary) the quote file for a security.<br>
+	 * The file can then be parsed with parseQuoteFile().
+	 * 
+	 * @return The quote file, null if no quotes are available
+	 */
+	public File getPriceHistoryFile(String symbol) {
+		return getQuoteHistoryFile(symbol);
+	}
+
+	/** Process quote file to get quote data */
+	private List<QPrice> extractQuoteHistory(String symbol, File quoteFile) {
+		QuoteSeries series = parseQuoteFile(symbol, quoteFile);
+		if (series == null) {
+			return null;
+		}
+
+		int secid = this.model.findSecurity(symbol).secid;
+		List<QPrice> prices = new ArrayList<QPrice>(series.size);
+
+		for (int ii = 0; ii < series.size; ++ii) {
+			prices.add(new QPrice(this.model, QDate.fromEpochDay(series.days[ii]), secid, //
+					PriceHistory.toDecimal(series.prices[ii]), //
+					series.splitAdjustedPrices[ii]));
 		}
 
 		return prices;
 	}
 
 	/**
-	 * Load quotes for a security
+	 * Convert a JSON quote file (saved by earlier versions) to a quote store,
+	 * which is what later sessions read and update.<br>
+	 * This writes to the quote directory, so it is done one security at a time
+	 * before quote files are parsed.
 	 * 
-	 * @param symbol   Ticker symbol
-	 * @param function Load function (e.g. "TIME_SERIES_DAILY_ADJUSTED")
-	 * @param full     True - full history, False - recent prices
-	 * @return JSON results
+	 * @return The quote store, or the original file if it can't be converted
 	 */
-	private JSONObject loadQuoteHistory(String symbol, String function, boolean full) {
-		Security sec = this.model.findSecurityBySymbol(symbol);
-		SecurityPosition pos = this.model.portfolio.getPosition(sec);
-		BigDecimal shares = pos.getSharesForDate(QDate.today());
-		boolean isHeldToday = !Common.isEffectivelyZero(shares);
+	public File convertQuoteFile(String symbol, File quoteFile) {
+		if ((quoteFile == null) || QuoteStore.isStoreFile(quoteFile)) {
+			return quoteFile;
+		}
 
-		// NB We don't know holdings yet when this is called during startup
-		isHeldToday = whitelist.contains(sec.getSymbol());
+		QuoteSeries series = parseQuoteJson(symbol, quoteFile);
+		if (series == null) {
+			return quoteFile;
+		}
 
-		File outdir = new File(QifDom.qifDir, "quotes");
-		File outfile = new File(outdir, symbol + ".quote");
+		File storeFile = QuoteStore.getStoreFile(quoteFile.getParentFile(), symbol);
 
-		String json = "No quotes";
+		if (!QuoteStore.save(storeFile, series)) {
+			return quoteFile;
+		}
 
-		QDate now = QDate.today();
-		QDate mod = new QDate(outfile.lastModified());
-		boolean oldQuotes = now.subtract(mod) > 0;
+		// Keep the age of the quotes for refresh decisions
+		storeFile.setLastModified(quoteFile.lastModified());
 
-		boolean refreshQuotes = false;
-		boolean retryAfterThrottle = false;
+		return storeFile;
+	}
 
-		String msg = String.format("Checking quote history for '%s'", symbol);
+	/**
+	 * Parse quote data from a file (a quote store or JSON from the service).
+	 * This uses no shared state and doesn't modify the file, so quote files for
+	 * different securities can be parsed concurrently.
+	 * 
+	 * @return Quotes sorted by date, null if the file contains no quotes
+	 */
+	public QuoteSeries parseQuoteFile(String symbol, File quoteFile) {
+		if (quoteFile == null) {
+			return null;
+		}
 
-		for (;;) {
-			if (blacklist.contains(sec.getSymbol())) {
-				msg += "... in blacklist";
-				return null;
+		QuoteSeries series = (QuoteStore.isStoreFile(quoteFile)) //
+				? QuoteStore.load(symbol, quoteFile) //
+				: parseQuoteJson(symbol, quoteFile);
+
+		if (series == null) {
+			if (QifDom.verbose) {
+				Common.reportWarning("Couldn't get quotes for " + symbol);
 			}
 
-			if (!refreshQuotes && outfile.isFile() && outfile.canRead()) {
-				msg += "... loading file";
-				json = loadQuoteFile(outfile);
-			} else if (disableDownload) {
-				Common.reportInfo(msg + "... downloads disabled");
-				break;
-			} else if (!whitelist.contains(sec.getSymbol())) {
-				msg += "... not in whitelist";
-				break;
-			} else {
-				msg += "... downloading quotes";
-				json = downloadQuotes(symbol, outfile, function, full);
-				oldQuotes = false;
+			synchronized (this.securitiesNotDownlaoded) {
+				this.securitiesNotDownlaoded.add(symbol);
 			}
+		}
 
-			try {
-				if (json.startsWith("No quotes")) {
-					// We don't expect to be able to download for this security
-					Common.reportInfo(msg + "... download not available");
-					return null;
-				}
+		return series;
+	}
 
-				if (oldQuotes) {
-					msg += "... old, downloading latest";
-					refreshQuotes = true;
-					continue;
-				}
+	/** Parse a JSON quote file, null if it can't be read or has no quotes */
+	private static QuoteSeries parseQuoteJson(String symbol, File quoteFile) {
+		try (Reader rdr = new BufferedReader(new FileReader(quoteFile))) {
+			return parseQuoteJson(symbol, rdr);
+		} catch (IOException e) {
+			return null;
+		}
+	}
 
-				if (!json.contains("calls per minute")) {
-					break;
-				}
+	/**
+	 * Parse quote JSON (a file or service response), streaming it rather than
+	 * building a document for the whole history.
+	 * 
+	 * @return Quotes sorted by date, null if there are no quotes
+	 */
+	public static QuoteSeries parseQuoteJson(String symbol, Reader reader) {
+		QuoteSeries series = null;
 
-				if (retryAfterThrottle) {
-					Common.reportInfo(msg + "... Hourly limit reached, disabling downloads");
+		try (JsonReader rdr = new JsonReader(reader)) {
+			rdr.beginObject();
 
-					disableDownload = true;
-					return null;
+			while (rdr.hasNext()) {
+				if (rdr.nextName().equals(NAME_DAILY)) {
+					series = parseDailyQuotes(symbol, rdr);
+				} else {
+					rdr.skipValue();
 				}
+			}
+
+			rdr.endObject();
+		} catch (Exception e) {
+			Common.reportWarning("Error parsing quotes for " + symbol + ": " + e.toString());
+			series = null;
+		}
 
-				Common.reportInfo(msg + "\n  ... API limit reached, waiting 60s");
-				refreshQuotes = true;
-				retryAfterThrottle = true;
+		return series;
+	}
 
-				try {
-					Thread.sleep(61000);
-				} catch (InterruptedException e1) {
+	/** Parse the daily quote map: date -> { "4. close": "..", ... } */
+	private static QuoteSeries parseDailyQuotes(String symbol, JsonReader rdr) throws IOException {
+		QuoteSeries series = new QuoteSeries(symbol);
+
+		rdr.beginObject();
+
+		while (rdr.hasNext()) {
+			String date = rdr.nextName();
+			long closingPrice = PriceHistory.NO_PRICE;
+			BigDecimal splitPrice = null;
+			long dividend = 0;
+			long splitCoefficient = QuoteSeries.NO_SPLIT;
+
+			rdr.beginObject();
+
+			while (rdr.hasNext()) {
+				String key = rdr.nextName();
+
+				if (key.endsWith(". close")) {
+					closingPrice = PriceHistory.toFixed(Common.parseDecimal(rdr.nextString()));
+				} else if (key.endsWith(". adjusted close")) {
+					splitPrice = Common.parseDecimal(rdr.nextString());
+				} else if (key.endsWith(". dividend amount")) {
+					dividend = PriceHistory.toFixed(Common.parseDecimal(rdr.nextString()));
+				} else if (key.endsWith(". split coefficient")) {
+					splitCoefficient = PriceHistory.toFixed(Common.parseDecimal(rdr.nextString()));
+				} else {
+					rdr.skipValue();
 				}
+			}
 
-			} catch (Exception e) {
-				Common.reportWarning(String.format( //
-						"%s...\n  Invalid quote JSON: '%s'", msg, json));
-				return null;
+			rdr.endObject();
+
+			if (closingPrice != PriceHistory.NO_PRICE) {
+				series.add(parseQuoteDate(date), closingPrice, splitPrice, dividend, splitCoefficient);
 			}
 		}
 
-		Common.reportInfo(msg + "... complete");
+		rdr.endObject();
+
+		series.sort();
 
-		return new JSONObject(json);
+		return series;
 	}
 
-	private String downloadQuotes(String symbol, File quoteFile, //
-			String function, boolean full) {
-		String charset = "UTF-8";
+	/** Parse a quote date (YYYY-MM-DD) to an epoch day */
+	private static int parseQuoteDate(String date) {
+		int year = Integer.parseInt(date.substring(0, 4));
+		int month = Integer.parseInt(date.substring(5, 7));
+		int day = Integer.parseInt(date.substring(8, 10));
 
-		URLConnection connection = null;
-		InputStream response = null;
+		return QDate.epochDay(year, month, day);
+	}
 
-		String urlString = String.format(queryPattern, //
-				DOMAIN, function, symbol, (full) ? FULL_HISTORY : "", API_KEY);
+	/**
+	 * Locate the quote file for a security. A file that is out of date is
+	 * returned as is, and noted to be refreshed by refreshQuotes().
+	 * 
+	 * @param symbol Ticker symbol
+	 * @return File containing quotes, null if none available
+	 */
+	private File getQuoteHistoryFile(String symbol) {
+		Security sec = this.model.findSecurityBySymbol(symbol);
+		SecurityPosition pos = this.model.portfolio.getPosition(sec);
+		BigDecimal shares = pos.getSharesForDate(QDate.today());
+		boolean isHeldToday = !Common.isEffectivelyZero(shares);
 
-		String json = "No quotes";
-		StringBuilder sb = new StringBuilder();
+		// NB We don't know holdings yet when this is called during startup
+		isHeldToday = whitelist.contains(sec.getSymbol());
+
+		File outdir = new File(QifDom.qifDir, "quotes");
+		File outfile = new File(outdir, symbol + ".quote");
+		File storeFile = QuoteStore.getStoreFile(outdir, symbol);
+
+		if (storeFile.isFile()) {
+			outfile = storeFile;
+		}
+
+		QDate now = QDate.today();
+		QDate mod = new QDate(outfile.lastModified());
+		boolean oldQuotes = now.subtract(mod) > 0;
 
-		try {
-			connection = new URL(urlString).openConnection();
-			connection.setRequestProperty("Accept-Charset", charset);
-			response = connection.getInputStream();
+		String msg = String.format("Checking quote history for '%s'", symbol);
 
-			try (Scanner scanner = new Scanner(response)) {
-				String line = scanner.useDelimiter("\\A").next();
+		if (blacklist.contains(sec.getSymbol())) {
+			msg += "... in blacklist";
+			return null;
+		}
 
-				sb.append(line);
+		boolean haveQuotes = false;
+
+		if (outfile == storeFile) {
+			msg += "... loading quote store";
+			haveQuotes = true;
+		} else if (outfile.isFile() && outfile.canRead()) {
+			msg += "... loading file";
+			String json = loadQuoteFileHeader(outfile);
+
+			if (json == null) {
+				// Unreadable file - treat it as missing and download again
+				msg += "... unreadable";
+				oldQuotes = true;
+			} else if (json.startsWith("No quotes")) {
+				// We don't expect to be able to download for this security
+				Common.reportInfo(msg + "... download not available");
+				return null;
+			} else if (json.contains(QuoteRefreshScheduler.THROTTLE_MESSAGE)) {
+				// A rate limit response was saved instead of quotes
+				oldQuotes = true;
+			} else {
+				haveQuotes = true;
 			}
+		}
 
-			json = sb.toString();
-		} catch (Exception e) {
-			// e.printStackTrace();
-		} finally {
-			try {
-				if (response != null) {
-					response.close();
-				}
-			} catch (Exception e) {
+		if (oldQuotes) {
+			if ((refreshScheduler != null) && refreshScheduler.isStopped()) {
+				msg += "... downloads disabled";
+			} else if (!isHeldToday) {
+				msg += "... not in whitelist";
+			} else {
+				msg += "... old, refreshing in background";
+				this.refreshSymbols.add(symbol);
 			}
 		}
 
-		try {
-			PrintWriter writer = new PrintWriter(quoteFile);
-			writer.print(json);
-			writer.close();
-		} catch (Exception e) {
+		if (!haveQuotes) {
+			if (this.refreshSymbols.contains(symbol)) {
+				Common.reportInfo(msg + "... no quotes yet");
+			}
 
+			return null;
 		}
 
-		return json;
-	}
+		Common.reportInfo(msg + "... complete");
 
-	private String loadQuoteFile(File quoteFile) {
-		try {
-			LineNumberReader rdr = new LineNumberReader(new FileReader(quoteFile));
-			StringBuilder sb = new StringBuilder();
+		return outfile;
+	}
 
-			for (;;) {
-				String line = rdr.readLine();
-				if (line == null) {
-					rdr.close();
+	/**
+	 * Read the beginning of a quote file. This is enough to recognize files with
+	 * no quotes or a rate limit message without reading the whole history.
+	 * 
+	 * @return The header, null if the file can't be read
+	 */
+	private String loadQuoteFileHeader(File quoteFile) {
+		try (FileReader rdr = new FileReader(quoteFile)) {
+			char[] buf = new char[QUOTE_FILE_HEADER_SIZE];
+			int len = 0;
+
+			while (len < buf.length) {
+				int n = rdr.read(buf, len, buf.length - len);
+				if (n < 0) {
 					break;
 				}
 
-				sb.append(line);
-				sb.append('\n');
+				len += n;
 			}
 
-			return sb.toString();
-
+			return new String(buf, 0, len);
 		} catch (Exception e) {
-			Common.reportError("Error opening/reading file " + quoteFile.toString());
+			Common.reportWarning("Error opening/reading file " + quoteFile.toString());
 		}
 
 		return null;
@@ -0,0 +1,381 @@
+package moneymgr.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import moneymgr.io.QuoteDownloader.QuoteSeries;
+import moneymgr.util.Common;
+import moneymgr.util.TokenBucket;
+
+/**
+ * Refresh quote files in the background.<br>
+ * Symbols are queued and fetched by a small pool of worker threads, with
+ * requests paced by a token bucket to stay within the service's limits. The
+ * queue is saved in the quote directory, so refreshes that don't complete
+ * (e.g. the service's daily limit is reached, or the application exits) are
+ * resumed in the next session. Only recent quotes are requested for
+ * securities we have history for, and they are merged into the quote store
+ * (see QuoteStore), so existing history remains usable while a refresh is in
+ * progress. Listeners are told which quotes each refresh added.
+ */
+public class QuoteRefreshScheduler {
+	/** Notification that a quote file has been refreshed */
+	public interface Listener {
+		/** Called on a worker thread with the quotes that were added/changed */
+		void quotesRefreshed(String symbol, QuoteSeries quotes);
+	}
+
+	/** Name of the file (in the quote directory) holding pending symbols */
+	public static final String QUEUE_FILE = "refresh.queue";
+
+	/** Response text indicating that we have made too many requests */
+	public static final String THROTTLE_MESSAGE = "calls per minute";
+
+	/** How long to wait after the service reports too many requests */
+	private static final long THROTTLE_PAUSE_MS = 61000;
+
+	private final File quoteDir;
+	private final File queueFile;
+	private final QuoteService service;
+	private final TokenBucket limiter;
+	private final ExecutorService pool;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/** Symbols to be refreshed, in request order (saved in the queue file) */
+	private final Set<String> pending = new LinkedHashSet<>();
+
+	/** Pending symbols that have been handed to a worker */
+	private final Set<String> active = new HashSet<>();
+
+	/** Set when the service refuses requests - give up until next session */
+	private boolean stopped = false;
+	private int consecutiveThrottles = 0;
+
+	private int numRequests = 0;
+	private int numRefreshed = 0;
+	private int numFailed = 0;
+	private int numQuotes = 0;
+
+	/**
+	 * @param quoteDir Directory containing quote files and the queue file
+	 * @param service  Source of quotes
+	 * @param limiter  Rate limit for requests to the service
+	 * @param nthreads Number of worker threads
+	 */
+	public QuoteRefreshScheduler(File quoteDir, QuoteService service, //
+			TokenBucket limiter, int nthreads) {
+		this.quoteDir = quoteDir;
+		this.queueFile = new File(quoteDir, QUEUE_FILE);
+		this.service = service;
+		this.limiter = limiter;
+		this.pool = Executors.newFixedThreadPool(Math.max(1, nthreads), r -> {
+			Thread thread = new Thread(r, "QuoteRefresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		loadQueue();
+	}
+
+	public File getQuoteDirectory() {
+		return this.quoteDir;
+	}
+
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/** Whether downloads have been disabled for this session */
+	public synchronized boolean isStopped() {
+		return this.stopped;
+	}
+
+	/** Whether a symbol is waiting to be refreshed */
+	public synchronized boolean isPending(String symbol) {
+		return this.pending.contains(symbol);
+	}
+
+	/** Symbols waiting to be refreshed */
+	public synchronized List<String> getPending() {
+		return new ArrayList<>(this.pending);
+	}
+
+	/** Queue a symbol to be refreshed (if it isn't already) */
+	public synchronized void schedule(String symbol) {
+		if (this.pending.add(symbol)) {
+			saveQueue();
+		}
+
+		submit(symbol);
+	}
+
+	/** Start refreshing symbols left in the queue by a previous session */
+	public synchronized void resume() {
+		for (String symbol : this.pending) {
+			submit(symbol);
+		}
+	}
+
+	/** Wait (up to a time limit) until there are no refreshes in progress */
+	public synchronized boolean awaitIdle(long millis) throws InterruptedException {
+		long end = System.currentTimeMillis() + millis;
+
+		while (!this.active.isEmpty()) {
+			long wait = end - System.currentTimeMillis();
+			if (wait <= 0) {
+				return false;
+			}
+
+			wait(wait);
+		}
+
+		return true;
+	}
+
+	/** Stop the workers, leaving unfinished refreshes for the next session */
+	public void shutdown() {
+		this.pool.shutdownNow();
+	}
+
+	/** Summary of the work done, for reporting */
+	public synchronized String getStatistics() {
+		return String.format("%d requests, %d refreshed (%d new quotes), %d failed, %d pending%s", //
+				this.numRequests, this.numRefreshed, this.numQuotes, this.numFailed, this.pending.size(), //
+				(this.stopped) ? " (stopped)" : "");
+	}
+
+	/** Hand a pending symbol to a worker if it isn't already being handled */
+	private void submit(String symbol) {
+		if (this.stopped || !this.active.add(symbol)) {
+			return;
+		}
+
+		try {
+			this.pool.execute(() -> refresh(symbol));
+		} catch (RejectedExecutionException e) {
+			this.active.remove(symbol);
+		}
+	}
+
+	/** Worker: request quotes for a symbol and handle the response */
+	private void refresh(String symbol) {
+		boolean retry = false;
+
+		try {
+			File storeFile = QuoteStore.getStoreFile(this.quoteDir, symbol);
+
+			// Recent quotes are enough to bring existing history up to date
+			boolean full = !storeFile.isFile();
+
+			for (;;) {
+				if (isStopped()) {
+					return;
+				}
+
+				this.limiter.acquire();
+
+				if (isStopped()) {
+					return;
+				}
+
+				String json = this.service.query(QuoteDownloader.FUNC_DAILY, symbol, full);
+
+				synchronized (this) {
+					++this.numRequests;
+				}
+
+				if (json == null) {
+					// Service unavailable - try again in a later session
+					Common.debugInfo("Quote refresh for " + symbol + " failed");
+					requestFailed(symbol, false);
+				} else if (json.contains(THROTTLE_MESSAGE)) {
+					retry = throttled(symbol);
+				} else if (json.contains(QuoteDownloader.NAME_DAILY)) {
+					QuoteSeries series = QuoteDownloader.parseQuoteJson(symbol, new StringReader(json));
+					QuoteSeries changes = (series != null) ? QuoteStore.merge(storeFile, series) : null;
+
+					if ((changes == null) && (series != null) && !full) {
+						// We missed too many days - get the full history
+						full = true;
+						continue;
+					}
+
+					if (changes != null) {
+						refreshed(symbol, changes);
+					} else {
+						requestFailed(symbol, false);
+					}
+				} else {
+					// The service has no quotes for this security
+					Common.reportInfo("Quote refresh for " + symbol + "... download not available");
+					noQuotes(symbol);
+				}
+
+				break;
+			}
+		} catch (InterruptedException e) {
+			// Shutting down - leave the symbol in the queue
+		} catch (Exception e) {
+			Common.reportWarning("Quote refresh for " + symbol + " failed: " + e.getMessage());
+			requestFailed(symbol, false);
+		} finally {
+			synchronized (this) {
+				this.active.remove(symbol);
+
+				if (retry) {
+					submit(symbol);
+				}
+
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * The service says we have made too many requests. Wait and retry once,
+	 * then give up for this session if it happens again.
+	 * 
+	 * @return Whether to retry the request
+	 */
+	private synchronized boolean throttled(String symbol) {
+		if (++this.consecutiveThrottles > 1) {
+			if (!this.stopped) {
+				Common.reportInfo("Quote refresh... Hourly limit reached, disabling downloads");
+				this.stopped = true;
+			}
+
+			return false;
+		}
+
+		Common.reportInfo("Quote refresh for " + symbol + "... API limit reached, waiting 60s");
+		this.limiter.pause(THROTTLE_PAUSE_MS);
+
+		return true;
+	}
+
+	private void refreshed(String symbol, QuoteSeries quotes) {
+		synchronized (this) {
+			this.consecutiveThrottles = 0;
+			++this.numRefreshed;
+			this.numQuotes += quotes.size;
+
+			this.pending.remove(symbol);
+			saveQueue();
+		}
+
+		Common.debugInfo("Refreshed quotes for " + symbol);
+
+		for (Listener listener : this.listeners) {
+			listener.quotesRefreshed(symbol, quotes);
+		}
+	}
+
+	/** Record a failed request, keeping the symbol in the queue if requested */
+	private synchronized void requestFailed(String symbol, boolean remove) {
+		++this.numFailed;
+
+		if (remove && this.pending.remove(symbol)) {
+			saveQueue();
+		}
+	}
+
+	/** Note that quotes are not available, without losing quotes we have */
+	private void noQuotes(String symbol) {
+		File quoteFile = new File(this.quoteDir, symbol + ".quote");
+
+		if (!quoteFile.exists() && !QuoteStore.getStoreFile(this.quoteDir, symbol).exists()) {
+			if (!writeFile(quoteFile, "No quotes")) {
+				Common.reportWarning("Can't save quotes for " + symbol);
+			}
+		}
+
+		synchronized (this) {
+			this.consecutiveThrottles = 0;
+		}
+
+		requestFailed(symbol, true);
+	}
+
+	/** Read the queue saved by a previous session */
+	private synchronized void loadQueue() {
+		if (!this.queueFile.isFile()) {
+			return;
+		}
+
+		try {
+			for (String line : Files.readAllLines(this.queueFile.toPath(), Charset.defaultCharset())) {
+				line = line.trim();
+
+				if (!line.isEmpty()) {
+					this.pending.add(line);
+				}
+			}
+		} catch (IOException e) {
+			Common.reportWarning("Can't read quote refresh queue " + this.queueFile);
+		}
+
+		if (!this.pending.isEmpty()) {
+			Common.reportInfo(String.format("Resuming refresh of %d quote files", this.pending.size()));
+		}
+	}
+
+	/** Save the pending symbols so an interrupted refresh can resume */
+	private synchronized void saveQueue() {
+		if (this.pending.isEmpty()) {
+			this.queueFile.delete();
+			return;
+		}
+
+		File tmpFile = new File(this.quoteDir, QUEUE_FILE + ".tmp");
+
+		if (!writeFile(tmpFile, String.join("\n", this.pending) + "\n") //
+				|| !moveFile(tmpFile, this.queueFile)) {
+			Common.reportWarning("Can't save quote refresh queue " + this.queueFile);
+		}
+	}
+
+	private static boolean writeFile(File file, String text) {
+		try (PrintWriter writer = new PrintWriter(file)) {
+			writer.print(text);
+
+			return !writer.checkError();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/** Rename a file, replacing the target atomically if possible */
+	public static boolean moveFile(File from, File to) {
+		try {
+			try {
+				Files.move(from.toPath(), to.toPath(), //
+						StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
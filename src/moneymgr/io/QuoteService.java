@@ -0,0 +1,18 @@
+package moneymgr.io;
+
+/**
+ * Source of quote data.<br>
+ * Responses are JSON text in the format returned by Alpha Vantage, which is
+ * what is saved in quote files and read by QuoteDownloader.parseQuoteFile().
+ */
+public interface QuoteService {
+	/**
+	 * Request quote history for a security
+	 * 
+	 * @param function Query function (e.g. "TIME_SERIES_DAILY_ADJUSTED")
+	 * @param symbol   Ticker symbol
+	 * @param full     True - full history, False - recent prices
+	 * @return The response, null if the service could not be reached
+	 */
+	String query(String function, String symbol, boolean full);
+}
@@ -0,0 +1,321 @@
+package moneymgr.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+
+import moneymgr.io.QuoteDownloader.QuoteSeries;
+import moneymgr.model.PriceHistory;
+import moneymgr.util.Common;
+import moneymgr.util.QDate;
+
+/**
+ * Compact per-symbol quote history file.<br>
+ * Quotes are fixed size binary records in date order following a short
+ * header, so loading a history is a single read with no text parsing, and
+ * new quotes from the service are appended without rewriting what we
+ * already have. Each record holds the date, closing price, adjusted closing
+ * price, dividend and split coefficient.
+ */
+public class QuoteStore {
+	public static final String SUFFIX = ".qstore";
+
+	private static final int MAGIC = 0x51535452; // "QSTR"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	/** day(4) close(8) adjusted(8+1) dividend(8) split(8) */
+	private static final int RECORD_SIZE = 37;
+
+	/** Scale value recorded for a missing adjusted price */
+	private static final byte NO_SCALE = Byte.MIN_VALUE;
+
+	/** Extra records to read when looking for the overlap with new quotes */
+	private static final int TAIL_MARGIN = 16;
+
+	public static File getStoreFile(File quoteDir, String symbol) {
+		return new File(quoteDir, symbol + SUFFIX);
+	}
+
+	public static boolean isStoreFile(File file) {
+		return file.getName().endsWith(SUFFIX);
+	}
+
+	/** Load the quotes in a store, null if it can't be read */
+	public static QuoteSeries load(String symbol, File file) {
+		try {
+			return read(symbol, file, Integer.MAX_VALUE);
+		} catch (IOException e) {
+			Common.reportWarning("Can't read quote store " + file);
+			return null;
+		}
+	}
+
+	/** Replace the contents of a store (readers see the old or new version) */
+	public static boolean save(File file, QuoteSeries series) {
+		File tmpFile = new File(file.getPath() + ".tmp");
+
+		try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+			ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + series.size * RECORD_SIZE);
+
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			putRecords(buf, series, 0);
+
+			out.write(buf.array(), 0, buf.position());
+		} catch (IOException e) {
+			tmpFile.delete();
+			Common.reportWarning("Can't save quote store " + file);
+			return false;
+		}
+
+		if (!QuoteRefreshScheduler.moveFile(tmpFile, file)) {
+			tmpFile.delete();
+			Common.reportWarning("Can't save quote store " + file);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Merge quotes from the service (usually the latest quotes only) into a
+	 * store.<br>
+	 * Quotes after the last one stored are appended. If the adjusted price for
+	 * a date we have changed (i.e. there was a split or dividend since we last
+	 * updated) adjusted prices before the new quotes are scaled to match and
+	 * the store is rewritten.
+	 * 
+	 * @return The quotes added/changed, null if the new quotes don't reach back
+	 *         to the stored history (the full history is needed)
+	 */
+	public static QuoteSeries merge(File file, QuoteSeries update) throws IOException {
+		if (update.size == 0) {
+			return update;
+		}
+
+		if (!file.isFile()) {
+			return saveAll(file, update);
+		}
+
+		int firstDay = update.days[0];
+		QuoteSeries stored = read(update.symbol, file, update.size + TAIL_MARGIN);
+		boolean storedAll = stored.size < update.size + TAIL_MARGIN;
+
+		if ((stored.size == 0) //
+				|| (storedAll && (firstDay <= stored.days[0]))) {
+			// The update covers everything we have
+			return saveAll(file, update);
+		}
+
+		int lastDay = stored.days[stored.size - 1];
+		if (firstDay > lastDay) {
+			return null;
+		}
+
+		if (!storedAll && (firstDay < stored.days[0])) {
+			stored = read(update.symbol, file, Integer.MAX_VALUE);
+
+			if (firstDay <= stored.days[0]) {
+				return saveAll(file, update);
+			}
+		}
+
+		BigDecimal ratio = getAdjustmentRatio(stored, update);
+
+		if (ratio != null) {
+			if (!storedAll) {
+				stored = read(update.symbol, file, Integer.MAX_VALUE);
+			}
+
+			return saveAll(file, adjustHistory(stored, update, ratio));
+		}
+
+		QuoteSeries added = new QuoteSeries(update.symbol, update.size);
+
+		for (int ii = 0; ii < update.size; ++ii) {
+			if (update.days[ii] > lastDay) {
+				added.add(update, ii);
+			}
+		}
+
+		append(file, added);
+		reportEvents(added);
+
+		return added;
+	}
+
+	/** Save quotes, reporting splits, and return them */
+	private static QuoteSeries saveAll(File file, QuoteSeries series) throws IOException {
+		if (!save(file, series)) {
+			throw new IOException("Can't save quote store " + file);
+		}
+
+		reportEvents(series);
+
+		return series;
+	}
+
+	/**
+	 * Compare the adjusted price on the first date in both series.
+	 * 
+	 * @return The ratio new/old, null if they match (or can't be compared)
+	 */
+	private static BigDecimal getAdjustmentRatio(QuoteSeries stored, QuoteSeries update) {
+		for (int ii = 0; ii < update.size; ++ii) {
+			int idx = stored.indexOf(update.days[ii]);
+			if (idx < 0) {
+				continue;
+			}
+
+			BigDecimal oldAdjusted = stored.splitAdjustedPrices[idx];
+			BigDecimal newAdjusted = update.splitAdjustedPrices[ii];
+
+			if ((oldAdjusted == null) || (newAdjusted == null) //
+					|| (oldAdjusted.signum() == 0) || (oldAdjusted.compareTo(newAdjusted) == 0)) {
+				return null;
+			}
+
+			return newAdjusted.divide(oldAdjusted, MathContext.DECIMAL64);
+		}
+
+		return null;
+	}
+
+	/** Combine stored history (with adjusted prices rescaled) and new quotes */
+	private static QuoteSeries adjustHistory(QuoteSeries stored, QuoteSeries update, BigDecimal ratio) {
+		QuoteSeries merged = new QuoteSeries(update.symbol, stored.size + update.size);
+		int firstDay = update.days[0];
+
+		for (int ii = 0; (ii < stored.size) && (stored.days[ii] < firstDay); ++ii) {
+			merged.add(stored, ii);
+
+			BigDecimal adjusted = stored.splitAdjustedPrices[ii];
+			if (adjusted != null) {
+				merged.splitAdjustedPrices[merged.size - 1] = //
+						adjusted.multiply(ratio).setScale(adjusted.scale(), RoundingMode.HALF_UP);
+			}
+		}
+
+		for (int ii = 0; ii < update.size; ++ii) {
+			merged.add(update, ii);
+		}
+
+		return merged;
+	}
+
+	private static void reportEvents(QuoteSeries series) {
+		for (int ii = 0; ii < series.size; ++ii) {
+			if (series.splitCoefficients[ii] != QuoteSeries.NO_SPLIT) {
+				Common.reportInfo(String.format("Quotes for %s show a split of %s on %s", //
+						series.symbol, //
+						PriceHistory.toDecimal(series.splitCoefficients[ii]).toPlainString(), //
+						QDate.fromEpochDay(series.days[ii]).toString()));
+			}
+		}
+	}
+
+	/** Read the last N quotes in a store */
+	private static QuoteSeries read(String symbol, File file, int maxRecords) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long length = raf.length();
+
+			if (length < HEADER_SIZE) {
+				throw new IOException("Invalid quote store");
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			raf.readFully(header.array());
+
+			if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+				throw new IOException("Invalid quote store");
+			}
+
+			// NB An incomplete record at the end (e.g. interrupted append) is ignored
+			int numRecords = (int) ((length - HEADER_SIZE) / RECORD_SIZE);
+			int count = Math.min(numRecords, maxRecords);
+
+			ByteBuffer buf = ByteBuffer.allocate(count * RECORD_SIZE);
+			raf.seek(HEADER_SIZE + (long) (numRecords - count) * RECORD_SIZE);
+			raf.readFully(buf.array());
+
+			QuoteSeries series = new QuoteSeries(symbol, count);
+
+			for (int ii = 0; ii < count; ++ii) {
+				int day = buf.getInt();
+				long price = buf.getLong();
+				long adjustedValue = buf.getLong();
+				byte adjustedScale = buf.get();
+				long dividend = buf.getLong();
+				long split = buf.getLong();
+
+				BigDecimal adjusted = (adjustedScale != NO_SCALE) //
+						? BigDecimal.valueOf(adjustedValue, adjustedScale) //
+						: null;
+
+				series.add(day, price, adjusted, dividend, split);
+			}
+
+			return series;
+		}
+	}
+
+	/** Add quotes to the end of a store */
+	private static void append(File file, QuoteSeries series) throws IOException {
+		if (series.size == 0) {
+			// Nothing new (e.g. a weekend) but we are up to date
+			file.setLastModified(System.currentTimeMillis());
+			return;
+		}
+
+		// Drop any incomplete record so new records are aligned
+		long length = file.length();
+		long validLength = HEADER_SIZE + ((length - HEADER_SIZE) / RECORD_SIZE) * RECORD_SIZE;
+
+		if (validLength != length) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(validLength);
+			}
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(series.size * RECORD_SIZE);
+		putRecords(buf, series, 0);
+
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(buf.array(), 0, buf.position());
+		}
+	}
+
+	private static void putRecords(ByteBuffer buf, QuoteSeries series, int start) {
+		for (int ii = start; ii < series.size; ++ii) {
+			BigDecimal adjusted = series.splitAdjustedPrices[ii];
+
+			if ((adjusted != null) && ((adjusted.scale() < 0) || (adjusted.scale() > Byte.MAX_VALUE) //
+					|| (adjusted.unscaledValue().bitLength() > 63))) {
+				adjusted = adjusted.setScale(PriceHistory.PRICE_SCALE, RoundingMode.HALF_UP);
+			}
+
+			buf.putInt(series.days[ii]);
+			buf.putLong(series.prices[ii]);
+
+			if (adjusted != null) {
+				BigInteger unscaled = adjusted.unscaledValue();
+
+				buf.putLong(unscaled.longValue());
+				buf.put((byte) adjusted.scale());
+			} else {
+				buf.putLong(0);
+				buf.put(NO_SCALE);
+			}
+
+			buf.putLong(series.dividends[ii]);
+			buf.putLong(series.splitCoefficients[ii]);
+		}
+	}
+}
@@ -1,21 +1,19 @@
 package moneymgr.io;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.PrintWriter;
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import app.QifDom;
 import moneymgr.model.Account;
 import moneymgr.model.GenericTxn;
 import moneymgr.model.MoneyMgrModel;
-import moneymgr.model.SimpleTxn;
 import moneymgr.model.Statement;
 import moneymgr.util.Common;
 
@@ -25,6 +23,7 @@ public class Reconciler {
 	public int problemTransactions;
 	public int inexactDates;
 	public int multipleMatches;
+	public int numAccounts;
 
 	public final MoneyMgrModel model;
 
@@ -34,54 +33,44 @@ public class Reconciler {
 		this.problemTransactions = 0;
 		this.inexactDates = 0;
 		this.multipleMatches = 0;
+		this.numAccounts = 0;
 	}
 
-	/** After loading QIF data, read statement log file, filling in details. */
+	/**
+	 * After loading QIF data, read statement log file, filling in details.<br>
+	 * A text log from an earlier version is converted to the binary log first.
+	 */
 	public void processStatementLog() {
-		File logfile = Statement.getStatementLogFileForModel(this.model);
+		File logfile = Statement.getStatementLogStoreForModel(this.model);
+		File textfile = Statement.getStatementLogFileForModel(this.model);
 
-		if (!logfile.isFile()) {
+		if (!logfile.isFile() && !textfile.isFile()) {
 			return;
 		}
 
-		LineNumberReader stmtLogReader = null;
-		List<StatementDetails> details = new ArrayList<StatementDetails>();
-
 		try {
-			stmtLogReader = new LineNumberReader(new FileReader(logfile));
+			long start = System.nanoTime();
 
-			String s = stmtLogReader.readLine();
-			if (s == null) {
-				return;
+			if (!logfile.isFile()) {
+				int count = StatementLog.convert(textfile, logfile);
+
+				Common.reportInfo(String.format("Converted %d statements from %s to %s", //
+						count, textfile.getName(), logfile.getName()));
 			}
 
-			QifDom.loadedStatementsVersion = Integer.parseInt(s.trim());
+			long convertDone = System.nanoTime();
 
-			// Ingest statements (each input line)
-			s = stmtLogReader.readLine();
-			while (s != null) {
-				StatementDetails d = new StatementDetails(this.model, s);
+			StatementLog log = StatementLog.open(logfile);
+			QifDom.loadedStatementsVersion = log.getVersion();
 
-				details.add(d);
+			List<AccountReconciliation> accounts = getAccountReconciliations(log);
 
-				s = stmtLogReader.readLine();
-			}
+			long indexDone = System.nanoTime();
 
-			Collections.sort(details, new Comparator<StatementDetails>() {
-				public int compare(StatementDetails sd1, StatementDetails sd2) {
-					Account a1 = model.getAccountByID(sd1.acctid);
-					Account a2 = model.getAccountByID(sd2.acctid);
+			// Details are loaded as each account's statements are processed
+			processAccounts(accounts, true);
 
-					int diff = a1.name.compareTo(a2.name);
-					if (diff != 0) {
-						return diff;
-					}
-
-					return sd1.date.compareTo(sd2.date);
-				}
-			});
-
-			processStatementDetails(details);
+			long end = System.nanoTime();
 
 			System.out.println(String.format( //
 					"\n*** %d statements, %d transactions had problems", //
@@ -89,16 +78,12 @@ public class Reconciler {
 			System.out.println(String.format( //
 					"\n  %d inexact dates, %d multiple matches", //
 					this.inexactDates, this.multipleMatches));
-
+			System.out.println(String.format( //
+					"  convert %1.1fms, index %1.1fms, reconcile %1.1fms (%d accounts)", //
+					(convertDone - start) / 1e6, (indexDone - convertDone) / 1e6, //
+					(end - indexDone) / 1e6, this.numAccounts));
 		} catch (Exception e) {
 			e.printStackTrace();
-		} finally {
-			if (stmtLogReader != null) {
-				try {
-					stmtLogReader.close();
-				} catch (IOException e) {
-				}
-			}
 		}
 
 		// TODO testing code
@@ -135,144 +120,349 @@ public class Reconciler {
 //		}
 	}
 
+	/**
+	 * Set up reconciliation for the accounts with statements in the log, in
+	 * account name order. Each account's statements are in date order.
+	 */
+	private List<AccountReconciliation> getAccountReconciliations(StatementLog log) {
+		Map<String, Account> accountsByName = new HashMap<>();
+		Map<String, AccountReconciliation> accounts = new TreeMap<>();
+		Map<String, Integer> unknownAccounts = new TreeMap<>();
+
+		for (StatementLog.Entry entry : log.getEntries()) {
+			Account a = accountsByName.get(entry.acctname);
+			if ((a == null) && !accountsByName.containsKey(entry.acctname)) {
+				a = this.model.findAccount(entry.acctname);
+				accountsByName.put(entry.acctname, a);
+			}
+
+			if (a == null) {
+				unknownAccounts.merge(entry.acctname, 1, Integer::sum);
+				continue;
+			}
+
+			AccountReconciliation ar = accounts.get(a.name);
+			if (ar == null) {
+				ar = new AccountReconciliation(a, log);
+				accounts.put(a.name, ar);
+			}
+
+			ar.entries.add(entry);
+		}
+
+		for (Map.Entry<String, Integer> unknown : unknownAccounts.entrySet()) {
+			Common.reportWarning(String.format( //
+					"Statement log: no account '%s' for %d statements", //
+					unknown.getKey(), unknown.getValue()));
+		}
+
+		List<AccountReconciliation> ret = new ArrayList<>(accounts.values());
+
+		// Stable sort - statements saved more than once stay in log order
+		for (AccountReconciliation ar : ret) {
+			ar.entries.sort((e1, e2) -> e1.date.compareTo(e2.date));
+		}
+
+		return ret;
+	}
+
 	/** Update statements with their reconciliation information */
 	public void processStatementDetails(List<StatementDetails> details) {
+		processStatementDetails(details, true);
+	}
+
+	/**
+	 * Update statements with their reconciliation information.<br>
+	 * Accounts are independent, so each account's statements (in order) may be
+	 * processed on a separate thread.
+	 */
+	public void processStatementDetails(List<StatementDetails> details, boolean parallel) {
+		Map<Integer, AccountReconciliation> accounts = new LinkedHashMap<>();
+
 		for (StatementDetails d : details) {
-			Account a = this.model.getAccountByID(d.acctid);
+			AccountReconciliation ar = accounts.get(d.acctid);
+			if (ar == null) {
+				ar = new AccountReconciliation(this.model.getAccountByID(d.acctid), null);
+				accounts.put(d.acctid, ar);
+			}
+
+			ar.details.add(d);
+		}
+
+		processAccounts(new ArrayList<>(accounts.values()), parallel);
+	}
+
+	/**
+	 * Reconcile accounts, optionally in parallel, and collect the results.<br>
+	 * An error in one account doesn't stop the others. Results are reported in
+	 * account order, and the first account (in that order) that failed raises
+	 * its error after the results of the accounts before it.
+	 */
+	private void processAccounts(List<AccountReconciliation> todo, boolean parallel) {
+		if (parallel && (todo.size() > 1)) {
+			todo.parallelStream().forEach(ar -> ar.processAccount());
+		} else {
+			todo.forEach(ar -> ar.processAccount());
+		}
+
+		// Report results in account order regardless of evaluation order
+		for (AccountReconciliation ar : todo) {
+			for (String warning : ar.warnings) {
+				Common.reportWarning(warning);
+			}
+
+			this.problemStatements += ar.problemStatements;
+			this.problemTransactions += ar.problemTransactions;
+			this.inexactDates += ar.inexactDates;
+			this.multipleMatches += ar.multipleMatches;
+			++this.numAccounts;
+
+			if (ar.failure != null) {
+				throw ar.failure;
+			}
+		}
+	}
+
+	/** Identifies transactions by check number and cash amount (cents) */
+	private static class TxKey {
+		final int cknum;
+		final long cents;
 
+		TxKey(int cknum, BigDecimal amount) {
+			this.cknum = cknum;
+			this.cents = Common.toCents(amount);
+		}
+
+		public int hashCode() {
+			return this.cknum * 31 + Long.hashCode(this.cents);
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TxKey)) {
+				return false;
+			}
+
+			TxKey other = (TxKey) obj;
+
+			return (this.cknum == other.cknum) && (this.cents == other.cents);
+		}
+	}
+
+	/** Reconcile the statements for one account, collecting results */
+	private static class AccountReconciliation {
+		/** Maximum days between statement info and the matching transaction */
+		private static final int DATE_TOLERANCE = 5;
+
+		final Account acct;
+
+		/** The log holding the statements' details, or null if already loaded */
+		final StatementLog log;
+		final List<StatementLog.Entry> entries = new ArrayList<>();
+		final List<StatementDetails> details = new ArrayList<>();
+
+		final List<String> warnings = new ArrayList<>();
+		int problemStatements = 0;
+		int problemTransactions = 0;
+		int inexactDates = 0;
+		int multipleMatches = 0;
+
+		/** Set if processing the account failed (see processAccounts) */
+		RuntimeException failure = null;
+
+		AccountReconciliation(Account acct, StatementLog log) {
+			this.acct = acct;
+			this.log = log;
+		}
+
+		/** Process the account's statements, recording any failure */
+		void processAccount() {
+			try {
+				process();
+			} catch (RuntimeException e) {
+				this.failure = e;
+			}
+		}
+
+		private void process() {
+			if (this.log == null) {
+				this.details.forEach(d -> processStatement(d));
+				return;
+			}
+
+			for (StatementLog.Entry entry : this.entries) {
+				processStatement(this.log.getDetails(this.acct, entry));
+			}
+		}
+
+		private void processStatement(StatementDetails d) {
 			// We've loaded basic statement info (date, closing balance)
 			// We must connect the statements with the associated transactions
 			// that are specified in the statementLog (StatementDetails objects)
-			Statement s = a.getStatement(d.date, d.closingBalance);
+			Statement s = this.acct.getStatement(d.date, d.closingBalance);
 			if (s == null) {
 				Common.reportError("Can't find statement for details: " //
-						+ a.name //
+						+ this.acct.name //
 						+ "  " + d.date.toString() //
 						+ "  " + d.closingBalance);
-				continue;
+				return;
 			}
 
-			getTransactionsFromDetails(a, s, d);
+			getTransactionsFromDetails(s, d);
 
 			if (!s.isBalanced()) {
 				++this.problemStatements;
-
-				// getTransactionsFromDetails(a, s, d);
-//				Common.reportError("Can't reconcile statement from log.\n" //
-//						+ " a=" + a.name //
-//						+ " s=" + s.toString());
 			}
 		}
-	}
 
-	private boolean isMatch(SimpleTxn tx, StatementTxInfo txinfo, int dateTolerance) {
-		int diff = Math.abs(txinfo.date.subtract(tx.getDate()));
-		if (diff > dateTolerance) {
-			return false;
-		}
+		/**
+		 * Match up statement and its transactions using statement details.<br>
+		 * Candidates are indexed by check number/amount. The match for each
+		 * transaction is the first candidate with the nearest date.
+		 */
+		private void getTransactionsFromDetails(Statement s, StatementDetails d) {
+			if (s.isBalanced()) {
+				return;
+			}
 
-		if ((txinfo.cknum != tx.getCheckNumber()) //
-				|| (txinfo.cashAmount.compareTo(tx.getCashAmount()) != 0)) {
-			return false;
-		}
+			s.transactions.clear();
+			s.unclearedTransactions.clear();
+			s.holdings.initializeTransactions();
 
-		if (tx.isCleared()) {
-			Common.reportError("Reconciling transaction twice:\n" //
-					+ tx.toString());
-		}
+			List<GenericTxn> txns = this.acct.gatherTransactionsForStatement(s);
+			boolean[] matched = new boolean[txns.size()];
+			Map<TxKey, List<Integer>> candidates = new HashMap<>();
 
-		return true;
-	}
+			// Buckets hold candidate indexes in date order
+			for (int ii = 0; ii < txns.size(); ++ii) {
+				GenericTxn t = txns.get(ii);
+				TxKey key = new TxKey(t.getCheckNumber(), t.getCashAmount());
 
-	/** Match up statement and its transactions using statement details. */
-	private void getTransactionsFromDetails(Account a, Statement s, StatementDetails d) {
-		if (s.isBalanced()) {
-			return;
-		}
+				List<Integer> bucket = candidates.get(key);
+				if (bucket == null) {
+					bucket = new ArrayList<>();
+					candidates.put(key, bucket);
+				}
 
-		s.transactions.clear();
-		s.unclearedTransactions.clear();
-		s.holdings.initializeTransactions();
+				bucket.add(ii);
+			}
 
-		List<GenericTxn> txns = a.gatherTransactionsForStatement(s);
-		List<StatementTxInfo> badinfo = new ArrayList<StatementTxInfo>();
+			List<StatementTxInfo> badinfo = new ArrayList<StatementTxInfo>();
 
-		for (StatementTxInfo info : d.transactions) {
-			GenericTxn match = null;
-			int matchCount = 0;
-			int tolerance = 5;
+			for (StatementTxInfo info : d.transactions) {
+				List<Integer> bucket = candidates.get(new TxKey(info.cknum, info.cashAmount));
+				int matchIndex = -1;
+				int matchCount = 0;
+				int tolerance = DATE_TOLERANCE;
 
-			for (int ii = 0; ii < txns.size(); ++ii) {
-				GenericTxn t = txns.get(ii);
+				if (bucket != null) {
+					int day = info.date.getEpochDay();
+
+					for (int ii = findFirstCandidate(txns, bucket, day - tolerance); //
+							ii < bucket.size(); ++ii) {
+						int txidx = bucket.get(ii);
+						GenericTxn t = txns.get(txidx);
+						int diff = t.getDate().getEpochDay() - day;
+
+						if (diff > tolerance) {
+							break;
+						}
 
-				if (isMatch(t, info, tolerance)) {
-					while (tolerance > 0 && isMatch(t, info, tolerance - 1)) {
-						match = null;
-						matchCount = 0;
-						--tolerance;
+						diff = Math.abs(diff);
+
+						if (matched[txidx] //
+								|| (diff > tolerance) //
+								|| (info.cashAmount.compareTo(t.getCashAmount()) != 0)) {
+							continue;
+						}
+
+						if (t.isCleared()) {
+							Common.reportError("Reconciling transaction twice:\n" //
+									+ t.toString());
+						}
+
+						// A nearer date replaces any earlier matches
+						if (diff < tolerance) {
+							tolerance = diff;
+							matchIndex = -1;
+							matchCount = 0;
+						}
+
+						if (matchIndex < 0) {
+							matchIndex = txidx;
+						}
+
+						++matchCount;
 					}
+				}
+
+				if (matchIndex >= 0) {
+					s.addTransaction(txns.get(matchIndex));
+					matched[matchIndex] = true;
 
-					if (match == null) {
-						match = t;
+					if (tolerance > 0) {
+						++this.inexactDates;
 					}
 
-					++matchCount;
+					if (matchCount > 1) {
+						++this.multipleMatches;
+					}
+				} else {
+					badinfo.add(info);
 				}
 			}
 
-			if (match != null) {
-				s.addTransaction(match);
-				txns.remove(match);
-
-				if (tolerance > 0) {
-					++this.inexactDates;
+			for (int ii = 0; ii < txns.size(); ++ii) {
+				if (!matched[ii]) {
+					s.unclearedTransactions.add(txns.get(ii));
 				}
+			}
 
-				if (matchCount > 1) {
-					++this.multipleMatches;
-				}
-			} else {
-				badinfo.add(info);
+			if (!badinfo.isEmpty()) {
+				this.warnings.add(String.format( //
+						"Statement: %s\n  %d missing transactions\n  %s", //
+						s.toString(), badinfo.size(), badinfo.toString()));
+
+				this.problemTransactions += badinfo.size();
 			}
+
+			for (GenericTxn t : s.transactions) {
+				t.setStatementDate(s.date);
+			}
+
+			s.setIsBalanced(badinfo.isEmpty());
 		}
 
-		s.unclearedTransactions.addAll(txns);
+		/** Find the first candidate in a bucket on or after a given day */
+		private static int findFirstCandidate(List<GenericTxn> txns, List<Integer> bucket, int day) {
+			int lo = 0;
+			int hi = bucket.size();
 
-		if (!badinfo.isEmpty()) {
-			// d.transactions.removeAll(badinfo);
-			Common.reportWarning(String.format( //
-					"Statement: %s\n  %d missing transactions\n  %s", //
-					s.toString(), badinfo.size(), badinfo.toString()));
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
 
-			this.problemTransactions += badinfo.size();
-		}
+				if (txns.get(bucket.get(mid)).getDate().getEpochDay() < day) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
 
-		for (GenericTxn t : s.transactions) {
-			t.setStatementDate(s.date);
+			return lo;
 		}
-
-		s.setIsBalanced(badinfo.isEmpty());
 	}
 
 	/** Add a reconciled statement's info to the statement log file */
 	public void saveReconciledStatement(Statement stat) {
-		PrintWriter pw = null;
-		try {
-			pw = openStatementsLogFile();
-
-			if (stat.dirty) {
-				String logStr = StatementDetails.formatStatementForSave(stat);
-				pw.println(logStr);
-				pw.flush();
+		if (!stat.dirty) {
+			return;
+		}
 
-				stat.dirty = false;
-			}
-		} catch (Exception e) {
+		try {
+			StatementLog.append(Statement.getStatementLogStoreForModel(this.model), stat);
 
-		} finally {
-			if (pw != null) {
-				pw.close();
-			}
+			stat.dirty = false;
+		} catch (IOException e) {
+			Common.reportWarning("Can't save statement to log: " + e.getMessage());
 		}
 	}
 
@@ -281,61 +471,38 @@ public class Reconciler {
 	 * Save the previous file as <name>.N
 	 */
 	public void rewriteStatementLogFile() {
-		File logfile = Statement.getStatementLogFileForModel(this.model);
+		File logfile = Statement.getStatementLogStoreForModel(this.model);
 
 		String basename = logfile.getName();
 		File tmpLogFile = new File(QifDom.qifDir, basename + ".tmp");
 
-		PrintWriter pw = null;
 		try {
-			pw = new PrintWriter(new FileWriter(tmpLogFile));
+			StatementLog.write(tmpLogFile, this.model);
 		} catch (IOException e) {
-			Common.reportError("Can't open tmp stmt log file: " + logfile.getAbsolutePath());
+			tmpLogFile.delete();
+			Common.reportError("Can't write tmp stmt log file: " + tmpLogFile.getAbsolutePath());
 			return;
 		}
 
-		pw.println("" + StatementDetails.CURRENT_VERSION);
-		for (Account a : this.model.getAccounts()) {
-			for (Statement s : a.getStatements()) {
-				pw.println(StatementDetails.formatStatementForSave(s));
-			}
-		}
+		if (logfile.exists()) {
+			File logFileBackup = null;
 
-		try {
-			if (pw != null) {
-				pw.close();
+			for (int ii = 1;; ++ii) {
+				logFileBackup = new File(QifDom.qifDir, basename + "." + ii);
+				if (!logFileBackup.exists()) {
+					break;
+				}
 			}
-		} catch (Exception e) {
-		}
 
-		File logFileBackup = null;
-
-		for (int ii = 1;; ++ii) {
-			logFileBackup = new File(QifDom.qifDir, basename + "." + ii);
-			if (!logFileBackup.exists()) {
-				break;
-			}
+			logfile.renameTo(logFileBackup);
 		}
 
-		logfile.renameTo(logFileBackup);
-		if (logFileBackup.exists() && tmpLogFile.exists() && !logfile.exists()) {
+		if (!logfile.exists()) {
 			tmpLogFile.renameTo(logfile);
 		}
 
-		assert (logFileBackup.exists() && !logfile.exists());
+		assert (!tmpLogFile.exists() && logfile.exists());
 
 		QifDom.loadedStatementsVersion = StatementDetails.CURRENT_VERSION;
 	}
-
-	/** Open the statement log file for appending */
-	private PrintWriter openStatementsLogFile() {
-		try {
-			return new PrintWriter(new FileWriter( //
-					Statement.getStatementLogFileForModel(this.model), true));
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-
-		return null;
-	}
-}
\ No newline at end of file
+}
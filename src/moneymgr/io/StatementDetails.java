@@ -1,6 +1,7 @@
 package moneymgr.io;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,7 +17,8 @@ import moneymgr.util.QDate;
 
 /** Represents a reconciled statement as stored in the statements log file */
 public class StatementDetails {
-	public static final int CURRENT_VERSION = 4;
+	/** Version 5 is the binary statement log (StatementLog) */
+	public static final int CURRENT_VERSION = 5;
 
 	// [name;numtx[;txidx;shrbal]]
 	private static class StatementPositionTx {
@@ -34,133 +36,101 @@ public class StatementDetails {
 	}
 
 	/**
-	 * TODO move this to Statement Create a string representation of the statement
-	 * for saving<br>
+	 * TODO move this to Statement<br>
+	 * Encode a statement for the statement log<br>
 	 * Format:<br>
-	 * acctname;date;bal;cashBal;numTx;numPos;[cashTx;][sec;numTx[txIdx;shareBal;]]
+	 * acctname;date;bal;cashBal;numTx;[tx];numPos;[sec;numTx[txIdx;shareBal]]<br>
+	 * Values are rounded as they were in the text log.
 	 */
-	public static String formatStatementForSave(Statement stmt) {
+	static void writeStatement(Statement stmt, StatementLog.RecordWriter wtr) {
 		Account a = stmt.model.getAccountByID(stmt.acctid);
 
-		String s = String.format("%s;%s;%5.2f;%5.2f;%d;%d", //
-				a.name, //
-				stmt.date.toString(), //
-				stmt.closingBalance, //
-				stmt.getCashBalance(), //
-				stmt.transactions.size(), //
-				stmt.holdings.size());
+		wtr.writeString(a.name);
+		wtr.writeDate(stmt.date);
+		wtr.writeDecimal(roundAmount(stmt.closingBalance));
+		wtr.writeDecimal(roundAmount(stmt.getCashBalance()));
 
+		wtr.writeInt(stmt.transactions.size());
 		for (GenericTxn t : stmt.transactions) {
-			s += ";" + formatTransactionForSave(t);
+			writeTransaction(stmt, t, wtr);
 		}
 
+		wtr.writeInt(stmt.holdings.size());
 		for (SecurityPosition p : stmt.holdings.getPositions()) {
-			s += ";" + formatPositionForSave(stmt, p);
+			writePosition(stmt, p, wtr);
 		}
-
-		return s;
 	}
 
 	/**
-	 * Construct a string for persisting a generic transaction to a file<br>
-	 * Format: T;DATE;CKNUM;AMT
+	 * Encode a transaction for the statement log<br>
+	 * Format: action;days;cknum;[sec];[qty];amt (days from the statement date;
+	 * action is empty for non-investment transactions)
 	 */
-	public static String formatTransactionForSave(GenericTxn txn) {
+	private static void writeTransaction(Statement stmt, GenericTxn txn, //
+			StatementLog.RecordWriter wtr) {
 		if (txn instanceof InvestmentTxn) {
-			return formatInvestmentTransactionForSave((InvestmentTxn) txn);
-		}
-
-		String s = String.format("T;%s;%d;%5.2f", //
-				txn.getDate().toString(), //
-				txn.getCheckNumber(), //
-				txn.getCashAmount());
-		return s;
-	}
-
-	/**
-	 * Construct a string for persisting an investment transaction to a file<br>
-	 * Format: I;DATE;ACTION;[SEC];[QTY];AMT
-	 */
-	public static String formatInvestmentTransactionForSave(InvestmentTxn txn) {
-		String secString = ";";
-
-		if (txn.getSecurity() != null) {
-			secString = txn.getSecuritySymbol() + ";";
-			if (txn.getShares() != null) {
-				secString += String.format("%5.2f", txn.getShares());
-			}
+			InvestmentTxn itxn = (InvestmentTxn) txn;
+			Security sec = itxn.getSecurity();
+
+			wtr.writeString(itxn.getAction().toString());
+			wtr.writeInt(itxn.getDate().subtract(stmt.date));
+			wtr.writeInt(0);
+			wtr.writeString((sec != null) ? getSecurityKey(sec) : null);
+			wtr.writeDecimal((sec == null) ? null //
+					: (itxn.getShares() != null) ? roundAmount(itxn.getShares()) //
+							: BigDecimal.ZERO);
+		} else {
+			wtr.writeString("");
+			wtr.writeInt(txn.getDate().subtract(stmt.date));
+			wtr.writeInt(txn.getCheckNumber());
+			wtr.writeString(null);
+			wtr.writeDecimal(null);
 		}
 
-		String s = String.format("I;%s;%s;%s;%5.2f", //
-				txn.getDate().toString(), //
-				txn.getAction().toString(), //
-				secString, //
-				txn.getCashAmount());
-		return s;
+		wtr.writeDecimal(roundAmount(txn.getCashAmount()));
 	}
 
 	/**
-	 * Encode security position transactions for save<br>
-	 * Format: name;numtx[;txid;shrbal]
+	 * Encode security position transactions for the statement log<br>
+	 * Format: name;numtx[;txidx;shrbal]
 	 */
-	public static String formatPositionForSave(Statement stat, SecurityPosition pos) {
+	private static void writePosition(Statement stat, SecurityPosition pos, //
+			StatementLog.RecordWriter wtr) {
 		List<InvestmentTxn> txns = pos.getTransactions();
-		int numtx = txns.size();
-		String s = pos.security.getName() + ";" + numtx;
 		List<BigDecimal> shrbal = pos.getShareBalances();
 
-		for (int ii = 0; ii < numtx; ++ii) {
-			InvestmentTxn t = txns.get(ii);
-			int txidx = stat.transactions.indexOf(t);
-			BigDecimal bal = shrbal.get(ii);
+		wtr.writeString(getSecurityKey(pos.security));
+		wtr.writeInt(txns.size());
+
+		for (int ii = 0; ii < txns.size(); ++ii) {
+			int txidx = stat.transactions.indexOf(txns.get(ii));
 
 			assert txidx >= 0;
 
-			s += String.format(";%d;%f", txidx, bal);
+			wtr.writeInt(txidx);
+			wtr.writeDecimal(shrbal.get(ii).setScale(6, RoundingMode.HALF_UP));
 		}
-
-		return s;
 	}
 
-	public final MoneyMgrModel model;
-
-	// TODO make fields final; use factory to construct
-	public int acctid;
-	public QDate date;
-
-	/** Cumulative account value on closing date (cash + securities) */
-	public BigDecimal closingBalance;
+	/** Symbol (or name) identifying a security in the log */
+	private static String getSecurityKey(Security sec) {
+		String sym = sec.getSymbol();
 
-	/** Cash balance */
-	BigDecimal closingCashBalance;
-
-	/** Change to security positions (and closing price) since last statement */
-	StatementHoldings holdings;
-
-	/** Transactions covered by this statement */
-	public List<StatementTxInfo> transactions;
-
-	/** All Uncleared transactions as of closing date */
-	public List<StatementTxInfo> unclearedTransactions;
-
-	private StatementDetails(MoneyMgrModel model) {
-		this.model = model;
-
-		this.closingCashBalance = BigDecimal.ZERO;
-		this.transactions = new ArrayList<StatementTxInfo>();
-		this.unclearedTransactions = new ArrayList<StatementTxInfo>();
-
-		this.holdings = new StatementHoldings();
+		return ((sym != null) && !sym.isEmpty()) ? sym : sec.getName();
 	}
 
-	/** Construct details by loading from file */
-	public StatementDetails(MoneyMgrModel model, String s) {
-		this(model);
-
-		parseStatementDetails(s);
+	/** Round an amount to cents (as formatted in the text log) */
+	private static BigDecimal roundAmount(BigDecimal amt) {
+		return amt.setScale(2, RoundingMode.HALF_UP);
 	}
 
-	private void parseStatementDetails(String s) {
+	/**
+	 * Convert a statement from the text log (version 4 and earlier) to the
+	 * binary log encoding<br>
+	 * Format:<br>
+	 * acctname;date;bal;cashBal;numTx;numPos;[cashTx;][sec;numTx[txIdx;shareBal;]]
+	 */
+	static void convertStatement(String s, StatementLog.RecordWriter wtr) {
 		String[] ss = s.split(";");
 		int ssx = 0;
 
@@ -171,23 +141,19 @@ public class StatementDetails {
 		String txCountStr = ss[ssx++].trim();
 		String secCountStr = ss[ssx++].trim();
 
-		this.acctid = this.model.findAccount(acctname).acctid;
-		this.date = Common.parseQDate(dateStr);
-		this.closingBalance = new BigDecimal(closeStr);
-		this.closingCashBalance = new BigDecimal(closeCashStr);
-
 		int txcount = Integer.parseInt(txCountStr);
 		int seccount = Integer.parseInt(secCountStr);
 
-		for (int ii = 0; ii < txcount; ++ii) {
-			StatementTxInfo txinfo = new StatementTxInfo();
+		QDate date = Common.parseQDate(dateStr);
 
-			String txtypeStr = "";
-			try {
-				txtypeStr = ss[ssx++].trim();
-			} catch (Exception e) {
-				System.out.println("*** ERROR: parsing statement details");
-			}
+		wtr.writeString(acctname);
+		wtr.writeDate(date);
+		wtr.writeDecimal(Common.parseDecimal(closeStr));
+		wtr.writeDecimal(Common.parseDecimal(closeCashStr));
+		wtr.writeInt(txcount);
+
+		for (int ii = 0; ii < txcount; ++ii) {
+			String txtypeStr = ss[ssx++].trim();
 
 			String tdateStr;
 			String actStr = "";
@@ -213,38 +179,124 @@ public class StatementDetails {
 
 			String amtStr = ss[ssx++].trim();
 
-			txinfo.date = Common.parseQDate(tdateStr);
-			txinfo.action = actStr;
-			txinfo.cknum = Integer.parseInt(cknumStr);
-			txinfo.cashAmount = new BigDecimal(amtStr);
+			wtr.writeString(actStr);
+			wtr.writeInt(Common.parseQDate(tdateStr).subtract(date));
+			wtr.writeInt(Integer.parseInt(cknumStr));
+
 			if (secStr.length() > 0) {
-				txinfo.security = this.model.findSecurity(secStr);
-				txinfo.shares = (shrStr.length() > 0) ? Common.parseDecimal(shrStr) : BigDecimal.ZERO;
+				wtr.writeString(secStr);
+				wtr.writeDecimal((shrStr.length() > 0) //
+						? Common.parseDecimal(shrStr) //
+						: BigDecimal.ZERO);
+			} else {
+				wtr.writeString(null);
+				wtr.writeDecimal(null);
 			}
 
-			this.transactions.add(txinfo);
+			wtr.writeDecimal(Common.parseDecimal(amtStr));
 		}
 
 		// sec;numtx[;txidx;bal]
+		wtr.writeInt(seccount);
+
 		for (int ii = 0; ii < seccount; ++ii) {
 			String symStr = ss[ssx++].trim();
 			String numtxStr = ss[ssx++].trim();
 
-			Security sec = this.model.findSecurity(symStr);
-
-			StatementPosition spos = new StatementPosition();
-			spos.sec = sec;
-			this.holdings.positions.add(spos);
-
 			int numtx = Integer.parseInt(numtxStr);
 
+			wtr.writeString(symStr);
+			wtr.writeInt(numtx);
+
 			for (int jj = 0; jj < numtx; ++jj) {
 				String txidxStr = ss[ssx++].trim();
 				String shrbalStr = ss[ssx++].trim();
 
+				wtr.writeInt(Integer.parseInt(txidxStr));
+				wtr.writeDecimal(Common.parseDecimal(shrbalStr));
+			}
+		}
+	}
+
+	public final MoneyMgrModel model;
+
+	// TODO make fields final; use factory to construct
+	public int acctid;
+	public QDate date;
+
+	/** Cumulative account value on closing date (cash + securities) */
+	public BigDecimal closingBalance;
+
+	/** Cash balance */
+	BigDecimal closingCashBalance;
+
+	/** Change to security positions (and closing price) since last statement */
+	StatementHoldings holdings;
+
+	/** Transactions covered by this statement */
+	public List<StatementTxInfo> transactions;
+
+	/** All Uncleared transactions as of closing date */
+	public List<StatementTxInfo> unclearedTransactions;
+
+	private StatementDetails(MoneyMgrModel model) {
+		this.model = model;
+
+		this.closingCashBalance = BigDecimal.ZERO;
+		this.transactions = new ArrayList<StatementTxInfo>();
+		this.unclearedTransactions = new ArrayList<StatementTxInfo>();
+
+		this.holdings = new StatementHoldings();
+	}
+
+	/**
+	 * Construct details by decoding a statement log record.<br>
+	 * The caller has looked up the account named at the start of the record.
+	 */
+	StatementDetails(MoneyMgrModel model, int acctid, StatementLog.RecordReader rdr) {
+		this(model);
+
+		rdr.readString(); // account name
+
+		this.acctid = acctid;
+		this.date = rdr.readDate();
+		this.closingBalance = rdr.readDecimal();
+		this.closingCashBalance = rdr.readDecimal();
+
+		int txcount = rdr.readInt();
+
+		for (int ii = 0; ii < txcount; ++ii) {
+			StatementTxInfo txinfo = new StatementTxInfo();
+
+			txinfo.action = rdr.readString();
+			txinfo.date = this.date.addDays(rdr.readInt());
+			txinfo.cknum = rdr.readInt();
+
+			String secStr = rdr.readString();
+			BigDecimal shares = rdr.readDecimal();
+
+			txinfo.cashAmount = rdr.readDecimal();
+			if (secStr != null) {
+				txinfo.security = this.model.findSecurity(secStr);
+				txinfo.shares = shares;
+			}
+
+			this.transactions.add(txinfo);
+		}
+
+		int seccount = rdr.readInt();
+
+		for (int ii = 0; ii < seccount; ++ii) {
+			StatementPosition spos = new StatementPosition();
+			spos.sec = this.model.findSecurity(rdr.readString());
+			this.holdings.positions.add(spos);
+
+			int numtx = rdr.readInt();
+
+			for (int jj = 0; jj < numtx; ++jj) {
 				StatementPositionTx tx = new StatementPositionTx();
-				tx.txidx = Integer.parseInt(txidxStr);
-				tx.shrbal = new BigDecimal(shrbalStr);
+				tx.txidx = rdr.readInt();
+				tx.shrbal = rdr.readDecimal();
 
 				spos.transactions.add(tx);
 			}
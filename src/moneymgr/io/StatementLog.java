@@ -0,0 +1,412 @@
+package moneymgr.io;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import moneymgr.model.Account;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.Statement;
+import moneymgr.util.Common;
+import moneymgr.util.QDate;
+
+/**
+ * Binary statement log, holding the reconciliation details of statements.<br>
+ * Each statement is a length-prefixed record appended to the file, beginning
+ * with the account name and statement date. Opening the log reads only those
+ * to build an index by account and date; the rest of a record is decoded
+ * when its details are requested. Numbers are variable length, so the log is
+ * much smaller than the text log it replaces.
+ */
+public class StatementLog {
+	private static final int MAGIC = 0x534c4f47; // "SLOG"
+	private static final int HEADER_SIZE = 8;
+
+	/** Location of a statement's record in the log */
+	public static class Entry {
+		public final String acctname;
+		public final QDate date;
+		final int offset;
+		final int length;
+
+		Entry(String acctname, QDate date, int offset, int length) {
+			this.acctname = acctname;
+			this.date = date;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public String toString() {
+			return this.acctname + " " + this.date.toString();
+		}
+	}
+
+	public final File file;
+
+	/** StatementDetails version the log was written with */
+	private final int version;
+
+	/** The content of the log, decoded on demand */
+	private final byte[] data;
+
+	/** Entries in file order, and by account name (lower case) */
+	private final List<Entry> entries = new ArrayList<>();
+	private final Map<String, List<Entry>> entriesByAccount = new HashMap<>();
+
+	private StatementLog(File file) throws IOException {
+		this.file = file;
+		this.data = Files.readAllBytes(file.toPath());
+
+		ByteBuffer buf = ByteBuffer.wrap(this.data);
+
+		if ((this.data.length < HEADER_SIZE) || (buf.getInt() != MAGIC)) {
+			throw new IOException("Not a statement log: " + file.getPath());
+		}
+
+		this.version = buf.getInt();
+
+		// Index the records, reading only the account name and date
+		int validLength = HEADER_SIZE;
+
+		while (buf.remaining() >= 4) {
+			int length = buf.getInt();
+			if ((length <= 0) || (length > buf.remaining())) {
+				break;
+			}
+
+			int offset = buf.position();
+
+			try {
+				RecordReader rdr = new RecordReader(this.data, offset, length);
+
+				addEntry(new Entry(rdr.readString(), rdr.readDate(), offset, length));
+			} catch (BufferUnderflowException e) {
+				break;
+			}
+
+			buf.position(offset + length);
+			validLength = offset + length;
+		}
+
+		if (validLength < this.data.length) {
+			Common.reportWarning(String.format( //
+					"Ignoring incomplete record at the end of statement log %s", //
+					file.getName()));
+
+			// Truncate so subsequent appends follow the last complete record
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(validLength);
+			}
+		}
+	}
+
+	private void addEntry(Entry entry) {
+		String key = entry.acctname.toLowerCase();
+
+		List<Entry> acctEntries = this.entriesByAccount.get(key);
+		if (acctEntries == null) {
+			acctEntries = new ArrayList<>();
+			this.entriesByAccount.put(key, acctEntries);
+		}
+
+		// Keep each account's entries in date order (file order for a date)
+		int idx = acctEntries.size();
+		while ((idx > 0) && (acctEntries.get(idx - 1).date.compareTo(entry.date) > 0)) {
+			--idx;
+		}
+
+		acctEntries.add(idx, entry);
+		this.entries.add(entry);
+	}
+
+	/** Open a statement log and index its records. Returns null if none. */
+	public static StatementLog open(File file) throws IOException {
+		return (file.isFile()) ? new StatementLog(file) : null;
+	}
+
+	public int getVersion() {
+		return this.version;
+	}
+
+	/** All statements in the order they were added to the log */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(this.entries);
+	}
+
+	/** Statements for an account name, in date order */
+	public List<Entry> getEntries(String acctname) {
+		List<Entry> acctEntries = this.entriesByAccount.get(acctname.toLowerCase());
+
+		return (acctEntries != null) //
+				? Collections.unmodifiableList(acctEntries) //
+				: Collections.emptyList();
+	}
+
+	/** Load the details for a statement (null if it is not in the log) */
+	public StatementDetails getDetails(Account acct, QDate date) {
+		List<Entry> acctEntries = getEntries(acct.name);
+
+		// If a statement was saved more than once, the last one wins
+		for (int idx = acctEntries.size() - 1; idx >= 0; --idx) {
+			Entry entry = acctEntries.get(idx);
+
+			if (entry.date.equals(date)) {
+				return getDetails(acct, entry);
+			}
+		}
+
+		return null;
+	}
+
+	/** Load the details for a log entry. This may be called from any thread. */
+	public StatementDetails getDetails(Account acct, Entry entry) {
+		RecordReader rdr = new RecordReader(this.data, entry.offset, entry.length);
+
+		return new StatementDetails(acct.model, acct.acctid, rdr);
+	}
+
+	/** Add a statement to the end of a log, creating the log if necessary */
+	public static void append(File file, Statement stmt) throws IOException {
+		boolean isNew = !file.isFile() || (file.length() == 0);
+
+		RecordWriter wtr = new RecordWriter();
+		StatementDetails.writeStatement(stmt, wtr);
+
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
+			if (isNew) {
+				writeHeader(out);
+			}
+
+			wtr.writeTo(out);
+		}
+	}
+
+	/** Write a new log containing the statements of all accounts in a model */
+	public static void write(File file, MoneyMgrModel model) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			writeHeader(out);
+
+			RecordWriter wtr = new RecordWriter();
+
+			for (Account a : model.getAccounts()) {
+				for (Statement s : a.getStatements()) {
+					StatementDetails.writeStatement(s, wtr);
+					wtr.writeTo(out);
+				}
+			}
+		}
+	}
+
+	private static void writeHeader(OutputStream out) throws IOException {
+		out.write(ByteBuffer.allocate(HEADER_SIZE) //
+				.putInt(MAGIC) //
+				.putInt(StatementDetails.CURRENT_VERSION) //
+				.array());
+	}
+
+	/**
+	 * Convert a text statement log (statementLog.dat) to a binary log.<br>
+	 * Lines that can't be parsed are reported and skipped. Returns the number
+	 * of statements converted.
+	 */
+	public static int convert(File textFile, File file) throws IOException {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		int count = 0;
+
+		try (BufferedReader rdr = new BufferedReader(new FileReader(textFile)); //
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile))) {
+			String s = rdr.readLine();
+			int textVersion = (s != null) ? Integer.parseInt(s.trim()) : 0;
+
+			if (textVersion >= StatementDetails.CURRENT_VERSION) {
+				throw new IOException("Unexpected statement log version " + textVersion);
+			}
+
+			writeHeader(out);
+
+			RecordWriter wtr = new RecordWriter();
+			int lineNumber = 1;
+
+			for (s = rdr.readLine(); s != null; s = rdr.readLine()) {
+				++lineNumber;
+
+				try {
+					StatementDetails.convertStatement(s, wtr);
+				} catch (RuntimeException e) {
+					wtr.reset();
+
+					Common.reportWarning(String.format( //
+							"Can't convert statement log line %d: %s", lineNumber, s));
+					continue;
+				}
+
+				wtr.writeTo(out);
+				++count;
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw e;
+		}
+
+		file.delete();
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Can't create statement log " + file.getPath());
+		}
+
+		return count;
+	}
+
+	/**
+	 * Collects a statement log record so its length can be written first.<br>
+	 * Integers are zigzag varints; decimals are the scale and unscaled value.
+	 */
+	static class RecordWriter {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+
+		/** Write the record to the file and reset for the next record */
+		void writeTo(OutputStream out) throws IOException {
+			int length = this.bytes.size();
+
+			out.write(length >>> 24);
+			out.write(length >>> 16);
+			out.write(length >>> 8);
+			out.write(length);
+			this.bytes.writeTo(out);
+
+			this.bytes.reset();
+		}
+
+		/** Discard anything written since the last record */
+		void reset() {
+			this.bytes.reset();
+		}
+
+		void writeLong(long value) {
+			long v = (value << 1) ^ (value >> 63);
+
+			while ((v & ~0x7fL) != 0) {
+				this.bytes.write((int) ((v & 0x7f) | 0x80));
+				v >>>= 7;
+			}
+
+			this.bytes.write((int) v);
+		}
+
+		void writeInt(int value) {
+			writeLong(value);
+		}
+
+		void writeDate(QDate date) {
+			writeInt(date.getEpochDay());
+		}
+
+		/** Null is written as length -1 */
+		void writeString(String s) {
+			if (s == null) {
+				writeInt(-1);
+				return;
+			}
+
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			writeInt(b.length);
+			this.bytes.write(b, 0, b.length);
+		}
+
+		/** Null is written as scale -1 */
+		void writeDecimal(BigDecimal value) {
+			if (value == null) {
+				writeInt(-1);
+				return;
+			}
+
+			if (value.scale() < 0) {
+				value = value.setScale(0);
+			}
+
+			writeInt(value.scale());
+			writeLong(value.unscaledValue().longValueExact());
+		}
+	}
+
+	/** Decodes the values in a statement log record */
+	static class RecordReader {
+		private final ByteBuffer buf;
+
+		RecordReader(byte[] data, int offset, int length) {
+			this.buf = ByteBuffer.wrap(data, offset, length);
+		}
+
+		long readLong() {
+			long v = 0;
+
+			for (int shift = 0;; shift += 7) {
+				byte b = this.buf.get();
+				v |= (long) (b & 0x7f) << shift;
+
+				if (b >= 0) {
+					break;
+				}
+			}
+
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		int readInt() {
+			return (int) readLong();
+		}
+
+		QDate readDate() {
+			return QDate.fromEpochDay(readInt());
+		}
+
+		String readString() {
+			int len = readInt();
+			if (len < 0) {
+				return null;
+			}
+
+			if (len > this.buf.remaining()) {
+				throw new BufferUnderflowException();
+			}
+
+			String s = new String(this.buf.array(), this.buf.position(), len, StandardCharsets.UTF_8);
+			this.buf.position(this.buf.position() + len);
+
+			return s;
+		}
+
+		BigDecimal readDecimal() {
+			int scale = readInt();
+
+			return (scale >= 0) ? BigDecimal.valueOf(readLong(), scale) : null;
+		}
+	}
+
+	/** Converter for a text statement log */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("usage: StatementLog statementLog.dat statementLog.bin");
+			return;
+		}
+
+		int count = convert(new File(args[0]), new File(args[1]));
+
+		System.out.println(String.format("Converted %d statements", count));
+	}
+}
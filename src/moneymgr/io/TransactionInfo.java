@@ -2,6 +2,7 @@ package moneymgr.io;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -246,6 +247,22 @@ public class TransactionInfo {
 		this.values = values.toArray(new String[0]);
 	}
 
+	/** Constructor - with values from a CSV record */
+	public TransactionInfo(MoneyMgrModel model, String[] values) {
+		this.model = model;
+
+		this.isInvestmentTransaction = false;
+
+		if (values.length < TransactionInfo.fieldNames.length) {
+			int len = values.length;
+
+			values = Arrays.copyOf(values, TransactionInfo.fieldNames.length);
+			Arrays.fill(values, len, values.length, "");
+		}
+
+		this.values = values;
+	}
+
 	/** Return a value as integer, or zero if not parsable as integer */
 	public int intValue(int idx) {
 		String s = value(idx);
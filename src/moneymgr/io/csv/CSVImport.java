@@ -1,20 +1,23 @@
 package moneymgr.io.csv;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import app.MoneyMgrApp;
 import app.QifDom;
@@ -117,11 +120,15 @@ public class CSVImport {
 				csvimp.csvModel.getAllTransactions().size()));
 	}
 
-	private LineNumberReader rdr;
+	private final String filename;
 
 	/** Map account name to transaction tuples */
 	public Map<String, List<TransactionInfo>> transactionsMap = new HashMap<>();
 
+	/** Tuples each WIN transaction has been matched with (see isMatched) */
+	private final Map<SimpleTxn, List<TransactionInfo>> tuplesForWinTxn = //
+			Collections.synchronizedMap(new IdentityHashMap<>());
+
 	private MoneyMgrModel sourceModel;
 	private MoneyMgrModel csvModel;
 
@@ -132,29 +139,38 @@ public class CSVImport {
 	public int totaltx = 0;
 
 	private CSVImport(String filename) {
+		this.filename = filename;
+
 		try {
 			this.sourceModel = MoneyMgrModel.getModel(MoneyMgrModel.QIF_MODEL_NAME);
 			this.csvModel = MoneyMgrModel.changeModel(MoneyMgrModel.CSV_MODEL_NAME);
-
-			this.rdr = new LineNumberReader(new FileReader(filename));
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
 	private void importFile() {
-		if (!readFieldNames()) {
-			return;
-		}
-
-		importCSVRecords();
+		CSVRecords records;
 
 		try {
-			this.rdr.close();
+			records = CSVRecords.read(this.filename);
 		} catch (IOException e) {
 			e.printStackTrace();
+			return;
+		}
+
+		if (records.getError() != null) {
+			Common.reportWarning(records.getError() //
+					+ "\nIgnoring the remainder of the file");
 		}
 
+		int firstRecord = readFieldNames(records);
+		if (firstRecord < 0) {
+			return;
+		}
+
+		importCSVRecords(records, firstRecord);
+
 		createTransactions();
 		analyzeResults();
 
@@ -162,6 +178,8 @@ public class CSVImport {
 	}
 
 	private void createTransactions() {
+		List<TransactionInfo> tuples = new ArrayList<>();
+
 		for (List<TransactionInfo> txinfos : transactionsMap.values()) {
 			for (TransactionInfo txinfo : txinfos) {
 				txinfo.processValues(this.sourceModel);
@@ -171,15 +189,104 @@ public class CSVImport {
 					++this.totaltx;
 					txinfo.setMacTransaction(txn);
 
-					matchTransaction(txinfo);
-					if (txinfo.winTxn() == null) {
-						// printMessage("No match for\n" + txinfo.toString());
-						txinfo.setWinTransaction(null);
-						matchTransaction(txinfo);
-					}
+					tuples.add(txinfo);
 				}
 			}
 		}
+
+		matchTransactions(tuples);
+	}
+
+	/** The outcome of an attempt to match a tuple with a WIN transaction */
+	private static class MatchResult {
+		final TransactionInfo tuple;
+		final int order;
+		final String macMessage;
+		final boolean iszero;
+		final boolean matched;
+		final String inexactMessage;
+
+		/** Set if matching failed (the account's later tuples are not matched) */
+		final RuntimeException failure;
+
+		MatchResult(TransactionInfo tuple, int order, String macMessage, //
+				boolean iszero, boolean matched, String inexactMessage) {
+			this.tuple = tuple;
+			this.order = order;
+			this.macMessage = macMessage;
+			this.iszero = iszero;
+			this.matched = matched;
+			this.inexactMessage = inexactMessage;
+			this.failure = null;
+		}
+
+		MatchResult(TransactionInfo tuple, int order, RuntimeException failure) {
+			this.tuple = tuple;
+			this.order = order;
+			this.macMessage = null;
+			this.iszero = false;
+			this.matched = false;
+			this.inexactMessage = null;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * Match tuples with WIN transactions.<br>
+	 * A tuple can only match a transaction in its own account, so accounts are
+	 * matched in parallel, each in import order. The results are then recorded
+	 * in import order.<br>
+	 * If matching a tuple fails, its account's remaining tuples are skipped and
+	 * the error is raised when its result is recorded, so earlier tuples (in
+	 * import order) are recorded first, as if matching was sequential.
+	 */
+	private void matchTransactions(List<TransactionInfo> tuples) {
+		TransactionMatcher matcher = new TransactionMatcher(this.sourceModel);
+
+		Map<Integer, List<Integer>> tuplesByAccount = new LinkedHashMap<>();
+
+		for (int idx = 0; idx < tuples.size(); ++idx) {
+			int acctid = tuples.get(idx).macTxn().getAccountID();
+
+			List<Integer> acctTuples = tuplesByAccount.get(acctid);
+			if (acctTuples == null) {
+				acctTuples = new ArrayList<>();
+				tuplesByAccount.put(acctid, acctTuples);
+			}
+
+			acctTuples.add(idx);
+		}
+
+		List<MatchResult> results = tuplesByAccount.values().parallelStream() //
+				.flatMap(acctTuples -> {
+					List<MatchResult> acctResults = new ArrayList<>();
+
+					for (int idx : acctTuples) {
+						TransactionInfo tuple = tuples.get(idx);
+
+						try {
+							acctResults.add(matchTransaction(tuple, idx, matcher));
+							if (tuple.winTxn() == null) {
+								// printMessage("No match for\n" + tuple.toString());
+								setWinTransaction(tuple, null);
+								acctResults.add(matchTransaction(tuple, idx, matcher));
+							}
+						} catch (RuntimeException e) {
+							acctResults.add(new MatchResult(tuple, idx, e));
+							break;
+						}
+					}
+
+					return acctResults.stream();
+				}) //
+				.sorted(Comparator.comparingInt(r -> r.order)) //
+				.collect(Collectors.toList());
+
+		for (MatchResult result : results) {
+			recordMatchResult(result);
+		}
+
+		printMessage("Match transactions: " + matcher.getStatistics());
 	}
 
 	static PrintStream ps = null;
@@ -343,7 +450,7 @@ public class CSVImport {
 
 						if (tmpmac.size() == 1) {
 							SimpleTxn tx = tmpmac.get(0);
-							tx.info.setWinTransaction(wintx);
+							setWinTransaction(tx.info, wintx);
 						} else {
 							// TODO fix up the transactions - combine the separate
 							// transactions into a single tx with splits
@@ -501,7 +608,7 @@ public class CSVImport {
 		macbs.setAccountForTransfer(String.format("[%s]", macx.getAccountForTransfer()));
 		macbs.setCashTransferred(amount);
 
-		macbs.info.setWinTransaction(wintx);
+		setWinTransaction(macbs.info, wintx);
 		macToRemove.add(macx);
 
 		// Discard the transaction merged into the BUYX/SELLX
@@ -524,7 +631,7 @@ public class CSVImport {
 			if ((mactx.getAction() == TxAction.XIN //
 					|| mactx.getAction() == TxAction.XOUT) //
 					&& Common.isEffectivelyZero(mactx.getAmount())) {
-				mactx.info.setWinTransaction(wintx);
+				setWinTransaction(mactx.info, wintx);
 
 				macToRemove.add(mactx);
 				return true;
@@ -705,12 +812,13 @@ public class CSVImport {
 
 		s = new Security( //
 				sec.secid, sec.symbol, sec.getName(), sec.type, sec.goal);
-		s.names.clear();
-		s.names.addAll(sec.names);
+		for (String name : sec.names.subList(1, sec.names.size())) {
+			s.addName(name);
+		}
 
 		csvModel.addSecurity(s);
 
-		for (QPrice price : sec.prices) {
+		for (QPrice price : sec.getPrices()) {
 			QPrice newprice = new QPrice(s.model, price.date, sec.secid, //
 					price.getPrice(), price.getSplitAdjustedPrice());
 			s.addPrice(newprice);
@@ -734,20 +842,20 @@ public class CSVImport {
 
 		Security tbm = sourceModel.findSecurityByName("Total Bond Market  1");
 		if (tbm != null) {
-			tbm.names.add("Total Bond Market 1");
+			tbm.addName("Total Bond Market 1");
 		}
 		tbm = csvModel.findSecurityByName("Total Bond Market  1");
 		if (tbm != null) {
-			tbm.names.add("Total Bond Market 1");
+			tbm.addName("Total Bond Market 1");
 		}
 
 		Security kdhax = sourceModel.findSecurityByName("Scudder Dreman High Return A");
 		if (kdhax != null) {
-			kdhax.names.add("Scudder Dreman High Return A (KDHAX)");
+			kdhax.addName("Scudder Dreman High Return A (KDHAX)");
 		}
 		kdhax = csvModel.findSecurityByName("Scudder Dreman High Return A");
 		if (kdhax != null) {
-			kdhax.names.add("Scudder Dreman High Return A (KDHAX)");
+			kdhax.addName("Scudder Dreman High Return A (KDHAX)");
 		}
 	}
 
@@ -867,16 +975,26 @@ public class CSVImport {
 		return true;
 	}
 
-	private void importCSVRecords() {
+	/**
+	 * Create transaction tuples for the records following the field names.<br>
+	 * Consecutive split records for the same account/payee/date/check number
+	 * are gathered under one parent; splits with the same category are
+	 * grouped, found by category rather than searching the parent's splits.
+	 */
+	private void importCSVRecords(CSVRecords records, int firstRecord) {
+		long start = System.nanoTime();
+
+		List<TransactionInfo> tuples = IntStream.range(firstRecord, records.size()).parallel() //
+				.mapToObj(idx -> new TransactionInfo(this.csvModel, records.getRecord(idx))) //
+				.collect(Collectors.toList());
+
+		long tuplesDone = System.nanoTime();
+
 		int tupleCount = 0;
 		TransactionInfo currentSplitParent = null;
+		Map<String, TransactionInfo> splitsByCategory = new HashMap<>();
 
-		for (;;) {
-			TransactionInfo tuple = readRecord();
-			if (tuple == null) {
-				break;
-			}
-
+		for (TransactionInfo tuple : tuples) {
 			++tupleCount;
 
 			String f0 = tuple.value(0);
@@ -910,6 +1028,7 @@ public class CSVImport {
 
 					if (currentSplitParent == null) {
 						currentSplitParent = new TransactionInfo(this.csvModel, new ArrayList<String>());
+						splitsByCategory.clear();
 
 						currentSplitParent.setValue(TransactionInfo.ACCOUNT_IDX, acctname);
 						currentSplitParent.setValue(TransactionInfo.DATE_IDX, date);
@@ -922,39 +1041,32 @@ public class CSVImport {
 						accttxns.add(currentSplitParent);
 					}
 
-					TransactionInfo newsplit = tuple;
-
 					String cat = tuple.value(TransactionInfo.CATEGORY_IDX);
-					if (cat != null && !cat.isEmpty()) {
-						for (TransactionInfo existing : currentSplitParent.splits) {
-							String scat = existing.value(TransactionInfo.CATEGORY_IDX);
-
-							if (existing.hasSplits()) {
-								scat = existing.splits.get(0).value(TransactionInfo.CATEGORY_IDX);
-
-								if (cat.equals(scat)) {
-									existing.addSplit(tuple);
-									newsplit = existing;
-									break;
-								}
-
-							} else if (cat.equals(scat)) {
-								newsplit = new TransactionInfo(this.csvModel, new ArrayList<>());
-
-								newsplit.setValue(TransactionInfo.ACCOUNT_IDX, acctname);
-								newsplit.setValue(TransactionInfo.DATE_IDX, date);
-								newsplit.setValue(TransactionInfo.PAYEE_IDX, payee);
-								newsplit.payee = payee;
-
-								currentSplitParent.splits.remove(existing);
-								newsplit.addSplit(existing);
-								newsplit.addSplit(tuple);
-								break;
-							}
+					TransactionInfo existing = (cat != null && !cat.isEmpty()) //
+							? splitsByCategory.get(cat) //
+							: null;
+
+					if (existing == null) {
+						if (cat != null && !cat.isEmpty()) {
+							splitsByCategory.put(cat, tuple);
 						}
-					}
 
-					if (!currentSplitParent.splits.contains(newsplit)) {
+						currentSplitParent.addSplit(tuple);
+					} else if (existing.hasSplits()) {
+						existing.addSplit(tuple);
+					} else {
+						TransactionInfo newsplit = new TransactionInfo(this.csvModel, new ArrayList<>());
+
+						newsplit.setValue(TransactionInfo.ACCOUNT_IDX, acctname);
+						newsplit.setValue(TransactionInfo.DATE_IDX, date);
+						newsplit.setValue(TransactionInfo.PAYEE_IDX, payee);
+						newsplit.payee = payee;
+
+						currentSplitParent.splits.remove(existing);
+						newsplit.addSplit(existing);
+						newsplit.addSplit(tuple);
+
+						splitsByCategory.put(cat, newsplit);
 						currentSplitParent.addSplit(newsplit);
 					}
 				} else {
@@ -965,6 +1077,8 @@ public class CSVImport {
 			}
 		}
 
+		long end = System.nanoTime();
+
 		printMessage("Transactions loaded:");
 
 		for (Map.Entry<String, List<TransactionInfo>> entry : transactionsMap.entrySet()) {
@@ -972,17 +1086,56 @@ public class CSVImport {
 		}
 
 		printMessage(String.format("Total: %d transactions", tupleCount));
+
+		long parseNanos = records.readNanos + records.parseNanos + (tuplesDone - start);
+
+		printMessage(String.format( //
+				"Read %d records in %1.1fms (%,.0f records/s); grouped in %1.1fms", //
+				records.size(), parseNanos / 1e6, //
+				records.size() / (parseNanos / 1e9), (end - tuplesDone) / 1e6));
+	}
+
+	/** Set the WIN transaction for a tuple, keeping track of matches */
+	private void setWinTransaction(TransactionInfo tuple, SimpleTxn wintxn) {
+		SimpleTxn oldtxn = tuple.winTxn();
+
+		tuple.setWinTransaction(wintxn);
+
+		if (oldtxn == wintxn) {
+			return;
+		}
+
+		if (oldtxn != null) {
+			List<TransactionInfo> oldtuples = this.tuplesForWinTxn.get(oldtxn);
+
+			oldtuples.remove(tuple);
+			if (oldtuples.isEmpty()) {
+				this.tuplesForWinTxn.remove(oldtxn);
+			}
+		}
+
+		if (wintxn != null) {
+			List<TransactionInfo> wintuples = this.tuplesForWinTxn.get(wintxn);
+			if (wintuples == null) {
+				wintuples = new ArrayList<>(1);
+				this.tuplesForWinTxn.put(wintxn, wintuples);
+			}
+
+			wintuples.add(tuple);
+		}
 	}
 
+	/** Whether a tuple in the transaction's account is matched with it */
 	private boolean isMatched(SimpleTxn txn) {
 		if (txn == null || txn.getAccount() == null || txn.getAccount().name == null) {
 			return false;
 		}
-		List<TransactionInfo> tuples = this.transactionsMap.get(txn.getAccount().name);
+
+		List<TransactionInfo> tuples = this.tuplesForWinTxn.get(txn);
 
 		if (tuples != null) {
 			for (TransactionInfo tuple : tuples) {
-				if (tuple.winTxn() == txn) {
+				if (tuple.value(TransactionInfo.ACCOUNT_IDX).equals(txn.getAccount().name)) {
 					return true;
 				}
 			}
@@ -992,19 +1145,22 @@ public class CSVImport {
 	}
 
 	/**
+	 * Find the WIN transaction for a tuple.<br>
+	 * This may run concurrently for tuples in different accounts, so the
+	 * result is returned to be recorded afterwards.
+	 *
 	 * @param tuple Tupleinfo for the txn
+	 * @param order The tuple's position in import order
 	 */
-	private void matchTransaction(TransactionInfo tuple) {
+	private MatchResult matchTransaction(TransactionInfo tuple, int order, TransactionMatcher matcher) {
 		SimpleTxn mactxn = tuple.macTxn();
 
-		infoMessage(mactxn.toString());
+		String macMessage = (QifDom.verbose) ? mactxn.toString() : null;
 
 		Account acct = this.sourceModel.getAccountByID(mactxn.getAccountID());
-		List<SimpleTxn> txns = this.sourceModel.findMatchingTransactions(acct, mactxn);
+		List<SimpleTxn> txns = this.sourceModel.selectMatchingTransactions( //
+				mactxn, matcher.findMatches(acct, mactxn));
 
-		if (txns.isEmpty()) {
-			txns = this.sourceModel.findMatchingTransactions(acct, mactxn);
-		}
 		for (Iterator<SimpleTxn> iter = txns.iterator(); iter.hasNext();) {
 			if (isMatched(iter.next())) {
 				iter.remove();
@@ -1012,20 +1168,41 @@ public class CSVImport {
 		}
 
 		boolean iszero = Common.isEffectivelyZero(mactxn.getAmount());
-		if (iszero) {
-			this.allzero.add(tuple);
+		String inexactMessage = (!txns.isEmpty()) //
+				? processMatchesFound(tuple, txns) //
+				: null;
+
+		return new MatchResult(tuple, order, macMessage, //
+				iszero, !txns.isEmpty(), inexactMessage);
+	}
+
+	/** Record the result of matching a tuple */
+	private void recordMatchResult(MatchResult result) {
+		if (result.failure != null) {
+			throw result.failure;
+		}
+
+		if (result.macMessage != null) {
+			infoMessage(result.macMessage);
 		}
 
-		if (!txns.isEmpty()) {
-			processMatchesFound(tuple, txns);
-		} else if (iszero) {
-			this.nomatchZero.add(tuple);
+		if (result.iszero) {
+			this.allzero.add(result.tuple);
+		}
+
+		if (result.matched) {
+			if (result.inexactMessage != null) {
+				printMessage(result.inexactMessage);
+			}
+		} else if (result.iszero) {
+			this.nomatchZero.add(result.tuple);
 		} else {
-			this.nomatch.add(tuple);
+			this.nomatch.add(result.tuple);
 		}
 	}
 
-	private void processMatchesFound(TransactionInfo tuple, List<SimpleTxn> txns) {
+	/** Choose the best match for a tuple. Returns a message if inexact. */
+	private String processMatchesFound(TransactionInfo tuple, List<SimpleTxn> txns) {
 		SimpleTxn mactxn = tuple.macTxn();
 		boolean iszero = Common.isEffectivelyZero(mactxn.getAmount());
 
@@ -1051,18 +1228,22 @@ public class CSVImport {
 			}
 		}
 
-		tuple.setWinTransaction(wintxn);
+		setWinTransaction(tuple, wintxn);
 
-		if (!iszero && (lastdiff != 0)) {
-			wintxn.verifyAllSplit();
+		if (iszero || (lastdiff == 0)) {
+			return null;
+		}
 
-			tuple.addInexactMessage("   WIN " + wintxn.toString());
+		wintxn.verifyAllSplit();
 
-			printMessage(String.format("\ninexact match for:\n  %s\n  %s", // TODO xyzzy
-					mactxn.toString(), wintxn.toString()));
+		tuple.addInexactMessage("   WIN " + wintxn.toString());
 
-			mactxn.compareWith(tuple, wintxn);
-		}
+		String msg = String.format("\ninexact match for:\n  %s\n  %s", // TODO xyzzy
+				mactxn.toString(), wintxn.toString());
+
+		mactxn.compareWith(tuple, wintxn);
+
+		return msg;
 	}
 
 	private SimpleTxn createTransaction(TransactionInfo tuple) {
@@ -1206,111 +1387,22 @@ public class CSVImport {
 		return txn;
 	}
 
-	private List<String> readRawRecord() {
-		List<String> fields = new ArrayList<>();
-
-		try {
-			String line = this.rdr.readLine();
-			if (line == null) {
-				return null;
-			}
-
-			int startidx = 0;
-			int endidx = line.length();
-
-			// process each field
-			while (startidx < endidx) {
-				int ch = line.charAt(startidx);
-				if (ch == ',') {
-					fields.add("");
-					++startidx;
-
-					continue;
-				}
-
-				boolean inquote = false;
-
-				if (ch == '"') {
-					inquote = true;
-					++startidx;
-				}
-
-				int tokenstart = startidx;
-				int tokenend = -1;
-
-				while ((startidx < endidx) && (tokenend < 0)) {
-					ch = line.charAt(startidx);
-
-					if (inquote && (ch == '"')) {
-						if (startidx < (endidx - 1)) {
-							if (line.charAt(startidx + 1) == '"') {
-								startidx += 2;
-								continue;
-							}
-						}
-
-						inquote = false;
-						tokenend = startidx;
-						++startidx;
-					} else if (!inquote && (ch == ',')) {
-						tokenend = startidx;
-					} else {
-						++startidx;
-					}
-				}
-
-				if (inquote) {
-					Common.reportError("Unmatched quote in CSV: " + line);
-				}
-
-				if (tokenend < 0) {
-					tokenend = endidx;
-				}
-
-				String field = line.substring(tokenstart, tokenend);
-				fields.add(field);
-
-				if ((startidx < endidx) && (line.charAt(startidx) != ',')) {
-					Common.reportError("Missing comma at " + startidx + " in CSV: " + line);
-				}
-
-				++startidx;
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-
-			return null;
-		}
-
-		String f0 = (!fields.isEmpty()) ? fields.get(0) : "";
-		if ((f0.length() == 1) && (f0.charAt(0) == 65279)) {
-			fields.remove(0);
-			fields.add(0, "");
-		}
-
-		return fields;
-	}
-
-	private TransactionInfo readRecord() {
-		List<String> fields = readRawRecord();
-		return (fields != null) ? new TransactionInfo(this.csvModel, fields) : null;
-	}
-
-	private boolean readFieldNames() {
-		for (;;) {
-			List<String> record = readRawRecord();
-			if (record == null) {
-				break;
-			}
+	/**
+	 * Find the record with the field names and set the field order.<br>
+	 * Returns the index of the following record, or -1 if not found.
+	 */
+	private int readFieldNames(CSVRecords records) {
+		for (int idx = 0; idx < records.size(); ++idx) {
+			List<String> record = Arrays.asList(records.getRecord(idx));
 
 			if (record.contains("Account") && record.contains("Date")) {
 				TransactionInfo.setFieldOrder(record.toArray(new String[0]));
 
-				return true;
+				return idx + 1;
 			}
 		}
 
-		return false;
+		return -1;
 	}
 }
 
@@ -0,0 +1,318 @@
+package moneymgr.io.csv;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The records of a CSV file, read in bulk.<br>
+ * The file is read in large chunks and divided into pieces at line
+ * boundaries, which are tokenized in parallel. Fields are kept as offsets
+ * into the text (one array of starts, one of ends, one of each record's
+ * first field) and only become strings when a record is requested.<br>
+ * As with the line-at-a-time reader, records are lines, quoted fields keep
+ * any doubled quotes, and a malformed line ends the file.
+ */
+class CSVRecords {
+	private static final int READ_CHUNK_SIZE = 1 << 20;
+	private static final int MIN_PIECE_SIZE = 1 << 16;
+
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+	/** Field offsets for the records of part of the text */
+	private static class FieldBuffer {
+		int[] fieldStart = new int[1024];
+		int[] fieldEnd = new int[1024];
+		int[] recordStart = new int[256];
+
+		int numFields = 0;
+		int numRecords = 0;
+
+		/** Problem with the line following the last record */
+		String error = null;
+
+		void startRecord() {
+			if (this.numRecords >= this.recordStart.length) {
+				this.recordStart = Arrays.copyOf(this.recordStart, this.numRecords * 2);
+			}
+
+			this.recordStart[this.numRecords++] = this.numFields;
+		}
+
+		void addField(int start, int end) {
+			if (this.numFields >= this.fieldStart.length) {
+				this.fieldStart = Arrays.copyOf(this.fieldStart, this.numFields * 2);
+				this.fieldEnd = Arrays.copyOf(this.fieldEnd, this.numFields * 2);
+			}
+
+			this.fieldStart[this.numFields] = start;
+			this.fieldEnd[this.numFields] = end;
+			++this.numFields;
+		}
+
+		/** Discard fields added since the last record was started */
+		void discardRecord() {
+			--this.numRecords;
+			this.numFields = this.recordStart[this.numRecords];
+		}
+	}
+
+	/** Read and tokenize a CSV file */
+	public static CSVRecords read(String filename) throws IOException {
+		long start = System.nanoTime();
+
+		StringBuilder sb = new StringBuilder();
+
+		try (Reader rdr = new FileReader(filename)) {
+			char[] chunk = new char[READ_CHUNK_SIZE];
+
+			for (int len = rdr.read(chunk); len >= 0; len = rdr.read(chunk)) {
+				sb.append(chunk, 0, len);
+			}
+		}
+
+		long readDone = System.nanoTime();
+
+		CSVRecords records = new CSVRecords(sb.toString());
+
+		records.readNanos = readDone - start;
+		records.parseNanos = System.nanoTime() - readDone;
+
+		return records;
+	}
+
+	private final String text;
+	private final FieldBuffer fields;
+
+	public long readNanos = 0;
+	public long parseNanos = 0;
+
+	private CSVRecords(String text) {
+		this.text = text;
+
+		List<int[]> pieces = getPieces(text);
+
+		List<FieldBuffer> buffers = pieces.parallelStream() //
+				.map(piece -> parse(text, piece[0], piece[1])) //
+				.collect(Collectors.toList());
+
+		this.fields = combine(buffers);
+	}
+
+	/** Divide text into pieces for parsing, at line boundaries */
+	private static List<int[]> getPieces(String text) {
+		int len = text.length();
+		int numPieces = Math.max(1, Math.min( //
+				Runtime.getRuntime().availableProcessors() * 4, //
+				len / MIN_PIECE_SIZE));
+
+		List<int[]> pieces = new ArrayList<>();
+		int start = 0;
+
+		for (int ii = 1; ii < numPieces; ++ii) {
+			int end = lineEnd(text, (int) ((long) len * ii / numPieces), len);
+
+			if (end < len) {
+				end = nextLine(text, end, len);
+			}
+
+			if (end > start) {
+				pieces.add(new int[] { start, end });
+				start = end;
+			}
+		}
+
+		if (start < len) {
+			pieces.add(new int[] { start, len });
+		}
+
+		return pieces;
+	}
+
+	/** Find the end of the line containing a position */
+	private static int lineEnd(String text, int pos, int end) {
+		while (pos < end) {
+			char ch = text.charAt(pos);
+
+			if ((ch == '\n') || (ch == '\r')) {
+				break;
+			}
+
+			++pos;
+		}
+
+		return pos;
+	}
+
+	/** Skip the line terminator at a position (\n, \r, or \r\n) */
+	private static int nextLine(String text, int pos, int end) {
+		if ((text.charAt(pos) == '\r') && (pos + 1 < end) && (text.charAt(pos + 1) == '\n')) {
+			return pos + 2;
+		}
+
+		return pos + 1;
+	}
+
+	/** Tokenize the lines in part of the text */
+	private static FieldBuffer parse(String text, int start, int end) {
+		FieldBuffer buf = new FieldBuffer();
+
+		for (int pos = start; pos < end;) {
+			int lineend = lineEnd(text, pos, end);
+
+			buf.startRecord();
+
+			if (!parseLine(text, pos, lineend, buf)) {
+				buf.discardRecord();
+				break;
+			}
+
+			pos = (lineend < end) ? nextLine(text, lineend, end) : end;
+		}
+
+		return buf;
+	}
+
+	/** Tokenize one line, adding its fields to the buffer */
+	private static boolean parseLine(String text, int linestart, int endidx, FieldBuffer buf) {
+		int startidx = linestart;
+
+		// process each field
+		while (startidx < endidx) {
+			char ch = text.charAt(startidx);
+			if (ch == ',') {
+				buf.addField(startidx, startidx);
+				++startidx;
+
+				continue;
+			}
+
+			boolean inquote = false;
+
+			if (ch == '"') {
+				inquote = true;
+				++startidx;
+			}
+
+			int tokenstart = startidx;
+			int tokenend = -1;
+
+			while ((startidx < endidx) && (tokenend < 0)) {
+				ch = text.charAt(startidx);
+
+				if (inquote && (ch == '"')) {
+					if (startidx < (endidx - 1)) {
+						if (text.charAt(startidx + 1) == '"') {
+							startidx += 2;
+							continue;
+						}
+					}
+
+					inquote = false;
+					tokenend = startidx;
+					++startidx;
+				} else if (!inquote && (ch == ',')) {
+					tokenend = startidx;
+				} else {
+					++startidx;
+				}
+			}
+
+			if (inquote) {
+				buf.error = "Unmatched quote in CSV: " + text.substring(linestart, endidx);
+				return false;
+			}
+
+			if (tokenend < 0) {
+				tokenend = endidx;
+			}
+
+			buf.addField(tokenstart, tokenend);
+
+			if ((startidx < endidx) && (text.charAt(startidx) != ',')) {
+				buf.error = "Missing comma at " + (startidx - linestart) //
+						+ " in CSV: " + text.substring(linestart, endidx);
+				return false;
+			}
+
+			++startidx;
+		}
+
+		return true;
+	}
+
+	/** Join the pieces' fields, ending at the first malformed line */
+	private static FieldBuffer combine(List<FieldBuffer> buffers) {
+		FieldBuffer all = new FieldBuffer();
+
+		int numFields = 0;
+		int numRecords = 0;
+
+		for (FieldBuffer buf : buffers) {
+			numFields += buf.numFields;
+			numRecords += buf.numRecords;
+
+			if (buf.error != null) {
+				break;
+			}
+		}
+
+		all.fieldStart = new int[numFields];
+		all.fieldEnd = new int[numFields];
+		all.recordStart = new int[numRecords + 1];
+
+		for (FieldBuffer buf : buffers) {
+			System.arraycopy(buf.fieldStart, 0, all.fieldStart, all.numFields, buf.numFields);
+			System.arraycopy(buf.fieldEnd, 0, all.fieldEnd, all.numFields, buf.numFields);
+
+			for (int ii = 0; ii < buf.numRecords; ++ii) {
+				all.recordStart[all.numRecords++] = all.numFields + buf.recordStart[ii];
+			}
+
+			all.numFields += buf.numFields;
+
+			if (buf.error != null) {
+				all.error = buf.error;
+				break;
+			}
+		}
+
+		all.recordStart[all.numRecords] = all.numFields;
+
+		return all;
+	}
+
+	/** The number of records (lines) read */
+	public int size() {
+		return this.fields.numRecords;
+	}
+
+	/** The problem with the line that ended the file early (or null) */
+	public String getError() {
+		return this.fields.error;
+	}
+
+	/** Get the fields of a record */
+	public String[] getRecord(int idx) {
+		int first = this.fields.recordStart[idx];
+		String[] values = new String[this.fields.recordStart[idx + 1] - first];
+
+		for (int ii = 0; ii < values.length; ++ii) {
+			values[ii] = this.text.substring( //
+					this.fields.fieldStart[first + ii], //
+					this.fields.fieldEnd[first + ii]);
+		}
+
+		if ((values.length > 0) //
+				&& (values[0].length() == 1) //
+				&& (values[0].charAt(0) == BYTE_ORDER_MARK)) {
+			values[0] = "";
+		}
+
+		return values;
+	}
+}
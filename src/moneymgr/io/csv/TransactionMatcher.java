@@ -0,0 +1,214 @@
+package moneymgr.io.csv;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import moneymgr.model.Account;
+import moneymgr.model.GenericTxn;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.SimpleTxn;
+import moneymgr.model.SplitTxn;
+import moneymgr.util.Common;
+
+/**
+ * Finds the QIF transactions that may match transactions imported from CSV.<br>
+ * Transactions and splits are indexed by account and amount (cents). Each
+ * bucket is chained in account (date) order, so finding the candidates for a
+ * transaction is a hash lookup plus a binary search for the nearby dates.
+ * The result is the same as Account.findMatchingTransactions(). Lookups may
+ * be done from several threads.
+ */
+class TransactionMatcher {
+	/** Number of days either side of a transaction's date to look for a match */
+	private static final int DATE_TOLERANCE = 5;
+
+	/** Identifies transactions of an amount in an account */
+	private static class Key {
+		final int acctid;
+		final long cents;
+
+		Key(int acctid, long cents) {
+			this.acctid = acctid;
+			this.cents = cents;
+		}
+
+		public int hashCode() {
+			return 31 * this.acctid + Long.hashCode(this.cents);
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			return (this.acctid == other.acctid) //
+					&& (this.cents == other.cents);
+		}
+	}
+
+	/** A transaction or split and its position in the account */
+	private static class Candidate {
+		final SimpleTxn txn;
+
+		/** For a split in a split, the containing split (see findMatches) */
+		final SimpleTxn parentSplit;
+
+		final int epochDay;
+		final int seq;
+
+		Candidate(SimpleTxn txn, SimpleTxn parentSplit, int seq) {
+			this.txn = txn;
+			this.parentSplit = parentSplit;
+			this.epochDay = txn.getDate().getEpochDay();
+			this.seq = seq;
+		}
+	}
+
+	/** Candidates in each bucket, in account transaction order */
+	private final Map<Key, List<Candidate>> candidates = new HashMap<>();
+
+	private int numCandidates = 0;
+	private long buildNanos = 0;
+
+	private final LongAdder numLookups = new LongAdder();
+	private final LongAdder numCandidatesChecked = new LongAdder();
+	private final LongAdder matchNanos = new LongAdder();
+
+	/** Index the transactions and splits in all of a model's accounts */
+	public TransactionMatcher(MoneyMgrModel model) {
+		long start = System.nanoTime();
+
+		for (Account acct : model.getAccounts()) {
+			int seq = 0;
+
+			for (GenericTxn gtxn : acct.getTransactions()) {
+				addCandidate(acct, gtxn, null, seq++);
+
+				if (gtxn.hasSplits()) {
+					for (SplitTxn st : gtxn.getSplits()) {
+						addCandidate(acct, st, null, seq++);
+
+						if (st.hasSplits()) {
+							for (SplitTxn sst : st.getSplits()) {
+								addCandidate(acct, sst, st, seq++);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		this.buildNanos = System.nanoTime() - start;
+	}
+
+	private void addCandidate(Account acct, SimpleTxn txn, SimpleTxn parentSplit, int seq) {
+		BigDecimal amount = txn.getAmount();
+		if ((amount == null) || (txn.getDate() == null)) {
+			return;
+		}
+
+		Key key = new Key(acct.acctid, Common.toCents(amount.abs()));
+
+		List<Candidate> bucket = this.candidates.get(key);
+		if (bucket == null) {
+			bucket = new ArrayList<>();
+			this.candidates.put(key, bucket);
+		}
+
+		bucket.add(new Candidate(txn, parentSplit, seq));
+		++this.numCandidates;
+	}
+
+	/**
+	 * Find existing transaction(s) in an account that match a transaction
+	 * being loaded.<br>
+	 * Date is close and amount matches (or the amount of a split). Matches are
+	 * ordered by distance from the transaction's date, then account order.
+	 */
+	public List<SimpleTxn> findMatches(Account acct, SimpleTxn tx) {
+		long start = System.nanoTime();
+
+		this.numLookups.increment();
+
+		List<Candidate> matches = new ArrayList<>();
+		int epochDay = tx.getDate().getEpochDay();
+
+		// Amounts within half a cent are equal, so check adjacent buckets too
+		long cents = Common.toCents(tx.getAmount().abs());
+
+		for (long c = cents - 1; c <= cents + 1; ++c) {
+			List<Candidate> bucket = this.candidates.get(new Key(acct.acctid, c));
+
+			if (bucket != null) {
+				findMatches(acct, bucket, matches, tx, epochDay);
+			}
+		}
+
+		matches.sort((c1, c2) -> {
+			int diff = Math.abs(c1.epochDay - epochDay) - Math.abs(c2.epochDay - epochDay);
+
+			return (diff != 0) ? diff : c1.seq - c2.seq;
+		});
+
+		List<SimpleTxn> txns = new ArrayList<>(matches.size());
+		for (Candidate cand : matches) {
+			txns.add(cand.txn);
+		}
+
+		this.matchNanos.add(System.nanoTime() - start);
+
+		return txns;
+	}
+
+	private void findMatches( //
+			Account acct, //
+			List<Candidate> bucket, //
+			List<Candidate> matches, //
+			SimpleTxn tx, //
+			int epochDay) {
+		// Find the first candidate within range of the date
+		int lo = 0;
+		int hi = bucket.size();
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (bucket.get(mid).epochDay < epochDay - DATE_TOLERANCE) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		for (int idx = lo; idx < bucket.size(); ++idx) {
+			Candidate cand = bucket.get(idx);
+			if (cand.epochDay > epochDay + DATE_TOLERANCE) {
+				break;
+			}
+
+			this.numCandidatesChecked.increment();
+
+			// A split's splits are only considered if the split doesn't match
+			if (acct.isApproximateMatch(tx, cand.txn) //
+					&& ((cand.parentSplit == null) //
+							|| !acct.isApproximateMatch(tx, cand.parentSplit))) {
+				matches.add(cand);
+			}
+		}
+	}
+
+	/** Summary of the work done, for reporting */
+	public String getStatistics() {
+		return String.format("%d transactions indexed in %1.1fms; " //
+				+ "%d lookups checked %d candidates in %1.1fms", //
+				this.numCandidates, this.buildNanos / 1e6, //
+				this.numLookups.sum(), this.numCandidatesChecked.sum(), //
+				this.matchNanos.sum() / 1e6);
+	}
+}
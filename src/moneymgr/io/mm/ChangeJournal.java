@@ -0,0 +1,849 @@
+package moneymgr.io.mm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import moneymgr.io.mm.Snapshot.SectionWriter;
+import moneymgr.model.Account;
+import moneymgr.model.GenericTxn;
+import moneymgr.model.InvestmentTxn;
+import moneymgr.model.Lot;
+import moneymgr.model.ModelChangeListener;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.Security;
+import moneymgr.model.SecurityPosition;
+import moneymgr.model.SimpleTxn;
+import moneymgr.model.Statement;
+import moneymgr.model.StockOption;
+import moneymgr.util.Common;
+import moneymgr.util.QDate;
+
+/**
+ * Append-only journal of changes made to a model after it is loaded.<br>
+ * Each change is appended to the journal file (and synced) as it is reported,
+ * so saving takes time proportional to the number of changes, not the size of
+ * the model, and a crash loses nothing already reported. Records hold the
+ * state of the changed objects, encoded as in the snapshot.<br>
+ * A new transaction is reported before its fields are set, so it is written
+ * with the next change (or flush()), and written again if it has changed
+ * since. Replay uses the last version written.<br>
+ * Each journal belongs to a snapshot generation. Loading replays journals on
+ * top of the snapshot. Compaction folds the changes into a new snapshot
+ * (written in the background) and starts the journal for the next generation.
+ */
+public class ChangeJournal implements ModelChangeListener {
+	private static final int MAGIC = 0x4d4d4a4e; // "MMJN"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+
+	// Record types
+	private static final int REC_TXN_ADDED = 1;
+	private static final int REC_TXN_REMOVED = 2;
+	private static final int REC_TXN_DATE = 3;
+	private static final int REC_TXN_CLEARED = 4;
+	private static final int REC_TXN_UNCLEARED = 5;
+	private static final int REC_STATEMENT_ADDED = 6;
+	private static final int REC_LOT_ADDED = 7;
+	private static final int REC_OPTION_ADDED = 8;
+	private static final int REC_TXN_AMOUNT = 9;
+
+	/** Number of records in the journal that triggers compaction */
+	private static final int COMPACT_THRESHOLD = 1000;
+
+	/** A change to be written to the journal */
+	private static class Change {
+		public final int type;
+		public final Object object;
+		public final Statement statement;
+
+		public Change(int type, Object object, Statement statement) {
+			this.type = type;
+			this.object = object;
+			this.statement = statement;
+		}
+	}
+
+	private final File snapshotFile;
+	private final File qifFile;
+
+	/** State of the input data when the model was loaded (see compact()) */
+	private final long qifLength;
+	private final long sourceTimestamp;
+
+	private MoneyMgrModel model = null;
+	private long generation = 0;
+	private int recordCount = 0;
+
+	/** Transactions added since the snapshot, and their last journaled record */
+	private final Map<SimpleTxn, byte[]> addedTxns = new LinkedHashMap<>();
+
+	/** Set if replaying failed, so the journals are kept (see saveSnapshot) */
+	private long failedGeneration = -1;
+
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "journal-compaction");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public ChangeJournal(File snapshotFile, File qifFile) {
+		this.snapshotFile = snapshotFile;
+		this.qifFile = qifFile;
+		this.qifLength = qifFile.length();
+		this.sourceTimestamp = Snapshot.getSourceTimestamp(qifFile, false);
+	}
+
+	public long getGeneration() {
+		return this.generation;
+	}
+
+	/** Return the journal file for a snapshot generation */
+	public File getJournalFile(long gen) {
+		return new File(String.format("%s.%d.journal", this.snapshotFile.getPath(), gen));
+	}
+
+	/**
+	 * Load the model from the snapshot and replay the journal.<br>
+	 * Return null if the snapshot is out of date or can't be loaded.
+	 */
+	public synchronized MoneyMgrModel loadSnapshot(String modelName) {
+		if (!Snapshot.isCurrent(this.snapshotFile, this.qifFile)) {
+			return null;
+		}
+
+		Snapshot snapshot = new Snapshot();
+		MoneyMgrModel snapmodel = snapshot.read(modelName, this.snapshotFile);
+
+		if (snapmodel == null) {
+			return null;
+		}
+
+		this.model = snapmodel;
+		this.generation = snapshot.getGeneration();
+
+		try {
+			replay(snapshot);
+		} catch (Exception e) {
+			Common.reportWarning("Error replaying journal: " + e.toString());
+			this.failedGeneration = snapshot.getGeneration();
+			MoneyMgrModel.deleteModel(modelName);
+			this.model = null;
+			return null;
+		}
+
+		snapshot.rebuild();
+		this.model.addChangeListener(this);
+
+		if (this.recordCount >= COMPACT_THRESHOLD) {
+			compact();
+		}
+
+		return this.model;
+	}
+
+	/**
+	 * Save a snapshot of a newly loaded model and start tracking changes.<br>
+	 * Existing journals are deleted, unless we failed to replay them. In that
+	 * case they are kept, along with the snapshot they apply to (renamed).
+	 */
+	public synchronized void saveSnapshot(MoneyMgrModel model) {
+		this.model = model;
+		this.addedTxns.clear();
+
+		// Start a new generation so no existing journal applies to the snapshot
+		long newgen = getLastGeneration() + 1;
+
+		if (this.failedGeneration >= 0) {
+			keepSnapshot(this.failedGeneration);
+		}
+
+		try {
+			byte[] data = new Snapshot(model).encode(this.qifFile, newgen);
+			Snapshot.writeFile(data, this.snapshotFile);
+		} catch (IOException e) {
+			Common.reportWarning("Error saving snapshot: " + e.getMessage());
+		}
+
+		this.generation = newgen;
+		this.recordCount = 0;
+
+		if (this.failedGeneration < 0) {
+			deleteJournals(newgen - 1);
+		}
+
+		this.failedGeneration = -1;
+
+		this.model.addChangeListener(this);
+	}
+
+	/** Return the name for a snapshot whose journals we failed to replay */
+	public File getFailedSnapshotFile(long gen) {
+		return new File(String.format("%s.%d.failed", this.snapshotFile.getPath(), gen));
+	}
+
+	/** Keep a snapshot whose journals failed to replay, so they can be recovered */
+	private void keepSnapshot(long gen) {
+		File failedFile = getFailedSnapshotFile(gen);
+
+		try {
+			Files.move(this.snapshotFile.toPath(), failedFile.toPath(), //
+					StandardCopyOption.REPLACE_EXISTING);
+
+			Common.reportWarning(String.format( //
+					"Keeping journals that failed to replay, with their snapshot %s", //
+					failedFile.getPath()));
+		} catch (IOException e) {
+			Common.reportWarning("Error keeping snapshot: " + e.getMessage());
+		}
+	}
+
+	/** Return the generations of existing journal files */
+	private List<Long> getJournalGenerations() {
+		List<Long> gens = new ArrayList<>();
+
+		File dir = this.snapshotFile.getAbsoluteFile().getParentFile();
+		String prefix = this.snapshotFile.getName() + ".";
+		String suffix = ".journal";
+		String[] names = dir.list();
+
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(prefix) && name.endsWith(suffix)) {
+					try {
+						gens.add(Long.parseLong( //
+								name.substring(prefix.length(), name.length() - suffix.length())));
+					} catch (NumberFormatException e) {
+						// Not one of ours
+					}
+				}
+			}
+		}
+
+		return gens;
+	}
+
+	private long getLastGeneration() {
+		long last = this.generation;
+
+		for (long gen : getJournalGenerations()) {
+			last = Math.max(last, gen);
+		}
+
+		return last;
+	}
+
+	/** Delete journal files up to a generation */
+	private void deleteJournals(long lastgen) {
+		for (long gen : getJournalGenerations()) {
+			if (gen <= lastgen) {
+				getJournalFile(gen).delete();
+			}
+		}
+	}
+
+	// ==============================================================
+	// Recording changes
+	// ==============================================================
+
+	/** Write a change (and any changed new transactions) to the journal */
+	private synchronized void addChange(int type, Object object, Statement statement) {
+		if (type == REC_TXN_ADDED) {
+			// N.B. The transaction is still being constructed
+			this.addedTxns.put((SimpleTxn) object, null);
+			return;
+		}
+
+		if (type == REC_TXN_REMOVED) {
+			this.addedTxns.remove(object);
+		} else if ((type == REC_TXN_AMOUNT) && this.addedTxns.containsKey(object)) {
+			// The amount is written with the new transaction
+			return;
+		}
+
+		try {
+			List<byte[]> records = getChangedTransactions();
+			records.add(encode(new Change(type, object, statement)));
+
+			write(records);
+		} catch (IOException e) {
+			Common.reportWarning("Error writing journal: " + e.getMessage());
+		}
+
+		if (this.recordCount >= COMPACT_THRESHOLD) {
+			compact();
+		}
+	}
+
+	public void transactionAdded(SimpleTxn txn) {
+		addChange(REC_TXN_ADDED, txn, null);
+	}
+
+	public void transactionRemoved(SimpleTxn txn) {
+		addChange(REC_TXN_REMOVED, txn, null);
+	}
+
+	public void transactionDateChanged(GenericTxn txn, QDate olddate) {
+		addChange(REC_TXN_DATE, txn, null);
+	}
+
+	public void transactionAmountChanged(SimpleTxn txn) {
+		addChange(REC_TXN_AMOUNT, txn, null);
+	}
+
+	public void transactionCleared(Statement statement, GenericTxn txn, boolean cleared) {
+		addChange((cleared) ? REC_TXN_CLEARED : REC_TXN_UNCLEARED, txn, statement);
+	}
+
+	public void statementAdded(Statement statement) {
+		addChange(REC_STATEMENT_ADDED, statement, null);
+	}
+
+	public void lotAdded(Lot lot) {
+		addChange(REC_LOT_ADDED, lot, null);
+	}
+
+	public void stockOptionAdded(StockOption option) {
+		addChange(REC_OPTION_ADDED, option, null);
+	}
+
+	public void securityPricesChanged(Security sec, QDate date) {
+		// Prices are saved in quote files, not the journal
+	}
+
+	/**
+	 * Write new transactions that have changed since they were last written
+	 * (e.g. after creating and filling in a transaction)
+	 */
+	public synchronized void flush() {
+		writeChangedTransactions();
+
+		if (this.recordCount >= COMPACT_THRESHOLD) {
+			compact();
+		}
+	}
+
+	private void writeChangedTransactions() {
+		try {
+			write(getChangedTransactions());
+		} catch (IOException e) {
+			Common.reportWarning("Error writing journal: " + e.getMessage());
+		}
+	}
+
+	/** Encode new transactions that differ from their last journaled version */
+	private List<byte[]> getChangedTransactions() throws IOException {
+		List<byte[]> records = new ArrayList<>();
+
+		for (Map.Entry<SimpleTxn, byte[]> entry : this.addedTxns.entrySet()) {
+			byte[] record = encode(new Change(REC_TXN_ADDED, entry.getKey(), null));
+
+			if (!Arrays.equals(record, entry.getValue())) {
+				entry.setValue(record);
+				records.add(record);
+			}
+		}
+
+		return records;
+	}
+
+	private byte[] encode(Change change) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		SectionWriter wtr = new SectionWriter();
+
+		writeChange(wtr, change);
+		wtr.writeTo(data, change.type);
+		data.flush();
+
+		return bytes.toByteArray();
+	}
+
+	/** Append records to the journal file and sync it */
+	private void write(List<byte[]> records) throws IOException {
+		if (records.isEmpty() || (this.model == null)) {
+			return;
+		}
+
+		File journalFile = getJournalFile(this.generation);
+		boolean isNew = !journalFile.isFile();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+
+		if (isNew) {
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeLong(this.generation);
+		}
+
+		for (byte[] record : records) {
+			data.write(record);
+		}
+
+		data.flush();
+
+		// Write everything at once to limit the damage of a crash
+		try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+			bytes.writeTo(out);
+			out.getFD().sync();
+		}
+
+		this.recordCount += records.size();
+	}
+
+	private void writeChange(SectionWriter wtr, Change change) throws IOException {
+		switch (change.type) {
+		case REC_TXN_ADDED: {
+			SimpleTxn txn = (SimpleTxn) change.object;
+			boolean inAccount = (txn instanceof GenericTxn) //
+					&& txn.getAccount().containsTransaction((GenericTxn) txn);
+
+			wtr.writeInt(txn.getTxid());
+			Snapshot.writeTransactionType(wtr, txn);
+			Snapshot.writeTransactionDetails(wtr, txn, inAccount);
+			break;
+		}
+
+		case REC_TXN_REMOVED:
+			wtr.writeTxid((SimpleTxn) change.object);
+			break;
+
+		case REC_TXN_DATE: {
+			GenericTxn txn = (GenericTxn) change.object;
+
+			wtr.writeTxid(txn);
+			wtr.writeDate(txn.getDate());
+			break;
+		}
+
+		case REC_TXN_AMOUNT: {
+			SimpleTxn txn = (SimpleTxn) change.object;
+
+			wtr.writeTxid(txn);
+			wtr.writeDecimal(txn.getAmount());
+			break;
+		}
+
+		case REC_TXN_CLEARED:
+		case REC_TXN_UNCLEARED:
+			wtr.writeInt(change.statement.acctid);
+			wtr.writeDate(change.statement.date);
+			wtr.writeTxid((GenericTxn) change.object);
+			break;
+
+		case REC_STATEMENT_ADDED: {
+			Statement stmt = (Statement) change.object;
+
+			wtr.writeInt(stmt.acctid);
+			wtr.writeDate(stmt.date);
+			wtr.writeDate((stmt.prevStatement != null) ? stmt.prevStatement.date : null);
+			wtr.writeBoolean(stmt.isBalanced());
+			wtr.writeDecimal(stmt.closingBalance);
+			wtr.writeDecimal(stmt.getCashBalance());
+			wtr.writeTxids(stmt.transactions);
+
+			List<SecurityPosition> positions = stmt.holdings.getPositions();
+
+			wtr.writeInt(positions.size());
+			for (SecurityPosition pos : positions) {
+				wtr.writeInt(pos.security.secid);
+				wtr.writeDecimal(pos.getEndingShares());
+				wtr.writeDecimal(pos.getEndingValue());
+			}
+			break;
+		}
+
+		case REC_LOT_ADDED:
+			Snapshot.writeLot(wtr, (Lot) change.object);
+			break;
+
+		case REC_OPTION_ADDED:
+			Snapshot.writeOption(wtr, (StockOption) change.object);
+			break;
+		}
+	}
+
+	// ==============================================================
+	// Compaction
+	// ==============================================================
+
+	/**
+	 * Fold the journal into a new snapshot.<br>
+	 * The model is encoded immediately, while the file is written in the
+	 * background. Changes after this point go to the next generation's journal.
+	 * The old journal is deleted once the new snapshot is in place.<br>
+	 * If the input data was modified by something other than our own
+	 * reconciling (which updates the statement log), the model no longer
+	 * reflects the input, so we don't create a snapshot that claims to.
+	 */
+	public synchronized void compact() {
+		if ((this.qifFile.length() != this.qifLength) //
+				|| (Snapshot.getSourceTimestamp(this.qifFile, false) != this.sourceTimestamp)) {
+			writeChangedTransactions();
+			return;
+		}
+
+		writeChangedTransactions();
+
+		long oldgen = this.generation;
+		long newgen = oldgen + 1;
+		byte[] data;
+
+		try {
+			data = new Snapshot(this.model).encode(this.qifFile, newgen);
+		} catch (IOException e) {
+			Common.reportWarning("Error compacting journal: " + e.getMessage());
+			return;
+		}
+
+		this.generation = newgen;
+		this.recordCount = 0;
+
+		// New transactions are now in the snapshot
+		this.addedTxns.clear();
+
+		this.compactor.submit(() -> {
+			try {
+				Snapshot.writeFile(data, this.snapshotFile);
+				deleteJournals(oldgen);
+			} catch (IOException e) {
+				Common.reportWarning("Error writing snapshot: " + e.getMessage());
+			}
+		});
+	}
+
+	/** Compact any changes and wait for the snapshot to be written */
+	public void close() {
+		synchronized (this) {
+			writeChangedTransactions();
+
+			if (this.recordCount > 0) {
+				compact();
+			}
+		}
+
+		this.compactor.shutdown();
+
+		try {
+			this.compactor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// ==============================================================
+	// Replay
+	// ==============================================================
+
+	/**
+	 * Apply journals following a snapshot.<br>
+	 * A compaction may have been interrupted, so we continue with following
+	 * generations' journals as long as they exist.
+	 */
+	private void replay(Snapshot snapshot) throws IOException {
+		this.recordCount = 0;
+
+		for (long gen = this.generation;; ++gen) {
+			File journalFile = getJournalFile(gen);
+			if (!journalFile.isFile()) {
+				break;
+			}
+
+			this.generation = gen;
+			this.recordCount += replay(snapshot, journalFile);
+		}
+
+		if (this.recordCount > 0) {
+			Common.reportInfo(String.format("Replayed %d journal records", this.recordCount));
+		}
+	}
+
+	/** Apply a journal file to the model, returning the number of records */
+	private int replay(Snapshot snapshot, File journalFile) throws IOException {
+		List<ByteBuffer> records = new ArrayList<>();
+		List<Integer> types = new ArrayList<>();
+
+		// N.B. Journals are small; read rather than map so we can truncate it
+		try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+			byte[] bytes = new byte[(int) raf.length()];
+			raf.readFully(bytes);
+
+			ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+			if ((buf.remaining() < HEADER_SIZE) //
+					|| (buf.getInt() != MAGIC) //
+					|| (buf.getInt() != VERSION)) {
+				Common.reportWarning("Ignoring invalid journal " + journalFile.getPath());
+				return 0;
+			}
+
+			buf.getLong(); // generation
+
+			while (buf.remaining() >= 2 * Integer.BYTES) {
+				int type = buf.getInt();
+				int length = buf.getInt();
+
+				if ((length < 0) || (length > buf.remaining())) {
+					buf.position(buf.position() - 2 * Integer.BYTES);
+					break;
+				}
+
+				ByteBuffer rec = buf.slice();
+				rec.limit(length);
+				records.add(rec);
+				types.add(type);
+
+				buf.position(buf.position() + length);
+			}
+
+			// Discard a record that was only partly written
+			if (buf.hasRemaining()) {
+				Common.reportWarning("Truncating incomplete journal record in " + journalFile.getPath());
+				raf.setLength(buf.position());
+			}
+		}
+
+		// A new transaction may be written more than once; use the last version
+		Map<Integer, ByteBuffer> addedTxns = new HashMap<>();
+
+		for (int ii = 0; ii < records.size(); ++ii) {
+			if (types.get(ii) == REC_TXN_ADDED) {
+				addedTxns.put(records.get(ii).getInt(0), records.get(ii));
+			}
+		}
+
+		Map<String, Statement> newStatements = new HashMap<>();
+
+		// Create new objects first, since earlier records may refer to them
+		for (int ii = 0; ii < records.size(); ++ii) {
+			ByteBuffer rec = records.get(ii);
+
+			switch (types.get(ii)) {
+			case REC_TXN_ADDED:
+				createTransaction(snapshot, rec);
+				break;
+
+			case REC_STATEMENT_ADDED:
+				createStatement(rec, newStatements);
+				break;
+			}
+
+			rec.rewind();
+		}
+
+		for (int ii = 0; ii < records.size(); ++ii) {
+			ByteBuffer rec = records.get(ii);
+
+			if (types.get(ii) == REC_TXN_ADDED) {
+				// Apply the last version where the transaction was first added
+				rec = addedTxns.remove(rec.getInt(0));
+				if (rec == null) {
+					continue;
+				}
+			}
+
+			applyChange(snapshot, types.get(ii), rec, newStatements);
+		}
+
+		return records.size();
+	}
+
+	private void createTransaction(Snapshot snapshot, ByteBuffer rec) {
+		int txid = rec.getInt();
+		int type = rec.get();
+		int owner = rec.getInt();
+
+		if (this.model.getSimpleTransaction(txid) != null) {
+			return;
+		}
+
+		SimpleTxn parent = ((type == Snapshot.TX_SPLIT) || (type == Snapshot.TX_MULTISPLIT)) //
+				? this.model.getSimpleTransaction(owner) //
+				: null;
+
+		snapshot.createTransaction(txid, type, owner, parent);
+		this.model.reserveTransactionIds(txid);
+	}
+
+	private static String statementKey(int acctid, QDate date) {
+		return acctid + ":" + date.getRawValue();
+	}
+
+	private Statement findStatement(int acctid, QDate date, Map<String, Statement> newStatements) {
+		Statement stmt = newStatements.get(statementKey(acctid, date));
+		if (stmt != null) {
+			return stmt;
+		}
+
+		Account acct = this.model.getAccountByID(acctid);
+
+		if (acct != null) {
+			for (Statement s : acct.getStatements()) {
+				if (s.date.equals(date)) {
+					return s;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private void createStatement(ByteBuffer rec, Map<String, Statement> newStatements) {
+		int acctid = rec.getInt();
+		QDate date = Snapshot.readDate(rec);
+		QDate prevdate = Snapshot.readDate(rec);
+		Snapshot.readBoolean(rec);
+		BigDecimal closingBalance = Snapshot.readDecimal(rec);
+		BigDecimal cashBalance = Snapshot.readDecimal(rec);
+
+		if (findStatement(acctid, date, newStatements) != null) {
+			return;
+		}
+
+		Statement prevstmt = (prevdate != null) //
+				? findStatement(acctid, prevdate, newStatements) //
+				: null;
+
+		newStatements.put(statementKey(acctid, date), //
+				new Statement(acctid, date, closingBalance, cashBalance, prevstmt));
+	}
+
+	private void applyChange(Snapshot snapshot, int type, ByteBuffer rec, //
+			Map<String, Statement> newStatements) {
+		switch (type) {
+		case REC_TXN_ADDED: {
+			SimpleTxn txn = this.model.getSimpleTransaction(rec.getInt());
+			rec.get();
+			rec.getInt();
+
+			snapshot.readTransactionDetails(rec, txn);
+
+			if ((txn instanceof InvestmentTxn) && (((InvestmentTxn) txn).getSecurity() != null)) {
+				((InvestmentTxn) txn).getSecurity().addTransaction((InvestmentTxn) txn);
+			}
+			break;
+		}
+
+		case REC_TXN_REMOVED: {
+			SimpleTxn txn = snapshot.readTxn(rec);
+
+			if (txn != null) {
+				if (txn instanceof GenericTxn) {
+					txn.getAccount().removeTransaction((GenericTxn) txn);
+				}
+
+				this.model.removeTransaction(txn);
+			}
+			break;
+		}
+
+		case REC_TXN_DATE: {
+			GenericTxn txn = (GenericTxn) snapshot.readTxn(rec);
+			QDate date = Snapshot.readDate(rec);
+
+			if (txn != null) {
+				txn.setDate(date);
+			}
+			break;
+		}
+
+		case REC_TXN_AMOUNT: {
+			SimpleTxn txn = snapshot.readTxn(rec);
+			BigDecimal amount = Snapshot.readDecimal(rec);
+
+			if (txn != null) {
+				txn.setAmount(amount);
+			}
+			break;
+		}
+
+		case REC_TXN_CLEARED:
+		case REC_TXN_UNCLEARED: {
+			int acctid = rec.getInt();
+			Statement stmt = findStatement(acctid, Snapshot.readDate(rec), newStatements);
+			GenericTxn txn = (GenericTxn) snapshot.readTxn(rec);
+
+			if ((stmt == null) || (txn == null)) {
+				break;
+			}
+
+			if (type == REC_TXN_UNCLEARED) {
+				stmt.unclearTransaction(txn);
+			} else if (!stmt.transactions.contains(txn)) {
+				if (!stmt.unclearedTransactions.contains(txn)) {
+					stmt.unclearedTransactions.add(txn);
+				}
+
+				stmt.clearTransaction(txn);
+			}
+			break;
+		}
+
+		case REC_STATEMENT_ADDED: {
+			int acctid = rec.getInt();
+			Statement stmt = findStatement(acctid, Snapshot.readDate(rec), newStatements);
+			Snapshot.readDate(rec);
+			stmt.setIsBalanced(Snapshot.readBoolean(rec));
+			Snapshot.readDecimal(rec);
+			Snapshot.readDecimal(rec);
+
+			for (int nn = rec.getInt(); nn > 0; --nn) {
+				GenericTxn txn = (GenericTxn) snapshot.readTxn(rec);
+
+				if ((txn != null) && !stmt.transactions.contains(txn)) {
+					stmt.addTransaction(txn);
+				}
+			}
+
+			for (int nn = rec.getInt(); nn > 0; --nn) {
+				SecurityPosition pos = stmt.holdings.getPosition(rec.getInt());
+
+				pos.setExpectedEndingShares(Snapshot.readDecimal(rec));
+				pos.setEndingValue(Snapshot.readDecimal(rec));
+			}
+
+			this.model.getAccountByID(acctid).addStatement(stmt);
+			break;
+		}
+
+		case REC_LOT_ADDED: {
+			int lotid = rec.getInt();
+
+			if (this.model.getLot(lotid) == null) {
+				snapshot.readLot(rec, lotid);
+			}
+			break;
+		}
+
+		case REC_OPTION_ADDED: {
+			int optid = rec.getInt();
+
+			if (this.model.getStockOption(optid) == null) {
+				StockOption opt = snapshot.readOption(rec, optid);
+
+				if (opt.transaction != null) {
+					opt.transaction.setOption(opt);
+				}
+			}
+			break;
+		}
+		}
+	}
+}
@@ -1,24 +1,22 @@
 package moneymgr.io.mm;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
-
-import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
@@ -56,9 +54,10 @@ import moneymgr.util.QDate;
  */
 /** Read/write data in native (JSON) format */
 public class Persistence {
+	/** Escape special/non-ascii characters in a string value */
 	private static String encodeString(String s) {
 		if (s == null) {
-			return "\"\"";
+			return "";
 		}
 
 		StringBuilder sb = new StringBuilder(s);
@@ -104,7 +103,7 @@ public class Persistence {
 			}
 		}
 
-		return String.format("\"%s\"", sb.toString());
+		return sb.toString();
 	}
 
 	private static String encodeAmount3(BigDecimal amt) {
@@ -236,564 +235,401 @@ public class Persistence {
 		}
 	}
 
-	private PrintStream wtr;
+	/** Buffer size for reading/writing model files */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private JsonWriter wtr;
 	private MoneyMgrModel model;
-	private JSONObject jsonModel;
+
+	/** Sections read before the transactions they refer to (older files) */
+	private final Map<String, List<List<Object>>> deferredSections = new LinkedHashMap<>();
+	private boolean transactionsLoaded = false;
+
+	/** Transactions for each security, connected once transactions are loaded */
+	private final Map<Integer, int[]> securityTxids = new LinkedHashMap<>();
+	private boolean securityTransactionsLoaded = false;
+
+	/** Lots for each transaction, connected once lots are loaded */
+	private final Map<Integer, int[][]> transactionLotids = new HashMap<>();
 
 	public Persistence() {
 	}
 
-	private void saveCategories_gson() {
-		try {
-			JsonWriter writer = new JsonWriter(new FileWriter("/tmp/cat.json"));
-			writer.beginObject();
-			writer.name("Categories");
-			writer.beginArray();
-
-			for (int catid = 1; catid < this.model.nextCategoryID(); ++catid) {
-				Category cat = this.model.getCategory(catid);
-
-				writer.beginObject();
-				writer.name("id").value(cat.catid);
-				writer.name("name").value(cat.name);
-				writer.name("desc").value(cat.description);
-				writer.name("isexpense").value(cat.isExpense);
-				writer.endObject();
-			}
+	/** Begin a section - an array of tuples with a header tuple of names */
+	private void beginSection(String name, String... columns) throws IOException {
+		this.wtr.name(name);
+		this.wtr.beginArray();
 
-			writer.endArray();
-			writer.endObject();
-			writer.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		this.wtr.beginArray();
+		for (String column : columns) {
+			this.wtr.value(column);
 		}
+		this.wtr.endArray();
 	}
 
-	private void saveCategories() {
-		saveCategories_gson();
+	private void endSection() throws IOException {
+		this.wtr.endArray();
+	}
 
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"Categories\": [");
-		// ------------------------------------------------
+	/** Placeholder for an unused id */
+	private void writeEmptyTuple() throws IOException {
+		this.wtr.beginArray();
+		this.wtr.value(0);
+		this.wtr.endArray();
+	}
 
-		wtr.print("  [\"id\",\"name\",\"desc\",\"isExpense\"]");
-		String sep = ",";
-		int id = 1;
-		for (int catid = 1; catid < this.model.nextCategoryID(); ++catid) {
-			while (id++ < catid) {
-				wtr.println(sep);
-				wtr.print("  [0]");
-			}
+	private void writeString(String s) throws IOException {
+		this.wtr.value(encodeString(s));
+	}
+
+	private void writeAmount(BigDecimal amt) throws IOException {
+		this.wtr.value(encodeAmount(amt));
+	}
 
+	private void writeDate(QDate date) throws IOException {
+		this.wtr.value((date != null) ? date.getRawValue() : 0);
+	}
+
+	private void writeTxid(SimpleTxn txn) throws IOException {
+		this.wtr.value((txn != null) ? txn.getTxid() : 0);
+	}
+
+	private void writeLotids(List<Lot> lots) throws IOException {
+		this.wtr.beginArray();
+		for (Lot lot : lots) {
+			this.wtr.value(lot.lotid);
+		}
+		this.wtr.endArray();
+	}
+
+	private void saveCategories() throws IOException {
+		beginSection("Categories", "id", "name", "desc", "isExpense");
+
+		for (int catid = 1; catid < this.model.nextCategoryID(); ++catid) {
 			Category cat = this.model.getCategory(catid);
 
-			String line;
 			if (cat == null) {
-				line = "  [0]";
-			} else {
-				line = String.format("  [%d,%s,%s,%s]", //
-						cat.catid, //
-						encodeString(cat.name), //
-						encodeString(cat.description), //
-						cat.isExpense);
+				writeEmptyTuple();
+				continue;
 			}
 
-			wtr.println(sep);
-			wtr.print(line);
+			this.wtr.beginArray();
+			this.wtr.value(cat.catid);
+			writeString(cat.name);
+			writeString(cat.description);
+			this.wtr.value(cat.isExpense);
+			this.wtr.endArray();
 		}
 
-		wtr.println();
-		wtr.println("]");
+		endSection();
 	}
 
-	private void saveBasicInfo() {
-		String sep = "";
+	private void saveBasicInfo() throws IOException {
+		beginSection("AccountTypes", "id", "name", "isAsset", "isInvestment", "isCash");
 
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"AccountTypes\": [");
-		// ------------------------------------------------
-
-		wtr.print("  [\"id\",\"name\",\"isAsset\",\"isInvestment\",\"isCash\"]");
 		int id = 1;
-		sep = ",";
 		for (AccountType at : AccountType.values()) {
 			while (id++ < at.id) {
-				wtr.println(sep);
-				wtr.print("  [0]");
+				writeEmptyTuple();
 			}
 
-			String line = String.format("  [%d,%s,%s,%s,%s]", //
-					at.id, //
-					encodeString(at.name), //
-					at.isAsset, //
-					at.isInvestment, //
-					at.isCash);
-
-			wtr.println(sep);
-			wtr.print(line);
+			this.wtr.beginArray();
+			this.wtr.value(at.id);
+			writeString(at.name);
+			this.wtr.value(at.isAsset);
+			this.wtr.value(at.isInvestment);
+			this.wtr.value(at.isCash);
+			this.wtr.endArray();
 		}
 
-		wtr.println();
-		wtr.println("],");
+		endSection();
 
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"AccountCategories\": [");
-		// ------------------------------------------------
+		beginSection("AccountCategories", "label", "isAsset", "[accountType]");
 
-		wtr.print("  [\"label\",\"isAsset\",\"[accountType]\"]");
-		sep = ",";
 		for (AccountCategory ac : AccountCategory.values()) {
-			String line = String.format("  [%s,%s,[", //
-					encodeString(ac.label), //
-					ac.isAsset);
+			this.wtr.beginArray();
+			writeString(ac.label);
+			this.wtr.value(ac.isAsset);
 
-			String sep2 = "";
+			this.wtr.beginArray();
 			for (AccountType at : ac.accountTypes) {
-				line += String.format("%s%s", sep2, at.id);
-				sep2 = ",";
+				this.wtr.value(at.id);
 			}
-			line += "]]";
+			this.wtr.endArray();
 
-			wtr.println(sep);
-			wtr.print(line);
+			this.wtr.endArray();
 		}
 
-		wtr.println();
-		wtr.println("]");
+		endSection();
 	}
 
-	private void saveAccounts() {
-		String sep = "";
+	private void saveAccounts() throws IOException {
+		beginSection("Accounts", "acctid", "name", "accttypeid", "desc", //
+				"closedate", "statfreq", "statday", "bal", "clearbal");
 
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"Accounts\": [");
-		// ------------------------------------------------
-
-		wtr.print(
-				"  [\"acctid\",\"name\",\"accttypeid\",\"desc\",\"closedate\",\"statfreq\",\"statday\",\"bal\",\"clearbal\"]");
-		sep = ",";
 		List<Account> accts = this.model.getAccountsById();
 		for (int acctid = 1; acctid < accts.size(); ++acctid) {
 			Account ac = accts.get(acctid);
-			String line;
 
 			if (ac == null) {
-				line = "  [0]";
-			} else {
-				int close = (ac.getCloseDate() != null) ? ac.getCloseDate().getRawValue() : 0;
-
-				line = String.format("  [%d,%s,%d,%s,%d,%d,%d,%s,%s]", //
-						ac.acctid, //
-						encodeString(ac.name), //
-						ac.type.id, //
-						// ac.acctCategory.label, //
-						encodeString(ac.description), //
-						close, //
-						ac.getStatementFrequency(), //
-						ac.getStatementDay(), //
-						encodeAmount(ac.getBalance()), //
-						encodeAmount(ac.getClearedBalance()));
-
-				// TODO ac.securities
+				writeEmptyTuple();
+				continue;
 			}
 
-			wtr.println(sep);
-			wtr.print(line);
+			this.wtr.beginArray();
+			this.wtr.value(ac.acctid);
+			writeString(ac.name);
+			this.wtr.value(ac.type.id);
+			writeString(ac.description);
+			writeDate(ac.getCloseDate());
+			this.wtr.value(ac.getStatementFrequency());
+			this.wtr.value(ac.getStatementDay());
+			writeAmount(ac.getBalance());
+			writeAmount(ac.getClearedBalance());
+			// TODO ac.securities
+			this.wtr.endArray();
 		}
 
-		wtr.println();
-		wtr.println("]");
+		endSection();
 	}
 
-	void saveSecurities() {
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"Securities\": [");
-		// ------------------------------------------------
+	void saveSecurities() throws IOException {
+		beginSection("Securities", "secid", "symbol", "[name]", "type", "goal", //
+				"[txn]", "[split]", "[[date,price]]");
 
-		wtr.print("  [\"secid\",\"symbol\",\"[name]\",\"type\",\"goal\",\"[txn]\",\"[split]\",\"[[date,price]]\"]");
-
-		final String sep = ",";
 		List<Security> securities = this.model.getSecuritiesById();
 		for (int secid = 1; secid < securities.size(); ++secid) {
 			Security sec = securities.get(secid);
-			String line;
 
 			if (sec == null) {
-				line = "  [0]";
-			} else {
-				String secNames = "[";
-				String sep2 = "";
-				for (String name : sec.names) {
-					secNames += sep2;
-					secNames += String.format("%s", encodeString(name));
-					sep2 = ",";
-				}
-				secNames += "]";
-
-				String txns = "[";
-				sep2 = "";
-				for (InvestmentTxn txn : sec.getTransactions()) {
-					txns += sep2;
-					txns += String.format("%d", txn.getTxid());
-					sep2 = ",";
-				}
-				txns += "]";
-
-				String splits = "[";
-				sep2 = "";
-				for (StockSplitInfo split : sec.splits) {
-					splits += sep2;
-					// TODO probably wrong format for ratio
-					splits += String.format("[%d,\"%f\"]", //
-							split.splitDate.getRawValue(), //
-							split.splitRatio);
-					sep2 = ",";
-				}
-				splits += "]";
-
-				String prices = "[\n";
-				int count = 0;
-				sep2 = "";
-				prices += "      ";
-				for (QPrice price : sec.prices) {
-					prices += sep2;
-
-					if (count++ == 4) {
-						count = 1;
-						prices += "\n";
-						prices += "      ";
-					}
+				writeEmptyTuple();
+				continue;
+			}
 
-					prices += String.format("[%d,%s,%s]", //
-							price.date.getRawValue(), //
-							encodeAmount3(price.getPrice()), //
-							encodeAmount3(price.getSplitAdjustedPrice()));
-					sep2 = ",";
-				}
+			this.wtr.beginArray();
+			this.wtr.value(sec.secid);
+			writeString(sec.symbol);
 
-				if (count > 0) {
-					prices += "\n";
-				}
-				prices += "    ]";
-
-				line = String.format("  [%d,%s,%s,%s,%s,\n    %s,\n    %s,\n    %s\n  ]", //
-						sec.secid, //
-						encodeString(sec.symbol), //
-						secNames, //
-						encodeString(sec.type), //
-						encodeString(sec.goal), //
-						txns, //
-						splits, //
-						prices);
+			this.wtr.beginArray();
+			for (String name : sec.names) {
+				writeString(name);
+			}
+			this.wtr.endArray();
+
+			writeString(sec.type);
+			writeString(sec.goal);
+
+			this.wtr.beginArray();
+			for (InvestmentTxn txn : sec.getTransactions()) {
+				this.wtr.value(txn.getTxid());
+			}
+			this.wtr.endArray();
+
+			this.wtr.beginArray();
+			for (StockSplitInfo split : sec.splits) {
+				this.wtr.beginArray();
+				this.wtr.value(split.splitDate.getRawValue());
+				// TODO probably wrong format for ratio
+				this.wtr.value(String.format("%f", split.splitRatio));
+				this.wtr.endArray();
+			}
+			this.wtr.endArray();
+
+			this.wtr.beginArray();
+			for (QPrice price : sec.getPrices()) {
+				this.wtr.beginArray();
+				this.wtr.value(price.date.getRawValue());
+				writeAmount(price.getPrice());
+				writeAmount(price.getSplitAdjustedPrice());
+				this.wtr.endArray();
 			}
+			this.wtr.endArray();
 
-			wtr.println(sep);
-			wtr.print(line);
+			this.wtr.endArray();
 		}
 
-		wtr.println();
-		wtr.println("]");
+		endSection();
 	}
 
-	void saveLots() {
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"Lots\": [");
-		// ------------------------------------------------
+	void saveLots() throws IOException {
+		beginSection("Lots", "lotid", "date", "acctid", "secid", "shares", //
+				"basisprice", "createTxid", "disposeTxid", //
+				"srcLotid", "[childLotid]");
 
-		wtr.print("  [\"lotid\",\"date\",\"acctid\",\"secid\",\"shares\","
-				+ "\"basisprice\",\"createTxid\",\"disposeTxid\"," //
-				+ "\"srcLotid\",\"[childLotid]\"]");
-
-		final String sep = ",";
 		List<Lot> lots = this.model.getLots();
 		for (int lotid = 1; lotid < lots.size(); ++lotid) {
 			Lot lot = lots.get(lotid);
 
-			String line;
 			if (lot == null) {
-				line = "  [0]";
-			} else {
-				String childlots = "[";
-				String sep2 = "";
-				for (Lot child : lot.getChildLots()) {
-					childlots += sep2 + child.lotid;
-					sep2 = ",";
-				}
-				childlots += "]";
-
-				line = String.format("  [%d,%s,%d,%d,%s,%s,%d,%d,%d,%s]", //
-						lot.lotid, //
-						lot.createDate.getRawValue(), //
-						lot.acctid, //
-						lot.secid, //
-						encodeAmount3(lot.shares), //
-						encodeAmount3(lot.basisPrice), //
-						lot.createTransaction.getTxid(), //
-						((lot.getDisposingTransaction() != null) ? lot.getDisposingTransaction().getTxid() : 0), //
-						((lot.getSourceLot() != null) ? lot.getSourceLot().lotid : 0), //
-						childlots);
+				writeEmptyTuple();
+				continue;
 			}
 
-			wtr.println(sep);
-			wtr.print(line);
+			this.wtr.beginArray();
+			this.wtr.value(lot.lotid);
+			writeDate(lot.createDate);
+			this.wtr.value(lot.acctid);
+			this.wtr.value(lot.secid);
+			writeAmount(lot.shares);
+			writeAmount(lot.basisPrice);
+			writeTxid(lot.createTransaction);
+			writeTxid(lot.getDisposingTransaction());
+			this.wtr.value((lot.getSourceLot() != null) ? lot.getSourceLot().lotid : 0);
+			writeLotids(lot.getChildLots());
+			this.wtr.endArray();
 		}
 
-		wtr.println();
-		wtr.println("]");
+		endSection();
 	}
 
-	void saveOptions() {
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"Options\": [");
-		// ------------------------------------------------
-
-		wtr.print("  [\"optid\",\"name\",\"date\",\"acctid\",\"secid\",\"shares\",\"strikeprice\",\"marketprice\"," //
-				+ "  \"cost\",\"origmarketvalue\",\"lifetimemonths\",\"vestfreq\",\"vestcount\",\"txid\",\"canceldate\",\"srcoptid\"" //
-				+ "]");
+	void saveOptions() throws IOException {
+		beginSection("Options", "optid", "name", "date", "acctid", "secid", //
+				"shares", "strikeprice", "marketprice", "cost", "origmarketvalue", //
+				"lifetimemonths", "vestfreq", "vestcount", "txid", "canceldate", "srcoptid");
 
-		final String sep = ",";
 		List<StockOption> opts = this.model.getStockOptions();
 		for (int optid = 1; optid < opts.size(); ++optid) {
 			StockOption opt = opts.get(optid);
 
-			String line;
 			if (opt == null) {
-				line = "  [0]";
-			} else {
-				line = String.format("  [%d,%s,%d,%d,%d,%s,%s,%s,%s,%s,%s,%d,%d,%d,%d,%d]", //
-						opt.optid, //
-						encodeString(opt.name), //
-						opt.date.getRawValue(), //
-						opt.acctid, //
-						opt.secid, //
-						encodeAmount3(opt.grantShares), //
-						encodeAmount3(opt.strikePrice), //
-						encodeAmount3(opt.marketPrice), //
-						encodeAmount(opt.cost), //
-						encodeAmount(opt.marketValueAtPurchase), //
-						opt.lifetimeMonths, //
-						opt.vestFrequencyMonths, //
-						opt.vestCount, //
-						// opt.vestCurrent, //
-						// opt.sharesRemaining, //
-						((opt.transaction != null) ? opt.transaction.getTxid() : 0), //
-						((opt.cancelDate != null) ? opt.cancelDate.getRawValue() : 0), //
-						((opt.srcOption != null) ? opt.srcOption.optid : 0));
+				writeEmptyTuple();
+				continue;
 			}
 
-			wtr.println(sep);
-			wtr.print(line);
+			this.wtr.beginArray();
+			this.wtr.value(opt.optid);
+			writeString(opt.name);
+			writeDate(opt.date);
+			this.wtr.value(opt.acctid);
+			this.wtr.value(opt.secid);
+			writeAmount(opt.grantShares);
+			writeAmount(opt.strikePrice);
+			writeAmount(opt.marketPrice);
+			writeAmount(opt.cost);
+			writeAmount(opt.marketValueAtPurchase);
+			this.wtr.value(opt.lifetimeMonths);
+			this.wtr.value(opt.vestFrequencyMonths);
+			this.wtr.value(opt.vestCount);
+			// opt.vestCurrent, opt.sharesRemaining
+			writeTxid(opt.transaction);
+			writeDate(opt.cancelDate);
+			this.wtr.value((opt.srcOption != null) ? opt.srcOption.optid : 0);
+			this.wtr.endArray();
 		}
 
-		wtr.println();
-		wtr.println("]");
+		endSection();
 	}
 
-	void saveTransactions() {
+	void saveTransactions() throws IOException {
 		int errcount[] = { 0, 0 };
-		String line;
 
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"Transactions\": [");
-		// ------------------------------------------------
+		beginSection("Transactions", "id", "date", "statdate", "acctid", "xtxid", "action", //
+				"payee", "cknum", "memo", "amt", "cat", //
+				"secid", "secaction", "shares", "shareprice", "splitratio", //
+				"optid", "[split]", "[secxfer]", "[lot]", //
+				"xacct", "xfercash", "commission");
 
-		wtr.print("  [\"id\",\"date\",\"statdate\",\"acctid\",\"xtxid\",\"action\"," //
-				+ "\"payee\",\"cknum\",\"memo\",\"amt\",\"cat\"," //
-				+ "\"secid\",\"secaction\",\"shares\",\"shareprice\",\"splitratio\"," //
-				+ "\"optid\",\"[split]\",\"[secxfer]\",\"[lot]\"," //
-				+ "\"xacct\",\"xfercash\",\"commission\"" //
-				+ "]");
-
-		final String sep = ",";
 		List<SimpleTxn> txns = this.model.getAllTransactions();
 		for (int txid = 1; txid < txns.size(); ++txid) {
 			SimpleTxn tx = txns.get(txid);
 
 			if (tx == null) {
-				line = "  [0]";
-			} else {
-				String splits = "[";
-
-				String sep1 = "";
-				for (SplitTxn split : tx.getSplits()) {
-					splits += sep1;
-
-					if (split instanceof MultiSplitTxn) {
-						splits += String.format("[%d,[", split.getTxid());
-
-						String sep2 = "";
-						for (SplitTxn ssplit : ((MultiSplitTxn) split).getSplits()) {
-							splits += sep2;
-							splits += String.format("%d", ssplit.getTxid());
-							sep2 = ",";
-						}
-
-						splits += "]]";
-					} else {
-						splits += String.format("%d", split.getTxid());
-					}
-
-					sep1 = ",";
-				}
-				splits += "]";
-
-				// SimpleTxn
-				// DERIVED tx.getCashAmount()
-				// DERIVED, not implemented tx.getGain()
-				// DERIVED tx.isCredit()
-				//
-				// GenericTxn
-				// NonInvestmentTxn
-				// InvestmentTxn
-
-				int sdate = (tx.isCleared()) //
-						? tx.getStatementDate().getRawValue() //
-						: 0;
-
-				validateTransfers(tx, errcount);
-
-				int secid = tx.getSecurityId();
-				String shareaction = "";
-				BigDecimal shares = BigDecimal.ZERO;
-				BigDecimal shareprice = BigDecimal.ZERO;
-				BigDecimal splitratio = BigDecimal.ONE;
-				BigDecimal xfercash = BigDecimal.ZERO;
-				BigDecimal commission = BigDecimal.ZERO;
-
-				String xacctName = "";
-				String securityTransferTxns = "[]";
-				String lots = "[]";
-				int optid = 0;
-
-				if (tx instanceof InvestmentTxn) {
-					InvestmentTxn itx = (InvestmentTxn) tx;
-
-					xacctName = itx.getAccountForTransfer();
-					// TODO encode share action
-					shareaction = itx.getShareAction().toString();
-					shares = itx.getQuantity();
-					shareprice = itx.getPrice();
-					splitratio = itx.getSplitRatio();
-					xfercash = itx.getCashTransferred();
-					commission = itx.getCommission();
-
-					securityTransferTxns = "[";
-					String sep2 = "";
-					for (InvestmentTxn xtx : itx.getSecurityTransferTxns()) {
-						securityTransferTxns += sep2 + xtx.getTxid();
-						sep2 = ",";
-					}
-					securityTransferTxns += "]";
-
-					lots = "[";
-
-					lots += "[";
-					sep2 = "";
-					for (Lot lot : itx.getLots()) {
-						lots += sep2 + lot.lotid;
-						sep2 = ",";
-					}
+				writeEmptyTuple();
+				continue;
+			}
 
-					lots += "],[";
+			// SimpleTxn
+			// DERIVED tx.getCashAmount()
+			// DERIVED, not implemented tx.getGain()
+			// DERIVED tx.isCredit()
+			//
+			// GenericTxn
+			// NonInvestmentTxn
+			// InvestmentTxn
 
-					sep2 = "";
-					for (Lot lot : itx.getCreatedLots()) {
-						lots += sep2 + lot.lotid;
-						sep2 = ",";
-					}
+			int sdate = (tx.isCleared()) //
+					? tx.getStatementDate().getRawValue() //
+					: 0;
 
-					lots += "],[";
+			validateTransfers(tx, errcount);
 
-					sep2 = "";
-					for (Lot lot : itx.getDisposedLots()) {
-						lots += sep2 + lot.lotid;
-						sep2 = ",";
-					}
-					lots += "]";
+			InvestmentTxn itx = (tx instanceof InvestmentTxn) ? (InvestmentTxn) tx : null;
+			int optid = 0;
 
-					lots += "]";
+			if ((itx != null) && itx.isStockOptionTxn() && (itx.getOption() != null)) {
+				optid = itx.getOption().optid;
+			}
 
-					if (itx.isStockOptionTxn() && (itx.getOption() != null)) {
-						optid = itx.getOption().optid;
+			this.wtr.beginArray();
+			this.wtr.value(tx.getTxid());
+			writeDate(tx.getDate());
+			this.wtr.value(sdate);
+			this.wtr.value(tx.getAccountID());
+			writeTxid(tx.getCashTransferTxn());
+			writeString(tx.getAction().key);
+			writeString(tx.getPayee());
+			this.wtr.value(tx.getCheckNumber());
+			writeString(tx.getMemo());
+			writeAmount(tx.getAmount());
+			this.wtr.value(tx.getCatid()); // TODO catid or splits, not both
+
+			this.wtr.value(tx.getSecurityId());
+			// TODO encode share action
+			writeString((itx != null) ? itx.getShareAction().toString() : "");
+			writeAmount((itx != null) ? itx.getQuantity() : BigDecimal.ZERO);
+			writeAmount((itx != null) ? itx.getPrice() : BigDecimal.ZERO);
+			writeAmount((itx != null) ? itx.getSplitRatio() : BigDecimal.ONE);
+			this.wtr.value(optid);
+
+			this.wtr.beginArray();
+			for (SplitTxn split : tx.getSplits()) {
+				if (split instanceof MultiSplitTxn) {
+					this.wtr.beginArray();
+					this.wtr.value(split.getTxid());
+
+					this.wtr.beginArray();
+					for (SplitTxn ssplit : ((MultiSplitTxn) split).getSplits()) {
+						this.wtr.value(ssplit.getTxid());
 					}
-				}
+					this.wtr.endArray();
 
-				line = String.format("  [%d,%d,%d,%d,%d,%s,%s,%d,%s,%s,%d,%d,%s,%s,%s,%s,%d", //
-						tx.getTxid(), //
-						tx.getDate().getRawValue(), //
-						sdate, //
-						tx.getAccountID(), //
-						((tx.getCashTransferTxn() != null) ? tx.getCashTransferTxn().getTxid() : 0), //
-						encodeString(tx.getAction().key), //
-						encodeString(tx.getPayee()), //
-						tx.getCheckNumber(), //
-						encodeString(tx.getMemo()), //
-						encodeAmount(tx.getAmount()), //
-						tx.getCatid(), // TODO catid or splits, not both
-
-						secid, //
-						encodeString(shareaction), //
-						encodeAmount3(shares), //
-						encodeAmount(shareprice), //
-						encodeAmount(splitratio), //
-						optid);
-
-				line += sep;
-				if (splits.length() > 2) {
-					line += "\n    ";
-				}
-				line += splits;
-
-				line += sep;
-				if (securityTransferTxns.length() > 2) {
-					line += "\n    ";
+					this.wtr.endArray();
+				} else {
+					this.wtr.value(split.getTxid());
 				}
-				line += securityTransferTxns;
+			}
+			this.wtr.endArray();
 
-				line += sep;
-				if (lots.length() > 2) {
-					line += "\n    ";
+			this.wtr.beginArray();
+			if (itx != null) {
+				for (InvestmentTxn xtx : itx.getSecurityTransferTxns()) {
+					this.wtr.value(xtx.getTxid());
 				}
-				line += lots;
-
-				line += sep;
-				line += "\n    ";
-				line += String.format("%s,%s,%s", //
-						encodeString(xacctName), //
-						encodeAmount(xfercash), //
-						encodeAmount(commission));
+			}
+			this.wtr.endArray();
 
-				line += "]";
+			this.wtr.beginArray();
+			if (itx != null) {
+				writeLotids(itx.getLots());
+				writeLotids(itx.getCreatedLots());
+				writeLotids(itx.getDisposedLots());
 			}
+			this.wtr.endArray();
+
+			writeString((itx != null) ? itx.getAccountForTransfer() : "");
+			writeAmount((itx != null) ? itx.getCashTransferred() : BigDecimal.ZERO);
+			writeAmount((itx != null) ? itx.getCommission() : BigDecimal.ZERO);
 
-			wtr.println(sep);
-			wtr.print(line);
+			this.wtr.endArray();
 		}
 
-		wtr.println();
-		wtr.println("]");
+		endSection();
 	}
 
-	void saveStatements() {
-		String line;
-
-		// ------------------------------------------------
-		wtr.println("");
-		wtr.println("\"Statements\": [");
-		// ------------------------------------------------
+	void saveStatements() throws IOException {
+		beginSection("Statements", "acctid", "date", "isbal", "prevdate", //
+				"totbal", "cashbal", "txns", "holdings");
 
-		wtr.print("  [\"acctid\",\"date\",\"isbal\",\"prevdate\",\"totbal\",\"cashbal\",\"txns\"," //
-				+ "\"holdings\"]");
-
-		final String sep = ",";
 		for (Account acct : this.model.getAccountsById()) {
 			// TODO Assign statement id and reference/store accordingly
 			if (acct == null) {
@@ -801,149 +637,150 @@ public class Persistence {
 			}
 
 			for (Statement stmt : acct.getStatements()) {
-				String txns = "[";
-				String sep2 = "";
+				this.wtr.beginArray();
+				this.wtr.value(stmt.acctid);
+				writeDate(stmt.date);
+				this.wtr.value(stmt.isBalanced());
+				writeDate((stmt.prevStatement != null) ? stmt.prevStatement.date : null);
+				writeAmount(stmt.closingBalance);
+				writeAmount(stmt.getCashBalance());
+
+				this.wtr.beginArray();
 				for (GenericTxn tx : stmt.transactions) {
-					txns += sep2 + tx.getTxid();
-					sep2 = ",";
+					this.wtr.value(tx.getTxid());
 				}
-				txns += "]";
-
-				String prevdate = (stmt.prevStatement != null) //
-						? Integer.toString(stmt.prevStatement.date.getRawValue()) //
-						: "0";
+				this.wtr.endArray();
 
 				SecurityPortfolio h = stmt.holdings;
 
-				String holdings = "[";
-				sep2 = "";
+				this.wtr.beginArray();
 				for (SecurityPosition p : h.getPositions()) {
-					holdings += sep2 + String.format("[%d,%s,%s]", //
-							p.security.secid, //
-							encodeAmount3(p.getEndingShares()), //
-							encodeAmount(p.getEndingValue()));
-					sep2 = ",";
+					this.wtr.beginArray();
+					this.wtr.value(p.security.secid);
+					writeAmount(p.getEndingShares());
+					writeAmount(p.getEndingValue());
+					this.wtr.endArray();
 				}
-				holdings += "]";
-
-				line = String.format("  [%d,%d,%s,%s,%s,%s,\n    %s,\n    %s]", //
-						stmt.acctid, //
-						stmt.date.getRawValue(), //
-						stmt.isBalanced(), //
-						prevdate, //
-						encodeAmount(stmt.closingBalance), //
-						encodeAmount(stmt.getCashBalance()), //
-						txns, //
-						holdings);
-
-				wtr.println(sep);
-				wtr.print(line);
+				this.wtr.endArray();
+
+				this.wtr.endArray();
 			}
 		}
 
-		wtr.println();
-		wtr.println("]");
+		endSection();
 	}
 
+	/**
+	 * Save a model in JSON format.<br>
+	 * Transactions are written before the lots, options and statements that
+	 * refer to them so the file can be loaded in a single pass.
+	 */
 	public void saveJSON(MoneyMgrModel model, String filename) {
 		this.model = model;
 
-		try {
-			this.wtr = new PrintStream(filename);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			return;
-		}
-
-		wtr.println("{");
-		saveCategories();
-		wtr.println(",");
-		saveBasicInfo();
-		wtr.println(",");
-		saveAccounts();
-		wtr.println(",");
-		saveSecurities();
-		wtr.println(",");
-		saveLots();
-		wtr.println(",");
-		saveOptions();
-		wtr.println(",");
-		saveTransactions();
-		wtr.println(",");
-		saveStatements();
-		wtr.println("}");
-
-		wtr.close();
-	}
-
-	public void safeClose(Reader rdr) {
-		try {
-			if (rdr != null) {
-				rdr.close();
-			}
+		try (JsonWriter writer = new JsonWriter( //
+				new BufferedWriter(new FileWriter(filename), BUFFER_SIZE))) {
+			this.wtr = writer;
+
+			this.wtr.beginObject();
+			saveCategories();
+			saveBasicInfo();
+			saveAccounts();
+			saveSecurities();
+			saveTransactions();
+			saveLots();
+			saveOptions();
+			saveStatements();
+			this.wtr.endObject();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			this.wtr = null;
 		}
 	}
 
-	private JSONObject load(File file) {
-		JSONObject obj = null;
-		FileReader rdr = null;
+	/** Read one tuple (JSON array) into a list */
+	private static List<Object> readTuple(JsonReader rdr) throws IOException {
+		List<Object> tuple = new ArrayList<>();
 
-		try {
-			if (file.canRead()) {
-				rdr = new FileReader(file);
-				obj = (JSONObject) new JSONParser().parse(rdr);
-			}
-		} catch (IOException | ParseException e) {
-			e.printStackTrace();
-		} finally {
-			safeClose(rdr);
+		rdr.beginArray();
+		while (rdr.hasNext()) {
+			tuple.add(readValue(rdr));
 		}
+		rdr.endArray();
 
-		return obj;
+		return tuple;
 	}
 
-	public void loadMulti(File file) {
-		try {
-			Object o = loadMultiJSON(file);
-
-			JSONObject jobj = load(file);
-			if (jobj != null) {
-				System.out.println("Multi object file:");
-				System.out.println(jobj.toString());
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
+	/** Read a tuple element (nested arrays become lists, numbers Long) */
+	private static Object readValue(JsonReader rdr) throws IOException {
+		switch (rdr.peek()) {
+		case BEGIN_ARRAY:
+			return readTuple(rdr);
+		case NUMBER:
+			return Long.valueOf(rdr.nextLong());
+		case BOOLEAN:
+			return Boolean.valueOf(rdr.nextBoolean());
+		case STRING:
+			return rdr.nextString();
+		case NULL:
+			rdr.nextNull();
+			return null;
+		default:
+			rdr.skipValue();
+			return null;
 		}
 	}
 
-	public void loadMulti(String filename) {
+	/** The tuples in a section, read from the file one at a time */
+	private static Iterable<List<Object>> sectionTuples(JsonReader rdr) {
+		return () -> new Iterator<List<Object>>() {
+			public boolean hasNext() {
+				try {
+					return rdr.hasNext();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			public List<Object> next() {
+				try {
+					return readTuple(rdr);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
 	}
 
+	/** Load a model from a JSON file, processing each section as it is read */
 	public MoneyMgrModel loadJSON(String modelName, String filename) {
-		File multi = new File("/tmp/multi.json");
-		if (multi.canRead()) {
-			loadMulti(multi);
-		}
-
 		this.model = MoneyMgrModel.changeModel(modelName);
 
 		File file = new File(filename);
+		if (!file.canRead()) {
+			return null;
+		}
+
+		try (JsonReader rdr = new JsonReader( //
+				new BufferedReader(new FileReader(file), BUFFER_SIZE))) {
+			rdr.beginObject();
+
+			while (rdr.hasNext()) {
+				String section = rdr.nextName();
+
+				rdr.beginArray();
+				processSection(section, sectionTuples(rdr));
+				rdr.endArray();
+			}
 
-		this.jsonModel = load(file);
-		if (this.jsonModel == null) {
+			rdr.endObject();
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
 			return null;
 		}
 
-		processCategories();
-		processAccounts();
-		processSecurities();
-		processTransactions();
-		processLots();
-		processOptions();
 		processSecurityTransactions();
-		processStatements();
 
 		/**
 		 * To reconstruct the data completely, do the following:<br>
@@ -966,17 +803,74 @@ public class Persistence {
 		return this.model;
 	}
 
-	private void processCategories() {
+	/**
+	 * Process the tuples in a section of the file.<br>
+	 * Sections that refer to transactions are held until the transactions are
+	 * loaded (older files have lots/options before transactions).
+	 */
+	private void processSection(String section, Iterable<List<Object>> tuples) {
+		switch (section) {
+		case "Categories":
+			processCategories(tuples);
+			break;
+
+		case "Accounts":
+			processAccounts(tuples);
+			break;
+
+		case "Securities":
+			processSecurities(tuples);
+			break;
+
+		case "Transactions":
+			this.model.beginBulkLoad();
+			processTransactions(tuples);
+			this.model.endBulkLoad();
+
+			this.transactionsLoaded = true;
+
+			for (Map.Entry<String, List<List<Object>>> entry : this.deferredSections.entrySet()) {
+				processSection(entry.getKey(), entry.getValue());
+			}
+
+			this.deferredSections.clear();
+			break;
+
+		case "Lots":
+		case "Options":
+		case "Statements":
+			if (!this.transactionsLoaded) {
+				List<List<Object>> deferred = new ArrayList<>();
+				tuples.forEach(deferred::add);
+
+				this.deferredSections.put(section, deferred);
+			} else if (section.equals("Lots")) {
+				processLots(tuples);
+			} else if (section.equals("Options")) {
+				processOptions(tuples);
+			} else {
+				processSecurityTransactions();
+				processStatements(tuples);
+			}
+			break;
+
+		default:
+			// Information we don't load (AccountTypes, etc)
+			for (@SuppressWarnings("unused")
+			List<Object> tuple : tuples) {
+			}
+			break;
+		}
+	}
+
+	private void processCategories(Iterable<List<Object>> tuples) {
 		int CATID = -1;
 		int NAME = -1;
 		int DESC = -1;
 		int EXP = -1;
 
 		boolean first = true;
-		JSONArray cats = (JSONArray) this.jsonModel.get("Categories");
-
-		for (Object catobj : cats) {
-			JSONArray tuple = (JSONArray) catobj;
+		for (List<Object> tuple : tuples) {
 
 			if (first) {
 				for (int ii = 0; ii < tuple.size(); ++ii) {
@@ -1005,7 +899,7 @@ public class Persistence {
 		}
 	}
 
-	private void processAccounts() {
+	private void processAccounts(Iterable<List<Object>> tuples) {
 		int ACCTID = -1;
 		int NAME = -1;
 		int ACCTTYPEID = -1;
@@ -1017,10 +911,7 @@ public class Persistence {
 //		int CLEARBAL = -1;
 
 		boolean first = true;
-		JSONArray accts = (JSONArray) this.jsonModel.get("Accounts");
-
-		for (Object acctobj : accts) {
-			JSONArray tuple = (JSONArray) acctobj;
+		for (List<Object> tuple : tuples) {
 			if (first) {
 				for (int ii = 0; ii < tuple.size(); ++ii) {
 					String s = (String) tuple.get(ii);
@@ -1072,39 +963,19 @@ public class Persistence {
 		}
 	}
 
+	/** Connect securities and their transactions, once transactions are loaded */
 	private void processSecurityTransactions() {
-		int SECID = -1;
-		int TXNS = -1;
-		boolean first = true;
-
-		JSONArray secs = (JSONArray) this.jsonModel.get("Securities");
-
-		for (Object secobj : secs) {
-			JSONArray tuple = (JSONArray) secobj;
-
-			if (first) {
-				for (int ii = 0; ii < tuple.size(); ++ii) {
-					String s = (String) tuple.get(ii);
-
-					if (s.equalsIgnoreCase("secid")) {
-						SECID = ii;
-					} else if (s.equalsIgnoreCase("[txn]")) {
-						TXNS = ii;
-					}
-				}
+		if (this.securityTransactionsLoaded || !this.transactionsLoaded) {
+			return;
+		}
 
-				first = false;
-			} else {
-				int secid = ((Long) tuple.get(SECID)).intValue();
-				Security sec = this.model.getSecurity(secid);
+		for (Map.Entry<Integer, int[]> entry : this.securityTxids.entrySet()) {
+			Security sec = this.model.getSecurity(entry.getKey().intValue());
 
-				JSONArray jtxns = (JSONArray) tuple.get(TXNS);
-				for (Object txidobj : jtxns) {
-					int txid = ((Long) txidobj).intValue();
-					SimpleTxn txn = this.model.getTransaction(txid);
+			for (int txid : entry.getValue()) {
+				SimpleTxn txn = this.model.getTransaction(txid);
 
-					sec.addTransaction((InvestmentTxn) txn);
-				}
+				sec.addTransaction((InvestmentTxn) txn);
 			}
 		}
 
@@ -1116,9 +987,12 @@ public class Persistence {
 				tx.getAccount().securities.addTransaction(gtx);
 			}
 		}
+
+		this.securityTxids.clear();
+		this.securityTransactionsLoaded = true;
 	}
 
-	private void processSecurities() {
+	private void processSecurities(Iterable<List<Object>> tuples) {
 		int SECID = -1;
 		int SYMBOL = -1;
 		int NAMES = -1;
@@ -1130,10 +1004,7 @@ public class Persistence {
 		// TODO security txns
 
 		boolean first = true;
-		JSONArray secs = (JSONArray) this.jsonModel.get("Securities");
-
-		for (Object secobj : secs) {
-			JSONArray tuple = (JSONArray) secobj;
+		for (List<Object> tuple : tuples) {
 
 			if (first) {
 				for (int ii = 0; ii < tuple.size(); ++ii) {
@@ -1165,7 +1036,7 @@ public class Persistence {
 				String type = decodeString((String) tuple.get(TYPE));
 				String goal = decodeString((String) tuple.get(GOAL));
 
-				JSONArray jnames = (JSONArray) tuple.get(NAMES);
+				List<?> jnames = (List<?>) tuple.get(NAMES);
 				List<String> names = new ArrayList<String>();
 				for (Object jname : jnames) {
 					String name = (String) jname;
@@ -1176,12 +1047,14 @@ public class Persistence {
 
 				Security sec = new Security(symbol, name, type, goal);
 
-				sec.names.addAll(names);
+				for (String altname : names) {
+					sec.addName(altname);
+				}
 
-				JSONArray jprices = (JSONArray) tuple.get(PRICES);
+				List<?> jprices = (List<?>) tuple.get(PRICES);
 				List<QPrice> prices = new ArrayList<QPrice>();
 				for (Object jprice : jprices) {
-					JSONArray jpriceinfo = (JSONArray) jprice;
+					List<?> jpriceinfo = (List<?>) jprice;
 
 					int rawdate = ((Long) jpriceinfo.get(0)).intValue();
 					QDate date = QDate.fromRawData(rawdate);
@@ -1193,9 +1066,9 @@ public class Persistence {
 					sec.addPrice(qprice);
 				}
 
-				JSONArray jsplits = (JSONArray) tuple.get(SPLITS);
+				List<?> jsplits = (List<?>) tuple.get(SPLITS);
 				for (Object jsplit : jsplits) {
-					JSONArray jsplitinfo = (JSONArray) jsplit;
+					List<?> jsplitinfo = (List<?>) jsplit;
 
 					int rawdate = ((Long) jsplitinfo.get(0)).intValue();
 					QDate date = QDate.fromRawData(rawdate);
@@ -1205,8 +1078,8 @@ public class Persistence {
 					sec.splits.add(split);
 				}
 
-				// TODO process security transactions
-				Object txns = tuple.get(TXNS);
+				// Security transactions are connected after loading transactions
+				this.securityTxids.put(Integer.valueOf(secid), getIds((List<?>) tuple.get(TXNS)));
 
 				this.model.addSecurity(sec);
 			}
@@ -1224,28 +1097,18 @@ public class Persistence {
 	int XFERCASH = -1;
 	int COMMISSION = -1;
 
-	private int[][] getTransactionLotids(JSONObject json, int txid) {
-		int[][] ret = new int[3][];
-
-		JSONArray txns = (JSONArray) json.get("Transactions");
-		JSONArray txn = (JSONArray) txns.get(txid);
-		JSONArray txnlotids = (JSONArray) txn.get(LOTS);
-
-		for (int idx = 0; idx < ret.length; ++idx) {
-			JSONArray lotids = (JSONArray) txnlotids.get(idx);
-
-			int ids[] = new int[lotids.size()];
-			ret[idx] = ids;
+	/** Convert a list of ids read from the file to an array */
+	private static int[] getIds(List<?> jids) {
+		int ids[] = new int[jids.size()];
 
-			for (int ii = 0; ii < lotids.size(); ++ii) {
-				ids[ii] = ((Long) lotids.get(ii)).intValue();
-			}
+		for (int ii = 0; ii < ids.length; ++ii) {
+			ids[ii] = ((Long) jids.get(ii)).intValue();
 		}
 
-		return ret;
+		return ids;
 	}
 
-	private void processTransactions() {
+	private void processTransactions(Iterable<List<Object>> tuples) {
 		int TXID = -1;
 		int DATE = -1;
 		int STATDATE = -1;
@@ -1263,10 +1126,7 @@ public class Persistence {
 		Set<Integer> pendingTransfers = new HashSet<Integer>();
 
 		boolean first = true;
-		JSONArray txns = (JSONArray) this.jsonModel.get("Transactions");
-
-		for (Object txnobj : txns) {
-			JSONArray tuple = (JSONArray) txnobj;
+		for (List<Object> tuple : tuples) {
 
 			if (first) {
 				for (int ii = 0; ii < tuple.size(); ++ii) {
@@ -1383,7 +1243,7 @@ public class Persistence {
 				stx.setCheckNumber(Integer.toString(cknum));
 				stx.setStatementDate(stmtdate);
 
-				JSONArray splits = ((JSONArray) tuple.get(SPLITS));
+				List<?> splits = (List<?>) tuple.get(SPLITS);
 
 				int count = splits.size();
 				for (Object splitobj : splits) {
@@ -1403,7 +1263,7 @@ public class Persistence {
 						}
 
 					} else {
-						JSONArray split = (JSONArray) splitobj;
+						List<?> split = (List<?>) splitobj;
 
 						int splitid = ((Long) split.get(0)).intValue();
 
@@ -1411,7 +1271,7 @@ public class Persistence {
 						this.model.addTransaction(mstxn);
 						stxn = mstxn;
 
-						for (Object subsplitobj : (JSONArray) split.get(1)) {
+						for (Object subsplitobj : (List<?>) split.get(1)) {
 							int ssplitid = ((Long) subsplitobj).intValue();
 
 							SplitTxn sstxn;
@@ -1445,7 +1305,7 @@ public class Persistence {
 		}
 	}
 
-	private void handleTransactionSecurity(InvestmentTxn itx, JSONArray tuple, int secid) {
+	private void handleTransactionSecurity(InvestmentTxn itx, List<Object> tuple, int secid) {
 		Security sec = this.model.getSecurity(secid);
 		itx.setSecurity(sec);
 
@@ -1468,7 +1328,7 @@ public class Persistence {
 			itx.setQuantity(shares);
 		}
 
-		JSONArray secxfers = ((JSONArray) tuple.get(SECXFERS));
+		List<?> secxfers = (List<?>) tuple.get(SECXFERS);
 		for (Object xferobj : secxfers) {
 			int xferid = ((Long) xferobj).intValue();
 
@@ -1478,11 +1338,24 @@ public class Persistence {
 			}
 		}
 
-		JSONArray lots = ((JSONArray) tuple.get(LOTS));
-		// TODO there are no lots yet
+		// Lots don't exist yet - connect them after loading lots
+		List<?> lots = (List<?>) tuple.get(LOTS);
+		if (lots.size() == 3) {
+			int[][] lotids = new int[3][];
+			boolean haslots = false;
+
+			for (int idx = 0; idx < lotids.length; ++idx) {
+				lotids[idx] = getIds((List<?>) lots.get(idx));
+				haslots |= (lotids[idx].length > 0);
+			}
+
+			if (haslots) {
+				this.transactionLotids.put(Integer.valueOf(itx.getTxid()), lotids);
+			}
+		}
 	}
 
-	private void processLots() {
+	private void processLots(Iterable<List<Object>> tuples) {
 		int LOTID = -1;
 		int DATE = -1;
 		int ACCTID = -1;
@@ -1495,10 +1368,7 @@ public class Persistence {
 		int CHILDLOTIDS = -1;
 
 		boolean first = true;
-		JSONArray lots = (JSONArray) this.jsonModel.get("Lots");
-
-		for (Object lotobj : lots) {
-			JSONArray tuple = (JSONArray) lotobj;
+		for (List<Object> tuple : tuples) {
 
 			if (first) {
 				for (int ii = 0; ii < tuple.size(); ++ii) {
@@ -1550,7 +1420,7 @@ public class Persistence {
 				Lot srcLot = (srcLotId > 0) ? this.model.getLot(srcLotId) : null;
 
 				int nextLotid = this.model.nextLotId();
-				JSONArray childids = (JSONArray) tuple.get(CHILDLOTIDS);
+				List<?> childids = (List<?>) tuple.get(CHILDLOTIDS);
 				for (Object jchildid : childids) {
 					int childid = ((Long) jchildid).intValue();
 
@@ -1567,14 +1437,10 @@ public class Persistence {
 			}
 		}
 
-		for (SimpleTxn txn : this.model.getAllTransactions()) {
-			if (!(txn instanceof InvestmentTxn)) {
-				continue;
-			}
-
-			InvestmentTxn itxn = (InvestmentTxn) txn;
+		for (Map.Entry<Integer, int[][]> entry : this.transactionLotids.entrySet()) {
+			InvestmentTxn itxn = (InvestmentTxn) this.model.getTransaction(entry.getKey().intValue());
 
-			int[][] txlotids = getTransactionLotids(this.jsonModel, txn.getTxid());
+			int[][] txlotids = entry.getValue();
 
 			for (int idx = 0; idx < txlotids.length; ++idx) {
 				int[] lotids = txlotids[idx];
@@ -1596,9 +1462,11 @@ public class Persistence {
 				}
 			}
 		}
+
+		this.transactionLotids.clear();
 	}
 
-	private void processOptions() {
+	private void processOptions(Iterable<List<Object>> tuples) {
 		int OPTID = -1;
 		int NAME = -1;
 		int DATE = -1;
@@ -1617,10 +1485,7 @@ public class Persistence {
 		int SRCOPTID = -1;
 
 		boolean first = true;
-		JSONArray opts = (JSONArray) this.jsonModel.get("Options");
-
-		for (Object optobj : opts) {
-			JSONArray tuple = (JSONArray) optobj;
+		for (List<Object> tuple : tuples) {
 
 			if (first) {
 				for (int ii = 0; ii < tuple.size(); ++ii) {
@@ -1704,7 +1569,7 @@ public class Persistence {
 		}
 	}
 
-	private void processStatements() {
+	private void processStatements(Iterable<List<Object>> tuples) {
 		int ACCTID = -1;
 		int DATE = -1;
 		int ISBAL = -1;
@@ -1715,10 +1580,7 @@ public class Persistence {
 		int HOLDINGS = -1;
 
 		boolean first = true;
-		JSONArray stats = (JSONArray) this.jsonModel.get("Statements");
-
-		for (Object statobj : stats) {
-			JSONArray tuple = (JSONArray) statobj;
+		for (List<Object> tuple : tuples) {
 
 			if (first) {
 				for (int ii = 0; ii < tuple.size(); ++ii) {
@@ -1760,7 +1622,7 @@ public class Persistence {
 
 				stmt.setIsBalanced(isbal);
 
-				JSONArray txnids = (JSONArray) tuple.get(TXNS);
+				List<?> txnids = (List<?>) tuple.get(TXNS);
 				for (Object txnidobj : txnids) {
 					int txid = ((Long) txnidobj).intValue();
 					GenericTxn tx = this.model.getTransaction(txid);
@@ -1768,9 +1630,9 @@ public class Persistence {
 					stmt.addTransaction(tx);
 				}
 
-				JSONArray holdings = (JSONArray) tuple.get(HOLDINGS);
+				List<?> holdings = (List<?>) tuple.get(HOLDINGS);
 				for (Object hold_obj : holdings) {
-					JSONArray hold = (JSONArray) hold_obj;
+					List<?> hold = (List<?>) hold_obj;
 
 					int secid = ((Long) hold.get(0)).intValue();
 					BigDecimal qty = new BigDecimal((String) hold.get(1));
@@ -1783,77 +1645,4 @@ public class Persistence {
 			}
 		}
 	}
-
-	static class ANOTHERPOJO {
-		int id;
-		String name;
-	}
-
-	static class YOURPOJO {
-		String id;
-		List<ANOTHERPOJO> children;
-
-		public void setId(String id) {
-			this.id = id;
-		}
-
-		public void setChildren(List<ANOTHERPOJO> children) {
-			this.children = children;
-		}
-	}
-
-	private List<YOURPOJO> loadMultiJSON(File file) throws IOException {
-		Gson gson = new Gson();
-		JsonReader jsonReader = null;
-		try {
-			jsonReader = new JsonReader(new FileReader(file));
-		} catch (Exception e) {
-			e.printStackTrace();
-			return null;
-		}
-
-		// Handle formatting, e.g. extra spaces
-		jsonReader.setLenient(true);
-
-		boolean start = true;
-		jsonReader.beginObject();
-
-		List<YOURPOJO> completeList = new ArrayList<YOURPOJO>();
-
-		while (jsonReader.hasNext()) {
-			if (!start) {
-				if (jsonReader.peek().toString().matches("END_DOCUMENT")) {
-					break;
-				}
-
-				jsonReader.beginObject();
-			}
-
-			start = false;
-
-			YOURPOJO pojo = new YOURPOJO();
-
-			String id = jsonReader.nextName();
-			pojo.setId(id);
-
-			List<ANOTHERPOJO> tempList = new ArrayList<ANOTHERPOJO>();
-
-			jsonReader.beginArray();
-			while (jsonReader.hasNext()) {
-				ANOTHERPOJO t = gson.fromJson(jsonReader, ANOTHERPOJO.class);
-				tempList.add(t);
-			}
-
-			jsonReader.endArray();
-
-			pojo.setChildren(tempList);
-
-			completeList.add(pojo);
-
-			jsonReader.endObject();
-		}
-
-		jsonReader.close();
-		return completeList;
-	}
 }
@@ -0,0 +1,1177 @@
+package moneymgr.io.mm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import moneymgr.io.PortfolioProcessor;
+import moneymgr.io.QuoteRefreshScheduler;
+import moneymgr.io.QuoteStore;
+import moneymgr.io.qif.TransactionCleaner;
+import moneymgr.model.Account;
+import moneymgr.model.AccountType;
+import moneymgr.model.Category;
+import moneymgr.model.GenericTxn;
+import moneymgr.model.InvestmentTxn;
+import moneymgr.model.Lot;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.MultiSplitTxn;
+import moneymgr.model.NonInvestmentTxn;
+import moneymgr.model.PriceHistory;
+import moneymgr.model.Security;
+import moneymgr.model.Security.StockSplitInfo;
+import moneymgr.model.SecurityPosition;
+import moneymgr.model.SimpleTxn;
+import moneymgr.model.SplitTxn;
+import moneymgr.model.Statement;
+import moneymgr.model.StockOption;
+import moneymgr.model.TxAction;
+import moneymgr.util.Common;
+import moneymgr.util.QDate;
+
+/**
+ * Read/write a model in binary snapshot format.<br>
+ * The file has a header (identifying the format version and the input data
+ * it was created from) followed by length-prefixed sections for categories,
+ * accounts, securities/prices, transactions, lots, options and statements.
+ * The file is memory-mapped for loading, and derived information (running
+ * totals, share balances) is rebuilt afterwards.<br>
+ * Each snapshot has a generation number; changes made after the snapshot was
+ * written are kept in the journal of the same generation (see ChangeJournal).
+ */
+public class Snapshot {
+	private static final int MAGIC = 0x4d4d534e; // "MMSN"
+	private static final int VERSION = 2;
+
+	private static final int SECTION_END = 0;
+	private static final int SECTION_CATEGORIES = 1;
+	private static final int SECTION_ACCOUNTS = 2;
+	private static final int SECTION_SECURITIES = 3;
+	private static final int SECTION_TRANSACTIONS = 4;
+	private static final int SECTION_LOTS = 5;
+	private static final int SECTION_OPTIONS = 6;
+	private static final int SECTION_STATEMENTS = 7;
+
+	// Transaction types
+	static final int TX_NONE = 0;
+	static final int TX_NONINVESTMENT = 1;
+	static final int TX_INVESTMENT = 2;
+	static final int TX_SPLIT = 3;
+	static final int TX_MULTISPLIT = 4;
+
+	// BigDecimal encodings
+	private static final int NUM_NULL = 0;
+	private static final int NUM_LONG = 1;
+	private static final int NUM_BIG = 2;
+
+	/** Supporting files (in the QIF directory) that are loaded with the QIF */
+	private static final String OPTIONS_FILE = "options.txt";
+	private static final String[] STATEMENT_LOG_FILES = { "statementLog.dat", "statementLog.bin" };
+	private static final String[] SOURCE_DIRECTORIES = { "quotes", "statements" };
+
+	/**
+	 * Return a value identifying the state of the input data for a QIF file.
+	 * This changes if the QIF file or supporting files are modified.
+	 */
+	public static long getSourceTimestamp(File qifFile) {
+		return getSourceTimestamp(qifFile, true);
+	}
+
+	/**
+	 * Return the source timestamp, optionally ignoring the statement log (which
+	 * the application itself updates when reconciling)
+	 */
+	static long getSourceTimestamp(File qifFile, boolean includeStatementLog) {
+		long stamp = qifFile.lastModified();
+		File qifDir = qifFile.getAbsoluteFile().getParentFile();
+
+		stamp = Math.max(stamp, new File(qifDir, OPTIONS_FILE).lastModified());
+		if (includeStatementLog) {
+			for (String name : STATEMENT_LOG_FILES) {
+				stamp = Math.max(stamp, new File(qifDir, name).lastModified());
+			}
+		}
+
+		for (String name : SOURCE_DIRECTORIES) {
+			File[] files = new File(qifDir, name).listFiles();
+
+			if (files != null) {
+				for (File f : files) {
+					if (!isRefreshOutput(f)) {
+						stamp = Math.max(stamp, f.lastModified());
+					}
+				}
+			}
+		}
+
+		return stamp;
+	}
+
+	/**
+	 * Answer whether a file is written by the background quote refresh (which
+	 * may be running when the snapshot is saved). Prices in these files are
+	 * added to a model loaded from a snapshot (see QifDomReader), so they don't
+	 * make the snapshot out of date.
+	 */
+	private static boolean isRefreshOutput(File file) {
+		String name = file.getName();
+
+		return QuoteStore.isStoreFile(file) //
+				|| name.equals(QuoteRefreshScheduler.QUEUE_FILE) //
+				|| name.endsWith(".tmp");
+	}
+
+	/** Answer whether a snapshot exists and was created from the current data */
+	public static boolean isCurrent(File snapshotFile, File qifFile) {
+		if (!snapshotFile.isFile() || !qifFile.isFile()) {
+			return false;
+		}
+
+		try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r")) {
+			return (raf.readInt() == MAGIC) //
+					&& (raf.readInt() == VERSION) //
+					&& (raf.readLong() == qifFile.length()) //
+					&& (raf.readLong() == getSourceTimestamp(qifFile));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private MoneyMgrModel model;
+	private long generation = 0;
+
+	public Snapshot() {
+	}
+
+	/** Create a snapshot codec for an existing model */
+	Snapshot(MoneyMgrModel model) {
+		this.model = model;
+	}
+
+	/** Return the generation of the last snapshot saved or loaded */
+	public long getGeneration() {
+		return this.generation;
+	}
+
+	// ==============================================================
+	// Save
+	// ==============================================================
+
+	/** Save a model loaded from a QIF file (and supporting data) */
+	public void save(MoneyMgrModel model, File snapshotFile, File qifFile, long generation) {
+		this.model = model;
+
+		try {
+			writeFile(encode(qifFile, generation), snapshotFile);
+		} catch (IOException e) {
+			Common.reportWarning("Error saving snapshot: " + e.getMessage());
+		}
+	}
+
+	/** Write snapshot data to a file, replacing any previous version */
+	static void writeFile(byte[] data, File snapshotFile) throws IOException {
+		File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+
+		try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+			out.write(data);
+			out.getFD().sync();
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw e;
+		}
+
+		// Replace the old snapshot in one step, so there is always one to load
+		if (!QuoteRefreshScheduler.moveFile(tmpFile, snapshotFile)) {
+			tmpFile.delete();
+			throw new IOException("Can't create snapshot file " + snapshotFile.getPath());
+		}
+	}
+
+	/** Encode the model (the file may be written later, e.g. in background) */
+	byte[] encode(File qifFile, long generation) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(qifFile.length());
+			out.writeLong(getSourceTimestamp(qifFile));
+			out.writeLong(generation);
+
+			SectionWriter wtr = new SectionWriter();
+
+			saveCategories(wtr);
+			wtr.writeTo(out, SECTION_CATEGORIES);
+			saveAccounts(wtr);
+			wtr.writeTo(out, SECTION_ACCOUNTS);
+			saveSecurities(wtr);
+			wtr.writeTo(out, SECTION_SECURITIES);
+			saveTransactions(wtr);
+			wtr.writeTo(out, SECTION_TRANSACTIONS);
+			saveLots(wtr);
+			wtr.writeTo(out, SECTION_LOTS);
+			saveOptions(wtr);
+			wtr.writeTo(out, SECTION_OPTIONS);
+			saveStatements(wtr);
+			wtr.writeTo(out, SECTION_STATEMENTS);
+
+			out.writeInt(SECTION_END);
+			out.writeInt(0);
+		}
+
+		this.generation = generation;
+
+		return bytes.toByteArray();
+	}
+
+	private void saveCategories(SectionWriter wtr) throws IOException {
+		List<Category> cats = this.model.getCategories();
+
+		wtr.writeInt(cats.size());
+
+		for (Category cat : cats) {
+			if (cat == null) {
+				wtr.writeInt(0);
+				continue;
+			}
+
+			wtr.writeInt(cat.catid);
+			wtr.writeString(cat.name);
+			wtr.writeString(cat.description);
+			wtr.writeBoolean(cat.isExpense);
+		}
+	}
+
+	private void saveAccounts(SectionWriter wtr) throws IOException {
+		List<Account> accts = this.model.getAccountsById();
+
+		wtr.writeInt(accts.size());
+
+		for (Account acct : accts) {
+			if (acct == null) {
+				wtr.writeInt(0);
+				continue;
+			}
+
+			wtr.writeInt(acct.acctid);
+			wtr.writeString(acct.name);
+			wtr.writeInt(acct.type.id);
+			wtr.writeString(acct.description);
+			wtr.writeDate(acct.getCloseDate());
+			wtr.writeInt(acct.getStatementFrequency());
+			wtr.writeInt(acct.getStatementDay());
+		}
+	}
+
+	private void saveSecurities(SectionWriter wtr) throws IOException {
+		List<Security> secs = this.model.getSecuritiesById();
+
+		wtr.writeInt(secs.size());
+
+		for (Security sec : secs) {
+			if (sec == null) {
+				wtr.writeInt(0);
+				continue;
+			}
+
+			wtr.writeInt(sec.secid);
+			wtr.writeString(sec.symbol);
+			wtr.writeString(sec.type);
+			wtr.writeString(sec.goal);
+
+			wtr.writeInt(sec.names.size());
+			for (String name : sec.names) {
+				wtr.writeString(name);
+			}
+
+			wtr.writeInt(sec.splits.size());
+			for (StockSplitInfo split : sec.splits) {
+				wtr.writeDate(split.splitDate);
+				wtr.writeDecimal(split.splitRatio);
+			}
+
+			PriceHistory prices = sec.getPriceHistory();
+			int count = prices.size();
+
+			wtr.writeInt(count);
+			for (int ii = 0; ii < count; ++ii) {
+				wtr.writeInt(prices.getDay(ii));
+			}
+			for (int ii = 0; ii < count; ++ii) {
+				wtr.writeLong(prices.getFixedPrice(ii));
+			}
+			for (int ii = 0; ii < count; ++ii) {
+				wtr.writeDecimal(prices.getSplitAdjustedPrice(ii));
+			}
+
+			wtr.writeInt(sec.getTransactions().size());
+			for (InvestmentTxn txn : sec.getTransactions()) {
+				wtr.writeInt(txn.getTxid());
+			}
+		}
+	}
+
+	static int getTransactionType(SimpleTxn txn) {
+		if (txn == null) {
+			return TX_NONE;
+		} else if (txn instanceof MultiSplitTxn) {
+			return TX_MULTISPLIT;
+		} else if (txn instanceof SplitTxn) {
+			return TX_SPLIT;
+		} else if (txn instanceof InvestmentTxn) {
+			return TX_INVESTMENT;
+		} else {
+			return TX_NONINVESTMENT;
+		}
+	}
+
+	private void saveTransactions(SectionWriter wtr) throws IOException {
+		List<SimpleTxn> txns = this.model.getAllTransactions();
+
+		// Transactions the account actually holds (some are ignored by the loader)
+		boolean[] inAccount = new boolean[txns.size()];
+		for (Account acct : this.model.getAccountsById()) {
+			if (acct != null) {
+				for (GenericTxn txn : acct.getTransactions()) {
+					inAccount[txn.getTxid()] = true;
+				}
+			}
+		}
+
+		wtr.writeInt(txns.size());
+
+		// Transaction types and owners so we can create all the objects first
+		for (SimpleTxn txn : txns) {
+			writeTransactionType(wtr, txn);
+		}
+
+		for (SimpleTxn txn : txns) {
+			if (txn != null) {
+				writeTransactionDetails(wtr, txn, //
+						(txn instanceof GenericTxn) && inAccount[txn.getTxid()]);
+			}
+		}
+	}
+
+	/** Write a transaction's type and owner (account, or parent for splits) */
+	static void writeTransactionType(SectionWriter wtr, SimpleTxn txn) throws IOException {
+		int type = getTransactionType(txn);
+		wtr.writeByte(type);
+
+		switch (type) {
+		case TX_NONINVESTMENT:
+		case TX_INVESTMENT:
+			wtr.writeInt(txn.getAccountID());
+			break;
+
+		case TX_SPLIT:
+		case TX_MULTISPLIT:
+			wtr.writeInt(((SplitTxn) txn).getParent().getTxid());
+			break;
+		}
+	}
+
+	/** Write the contents of a transaction */
+	static void writeTransactionDetails(SectionWriter wtr, SimpleTxn txn, boolean inAccount) //
+			throws IOException {
+		wtr.writeDecimal(txn.getAmount());
+		wtr.writeString(txn.getMemo());
+		wtr.writeInt(txn.getCatid());
+		wtr.writeTxid(txn.getCashTransferTxn());
+
+		if (txn instanceof MultiSplitTxn) {
+			wtr.writeTxids(txn.getSplits());
+		}
+
+		if (!(txn instanceof GenericTxn)) {
+			return;
+		}
+
+		GenericTxn gtxn = (GenericTxn) txn;
+
+		wtr.writeBoolean(inAccount);
+		wtr.writeDate(gtxn.getDate());
+		wtr.writeDate(gtxn.getStatementDate());
+		wtr.writeString(gtxn.getAction().key);
+		wtr.writeString(gtxn.getPayee());
+		wtr.writeString(gtxn.getCheckNumberString());
+		wtr.writeTxids(gtxn.getSplits());
+
+		if (!(txn instanceof InvestmentTxn)) {
+			return;
+		}
+
+		InvestmentTxn itxn = (InvestmentTxn) txn;
+
+		wtr.writeInt(itxn.getSecurityId());
+		wtr.writeInt((itxn.getOption() != null) ? itxn.getOption().optid : 0);
+		wtr.writeDecimal(itxn.getPrice());
+		wtr.writeDecimal(itxn.getQuantity());
+		wtr.writeDecimal(itxn.getCommission());
+		wtr.writeDecimal(itxn.getCashTransferred());
+		wtr.writeString(itxn.getAccountForTransfer());
+		wtr.writeTxids(itxn.getSecurityTransferTxns());
+	}
+
+	private void saveLots(SectionWriter wtr) throws IOException {
+		List<Lot> lots = this.model.getLots();
+
+		wtr.writeInt(lots.size());
+
+		for (Lot lot : lots) {
+			if (lot == null) {
+				wtr.writeInt(0);
+				continue;
+			}
+
+			writeLot(wtr, lot);
+		}
+
+		// Lots referenced by each transaction
+		for (SimpleTxn txn : this.model.getAllTransactions()) {
+			if (txn instanceof InvestmentTxn) {
+				InvestmentTxn itxn = (InvestmentTxn) txn;
+
+				wtr.writeInt(itxn.getTxid());
+				wtr.writeLotids(itxn.getLots());
+				wtr.writeLotids(itxn.getCreatedLots());
+				wtr.writeLotids(itxn.getDisposedLots());
+			}
+		}
+
+		wtr.writeInt(0);
+	}
+
+	static void writeLot(SectionWriter wtr, Lot lot) throws IOException {
+		wtr.writeInt(lot.lotid);
+		wtr.writeDate(lot.createDate);
+		wtr.writeInt(lot.acctid);
+		wtr.writeInt(lot.secid);
+		wtr.writeDecimal(lot.shares);
+		wtr.writeDecimal(lot.basisPrice);
+		wtr.writeTxid(lot.createTransaction);
+		wtr.writeTxid(lot.getDisposingTransaction());
+		wtr.writeInt((lot.getSourceLot() != null) ? lot.getSourceLot().lotid : 0);
+	}
+
+	private void saveOptions(SectionWriter wtr) throws IOException {
+		List<StockOption> opts = this.model.getStockOptions();
+
+		wtr.writeInt(opts.size());
+
+		for (StockOption opt : opts) {
+			if (opt == null) {
+				wtr.writeInt(0);
+				continue;
+			}
+
+			writeOption(wtr, opt);
+		}
+	}
+
+	static void writeOption(SectionWriter wtr, StockOption opt) throws IOException {
+		wtr.writeInt(opt.optid);
+		wtr.writeInt((opt.srcOption != null) ? opt.srcOption.optid : 0);
+		wtr.writeString(opt.name);
+		wtr.writeDate(opt.date);
+		wtr.writeInt(opt.acctid);
+		wtr.writeInt(opt.secid);
+		wtr.writeDecimal(opt.grantShares);
+		wtr.writeDecimal(opt.strikePrice);
+		wtr.writeDecimal(opt.marketPrice);
+		wtr.writeDecimal(opt.cost);
+		wtr.writeDecimal(opt.marketValueAtPurchase);
+		wtr.writeInt(opt.lifetimeMonths);
+		wtr.writeInt(opt.vestFrequencyMonths);
+		wtr.writeInt(opt.vestCount);
+		wtr.writeInt(opt.vestCurrent);
+		wtr.writeDecimal(opt.sharesRemaining);
+		wtr.writeTxid(opt.transaction);
+		wtr.writeDate(opt.cancelDate);
+	}
+
+	private void saveStatements(SectionWriter wtr) throws IOException {
+		for (Account acct : this.model.getAccountsById()) {
+			if ((acct == null) || acct.getStatements().isEmpty()) {
+				continue;
+			}
+
+			List<Statement> stmts = acct.getStatements();
+
+			wtr.writeInt(acct.acctid);
+			wtr.writeInt(stmts.size());
+
+			for (Statement stmt : stmts) {
+				wtr.writeDate(stmt.date);
+				wtr.writeInt(stmts.indexOf(stmt.prevStatement));
+				wtr.writeBoolean(stmt.isBalanced());
+				wtr.writeDecimal(stmt.closingBalance);
+				wtr.writeDecimal(stmt.getCashBalance());
+				wtr.writeTxids(stmt.transactions);
+
+				List<SecurityPosition> positions = stmt.holdings.getPositions();
+
+				wtr.writeInt(positions.size());
+				for (SecurityPosition pos : positions) {
+					wtr.writeInt(pos.security.secid);
+					wtr.writeDecimal(pos.getEndingShares());
+					wtr.writeDecimal(pos.getEndingValue());
+				}
+			}
+		}
+
+		wtr.writeInt(0);
+	}
+
+	// ==============================================================
+	// Load
+	// ==============================================================
+
+	/** Load a model from a snapshot (null if the snapshot can't be loaded) */
+	public MoneyMgrModel load(String modelName, File snapshotFile) {
+		if (read(modelName, snapshotFile) == null) {
+			return null;
+		}
+
+		rebuild();
+
+		return this.model;
+	}
+
+	/** Read the snapshot contents, without rebuilding derived information */
+	MoneyMgrModel read(String modelName, File snapshotFile) {
+		Map<Integer, ByteBuffer> sections = new HashMap<>();
+
+		// N.B. Read rather than map the file; a mapping is only released when
+		// collected, and would prevent replacing the file (on Windows)
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(snapshotFile.toPath()));
+
+			if ((buf.getInt() != MAGIC) || (buf.getInt() != VERSION)) {
+				Common.reportWarning("Snapshot format not recognized: " + snapshotFile.getPath());
+				return null;
+			}
+
+			buf.getLong(); // source length
+			buf.getLong(); // source timestamp
+			this.generation = buf.getLong();
+
+			for (;;) {
+				int id = buf.getInt();
+				int length = buf.getInt();
+
+				if (id == SECTION_END) {
+					break;
+				}
+
+				ByteBuffer section = buf.slice();
+				section.limit(length);
+				sections.put(id, section);
+
+				buf.position(buf.position() + length);
+			}
+		} catch (Exception e) {
+			Common.reportWarning("Error reading snapshot: " + e.getMessage());
+			return null;
+		}
+
+		MoneyMgrModel.deleteModel(modelName);
+		this.model = MoneyMgrModel.changeModel(modelName);
+
+		try {
+			loadCategories(sections.get(SECTION_CATEGORIES));
+			loadAccounts(sections.get(SECTION_ACCOUNTS));
+			loadSecurities(sections.get(SECTION_SECURITIES));
+
+			this.model.beginBulkLoad();
+			loadTransactions(sections.get(SECTION_TRANSACTIONS));
+			this.model.endBulkLoad();
+
+			loadLots(sections.get(SECTION_LOTS));
+			loadOptions(sections.get(SECTION_OPTIONS));
+			loadSecurityTransactions(sections.get(SECTION_SECURITIES));
+			loadStatements(sections.get(SECTION_STATEMENTS));
+		} catch (Exception e) {
+			Common.reportWarning("Error loading snapshot: " + e.toString());
+			MoneyMgrModel.deleteModel(this.model.name);
+			return null;
+		}
+
+		return this.model;
+	}
+
+	/** Rebuild derived information (portfolios, running totals) */
+	void rebuild() {
+		for (SimpleTxn tx : this.model.getAllTransactions()) {
+			if (tx instanceof GenericTxn) {
+				GenericTxn gtx = (GenericTxn) tx;
+
+				this.model.portfolio.addTransaction(gtx);
+				tx.getAccount().securities.addTransaction(gtx);
+			}
+		}
+
+		TransactionCleaner transactionCleaner = new TransactionCleaner(this.model);
+		new PortfolioProcessor(this.model).fixPortfolios();
+		transactionCleaner.calculateRunningTotals();
+		transactionCleaner.cleanStatementHoldings();
+	}
+
+	private void loadCategories(ByteBuffer buf) {
+		int count = buf.getInt();
+
+		for (int ii = 0; ii < count; ++ii) {
+			int catid = buf.getInt();
+			if (catid <= 0) {
+				continue;
+			}
+
+			String name = readString(buf);
+			String desc = readString(buf);
+			boolean isExpense = readBoolean(buf);
+
+			this.model.addCategory(new Category(catid, name, desc, isExpense));
+		}
+	}
+
+	private void loadAccounts(ByteBuffer buf) {
+		int count = buf.getInt();
+
+		for (int ii = 0; ii < count; ++ii) {
+			int acctid = buf.getInt();
+			if (acctid <= 0) {
+				continue;
+			}
+
+			String name = readString(buf);
+			AccountType type = AccountType.byId(buf.getInt());
+			String desc = readString(buf);
+			QDate closeDate = readDate(buf);
+			int statFreq = buf.getInt();
+			int statDay = buf.getInt();
+
+			Account acct = new Account(this.model, acctid, //
+					name, desc, type, statFreq, statDay);
+			acct.setCloseDate(closeDate);
+
+			this.model.addAccount(acct);
+		}
+	}
+
+	private void loadSecurities(ByteBuffer buf) {
+		int count = buf.getInt();
+
+		for (int ii = 0; ii < count; ++ii) {
+			int secid = buf.getInt();
+			if (secid <= 0) {
+				continue;
+			}
+
+			String symbol = readString(buf);
+			String type = readString(buf);
+			String goal = readString(buf);
+
+			int nnames = buf.getInt();
+			String name = readString(buf);
+
+			Security sec = new Security(secid, symbol, name, type, goal);
+
+			for (int nn = 1; nn < nnames; ++nn) {
+				sec.addName(readString(buf));
+			}
+
+			int nsplits = buf.getInt();
+			for (int nn = 0; nn < nsplits; ++nn) {
+				QDate date = readDate(buf);
+				BigDecimal ratio = readDecimal(buf);
+
+				sec.splits.add(new StockSplitInfo(date, ratio));
+			}
+
+			int nprices = buf.getInt();
+			int[] days = new int[nprices];
+			long[] prices = new long[nprices];
+			BigDecimal[] splitAdjustedPrices = new BigDecimal[nprices];
+
+			buf.asIntBuffer().get(days);
+			buf.position(buf.position() + nprices * Integer.BYTES);
+			buf.asLongBuffer().get(prices);
+			buf.position(buf.position() + nprices * Long.BYTES);
+			for (int nn = 0; nn < nprices; ++nn) {
+				splitAdjustedPrices[nn] = readDecimal(buf);
+			}
+
+			sec.addPrices(days, prices, splitAdjustedPrices, nprices);
+
+			// Security transactions are processed after loading transactions
+			int ntxns = buf.getInt();
+			buf.position(buf.position() + ntxns * Integer.BYTES);
+
+			this.model.addSecurity(sec);
+		}
+	}
+
+	private void loadSecurityTransactions(ByteBuffer buf) {
+		buf.rewind();
+		int count = buf.getInt();
+
+		for (int ii = 0; ii < count; ++ii) {
+			int secid = buf.getInt();
+			if (secid <= 0) {
+				continue;
+			}
+
+			Security sec = this.model.getSecurity(secid);
+
+			readString(buf);
+			readString(buf);
+			readString(buf);
+
+			int nnames = buf.getInt();
+			for (int nn = 0; nn < nnames; ++nn) {
+				readString(buf);
+			}
+
+			int nsplits = buf.getInt();
+			for (int nn = 0; nn < nsplits; ++nn) {
+				buf.getInt();
+				readDecimal(buf);
+			}
+
+			int nprices = buf.getInt();
+			buf.position(buf.position() + nprices * (Integer.BYTES + Long.BYTES));
+			for (int nn = 0; nn < nprices; ++nn) {
+				readDecimal(buf);
+			}
+
+			int ntxns = buf.getInt();
+			for (int nn = 0; nn < ntxns; ++nn) {
+				sec.addTransaction((InvestmentTxn) this.model.getTransaction(buf.getInt()));
+			}
+		}
+	}
+
+	private void loadTransactions(ByteBuffer buf) {
+		int count = buf.getInt();
+
+		int[] types = new int[count];
+		int[] owners = new int[count];
+
+		for (int txid = 0; txid < count; ++txid) {
+			types[txid] = buf.get();
+
+			if (types[txid] != TX_NONE) {
+				owners[txid] = buf.getInt();
+			}
+		}
+
+		// Create transaction objects (splits after the txns containing them)
+		SimpleTxn[] txns = new SimpleTxn[count];
+
+		for (int txid = 1; txid < count; ++txid) {
+			createTransaction(txid, types, owners, txns);
+		}
+
+		this.model.reserveTransactionIds(count - 1);
+
+		// Fill in transaction details
+		for (int txid = 1; txid < count; ++txid) {
+			if (txns[txid] != null) {
+				readTransactionDetails(buf, txns[txid]);
+			}
+		}
+	}
+
+	/** Read the contents of a transaction written by writeTransactionDetails() */
+	void readTransactionDetails(ByteBuffer buf, SimpleTxn txn) {
+		BigDecimal amount = readDecimal(buf);
+		txn.setMemo(readString(buf));
+		txn.setCatid(buf.getInt());
+
+		SimpleTxn xtxn = readTxn(buf);
+		if (xtxn != null) {
+			txn.setCashTransferTxn(xtxn);
+		}
+
+		if (txn instanceof MultiSplitTxn) {
+			for (int nn = buf.getInt(); nn > 0; --nn) {
+				txn.addSplit((SplitTxn) readTxn(buf));
+			}
+		}
+
+		// N.B. Set amount after adding multi-split parts (which update it)
+		txn.setAmount(amount);
+
+		if (!(txn instanceof GenericTxn)) {
+			return;
+		}
+
+		GenericTxn gtxn = (GenericTxn) txn;
+
+		boolean inAccount = readBoolean(buf);
+		gtxn.setDate(readDate(buf));
+		gtxn.setStatementDate(readDate(buf));
+		gtxn.setAction(TxAction.parseAction(readString(buf)));
+		gtxn.setPayee(readString(buf));
+		gtxn.setCheckNumber(readString(buf));
+
+		for (int nn = buf.getInt(); nn > 0; --nn) {
+			gtxn.addSplit((SplitTxn) readTxn(buf));
+		}
+
+		if (txn instanceof InvestmentTxn) {
+			InvestmentTxn itxn = (InvestmentTxn) txn;
+
+			itxn.setSecurity(this.model.getSecurity(buf.getInt()));
+
+			// N.B. Options don't exist yet when loading a snapshot
+			StockOption opt = this.model.getStockOption(buf.getInt());
+			if (opt != null) {
+				itxn.setOption(opt);
+			}
+
+			itxn.setPrice(readDecimal(buf));
+			itxn.setQuantity(readDecimal(buf));
+			itxn.setCommission(readDecimal(buf));
+			itxn.setCashTransferred(readDecimal(buf));
+			itxn.setAccountForTransfer(readString(buf));
+
+			List<InvestmentTxn> xtxns = new ArrayList<>();
+			for (int nn = buf.getInt(); nn > 0; --nn) {
+				xtxns.add((InvestmentTxn) readTxn(buf));
+			}
+			if (!xtxns.isEmpty()) {
+				itxn.setSecurityTransferTxns(xtxns);
+			}
+		}
+
+		if (inAccount) {
+			gtxn.getAccount().addTransaction(gtxn);
+		}
+	}
+
+	/** Create a transaction object, creating its parent first if necessary */
+	private SimpleTxn createTransaction(int txid, int[] types, int[] owners, SimpleTxn[] txns) {
+		if (txns[txid] == null) {
+			SimpleTxn parent = ((types[txid] == TX_SPLIT) || (types[txid] == TX_MULTISPLIT)) //
+					? createTransaction(owners[txid], types, owners, txns) //
+					: null;
+
+			txns[txid] = createTransaction(txid, types[txid], owners[txid], parent);
+		}
+
+		return txns[txid];
+	}
+
+	/**
+	 * Create a transaction object written by writeTransactionType().<br>
+	 * The owner is the account, or for splits, the parent transaction.
+	 */
+	SimpleTxn createTransaction(int txid, int type, int acctid, SimpleTxn parent) {
+		switch (type) {
+		case TX_NONINVESTMENT:
+			return new NonInvestmentTxn(txid, acctid);
+
+		case TX_INVESTMENT:
+			return new InvestmentTxn(txid, acctid);
+
+		case TX_SPLIT:
+		case TX_MULTISPLIT: {
+			SimpleTxn txn = (type == TX_SPLIT) //
+					? new SplitTxn(txid, parent) //
+					: new MultiSplitTxn(txid, parent);
+			this.model.addTransaction(txn);
+			return txn;
+		}
+
+		default:
+			return null;
+		}
+	}
+
+	private void loadLots(ByteBuffer buf) {
+		int count = buf.getInt();
+
+		for (int ii = 0; ii < count; ++ii) {
+			int lotid = buf.getInt();
+			if (lotid > 0) {
+				readLot(buf, lotid);
+			}
+		}
+
+		for (;;) {
+			int txid = buf.getInt();
+			if (txid <= 0) {
+				break;
+			}
+
+			InvestmentTxn itxn = (InvestmentTxn) this.model.getTransaction(txid);
+
+			for (int nn = buf.getInt(); nn > 0; --nn) {
+				itxn.addLot(this.model.getLot(buf.getInt()));
+			}
+			for (int nn = buf.getInt(); nn > 0; --nn) {
+				itxn.addCreatedLot(this.model.getLot(buf.getInt()));
+			}
+			for (int nn = buf.getInt(); nn > 0; --nn) {
+				itxn.addDisposedLot(this.model.getLot(buf.getInt()));
+			}
+		}
+	}
+
+	/** Create a lot written by writeLot() (after reading its id) */
+	Lot readLot(ByteBuffer buf, int lotid) {
+		QDate createDate = readDate(buf);
+		int acctid = buf.getInt();
+		int secid = buf.getInt();
+		BigDecimal shares = readDecimal(buf);
+		BigDecimal basisPrice = readDecimal(buf);
+		InvestmentTxn createTxn = (InvestmentTxn) readTxn(buf);
+		InvestmentTxn disposingTxn = (InvestmentTxn) readTxn(buf);
+		Lot srcLot = this.model.getLot(buf.getInt());
+
+		Lot lot = new Lot(lotid, createDate, acctid, secid, //
+				shares, basisPrice, createTxn, disposingTxn, srcLot);
+
+		this.model.getSecurity(secid).addLot(lot);
+
+		return lot;
+	}
+
+	private void loadOptions(ByteBuffer buf) {
+		int count = buf.getInt();
+
+		for (int ii = 0; ii < count; ++ii) {
+			int optid = buf.getInt();
+			if (optid > 0) {
+				readOption(buf, optid);
+			}
+		}
+
+		// Connect option transactions
+		for (StockOption opt : this.model.getStockOptions()) {
+			if ((opt != null) && (opt.transaction != null)) {
+				opt.transaction.setOption(opt);
+			}
+		}
+	}
+
+	/** Create an option written by writeOption() (after reading its id) */
+	StockOption readOption(ByteBuffer buf, int optid) {
+		StockOption srcopt = this.model.getStockOption(buf.getInt());
+		String name = readString(buf);
+		QDate date = readDate(buf);
+		int acctid = buf.getInt();
+		int secid = buf.getInt();
+		BigDecimal grantShares = readDecimal(buf);
+		BigDecimal strikePrice = readDecimal(buf);
+		BigDecimal marketPrice = readDecimal(buf);
+		BigDecimal cost = readDecimal(buf);
+		BigDecimal marketValue = readDecimal(buf);
+		int lifetimeMonths = buf.getInt();
+		int vestFrequency = buf.getInt();
+		int vestCount = buf.getInt();
+		int vestCurrent = buf.getInt();
+		BigDecimal sharesRemaining = readDecimal(buf);
+
+		StockOption opt = new StockOption(this.model, srcopt, optid, name, date, //
+				acctid, secid, grantShares, strikePrice, marketPrice, //
+				cost, marketValue, lifetimeMonths, vestFrequency, vestCount, //
+				vestCurrent, sharesRemaining);
+
+		opt.transaction = (InvestmentTxn) readTxn(buf);
+		opt.cancelDate = readDate(buf);
+
+		this.model.addStockOption(opt);
+
+		return opt;
+	}
+
+	private void loadStatements(ByteBuffer buf) {
+		for (;;) {
+			int acctid = buf.getInt();
+			if (acctid <= 0) {
+				break;
+			}
+
+			Account acct = this.model.getAccountByID(acctid);
+			List<Statement> stmts = new ArrayList<>();
+
+			for (int nn = buf.getInt(); nn > 0; --nn) {
+				QDate date = readDate(buf);
+				int previdx = buf.getInt();
+				boolean isBalanced = readBoolean(buf);
+				BigDecimal closingBalance = readDecimal(buf);
+				BigDecimal cashBalance = readDecimal(buf);
+
+				Statement prevstmt = (previdx >= 0) ? stmts.get(previdx) : null;
+				Statement stmt = new Statement(acctid, date, closingBalance, cashBalance, prevstmt);
+
+				stmts.add(stmt);
+				acct.addStatement(stmt);
+
+				stmt.setIsBalanced(isBalanced);
+
+				for (int tt = buf.getInt(); tt > 0; --tt) {
+					stmt.addTransaction((GenericTxn) readTxn(buf));
+				}
+
+				for (int pp = buf.getInt(); pp > 0; --pp) {
+					SecurityPosition pos = stmt.holdings.getPosition(buf.getInt());
+
+					pos.setExpectedEndingShares(readDecimal(buf));
+					pos.setEndingValue(readDecimal(buf));
+				}
+			}
+		}
+	}
+
+	// ==============================================================
+	// Encoding
+	// ==============================================================
+
+	SimpleTxn readTxn(ByteBuffer buf) {
+		return this.model.getSimpleTransaction(buf.getInt());
+	}
+
+	static boolean readBoolean(ByteBuffer buf) {
+		return buf.get() != 0;
+	}
+
+	static QDate readDate(ByteBuffer buf) {
+		return QDate.fromRawData(buf.getInt());
+	}
+
+	static String readString(ByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[len];
+		buf.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static BigDecimal readDecimal(ByteBuffer buf) {
+		switch (buf.get()) {
+		case NUM_LONG: {
+			int scale = buf.getInt();
+			return BigDecimal.valueOf(buf.getLong(), scale);
+		}
+
+		case NUM_BIG: {
+			int scale = buf.getInt();
+			byte[] bytes = new byte[buf.getInt()];
+			buf.get(bytes);
+			return new BigDecimal(new BigInteger(bytes), scale);
+		}
+
+		default:
+			return null;
+		}
+	}
+
+	/** Collects the content of a section so its length can be written first */
+	static class SectionWriter {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+		private final DataOutputStream out = new DataOutputStream(this.bytes);
+
+		/** Write the section to the file and reset for the next section */
+		public void writeTo(DataOutputStream file, int sectionId) throws IOException {
+			this.out.flush();
+
+			file.writeInt(sectionId);
+			file.writeInt(this.bytes.size());
+			this.bytes.writeTo(file);
+
+			this.bytes.reset();
+		}
+
+		public void writeByte(int value) throws IOException {
+			this.out.writeByte(value);
+		}
+
+		public void writeBoolean(boolean value) throws IOException {
+			this.out.writeByte((value) ? 1 : 0);
+		}
+
+		public void writeInt(int value) throws IOException {
+			this.out.writeInt(value);
+		}
+
+		public void writeLong(long value) throws IOException {
+			this.out.writeLong(value);
+		}
+
+		public void writeDate(QDate date) throws IOException {
+			this.out.writeInt((date != null) ? date.getRawValue() : 0);
+		}
+
+		public void writeString(String s) throws IOException {
+			if (s == null) {
+				this.out.writeInt(-1);
+				return;
+			}
+
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			this.out.writeInt(b.length);
+			this.out.write(b);
+		}
+
+		public void writeDecimal(BigDecimal value) throws IOException {
+			if (value == null) {
+				this.out.writeByte(NUM_NULL);
+				return;
+			}
+
+			BigInteger unscaled = value.unscaledValue();
+
+			if (unscaled.bitLength() < Long.SIZE) {
+				this.out.writeByte(NUM_LONG);
+				this.out.writeInt(value.scale());
+				this.out.writeLong(unscaled.longValue());
+			} else {
+				byte[] b = unscaled.toByteArray();
+
+				this.out.writeByte(NUM_BIG);
+				this.out.writeInt(value.scale());
+				this.out.writeInt(b.length);
+				this.out.write(b);
+			}
+		}
+
+		public void writeTxid(SimpleTxn txn) throws IOException {
+			this.out.writeInt((txn != null) ? txn.getTxid() : 0);
+		}
+
+		public void writeTxids(List<? extends SimpleTxn> txns) throws IOException {
+			this.out.writeInt(txns.size());
+
+			for (SimpleTxn txn : txns) {
+				writeTxid(txn);
+			}
+		}
+
+		public void writeLotids(List<Lot> lots) throws IOException {
+			this.out.writeInt(lots.size());
+
+			for (Lot lot : lots) {
+				this.out.writeInt(lot.lotid);
+			}
+		}
+	}
+}
@@ -15,8 +15,7 @@ public class AccountProcessor {
 
 	public void loadAccounts() {
 		for (;;) {
-			String s = this.qrdr.getFileReader().peekLine();
-			if ((s == null) || ((s.length() > 0) && (s.charAt(0) == '!'))) {
+			if (this.qrdr.getFileReader().atSectionEnd()) {
 				break;
 			}
 
@@ -48,32 +47,32 @@ public class AccountProcessor {
 
 			case AcctType:
 				if (type == null) {
-					type = AccountType.parseAccountType(qline.value);
+					type = AccountType.parseAccountType(qline.getValue());
 				}
 				break;
 			case AcctCreditLimit:
-				// creditLimit = Common.getDecimal(qline.value);
+				// creditLimit = Common.getDecimal(qline.getValue());
 				break;
 			case AcctDescription:
-				desc = qline.value;
+				desc = qline.getValue();
 				break;
 			case AcctName:
-				name = qline.value;
+				name = qline.getValue();
 				break;
 			case AcctStmtDate:
-				// stmtDate = Common.GetDate(qline.value);
+				// stmtDate = Common.GetDate(qline.getValue());
 				break;
 			case AcctStmtBal:
-				// stmtBalance = Common.getDecimal(qline.value);
+				// stmtBalance = Common.getDecimal(qline.getValue());
 				break;
 			case AcctCloseDate:
-				closedate = Common.parseQDate(qline.value);
+				closedate = Common.parseQDate(qline.getValue());
 				break;
 			case AcctStmtFrequency:
-				statfreq = Integer.parseInt(qline.value);
+				statfreq = Integer.parseInt(qline.getValue());
 				break;
 			case AcctStmtDay:
-				statdom = Integer.parseInt(qline.value);
+				statdom = Integer.parseInt(qline.getValue());
 				break;
 
 			default:
@@ -14,8 +14,7 @@ public class CategoryProcessor {
 	/** Load a section containing categories, creating category objects */
 	public void loadCategories() {
 		for (;;) {
-			String s = this.qrdr.getFileReader().peekLine();
-			if ((s == null) || ((s.length() > 0) && (s.charAt(0) == '!'))) {
+			if (this.qrdr.getFileReader().atSectionEnd()) {
 				break;
 			}
 
@@ -51,22 +50,22 @@ public class CategoryProcessor {
 				return true;
 
 			case CatName:
-				name = qline.value;
+				name = qline.getValue();
 				break;
 			case CatDescription:
-				desc = qline.value;
+				desc = qline.getValue();
 				break;
 			case CatTaxRelated:
-				// cat.taxRelated = Common.parseBoolean(qline.value);
+				// cat.taxRelated = Common.parseBoolean(qline.getValue());
 				break;
 			case CatIncomeCategory:
-				isExpense = !Common.parseBoolean(qline.value);
+				isExpense = !Common.parseBoolean(qline.getValue());
 				break;
 			case CatExpenseCategory:
-				isExpense = Common.parseBoolean(qline.value);
+				isExpense = Common.parseBoolean(qline.getValue());
 				break;
 			case CatBudgetAmount:
-				// cat.budgetAmount = Common.getDecimal(qline.value);
+				// cat.budgetAmount = Common.getDecimal(qline.getValue());
 				break;
 			case CatTaxSchedule:
 				break;
@@ -67,492 +67,446 @@ import static moneymgr.io.qif.Headers.TXN_SplitCategory;
 import static moneymgr.io.qif.Headers.TXN_SplitMemo;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.LineNumberReader;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import moneymgr.model.MoneyMgrModel;
 import moneymgr.util.Common;
+import moneymgr.util.QDate;
 
-class RawObjectInfo {
-	static Map<String, String> typeMap = new HashMap<>();
-	static Map<Character, String> fieldMap = new HashMap<>();
-	static Map<Character, String> txFieldMap = new HashMap<>();
-	static Map<Character, String> catFieldMap = new HashMap<>();
-	static Map<Character, String> assFieldMap = new HashMap<>();
-
-	static Map<String, List<RawObjectInfo>> objectMap = new HashMap<>();
-
-	// There is a hierarchy of types:
-	// Tag
-	// Category
-	// Security
-	// - Prices
-	// Account
-	// - Transaction
-	// - - Split
-
-	static List<RawObjectInfo> tags = new ArrayList<>();
-	static List<RawObjectInfo> categories = new ArrayList<>();
-	static List<RawObjectInfo> securities = new ArrayList<>();
-	static List<RawObjectInfo> accounts = new ArrayList<>();
-	static Map<RawObjectInfo, List<RawObjectInfo>> accountTransactions = new HashMap<>();
-	static Map<RawObjectInfo, List<RawObjectInfo>> securityPrices = new HashMap<>();
-
-	static {
-		typeMap.put("Cat", "Category");
-		typeMap.put("Tag", "Tag");
-		typeMap.put("Security", "Security");
-		typeMap.put("Prices", "Prices");
-		typeMap.put("Account", "Account");
-
-		typeMap.put("Bank", "Transaction");
-		typeMap.put("Cash", "Transaction");
-		typeMap.put("CCard", "Transaction");
-		typeMap.put("Invst", "Transaction");
-		typeMap.put("Oth A", "Transaction");
-		typeMap.put("Oth L", "Transaction");
-
-		txFieldMap.put('D', "Date"); // Transaction
-		txFieldMap.put('L', "Category/transfer"); // Transaction
-		txFieldMap.put('S', "Split category/transfer"); // Transaction
-		txFieldMap.put('T', "Amount"); // Transaction
-
-		assFieldMap.put('L', "Category/transfer"); // Transaction
-		assFieldMap.put('S', "Split category/transfer"); // Transaction
-		assFieldMap.put('T', "Amount"); // Transaction
-
-		catFieldMap.put('E', "E??"); // Category
-		catFieldMap.put('I', "I??"); // Category
-		catFieldMap.put('T', "T??"); // Category
-
-		fieldMap.put('B', "Budget");
-		fieldMap.put('C', "Cleared");
-		fieldMap.put('D', "Description");
-		fieldMap.put('E', "Split memo");
-		fieldMap.put('G', "Goal");
-		fieldMap.put('I', "Price"); // InvTransaction(security)
-		fieldMap.put('L', "Initial balance"); // Account
-		fieldMap.put('M', "Memo");
-		fieldMap.put('N', "Name");
-		fieldMap.put('O', "Commission");
-		fieldMap.put('P', "Payee");
-		fieldMap.put('Q', "Quantity");
-		fieldMap.put('R', "Tax Code");
-		fieldMap.put('S', "Symbol"); // Security
-		fieldMap.put('T', "Type"); // Account/Security
-		fieldMap.put('U', "Amount");
-		fieldMap.put('Y', "Security");
-		fieldMap.put('$', "Split amount");
-
-		// Prices ??????
-		fieldMap.put('"', "???????");
-	}
-
-	static void add(RawObjectInfo object) {
-		List<RawObjectInfo> objs = objectMap.getOrDefault(object.objType, null);
-
-		if (objs == null) {
-			objs = new ArrayList<>();
-			objectMap.put(object.objType, objs);
-		}
-
-		objs.add(object);
-	}
-
-	static void processObjects() {
-		tags.addAll(objectMap.get("Tag"));
-		categories.addAll(objectMap.get("Category"));
-		securities.addAll(objectMap.get("Security"));
-		accounts.addAll(objectMap.get("Account"));
-
-		// TODO Prices
-
-		for (RawObjectInfo tx : objectMap.get("Transaction")) {
-			List<RawObjectInfo> txs = accountTransactions.getOrDefault(tx.account, null);
-			if (txs == null) {
-				txs = new ArrayList<>();
-				accountTransactions.put(tx.account, txs);
-			}
+/** Reader to process input QIF files */
+public class QFileReader {
+	/** Various sections that occur in QIF files */
+	public static enum SectionType {
+		EndOfFile, Account, Statement, Statements, //
+		Bank, Cash, Category, CreditCard, Investment, //
+		Asset, Liability, MemorizedTransaction, QClass, Prices, Security, Tag
+	};
 
-			txs.add(tx);
-		}
-	}
+	/**
+	 * Contains decomposed line from QIF file.<br>
+	 * The value refers to the line in the file's buffer; a String is only
+	 * created if the value is requested as a string.
+	 */
+	public static class QLine {
+		/** The type of field for the line */
+		public FieldType type;
+		/** Type marker character */
+		public char typechar;
+		/** Value portion of the line for the field */
+		private final ByteSlice slice = new ByteSlice();
+		/** Value parsed ahead of time (see prefetch) */
+		private BigDecimal decimal;
+		private QDate date;
 
-	static void reportObjects(PrintStream ps) {
-		ps.println("\nObject Report:");
+		/** Get the value portion of the line as a string */
+		public String getValue() {
+			return this.slice.toString();
+		}
 
-		ps.printf("  There are %s tags\n", tags.size());
-		ps.printf("  There are %s categories\n", categories.size());
-		ps.printf("  There are %s securities\n", securities.size());
-		ps.printf("  There are %s accounts\n", accounts.size());
+		/** Parse the value as a decimal number */
+		public BigDecimal getDecimal() {
+			return (this.decimal != null) ? this.decimal : Common.getDecimal(this.slice);
+		}
 
-		for (RawObjectInfo acct : accounts) {
-			List<RawObjectInfo> txs = accountTransactions.getOrDefault( //
-					acct, new ArrayList<>());
+		/** Parse the value as a date */
+		public QDate getDate() {
+			return (this.date != null) ? this.date : Common.parseQDate(this.slice);
+		}
 
-			ps.printf("  %s has %s transactions\n", //
-					acct.getValue("Name"), txs.size());
+		/** Set the value from the file buffer */
+		private void setValue(ByteBuffer data, int start, int length) {
+			this.slice.set(data, start, length);
+			this.decimal = null;
+			this.date = null;
 		}
-	}
 
-	static String mapType(String objType) {
-		objType = objType.trim();
+		/** Set the value from a string */
+		private void setValue(String value) {
+			this.slice.set(value);
+			this.decimal = null;
+			this.date = null;
+		}
 
-		return typeMap.getOrDefault(objType, objType);
-	}
+		/** Copy another line's contents, including parsed values */
+		private void copyFrom(QLine other) {
+			this.type = other.type;
+			this.typechar = other.typechar;
+			this.slice.copyFrom(other.slice);
+			this.decimal = other.decimal;
+			this.date = other.date;
+		}
 
-	String mapFieldType(Character typeChar) {
-		if (this.objType == "Transaction") {
-			String txFieldType = txFieldMap.getOrDefault(typeChar, null);
+		/**
+		 * Parse the value as the transaction loader will need it. Bad values
+		 * are left for the loader to report.
+		 */
+		private void prefetch() {
+			switch (this.type) {
+			case TxnDate:
+			case InvDate:
+				this.date = Common.parseQDate(this.slice);
+				break;
 
-			if (txFieldType != null) {
-				return txFieldType;
-			}
-		} else if (this.objType.equals("Asset") || this.objType.equals("Liability")) {
-			String assFieldType = assFieldMap.getOrDefault(typeChar, null);
+			case TxnAmount:
+			case TxnSplitAmount:
+			case InvTransactionAmt:
+			case InvCommission:
+			case InvPrice:
+			case InvQuantity:
+			case InvXferAmt:
+				this.decimal = Common.getDecimalOrNull(this.slice);
+				break;
 
-			if (assFieldType != null) {
-				return assFieldType;
-			}
-		} else if (this.objType.equals("Category")) {
-			String catFieldType = catFieldMap.getOrDefault(typeChar, null);
+			// Text the loader keeps
+			case TxnNumber:
+			case TxnPayee:
+			case TxnMemo:
+			case TxnCategory:
+			case TxnSplitCategory:
+			case TxnSplitMemo:
+			case InvAction:
+			case InvPayee:
+			case InvSecurity:
+			case InvMemo:
+			case InvXferAcct:
+				getValue();
+				break;
 
-			if (catFieldType != null) {
-				return catFieldType;
+			default:
+				// Other fields (e.g. cleared status) aren't used as text
+				break;
 			}
 		}
 
-		return fieldMap.getOrDefault(typeChar, null);
+		public String toString() {
+			return this.type + ": " + getValue();
+		}
 	}
 
-	final int lineNum;
-	final String objType;
-	final String acctType;
-	final RawObjectInfo account;
-	final Map<String, Object> valueMap;
-
-	@SuppressWarnings("unchecked")
-	RawObjectInfo(String objType, int lineNum, List<String> lines, RawObjectInfo acct) {
-		this.objType = mapType(objType);
-		this.acctType = null; // (this.objType == "Account") ? objType : null;
-		this.lineNum = lineNum;
-		this.account = (this.objType.equals("Transaction")) ? acct : null;
-		this.valueMap = new HashMap<>();
-
-		if (objType.equals("Prices")) {
-			this.valueMap.put("SymPriceDate", lines.get(0));
+	/**
+	 * Character view of part of the file buffer, used to parse numbers and
+	 * dates without creating a string. Bytes are viewed as Latin-1; anything
+	 * outside ASCII fails to parse as a number/date and is decoded properly.
+	 */
+	private static class ByteSlice implements CharSequence {
+		private ByteBuffer data;
+		private int start;
+		private int length;
+		private String value;
 
-			return;
+		void set(ByteBuffer data, int start, int length) {
+			this.data = data;
+			this.start = start;
+			this.length = length;
+			this.value = null;
 		}
 
-		String[] currentSplit = null;
-
-		for (String line : lines) {
-			String valType = mapFieldType(line.charAt(0));
-			String value = line.substring(1);
+		void set(String value) {
+			this.data = null;
+			this.length = value.length();
+			this.value = value;
+		}
 
-			if (valType.startsWith("Split")) {
-				if (valType.startsWith("Split category")) {
-					List<String[]> splitList = (List<String[]>) this.valueMap.getOrDefault("Splits", null);
+		void copyFrom(ByteSlice other) {
+			this.data = other.data;
+			this.start = other.start;
+			this.length = other.length;
+			this.value = other.value;
+		}
 
-					if (splitList == null) {
-						splitList = new ArrayList<>();
-						this.valueMap.put("Splits", splitList);
-					}
+		public int length() {
+			return this.length;
+		}
 
-					currentSplit = new String[3];
-					splitList.add(currentSplit);
+		public char charAt(int index) {
+			return (this.value != null) //
+					? this.value.charAt(index) //
+					: (char) (this.data.get(this.start + index) & 0xff);
+		}
 
-					currentSplit[0] = value;
-				} else if (valType.equals("Split memo")) {
-					currentSplit[1] = value;
-				} else {
-					if (currentSplit != null) {
-						currentSplit[2] = value;
-						currentSplit = null;
-					} else {
-						// TODO special case for investment accounts
-						this.valueMap.put("Transfer Amount", line.substring(1));
-					}
-				}
-			} else if (this.valueMap.containsKey(valType)) {
-				List<String> values;
-
-				if (this.valueMap.get(valType) instanceof String) {
-					values = new ArrayList<>();
-					values.add((String) this.valueMap.get(valType));
-					this.valueMap.put(valType, values);
-				} else {
-					values = (List<String>) this.valueMap.get(valType);
-				}
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
 
-				values.add(line.substring(1));
-			} else {
-				this.valueMap.put(valType, line.substring(1));
+		public String toString() {
+			if (this.value == null) {
+				this.value = decode(this.data, this.start, this.length);
 			}
+
+			return this.value;
 		}
 	}
 
-	String getName() {
-		if (this.valueMap.containsKey("Name")) {
-			return (String) this.valueMap.get("Name");
-		}
+	/** Encoding of QIF files (same as FileReader) */
+	private static final Charset charset = Charset.defaultCharset();
 
-		return "n/a";
-	}
+	/** Create a string from bytes in the file buffer */
+	private static String decode(ByteBuffer data, int start, int length) {
+		byte[] bytes = new byte[length];
+		data.get(start, bytes);
 
-	void addValue(String c, String value) {
-		valueMap.put(c, value);
+		return new String(bytes, charset);
 	}
 
-	String getValue(String valType) {
-		Object valObj = this.valueMap.get(valType);
-
-		if (valObj instanceof String) {
-			return (String) valObj;
+	/**
+	 * A section of the file (the lines following a header), found by
+	 * scanSections(). Transaction sections can be parsed ahead of time.
+	 */
+	public static class Section {
+		public final SectionType type;
+		/** Offsets of the first line and the end of the section */
+		public final int start;
+		private int end;
+
+		/** Transaction fields parsed ahead of time, if any */
+		private List<QLine> fields = null;
+
+		private Section(SectionType type, int start) {
+			this.type = type;
+			this.start = start;
+		}
+
+		/** Is this a section of transactions (as opposed to accounts, etc) */
+		public boolean isTransactionSection() {
+			switch (this.type) {
+			case Asset:
+			case Liability:
+			case Cash:
+			case CreditCard:
+			case Bank:
+			case Investment:
+				return true;
+
+			default:
+				return false;
+			}
 		}
 
-		return null;
+		public String toString() {
+			return this.type + "[" + this.start + "-" + this.end + "]";
+		}
 	}
 
-	@Override
-	public String toString() {
-		String atype = (this.acctType != null) //
-				? String.format("(%s)", this.acctType) //
-				: "";
-		String ret = String.format("  %s%s[%d]", //
-				this.objType, atype, this.lineNum);
-
-		if (this.account != null) {
-			ret += String.format("\n  (A): %s", this.account.getName());
-		}
+	public final MoneyMgrModel model;
 
-		ret += "\n";
+	/** The contents of the file */
+	private ByteBuffer data;
 
-		for (Entry<String, Object> o : this.valueMap.entrySet()) {
-			String valstr = "";
+	/** Offset of the next line in the file */
+	private int pos = 0;
 
-			Object v = o.getValue();
-			if (o.getKey().equals("Splits")) {
-				String sep = "\n    ";
+	/** Offset of the last section header found (end of the previous section) */
+	private int headerStart = 0;
 
-				valstr = "[";
+	/** Replays fields parsed ahead of time for the current section */
+	private Iterator<QLine> parsedFields = null;
+	private boolean parsedAsInvestment = false;
 
-				ArrayList<String[]> vlist = (ArrayList<String[]>) v;
-				for (String[] ss : vlist) {
-					valstr += sep;
-					sep = ",\n    ";
+	public QFileReader(MoneyMgrModel model, File file) {
+		this.model = model;
 
-					String sep2 = "[";
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				Common.reportError("QIF file is too large: " + file.getPath());
+			}
 
-					for (String s : ss) {
-						valstr += sep2 + s;
-						sep2 = ",";
-					}
+			// Read the whole file at once. We don't map it, as a mapping can't be
+			// released (e.g. to replace the file) until it is garbage collected.
+			ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
 
-					valstr += ']';
+			while (buf.hasRemaining()) {
+				if (channel.read(buf) < 0) {
+					break;
 				}
-
-				valstr += ']';
-			} else if (v instanceof String) {
-				valstr = (String) v;
-			} else if (v != null) {
-				valstr += v.toString();
 			}
 
-			ret += String.format("  (%s): %s\n", //
-					o.getKey(), valstr);
+			buf.flip();
+			this.data = buf;
+		} catch (final IOException e) {
+			this.data = ByteBuffer.allocate(0);
 		}
-
-		return ret;
 	}
-}
 
-/** Reader to process input QIF files */
-public class QFileReader {
-	/** Various sections that occur in QIF files */
-	public static enum SectionType {
-		EndOfFile, Account, Statement, Statements, //
-		Bank, Cash, Category, CreditCard, Investment, //
-		Asset, Liability, MemorizedTransaction, QClass, Prices, Security, Tag
-	};
+	/** Find the end (offset of the line terminator) of the line at an offset */
+	private int lineEnd(int start) {
+		int limit = this.data.limit();
 
-	/** Contains decomposed line from QIF file */
-	public static class QLine {
-		/** The type of field for the line */
-		public FieldType type;
-		/** Type marker character */
-		public char typechar;
-		/** Value portion of the line for the field */
-		public String value;
+		for (int idx = start; idx < limit; ++idx) {
+			byte b = this.data.get(idx);
 
-		public String toString() {
-			return this.type + ": " + this.value;
+			if ((b == '\n') || (b == '\r')) {
+				return idx;
+			}
 		}
-	}
 
-	public final MoneyMgrModel model;
-	private LineNumberReader rdr;
-	private String lookaheadLine = null;
+		return limit;
+	}
 
-	public QFileReader(MoneyMgrModel model, File file) {
-		this.model = model;
+	/** Find the start of the line following a line ending at an offset */
+	private int nextLineStart(int end) {
+		if (end >= this.data.limit()) {
+			return end;
+		}
 
-		try {
-			this.rdr = new LineNumberReader(new FileReader(file));
-		} catch (final FileNotFoundException e) {
-			this.rdr = null;
+		if ((this.data.get(end) == '\r') //
+				&& (end + 1 < this.data.limit()) //
+				&& (this.data.get(end + 1) == '\n')) {
+			return end + 2;
 		}
+
+		return end + 1;
 	}
 
+	/** Read the next line; null at end of file */
 	public String readLine() {
-		try {
-			if (this.lookaheadLine != null) {
-				String ret = this.lookaheadLine;
-				this.lookaheadLine = null;
-
-				return ret;
-			}
-
-			return this.rdr.readLine();
-		} catch (final Exception e) {
-			e.printStackTrace();
+		if (this.pos >= this.data.limit()) {
+			return null;
 		}
 
-		return null;
+		int end = lineEnd(this.pos);
+		String line = decode(this.data, this.pos, end - this.pos);
+		this.pos = nextLineStart(end);
+
+		return line;
 	}
 
+	/** Return the next line without consuming it; null at end of file */
 	public String peekLine() {
+		int savepos = this.pos;
 		String line = readLine();
-		unreadLine(line);
+		this.pos = savepos;
+
 		return line;
 	}
 
-	private void unreadLine(String line) {
-		if (this.lookaheadLine != null) {
-			Common.reportError("Attempted to push back two lines:\n" //
-					+ "[1]: " + this.lookaheadLine + "\n" //
-					+ "[2]: " + line + "\n");
+	/** Check whether the next line starts a new section (or end of file) */
+	public boolean atSectionEnd() {
+		if (this.parsedFields != null) {
+			return !this.parsedFields.hasNext();
 		}
 
-		this.lookaheadLine = line;
+		return (this.pos >= this.data.limit()) //
+				|| (this.data.get(this.pos) == '!');
 	}
 
-	private List<String> ingestLines() {
-		List<String> lines = new ArrayList<>();
+	/**
+	 * Find the sections in the file, in order, without processing them. This
+	 * leaves the reader at the end of the file; use beginSection() to process
+	 * each section.
+	 */
+	public List<Section> scanSections() {
+		List<Section> sections = new ArrayList<>();
+		Section section = null;
+
+		for (SectionType sectype = findFirstSection(); //
+				; //
+				sectype = nextSection()) {
+			if (section != null) {
+				section.end = this.headerStart;
+			}
 
-		for (;;) {
-			String line = readLine();
-			if (line == null) {
+			if (sectype == SectionType.EndOfFile) {
 				break;
 			}
 
-			lines.add(line);
+			section = new Section(sectype, this.pos);
+			sections.add(section);
 		}
 
-		return lines;
+		return sections;
 	}
 
-	public Object ingestFile() {
-		List<String> lines = ingestLines();
-
-		PrintStream ps = System.out;
-
-		try {
-			ps = new PrintStream("/tmp/ingest.txt");
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-
-		String currType = "";
-		// List<RawObjectInfo> currObjects = null;
-		int objectCount = 0;
-		int objectLineNum = 0;
-		List<String> objectLines = new ArrayList<>();
-		RawObjectInfo currAccount = null;
-
-		for (int lineNum = 0; lineNum < lines.size(); ++lineNum) {
-			String line = lines.get(lineNum);
+	/** Parse the fields of transaction sections, in parallel */
+	public void parseTransactionSections(List<Section> sections) {
+		sections.parallelStream() //
+				.filter(s -> s.isTransactionSection()) //
+				.forEach(s -> s.fields = parseTransactionFields(s));
+	}
 
-			if (line.endsWith("AutoSwitch")) {
-				continue;
+	/**
+	 * Parse the fields of a transaction section. Return null if anything is
+	 * amiss - the section will be read from the file as usual, which reports
+	 * the problem.
+	 */
+	private List<QLine> parseTransactionFields(Section section) {
+		boolean investment = (section.type == SectionType.Investment);
+		List<QLine> fields = new ArrayList<>();
+
+		for (int start = section.start; //
+				(start < section.end) && (this.data.get(start) != '!'); //
+				start = nextLineStart(lineEnd(start))) {
+			int end = lineEnd(start);
+			byte b = this.data.get(start);
+
+			if ((end == start) || (b < 0)) {
+				return null;
 			}
 
-			if (line.startsWith("!Account")) {
-				line = "!Type:Account";
+			FieldType type = (investment) //
+					? invFieldType((char) b) //
+					: txnFieldType((char) b);
+			if (type == null) {
+				return null;
 			}
 
-			if (line.startsWith("!Type:")) {
-				currType = RawObjectInfo.mapType(line.substring(6));
-
-//				if (!RawObjectInfo.objectMap.containsKey(currType)) {
-//					RawObjectInfo.objectMap.put(currType, new ArrayList<>());
-//				}
-//
-//				currObjects = RawObjectInfo.objectMap.get(currType);
-			} else {
-				if (line.equals("^")) {
-					if (!objectLines.isEmpty()) {
-						++objectCount;
-
-						RawObjectInfo raw = new RawObjectInfo(currType, objectLineNum, objectLines, currAccount);
-						RawObjectInfo.add(raw);
-
-						// System.out.println("\nObject of type " + currType + ":");
-						ps.println(raw.toString());
-
-						objectLines.clear();
-						objectLineNum = lineNum + 1;
-
-						if (currType.equals("Account")) {
-							RawObjectInfo existingAccount = findObject( //
-									RawObjectInfo.objectMap, //
-									"Account", "Name", raw.getValue("Name"));
-
-							if (existingAccount != null) {
-								// TODO validate accounts match
-								currAccount = existingAccount;
-							} else {
-								currAccount = raw;
-							}
-						} else if (!raw.objType.equals("Transaction")) {
-							currAccount = null;
-						}
-					}
-				} else {
-					objectLines.add(line);
-				}
-			}
+			QLine line = new QLine();
+			line.type = type;
+			line.typechar = (char) b;
+			line.setValue(this.data, start + 1, end - start - 1);
+			line.prefetch();
+
+			fields.add(line);
 		}
 
-		ps.println("Loaded " + objectCount + " objects");
+		if (!fields.isEmpty() && (fields.get(fields.size() - 1).type != FieldType.EndOfSection)) {
+			// Incomplete transaction
+			return null;
+		}
 
-		RawObjectInfo.processObjects();
-		RawObjectInfo.reportObjects(ps);
+		return fields;
+	}
 
-		return lines;
+	/** Position the reader at the start of a section found by scanSections() */
+	public void beginSection(Section section) {
+		this.pos = section.start;
+		this.parsedFields = (section.fields != null) ? section.fields.iterator() : null;
+		this.parsedAsInvestment = (section.type == SectionType.Investment);
+
+		section.fields = null;
 	}
 
-	RawObjectInfo findObject(Map<String, List<RawObjectInfo>> objMap, //
-			String objType, String valType, String value) {
-		List<RawObjectInfo> objects = objMap.get(objType);
+	/**
+	 * Get the next transaction field parsed ahead of time, if we have them.
+	 * 
+	 * @param investment Whether the caller wants investment fields
+	 * @return False if the line must be read from the file
+	 */
+	private boolean nextParsedLine(QLine line, boolean investment) {
+		if (this.parsedFields == null) {
+			return false;
+		}
 
-		for (RawObjectInfo raw : objects) {
-			String v = raw.getValue(valType);
+		if (investment != this.parsedAsInvestment) {
+			// The account type doesn't match the section header
+			this.parsedFields = null;
+			return false;
+		}
 
-			if (v != null && v.equals(value)) {
-				return raw;
-			}
+		if (this.parsedFields.hasNext()) {
+			line.copyFrom(this.parsedFields.next());
+		} else {
+			line.type = FieldType.EndOfSection;
 		}
 
-		return null;
+		return true;
 	}
 
 	public SectionType findFirstSection() {
@@ -562,13 +516,24 @@ public class QFileReader {
 	public SectionType nextSection() {
 		try {
 			for (;;) {
-				String line = readLine();
-				if (line == null) {
+				this.headerStart = this.pos;
+
+				if (this.pos >= this.data.limit()) {
 					return SectionType.EndOfFile;
 				}
 
-				if (line.startsWith("!") //
-						&& !line.startsWith("!Option") //
+				int start = this.pos;
+				int end = lineEnd(start);
+				this.pos = nextLineStart(end);
+
+				// Only decode header lines
+				if (this.data.get(start) != '!') {
+					continue;
+				}
+
+				String line = decode(this.data, start, end - start);
+
+				if (!line.startsWith("!Option") //
 						&& !line.startsWith("!Clear")) {
 					return parseSectionType(line.trim());
 				}
@@ -694,9 +659,16 @@ public class QFileReader {
 	}
 
 	public void nextTxnLine(QLine line) {
+		if (nextParsedLine(line, false)) {
+			return;
+		}
+
 		try {
 			if (nextLine(line)) {
 				line.type = txnFieldType(line.typechar);
+				if (line.type == null) {
+					Common.reportError("Bad field type for account: " + line.typechar);
+				}
 				return;
 			}
 		} catch (final Exception e) {
@@ -707,9 +679,16 @@ public class QFileReader {
 	}
 
 	public void nextInvLine(QLine line) {
+		if (nextParsedLine(line, true)) {
+			return;
+		}
+
 		try {
 			if (nextLine(line)) {
 				line.type = invFieldType(line.typechar);
+				if (line.type == null) {
+					Common.reportError("Bad field type for account: " + line.typechar);
+				}
 				return;
 			}
 		} catch (final Exception e) {
@@ -727,19 +706,32 @@ public class QFileReader {
 	 * @throws Exception
 	 */
 	private boolean nextLine(QLine line) throws Exception {
-		String s = readLine();
-
-		if (s == null) {
+		if (this.pos >= this.data.limit()) {
 			line.type = FieldType.EndOfSection;
 			return false;
 		}
 
-		if (s.length() < 1) {
-			Common.reportError("Syntax error: field: " + s);
+		int start = this.pos;
+		int end = lineEnd(start);
+
+		this.pos = nextLineStart(end);
+
+		if (end == start) {
+			Common.reportError("Syntax error: field: ");
 		}
 
-		line.value = s.substring(1);
-		line.typechar = s.charAt(0);
+		byte b = this.data.get(start);
+
+		if (b >= 0) {
+			line.typechar = (char) b;
+			line.setValue(this.data, start + 1, end - start - 1);
+		} else {
+			// Type is not ASCII - decode the line to find the type character
+			String s = decode(this.data, start, end - start);
+
+			line.typechar = s.charAt(0);
+			line.setValue(s.substring(1));
+		}
 
 		return true;
 	}
@@ -852,6 +844,7 @@ public class QFileReader {
 		}
 	}
 
+	/** Get the field type for a transaction line; null if invalid */
 	private static FieldType txnFieldType(char key) {
 		switch (key) {
 		case END:
@@ -882,11 +875,11 @@ public class QFileReader {
 			return FieldType.TxnSplitAmount;
 
 		default:
-			Common.reportError("Bad field type for account: " + key);
-			return FieldType.EndOfSection;
+			return null;
 		}
 	}
 
+	/** Get the field type for an investment transaction line; null if invalid */
 	private static FieldType invFieldType(char key) {
 		switch (key) {
 		case END:
@@ -921,8 +914,7 @@ public class QFileReader {
 			return FieldType.InvXferAmt;
 
 		default:
-			Common.reportError("Bad field type for account: " + key);
-			return FieldType.EndOfSection;
+			return null;
 		}
 	}
 }
@@ -1,19 +1,23 @@
 package moneymgr.io.qif;
 
 import java.io.File;
+import java.util.List;
 
 import app.QifDom;
 import moneymgr.io.OptionsProcessor;
 import moneymgr.io.PortfolioProcessor;
 import moneymgr.io.Reconciler;
 import moneymgr.io.StatementDetails;
-import moneymgr.io.qif.QFileReader.SectionType;
+import moneymgr.io.qif.QFileReader.Section;
 import moneymgr.model.MoneyMgrModel;
 import moneymgr.model.Security;
 import moneymgr.util.Common;
 
 /** Class which loads quicken exported data (plus some additional info) */
 public class QifDomReader {
+	/** How long before a snapshot to look for refreshed quotes */
+	private static final long REFRESH_OVERLAP_MS = 60 * 1000;
+
 	/** The main load method - processes all files in qifdir */
 	public static void loadDom(MoneyMgrModel model, String[] qifFiles) {
 		QifDom.qifDir = new File(qifFiles[0]).getParentFile();
@@ -21,16 +25,33 @@ public class QifDomReader {
 		QifDomReader rdr = new QifDomReader(model, QifDom.qifDir);
 
 		// Process all the QIF files
+		model.beginBulkLoad();
+
 		for (String fn : qifFiles) {
 			rdr.load(fn, true);
 		}
 
+		model.endBulkLoad();
+
 		// Additional processing once the data is loaded (quotes, stmts, etc)
 		if (rdr.model != null) {
 			rdr.postLoad();
 		}
 	}
 
+	/**
+	 * Finish loading a model from a snapshot: add quotes refreshed since the
+	 * snapshot was taken and start refreshing old quote files.<br>
+	 * Prices from a refresh reach the model shortly after the quote store is
+	 * written, so stores written just before the snapshot are included too.
+	 */
+	public static void postSnapshotLoad(MoneyMgrModel model, File snapshotFile) {
+		QifDomReader rdr = new QifDomReader(model, QifDom.qifDir);
+
+		rdr.securityProcessor.loadRefreshedQuotes(snapshotFile.lastModified() - REFRESH_OVERLAP_MS);
+		rdr.securityProcessor.startQuoteRefresh();
+	}
+
 	public final MoneyMgrModel model;
 	private final TransactionCleaner transactionCleaner;
 	private final SecurityProcessor securityProcessor;
@@ -65,25 +86,6 @@ public class QifDomReader {
 		return this.filerdr;
 	}
 
-	public void load2(String fileName) {
-		if (!new File(fileName).exists()) {
-			if (!new File("c:" + fileName).exists()) {
-				Common.reportError("Input file '" + fileName + "' does not exist");
-				return;
-			}
-
-			fileName = "c:" + fileName;
-		}
-
-		init(fileName);
-
-		processFile2();
-	}
-
-	private void processFile2() {
-		Object fileContents = this.filerdr.ingestFile();
-	}
-
 	/** Load a single input file */
 	public void load(String fileName, boolean doCleanup) {
 		// Check windows and unix paths
@@ -137,6 +139,9 @@ public class QifDomReader {
 		if (QifDom.loadedStatementsVersion != StatementDetails.CURRENT_VERSION) {
 			this.reconciler.rewriteStatementLogFile();
 		}
+
+		// Bring old quote files up to date now that the model is complete
+		this.securityProcessor.startQuoteRefresh();
 	}
 
 	private void init(String filename) {
@@ -149,12 +154,21 @@ public class QifDomReader {
 		this.filerdr = new QFileReader(this.model, f);
 	}
 
-	/** Process a file, loading the various sections via helper classes */
+	/**
+	 * Process a file, loading the various sections via helper classes.<br>
+	 * First find the sections and parse the transaction sections (which are
+	 * independent of each other) in parallel. Then load the sections in order,
+	 * so objects are created (and numbered) as if read sequentially.
+	 */
 	private void processFile() {
-		for (SectionType sectype = this.filerdr.findFirstSection(); //
-				sectype != SectionType.EndOfFile; //
-				sectype = this.filerdr.nextSection()) {
-			switch (sectype) {
+		List<Section> sections = this.filerdr.scanSections();
+
+		this.filerdr.parseTransactionSections(sections);
+
+		for (Section section : sections) {
+			this.filerdr.beginSection(section);
+
+			switch (section.type) {
 			case Tag:
 			case Category:
 				new CategoryProcessor(this).loadCategories();
@@ -1,11 +1,20 @@
 package moneymgr.io.qif;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.SwingUtilities;
 
 import app.QifDom;
 import moneymgr.io.QQuoteLoader;
 import moneymgr.io.QuoteDownloader;
+import moneymgr.io.QuoteDownloader.QuoteSeries;
+import moneymgr.io.QuoteStore;
 import moneymgr.model.Account;
 import moneymgr.model.GenericTxn;
 import moneymgr.model.InvestmentTxn;
@@ -17,9 +26,13 @@ import moneymgr.model.SimpleTxn;
 import moneymgr.model.StockOption;
 import moneymgr.model.TxAction;
 import moneymgr.util.Common;
+import moneymgr.util.QDate;
 
 /** Load securities and set up security and lot details afterwards. */
 public class SecurityProcessor {
+	/** Maximum number of threads used to parse quote files */
+	private static final int MAX_QUOTE_THREADS = 8;
+
 	private final QifDomReader qrdr;
 	private final QuoteDownloader quoteDownloader;
 	private final QQuoteLoader quoteLoader;
@@ -33,8 +46,7 @@ public class SecurityProcessor {
 	/** Process securities section of an input file and create security objects */
 	public void loadSecurities() {
 		for (;;) {
-			String s = this.qrdr.getFileReader().peekLine();
-			if ((s == null) || ((s.length() > 0) && (s.charAt(0) == '!'))) {
+			if (this.qrdr.getFileReader().atSectionEnd()) {
 				break;
 			}
 
@@ -49,7 +61,7 @@ public class SecurityProcessor {
 
 			if (existing != null) {
 				if (!existing.names.contains(sec.getName())) {
-					existing.names.add(sec.getName());
+					existing.addName(sec.getName());
 				}
 			} else {
 				this.qrdr.model.addSecurity(sec);
@@ -74,20 +86,20 @@ public class SecurityProcessor {
 				break loop;
 
 			case SecName:
-				name = qline.value;
+				name = qline.getValue();
 				break;
 			case SecSymbol:
-				symbol = qline.value;
+				symbol = qline.getValue();
 				break;
 			case SecType:
-				type = qline.value;
+				type = qline.getValue();
 				break;
 			case SecGoal:
-				goal = qline.value;
+				goal = qline.getValue();
 				break;
 
 			default:
-				Common.reportError("Unknown security field: " + qline.value);
+				Common.reportError("Unknown security field: " + qline.getValue());
 			}
 		}
 
@@ -155,6 +167,8 @@ public class SecurityProcessor {
 			return;
 		}
 
+		long startTime = System.currentTimeMillis();
+
 		File quoteFiles[] = quoteDirectory.listFiles();
 
 		// Load saved quote data
@@ -167,38 +181,139 @@ public class SecurityProcessor {
 			}
 		}
 
-		// Download quotes from service
+		// Locate (or download) quote files, converting JSON files to quote
+		// stores. Downloads are rate-limited by the service, and conversion
+		// writes files, so this part is done one security at a time.
+		List<Security> securities = new ArrayList<>();
+		List<File> files = new ArrayList<>();
+
 		for (Security sec : this.qrdr.model.getSecurities()) {
 			String symbol = sec.getSymbol();
 
 			if (symbol != null) {
-				int warningCount = 0;
 				Common.debugInfo("Loading/comparing price history for " + symbol);
 
-				List<QPrice> prices = this.quoteDownloader.loadPriceHistory(symbol);
+				File quoteFile = this.quoteDownloader.getPriceHistoryFile(symbol);
+				quoteFile = this.quoteDownloader.convertQuoteFile(symbol, quoteFile);
 
-				if (prices != null) {
-					for (QPrice price : prices) {
-						if (!sec.addPrice(price)) {
-							++warningCount;
-						}
-					}
+				if (quoteFile != null) {
+					securities.add(sec);
+					files.add(quoteFile);
+				}
+			}
+		}
+
+		// Parse the quote files in parallel
+		List<Future<QuoteSeries>> results = new ArrayList<>();
+		int nthreads = Math.max(1, Math.min(files.size(), //
+				Math.min(MAX_QUOTE_THREADS, Runtime.getRuntime().availableProcessors())));
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+
+		try {
+			for (int ii = 0; ii < files.size(); ++ii) {
+				String symbol = securities.get(ii).getSymbol();
+				File quoteFile = files.get(ii);
+
+				results.add(pool.submit(() -> this.quoteDownloader.parseQuoteFile(symbol, quoteFile)));
+			}
+
+			// Add the prices to each security's history
+			for (int ii = 0; ii < results.size(); ++ii) {
+				Security sec = securities.get(ii);
+				QuoteSeries series = getQuoteSeries(results.get(ii), sec.getSymbol());
+
+				if (series != null) {
+					int warningCount = sec.addPrices( //
+							series.days, series.prices, series.splitAdjustedPrices, series.size);
 
 					if (QifDom.verbose && (warningCount > 0)) {
 						Common.reportWarning( //
-								"Security prices replaced for " + symbol + ":" //
+								"Security prices replaced for " + sec.getSymbol() + ":" //
 										+ Integer.toString(warningCount));
 					}
 				}
 			}
+		} finally {
+			pool.shutdownNow();
 		}
+
+		Common.reportInfo(String.format("Loaded quotes for %d securities: %1.1fs", //
+				files.size(), (System.currentTimeMillis() - startTime) / 1000.0));
+	}
+
+	/**
+	 * Start refreshing out of date quote files in the background. New prices
+	 * from each refresh are added on the event dispatch thread, like other
+	 * changes made while the application is running.
+	 */
+	public void startQuoteRefresh() {
+		this.quoteDownloader.refreshQuotes((symbol, quotes) -> {
+			if (quotes.size > 0) {
+				SwingUtilities.invokeLater(() -> addRefreshedPrices(symbol, quotes));
+			}
+		});
+	}
+
+	/**
+	 * Bring a model loaded from a snapshot up to date with the quote files.
+	 * Quote stores written since the snapshot was taken (i.e. by a refresh) are
+	 * added to the securities' price histories, and old quote files are noted
+	 * to be refreshed (see startQuoteRefresh()) as when loading from QIF.
+	 * 
+	 * @param since Time (ms) the snapshot was taken
+	 */
+	public void loadRefreshedQuotes(long since) {
+		for (Security sec : this.qrdr.model.getSecurities()) {
+			String symbol = sec.getSymbol();
+			if (symbol == null) {
+				continue;
+			}
+
+			File quoteFile = this.quoteDownloader.getPriceHistoryFile(symbol);
+
+			if ((quoteFile != null) //
+					&& QuoteStore.isStoreFile(quoteFile) //
+					&& (quoteFile.lastModified() >= since)) {
+				QuoteSeries series = QuoteStore.load(symbol, quoteFile);
+
+				if ((series != null) && (series.size > 0)) {
+					addRefreshedPrices(symbol, series);
+				}
+			}
+		}
+	}
+
+	/** Add prices from a quote refresh to a security's history */
+	private void addRefreshedPrices(String symbol, QuoteSeries series) {
+		Security sec = this.qrdr.model.findSecurityBySymbol(symbol);
+		if (sec == null) {
+			return;
+		}
+
+		int replaced = sec.addPrices(series.days, series.prices, series.splitAdjustedPrices, series.size);
+		sec.pricesChanged(QDate.fromEpochDay(series.days[0]));
+
+		Common.reportInfo(String.format("Refreshed quotes for %s: %d prices, %d replaced", //
+				symbol, series.size, replaced));
+	}
+
+	/** Wait for a quote file to be parsed */
+	private static QuoteSeries getQuoteSeries(Future<QuoteSeries> result, String symbol) {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Common.reportWarning("Error loading quotes for " + symbol + ": " + e.getCause());
+		}
+
+		return null;
 	}
 
 	/** Load quotes from a QIF input file */
 	public void loadPrices() {
 		for (;;) {
-			String s = this.qrdr.getFileReader().peekLine();
-			if ((s == null) || ((s.length() > 0) && (s.charAt(0) == '!'))) {
+			if (this.qrdr.getFileReader().atSectionEnd()) {
 				break;
 			}
 
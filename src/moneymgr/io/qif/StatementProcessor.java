@@ -48,8 +48,7 @@ public class StatementProcessor {
 	/** Load statements for an account from the quasi-QIF file */
 	public void loadStatements(File file) {
 		for (;;) {
-			String s = this.qrdr.getFileReader().peekLine();
-			if ((s == null) || ((s.length() > 0) && (s.charAt(0) == '!'))) {
+			if (this.qrdr.getFileReader().atSectionEnd()) {
 				break;
 			}
 
@@ -76,7 +75,7 @@ public class StatementProcessor {
 				return stmts;
 
 			case StmtsAccount: {
-				String aname = qline.value;
+				String aname = qline.getValue();
 				Account a = this.qrdr.model.findAccount(aname);
 				if (a == null) {
 					Common.reportError("Can't find account: " + aname);
@@ -88,7 +87,7 @@ public class StatementProcessor {
 			}
 
 			case StmtsMonthly: {
-				String[] ss = qline.value.split(" ");
+				String[] ss = qline.getValue().split(" ");
 				int ssx = 0;
 
 				String datestr = ss[ssx++];
@@ -114,7 +113,7 @@ public class StatementProcessor {
 					if (month > 12) {
 						Common.reportError( //
 								"Statements month wrapped to next year:\n" //
-										+ qline.value);
+										+ qline.getValue());
 					}
 
 					String balStr = ss[ssx++];
@@ -122,7 +121,7 @@ public class StatementProcessor {
 						balStr = "0.00";
 					}
 
-					BigDecimal bal = new BigDecimal(balStr);
+					BigDecimal bal = Common.parseDecimal(balStr);
 					QDate d = (day == 0) //
 							? QDate.getDateForEndOfMonth(year, month) //
 							: new QDate(year, month, day);
@@ -150,11 +149,11 @@ public class StatementProcessor {
 			}
 
 			case StmtsCash:
-				currstmt.setCashBalance(Common.parseDecimal(qline.value));
+				currstmt.setCashBalance(Common.parseDecimal(qline.getValue()));
 				break;
 
 			case StmtsSecurity: {
-				String[] ss = qline.value.split(";");
+				String[] ss = qline.getValue().split(";");
 				int ssx = 0;
 
 				// S<SYM>;[<order>;]QTY;VALUE;PRICE
@@ -204,10 +203,10 @@ public class StatementProcessor {
 				SecurityPosition pos = // new SecurityPosition(hold, sec);
 						hold.getPosition(sec);
 
-				pos.setEndingValue((valStr.equals("x")) ? null : new BigDecimal(valStr));
-				BigDecimal endingShares = (qtyStr.equals("x")) ? null : new BigDecimal(qtyStr);
-				BigDecimal price = (priceStr.equals("x")) ? null : new BigDecimal(priceStr);
-				BigDecimal price4date = sec.getPriceForDate(currstmt.date).getPrice();
+				pos.setEndingValue((valStr.equals("x")) ? null : Common.parseDecimal(valStr));
+				BigDecimal endingShares = (qtyStr.equals("x")) ? null : Common.parseDecimal(qtyStr);
+				BigDecimal price = (priceStr.equals("x")) ? null : Common.parseDecimal(priceStr);
+				BigDecimal price4date = sec.getPriceValueForDate(currstmt.date);
 
 				// We care primarily about the number of shares. If that is not
 				// present, the other two must be set for us to calculate the
@@ -99,6 +99,7 @@ public class TransactionCleaner {
 
 			a.setBalance(bal);
 			a.setClearedBalance(cleared);
+			a.invalidateBalances();
 		}
 	}
 
@@ -152,13 +153,22 @@ public class TransactionCleaner {
 		}
 	}
 
+	/** Finds matches for transfers while connecting transfers */
+	private TransferMatcher transferMatcher = null;
+
 	/** Connect transfer transactions between accounts */
 	private void connectTransfers() {
+		this.transferMatcher = new TransferMatcher(this.model);
+
 		for (Account a : this.model.getAccounts()) {
 			for (GenericTxn txn : a.getTransactions()) {
 				connectTransfers(txn);
 			}
 		}
+
+		Common.reportInfo("Connect transfers: " + this.transferMatcher.getStatistics());
+
+		this.transferMatcher = null;
 	}
 
 	static int[] counts = { 0, 0 };
@@ -222,12 +232,12 @@ public class TransactionCleaner {
 
 		Account a = this.model.getAccountByID(-txn.getCatid());
 
-		findMatchesForTransfer(a, matchingTxns, txn, true);
+		this.transferMatcher.findMatches(a, matchingTxns, txn, true);
 
 		++totalXfers;
 
 		if (matchingTxns.isEmpty()) {
-			findMatchesForTransfer(a, matchingTxns, txn, false);
+			this.transferMatcher.findMatches(a, matchingTxns, txn, false);
 			// SellX openingBal void
 		}
 
@@ -261,109 +271,6 @@ public class TransactionCleaner {
 		Persistence.validateTransfers(txn, counts);
 	}
 
-	/**
-	 * Look for transfer candidates in an account
-	 * 
-	 * @param acct         The account to search
-	 * @param matchingTxns OUT: List containing candidate matches
-	 * @param txn          The transfer for which we are looking for matches
-	 * @param strict       Whether to ignore sign of amount
-	 */
-	private void findMatchesForTransfer(//
-			Account acct, //
-			List<SimpleTxn> matchingTxns, //
-			SimpleTxn txn, //
-			boolean strict) {
-		matchingTxns.clear();
-
-		List<GenericTxn> txns = acct.getTransactions();
-		int tolerance = 2;
-
-		QDate date = txn.getDate();
-
-		int idx0 = this.model.getLastTransactionIndexOnOrBeforeDate( //
-				txns, date.addDays(-tolerance));
-		if (idx0 < 0) {
-			idx0 = 0;
-		}
-		int idx1 = this.model.getLastTransactionIndexOnOrBeforeDate( //
-				txns, date.addDays(tolerance));
-		if (idx1 < 0) {
-			idx1 = 0;
-		}
-
-		boolean exactDateMatch = false;
-
-		for (int idx = idx0; idx <= idx1; ++idx) {
-			GenericTxn gtxn = txns.get(idx);
-
-			boolean dateeq = date.equals(gtxn.getDate());
-
-			// Check nearby dates only if we haven't found a match
-			if (dateeq || !exactDateMatch) {
-				List<SimpleTxn> transfers = gtxn.getCashTransfers(txn.getAccountID());
-				for (SimpleTxn transfer : transfers) {
-//					int xacctid = txn.getCashTransferAcctid();
-//					if ((xacctid <= 0) || (xacctid != gtxn.getAccountID())) {
-//						continue;
-//					}
-
-					SimpleTxn match = checkMatchForTransfer(txn, transfer, strict);
-					if (match == null) {
-//					System.out.println(txn.toString());
-//					System.out.println(gtxn.toString());
-//					System.out.println("no match");				
-					} else if (match.getCashTransferTxn() == null) {
-						if (dateeq && !exactDateMatch) {
-							matchingTxns.clear();
-						}
-
-						exactDateMatch |= dateeq;
-						matchingTxns.add(match);
-					}
-				}
-			}
-		}
-	}
-
-	/**
-	 * Locate a match for txn in gtxn (either gtxn itself, or a split)<br>
-	 * Account/amount must match and not already matched with an xfer.
-	 */
-	private SimpleTxn checkMatchForTransfer( //
-			SimpleTxn txn, //
-			SimpleTxn gtxn, //
-			boolean strict) {
-		assert -txn.getCatid() == gtxn.getAccountID();
-
-		List<SimpleTxn> transfers = gtxn.getCashTransfers();
-		for (SimpleTxn transfer : transfers) {
-			if ((transfer.getCatid() == -txn.getAccountID()) //
-					&& (transfer.getCashTransferTxn() == null) //
-					&& transfer.amountIsEqual(txn, strict)) {
-				return transfer;
-			}
-		}
-
-//		if (!gtxn.hasSplits()) {
-//			if ((gtxn.getCashTransferAcctid() == txn.getAccountID()) //
-//					&& (gtxn.getCashTransferTxn() == null) //
-//					&& gtxn.amountIsEqual(txn, strict)) {
-//				return gtxn;
-//			}
-//		} else {
-//			for (SimpleTxn splittTxn : gtxn.getSplits()) {
-//				if ((splittTxn.getCashTransferAcctid() == txn.getAccountID()) //
-//						&& (splittTxn.getCashTransferTxn() == null) //
-//						&& splittTxn.amountIsEqual(txn, strict)) {
-//					return splittTxn;
-//				}
-//			}
-//		}
-
-		return null;
-	}
-
 	/** Process transfers of securities between accounts */
 	private void connectSecurityTransfers() {
 		List<InvestmentTxn> xins = new ArrayList<InvestmentTxn>();
@@ -24,8 +24,7 @@ public class TransactionProcessor {
 		}
 
 		for (;;) {
-			String s = this.qrdr.getFileReader().peekLine();
-			if ((s == null) || ((s.length() > 0) && (s.charAt(0) == '!'))) {
+			if (this.qrdr.getFileReader().atSectionEnd()) {
 				break;
 			}
 
@@ -64,86 +63,86 @@ public class TransactionProcessor {
 				return txn;
 
 			case InvTransactionAmt: {
-				BigDecimal amt = Common.getDecimal(qline.value);
+				BigDecimal amt = qline.getDecimal();
 
 				if (txn.getAmount() != null) {
 					if (!txn.getAmount().equals(amt)) {
-						Common.reportError("Inconsistent amount: " + qline.value);
+						Common.reportError("Inconsistent amount: " + qline.getValue());
 					}
 				} else {
 					txn.setAmount(amt);
 				}
-				tinfo.setValue(TransactionInfo.AMOUNT_IDX, qline.value);
+				tinfo.setValue(TransactionInfo.AMOUNT_IDX, qline.getValue());
 
 				break;
 			}
 
 			case InvAction:
-				txn.setAction(TxAction.parseAction(qline.value));
-				tinfo.setValue(TransactionInfo.ACTION_IDX, qline.value);
+				txn.setAction(TxAction.parseAction(qline.getValue()));
+				tinfo.setValue(TransactionInfo.ACTION_IDX, qline.getValue());
 				break;
 
 			case InvPayee:
-				txn.setPayee(qline.value);
-				tinfo.setValue(TransactionInfo.PAYEE_IDX, qline.value);
+				txn.setPayee(qline.getValue());
+				tinfo.setValue(TransactionInfo.PAYEE_IDX, qline.getValue());
 
 			case InvClearedStatus:
 				// Ignore
 				break;
 
 			case InvCommission:
-				txn.setCommission(Common.getDecimal(qline.value));
-				tinfo.setValue(TransactionInfo.COMMISSION_IDX, qline.value);
+				txn.setCommission(qline.getDecimal());
+				tinfo.setValue(TransactionInfo.COMMISSION_IDX, qline.getValue());
 				break;
 
 			case InvDate:
-				txn.setDate(Common.parseQDate(qline.value));
-				tinfo.setValue(TransactionInfo.DATE_IDX, qline.value);
+				txn.setDate(qline.getDate());
+				tinfo.setValue(TransactionInfo.DATE_IDX, qline.getValue());
 				break;
 
 			case InvMemo:
-				txn.setMemo(qline.value);
-				tinfo.setValue(TransactionInfo.MEMO_IDX, qline.value);
+				txn.setMemo(qline.getValue());
+				tinfo.setValue(TransactionInfo.MEMO_IDX, qline.getValue());
 				break;
 
 			case InvPrice:
-				txn.setPrice(Common.getDecimal(qline.value));
-				tinfo.setValue(TransactionInfo.PRICE_IDX, qline.value);
+				txn.setPrice(qline.getDecimal());
+				tinfo.setValue(TransactionInfo.PRICE_IDX, qline.getValue());
 				break;
 
 			case InvQuantity:
-				txn.setQuantity(Common.getDecimal(qline.value));
-				tinfo.setValue(TransactionInfo.SHARES_IDX, qline.value);
+				txn.setQuantity(qline.getDecimal());
+				tinfo.setValue(TransactionInfo.SHARES_IDX, qline.getValue());
 				break;
 
 			case InvSecurity:
-				txn.setSecurity(this.qrdr.model.findSecurityByName(qline.value));
-				tinfo.setValue(TransactionInfo.SECURITY_IDX, qline.value);
+				txn.setSecurity(this.qrdr.model.findSecurityByName(qline.getValue()));
+				tinfo.setValue(TransactionInfo.SECURITY_IDX, qline.getValue());
 
 				if (txn.getSecurity() == null) {
 					Common.reportWarning("Txn for acct " + txn.getAccountID() + ". " //
-							+ "No security '" + qline.value + "' was found.");
+							+ "No security '" + qline.getValue() + "' was found.");
 				}
 
 				break;
 
 			case InvFirstLine:
-				// txn.textFirstLine = qline.value;
+				// txn.textFirstLine = qline.getValue();
 				break;
 
 			case InvXferAmt:
-				txn.setCashTransferred(Common.getDecimal(qline.value));
-				tinfo.setValue(TransactionInfo.XAMOUNT_IDX, qline.value);
+				txn.setCashTransferred(qline.getDecimal());
+				tinfo.setValue(TransactionInfo.XAMOUNT_IDX, qline.getValue());
 				break;
 
 			case InvXferAcct: {
-				int catid = this.qrdr.model.parseCategory(qline.value);
+				int catid = this.qrdr.model.parseCategory(qline.getValue());
 				if (catid < 0) {
-					txn.setAccountForTransfer(qline.value);
+					txn.setAccountForTransfer(qline.getValue());
 				}
 
 				txn.setCatid(catid);
-				tinfo.setValue(TransactionInfo.XACCOUNT_IDX, qline.value);
+				tinfo.setValue(TransactionInfo.XACCOUNT_IDX, qline.getValue());
 				break;
 			}
 
@@ -160,8 +159,7 @@ public class TransactionProcessor {
 		}
 
 		for (;;) {
-			String s = this.qrdr.getFileReader().peekLine();
-			if ((s == null) || ((s.length() > 0) && (s.charAt(0) == '!'))) {
+			if (this.qrdr.getFileReader().atSectionEnd()) {
 				break;
 			}
 
@@ -183,8 +181,6 @@ public class TransactionProcessor {
 	private NonInvestmentTxn loadNonInvestmentTransaction() {
 		QFileReader.QLine qline = new QFileReader.QLine();
 
-		TransactionInfo tinfo = new TransactionInfo(this.qrdr.model.currAccountBeingLoaded);
-
 		// TODO gather info and create transaction at the end
 		NonInvestmentTxn txn = new NonInvestmentTxn(this.qrdr.model.currAccountBeingLoaded.acctid);
 		SplitTxn cursplit = null;
@@ -194,54 +190,47 @@ public class TransactionProcessor {
 
 			switch (qline.type) {
 			case EndOfSection:
-				// TODO later TransactionInfo.addWinInfo(tinfo, txn);
 				return txn;
 
 			case TxnCategory: {
-				int catid = this.qrdr.model.parseCategory(qline.value);
+				int catid = this.qrdr.model.parseCategory(qline.getValue());
 
 				if (catid == 0) {
-					Common.reportError("Can't find xtxn: " + qline.value);
+					Common.reportError("Can't find xtxn: " + qline.getValue());
 				}
 
 				txn.setCatid(catid);
 			}
-				tinfo.setValue(TransactionInfo.CATEGORY_IDX, qline.value);
 				break;
 
 			case TxnAmount: {
-				final BigDecimal amt = Common.getDecimal(qline.value);
+				final BigDecimal amt = qline.getDecimal();
 
 				if (txn.getAmount() != null) {
 					if (!txn.getAmount().equals(amt)) {
-						Common.reportWarning("Inconsistent amount: " + qline.value);
+						Common.reportWarning("Inconsistent amount: " + qline.getValue());
 					}
 				}
 
 				txn.setAmount(amt);
-				tinfo.setValue(TransactionInfo.AMOUNT_IDX, qline.value);
 
 				break;
 			}
 			case TxnMemo:
-				txn.setMemo(qline.value);
-				tinfo.setValue(TransactionInfo.MEMO_IDX, qline.value);
+				txn.setMemo(qline.getValue());
 				break;
 
 			case TxnDate:
-				txn.setDate(Common.parseQDate(qline.value));
-				tinfo.setValue(TransactionInfo.DATE_IDX, qline.value);
+				txn.setDate(qline.getDate());
 				break;
 			case TxnClearedStatus:
 				// Ignore
 				break;
 			case TxnNumber:
-				txn.setCheckNumber(qline.value);
-				tinfo.setValue(TransactionInfo.CHECKNUM_IDX, qline.value);
+				txn.setCheckNumber(qline.getValue());
 				break;
 			case TxnPayee:
-				txn.setPayee(qline.value);
-				tinfo.setValue(TransactionInfo.PAYEE_IDX, qline.value);
+				txn.setPayee(qline.getValue());
 				break;
 			case TxnSplitCategory:
 				if (cursplit == null || cursplit.getCatid() != 0) {
@@ -250,15 +239,15 @@ public class TransactionProcessor {
 					this.qrdr.model.addTransaction(cursplit);
 				}
 
-				if (qline.value == null || qline.value.trim().isEmpty()) {
-					qline.value = "Fix Me";
+				String catname = qline.getValue();
+				if (catname.trim().isEmpty()) {
+					catname = "Fix Me";
 				}
-				cursplit.setCatid(this.qrdr.model.parseCategory(qline.value));
+				cursplit.setCatid(this.qrdr.model.parseCategory(catname));
 
 				if (cursplit.getCatid() == 0) {
-					Common.reportError("Can't find xtxn: " + qline.value);
+					Common.reportError("Can't find xtxn: " + catname);
 				}
-				tinfo.addSplitCategory(qline.value);
 				break;
 			case TxnSplitAmount:
 				if (cursplit == null || cursplit.getAmount() != null) {
@@ -267,14 +256,12 @@ public class TransactionProcessor {
 					this.qrdr.model.addTransaction(cursplit);
 				}
 
-				cursplit.setAmount(Common.getDecimal(qline.value));
-				tinfo.addSplitAmount(qline.value);
+				cursplit.setAmount(qline.getDecimal());
 				break;
 			case TxnSplitMemo:
 				if (cursplit != null) {
-					cursplit.setMemo(qline.value);
+					cursplit.setMemo(qline.getValue());
 				}
-				tinfo.addSplitMemo(qline.value);
 				break;
 
 			default:
@@ -0,0 +1,218 @@
+package moneymgr.io.qif;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import moneymgr.model.Account;
+import moneymgr.model.GenericTxn;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.SimpleTxn;
+import moneymgr.util.Common;
+import moneymgr.util.QDate;
+
+/**
+ * Finds the other side of transfers between accounts.<br>
+ * Transfers (transactions or splits) are indexed by account, the account
+ * transferred to/from, and amount (cents), so finding the candidates for a
+ * transfer is a hash lookup plus a check of the dates.
+ */
+public class TransferMatcher {
+	/** Number of days either side of a transfer's date to look for a match */
+	private static final int DATE_TOLERANCE = 2;
+
+	/** Identifies transfers of an amount from one account to/from another */
+	private static class Key {
+		final int acctid;
+		final int xacctid;
+		final long cents;
+
+		Key(int acctid, int xacctid, BigDecimal amount) {
+			this.acctid = acctid;
+			this.xacctid = xacctid;
+			this.cents = Common.toCents(amount.abs());
+		}
+
+		public int hashCode() {
+			return (31 * this.acctid + this.xacctid) * 31 + Long.hashCode(this.cents);
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			return (this.acctid == other.acctid) //
+					&& (this.xacctid == other.xacctid) //
+					&& (this.cents == other.cents);
+		}
+	}
+
+	/** A transfer and the position of its transaction in the account */
+	private static class Candidate {
+		final SimpleTxn transfer;
+		final GenericTxn txn;
+		final int txnIndex;
+
+		Candidate(SimpleTxn transfer, GenericTxn txn, int txnIndex) {
+			this.transfer = transfer;
+			this.txn = txn;
+			this.txnIndex = txnIndex;
+		}
+	}
+
+	/** Transfers in each bucket, in account transaction order */
+	private final Map<Key, List<Candidate>> candidates = new HashMap<>();
+
+	private int numTransfers = 0;
+	private int numLookups = 0;
+	private int numCandidatesChecked = 0;
+	private long buildNanos = 0;
+	private long matchNanos = 0;
+
+	/** Index the transfers in all of a model's accounts */
+	public TransferMatcher(MoneyMgrModel model) {
+		long start = System.nanoTime();
+
+		for (Account acct : model.getAccounts()) {
+			List<GenericTxn> txns = acct.getTransactions();
+
+			for (int idx = 0; idx < txns.size(); ++idx) {
+				GenericTxn gtxn = txns.get(idx);
+
+				for (SimpleTxn transfer : gtxn.getCashTransfers()) {
+					addCandidate(acct, transfer, gtxn, idx);
+				}
+			}
+		}
+
+		this.buildNanos = System.nanoTime() - start;
+	}
+
+	private void addCandidate(Account acct, SimpleTxn transfer, GenericTxn gtxn, int idx) {
+		BigDecimal amount = transfer.getCashTransferAmount();
+		if (amount == null) {
+			return;
+		}
+
+		Key key = new Key(acct.acctid, -transfer.getCatid(), amount);
+
+		List<Candidate> bucket = this.candidates.get(key);
+		if (bucket == null) {
+			bucket = new ArrayList<>();
+			this.candidates.put(key, bucket);
+		}
+
+		bucket.add(new Candidate(transfer, gtxn, idx));
+		++this.numTransfers;
+	}
+
+	/**
+	 * Look for transfer candidates in an account.<br>
+	 * Candidates are unmatched transfers to the transfer's account with the
+	 * same amount in transactions near the transfer's date. If any have the
+	 * same date, only those are returned.
+	 *
+	 * @param acct         The account to search
+	 * @param matchingTxns OUT: List containing candidate matches
+	 * @param txn          The transfer for which we are looking for matches
+	 * @param strict       Whether to ignore sign of amount
+	 */
+	public void findMatches( //
+			Account acct, //
+			List<SimpleTxn> matchingTxns, //
+			SimpleTxn txn, //
+			boolean strict) {
+		long start = System.nanoTime();
+
+		matchingTxns.clear();
+		++this.numLookups;
+
+		BigDecimal amount = txn.getCashTransferAmount();
+		List<Candidate> bucket = (amount != null) //
+				? this.candidates.get(new Key(acct.acctid, txn.getAccountID(), amount)) //
+				: null;
+
+		if (bucket != null) {
+			findMatches(acct, bucket, matchingTxns, txn, strict);
+		}
+
+		this.matchNanos += System.nanoTime() - start;
+	}
+
+	private void findMatches( //
+			Account acct, //
+			List<Candidate> bucket, //
+			List<SimpleTxn> matchingTxns, //
+			SimpleTxn txn, //
+			boolean strict) {
+		QDate date = txn.getDate();
+
+		// Range of account transactions to search (as the original search did)
+		int idx0 = acct.getLastTransactionIndexOnOrBeforeDate(date.addDays(-DATE_TOLERANCE));
+		if (idx0 < 0) {
+			idx0 = 0;
+		}
+		int idx1 = acct.getLastTransactionIndexOnOrBeforeDate(date.addDays(DATE_TOLERANCE));
+		if (idx1 < 0) {
+			idx1 = 0;
+		}
+
+		// Find the first candidate within range of the date
+		int lo = 0;
+		int hi = bucket.size();
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (bucket.get(mid).txnIndex < idx0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		boolean exactDateMatch = false;
+
+		for (int idx = lo; idx < bucket.size(); ++idx) {
+			Candidate cand = bucket.get(idx);
+			if (cand.txnIndex > idx1) {
+				break;
+			}
+
+			boolean dateeq = date.equals(cand.txn.getDate());
+
+			// Check nearby dates only if we haven't found a match
+			if (!dateeq && exactDateMatch) {
+				continue;
+			}
+
+			++this.numCandidatesChecked;
+
+			SimpleTxn transfer = cand.transfer;
+
+			if ((transfer.getCatid() == -txn.getAccountID()) //
+					&& (transfer.getCashTransferTxn() == null) //
+					&& transfer.amountIsEqual(txn, strict)) {
+				if (dateeq && !exactDateMatch) {
+					matchingTxns.clear();
+				}
+
+				exactDateMatch |= dateeq;
+				matchingTxns.add(transfer);
+			}
+		}
+	}
+
+	/** Summary of the work done, for reporting */
+	public String getStatistics() {
+		return String.format("%d transfers indexed in %1.1fms; " //
+				+ "%d lookups checked %d candidates in %1.1fms", //
+				this.numTransfers, this.buildNanos / 1e6, //
+				this.numLookups, this.numCandidatesChecked, this.matchNanos / 1e6);
+	}
+}
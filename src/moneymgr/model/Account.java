@@ -3,6 +3,7 @@ package moneymgr.model;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -10,6 +11,7 @@ import java.util.Map;
 
 import moneymgr.model.SecurityPosition.PositionInfo;
 import moneymgr.util.Common;
+import moneymgr.util.DateKeyIndex;
 import moneymgr.util.QDate;
 
 /**
@@ -35,6 +37,15 @@ public class Account {
 	private BigDecimal clearedBalance;
 
 	private final List<GenericTxn> transactions;
+	/** Date keys for transactions (parallel to transactions) */
+	private final DateKeyIndex txDates;
+	/**
+	 * Running cash balance in cents after each transaction (parallel to
+	 * transactions). Entries from balancesValid on are out of date and are
+	 * recalculated when needed.
+	 */
+	private long[] balanceCents;
+	private volatile int balancesValid;
 	private final List<Statement> statements;
 	public final SecurityPortfolio securities;
 
@@ -52,6 +63,9 @@ public class Account {
 		this.balance = this.clearedBalance = BigDecimal.ZERO;
 
 		this.transactions = new ArrayList<>();
+		this.txDates = new DateKeyIndex();
+		this.balanceCents = new long[16];
+		this.balancesValid = 0;
 		this.statements = new ArrayList<>();
 		this.securities = new SecurityPortfolio(this, null);
 	}
@@ -199,44 +213,84 @@ public class Account {
 //			return;
 		}
 
-		int idx = this.model.getTransactionInsertIndexByDate(//
-				this.transactions, txn);
+		int key = txn.getDate().getRawValue();
+		int idx = this.txDates.insertIndexOf(key);
 
 		this.transactions.add(idx, txn);
+		this.txDates.insert(idx, key);
+		invalidateBalances(idx);
 	}
 
 	public void removeTransaction(GenericTxn txn) {
-		if (this.transactions.contains(txn)) {
+		int idx = getTransactionIndex(txn);
+
+		if (idx >= 0) {
 			if (txn.isCleared()) {
 				Common.reportError("Account: Can't remove cleared transaction");
 			}
 
-			this.transactions.remove(txn);
+			this.transactions.remove(idx);
+			this.txDates.remove(idx);
+			invalidateBalances(idx);
 		}
 	}
 
-	/** Find the index to insert a new transaction in a list sorted by date */
-	private int getTransactionIndexForDate(QDate date) {
-		MoneyMgrModel.SEARCH().setDate(date);
+	/** Move a transaction whose date has changed to its new position */
+	public void changeTransactionDate(GenericTxn txn, QDate olddate) {
+		int idx = findTransaction(txn, olddate.getRawValue());
 
-		return getTransactionIndexForDate(MoneyMgrModel.SEARCH());
-	}
+		if (idx >= 0) {
+			this.transactions.remove(idx);
+			this.txDates.remove(idx);
+			invalidateBalances(idx);
 
-	static final Comparator<GenericTxn> c = new Comparator<GenericTxn>() {
-		public int compare(GenericTxn o1, GenericTxn o2) {
-			return o1.getDate().subtract(o2.getDate());
+			addTransaction(txn);
 		}
-	};
 
-	/** Find the index to insert a new transaction in a list sorted by date */
-	private int getTransactionIndexForDate(GenericTxn tx) {
-		int idx = Collections.binarySearch(this.transactions, tx, c);
+		this.securities.changeTransactionDate(txn);
+	}
+
+	/** Find the index of a transaction in this account (-1 if not present) */
+	private int getTransactionIndex(GenericTxn txn) {
+		int idx = findTransaction(txn, txn.getDate().getRawValue());
 
-		if (idx < 0) {
-			idx = -idx - 1;
+		// Fall back on a full search (e.g. date changed after adding the txn)
+		return (idx >= 0) ? idx : this.transactions.indexOf(txn);
+	}
+
+	/** Find a transaction among those with a given date key (-1 if none) */
+	private int findTransaction(GenericTxn txn, int key) {
+		int idx = this.txDates.firstIndexOf(key);
+
+		if (idx >= 0) {
+			for (; (idx < this.transactions.size()) //
+					&& (this.txDates.get(idx) == key); ++idx) {
+				if (this.transactions.get(idx) == txn) {
+					return idx;
+				}
+			}
 		}
 
-		return idx;
+		return -1;
+	}
+
+	public boolean containsTransaction(GenericTxn txn) {
+		return (txn.getDate() != null) //
+				? getTransactionIndex(txn) >= 0 //
+				: this.transactions.contains(txn);
+	}
+
+	/** Find the index of the first transaction on or after a date */
+	private int getTransactionIndexForDate(QDate date) {
+		return this.txDates.lowerBound(date.getRawValue());
+	}
+
+	/**
+	 * Return the index of the last transaction on or prior to a given date.<br>
+	 * Return -1 if there is no such transaction.
+	 */
+	public int getLastTransactionIndexOnOrBeforeDate(QDate date) {
+		return this.txDates.lastIndexOnOrBefore(date.getRawValue());
 	}
 
 	public int getNumTransactions() {
@@ -252,18 +306,10 @@ public class Account {
 		List<SimpleTxn> ret = new ArrayList<>();
 
 		int idx = getTransactionIndexForDate(start);
-		if (idx < 0) {
-			return ret;
-		}
+		int endkey = end.getRawValue();
 
-		while ((idx > 0) && (idx < this.transactions.size())//
-				&& (c.compare(this.transactions.get(idx - 1), //
-						this.transactions.get(idx)) >= 0)) {
-			--idx;
-		}
-
-		while ((idx >= 0) && (idx < this.transactions.size()) //
-				&& (this.transactions.get(idx).getDate().compareTo(end) <= 0)) {
+		while ((idx < this.transactions.size()) //
+				&& (this.txDates.get(idx) <= endkey)) {
 			ret.add(this.transactions.get(idx));
 			++idx;
 		}
@@ -349,6 +395,10 @@ public class Account {
 	public void addStatement(Statement s) {
 		if (!this.statements.contains(s)) {
 			this.statements.add(s);
+
+			for (ModelChangeListener listener : this.model.getChangeListeners()) {
+				listener.statementAdded(s);
+			}
 		}
 	}
 
@@ -623,17 +673,74 @@ public class Account {
 
 	/** Get account cash value for a specified date */
 	private BigDecimal getCashValueForDate(QDate d) {
-		BigDecimal cashBal = null; // BigDecimal.ZERO;
+		int idx = getLastTransactionIndexOnOrBeforeDate(d);
+
+		return (idx >= 0) ? Common.fromCents(getBalanceCents(idx)) : BigDecimal.ZERO;
+	}
+
+	/**
+	 * Discard running balances from a transaction index on.<br>
+	 * (e.g. transactions were added/removed or their amounts changed)
+	 */
+	private synchronized void invalidateBalances(int idx) {
+		if (idx < this.balancesValid) {
+			this.balancesValid = idx;
+		}
+	}
+
+	/** Discard all running balances (amounts of transactions have changed) */
+	public void invalidateBalances() {
+		invalidateBalances(0);
+	}
+
+	/** Discard running balances from a date on (e.g. an amount changed) */
+	public void invalidateBalances(QDate date) {
+		invalidateBalances((date != null) ? getTransactionIndexForDate(date) : 0);
+	}
+
+	/** Get the cash balance after a transaction (null if not in this account) */
+	public BigDecimal getRunningBalance(GenericTxn txn) {
+		int idx = getTransactionIndex(txn);
 
-		int idx = this.model.getLastTransactionIndexOnOrBeforeDate(this.transactions, d);
+		return (idx >= 0) ? Common.fromCents(getBalanceCents(idx)) : null;
+	}
+
+	/** Get the cash balance after the last transaction (kept up to date) */
+	public BigDecimal getCashBalance() {
+		int idx = this.transactions.size() - 1;
+
+		return (idx >= 0) ? Common.fromCents(getBalanceCents(idx)) : BigDecimal.ZERO;
+	}
+
+	/** Get the cash balance in cents after the transaction at an index */
+	private long getBalanceCents(int idx) {
+		if (idx >= this.balancesValid) {
+			updateBalances(idx);
+		}
+
+		return this.balanceCents[idx];
+	}
+
+	/** Calculate out of date running balances up to an index */
+	private synchronized void updateBalances(int lastidx) {
+		int idx = this.balancesValid;
+		if (idx > lastidx) {
+			return;
+		}
+
+		if (this.balanceCents.length < this.transactions.size()) {
+			this.balanceCents = Arrays.copyOf(this.balanceCents, //
+					Math.max(this.transactions.size(), this.balanceCents.length * 2));
+		}
 
-		while ((idx >= 0) && (cashBal == null)) {
-			GenericTxn tx = this.transactions.get(idx--);
+		long bal = (idx > 0) ? this.balanceCents[idx - 1] : 0;
 
-			cashBal = tx.getRunningTotal();
+		for (; idx <= lastidx; ++idx) {
+			bal += Common.toCents(this.transactions.get(idx).getCashAmount());
+			this.balanceCents[idx] = bal;
 		}
 
-		return (cashBal != null) ? cashBal : BigDecimal.ZERO;
+		this.balancesValid = idx;
 	}
 
 	/** Get the value of securities for this account on a given date */
@@ -655,10 +762,7 @@ public class Account {
 
 		return (pos == null) //
 				? new PositionInfo(sec, d) //
-				: new PositionInfo(sec, d, //
-						pos.getSharesForDate(d), //
-						sec.getPriceForDate(d).getPrice(), //
-						pos.getValueForDate(d));
+				: pos.getPositionForDate(sec, d);
 	}
 
 //	public List<SimpleTxn> findPotentialMatchingTransactions(SimpleTxn tx) {
@@ -746,7 +850,7 @@ public class Account {
 	public String matches(Account other) {
 		if (!this.name.equals(other.name) //
 				|| (this.type != other.type) //
-				|| !Common.isEffectivelyEqual(this.balance, other.balance) //
+				|| !Common.isEffectivelyEqual(getCashBalance(), other.getCashBalance()) //
 				|| !Common.isEffectivelyEqual(this.clearedBalance, other.clearedBalance) //
 				|| ((this.closeDate == null) != (other.closeDate == null)) //
 				|| ((this.closeDate != null) && !this.closeDate.equals(other.closeDate)) //
@@ -36,6 +36,13 @@ public abstract class GenericTxn //
 		this.runningTotal = tot;
 	}
 
+	/** Get the account's cash balance after this transaction (kept up to date) */
+	public BigDecimal getRunningBalance() {
+		Account acct = getAccount();
+
+		return (acct != null) ? acct.getRunningBalance(this) : null;
+	}
+
 	public GenericTxn(int txid, int acctid) {
 		super(txid, acctid);
 
@@ -181,7 +188,7 @@ public abstract class GenericTxn //
 			return res;
 		}
 
-		if (!Common.isEffectivelyEqual(getRunningTotal(), other.getRunningTotal())) {
+		if (!Common.isEffectivelyEqual(getRunningBalance(), other.getRunningBalance())) {
 			return "runningTotal";
 		}
 
@@ -871,7 +871,7 @@ public class InvestmentTxn extends GenericTxn {
 			return res;
 		}
 
-		if (!Common.isEffectivelyEqual(getRunningTotal(), other.getRunningTotal()) //
+		if (!Common.isEffectivelyEqual(getRunningBalance(), other.getRunningBalance()) //
 				|| (getShareAction() != other.getShareAction()) //
 				|| !Common.safeEquals(this.accountForTransfer, other.accountForTransfer) //
 				|| !Common.isEffectivelyEqual(this.cashTransferred, other.cashTransferred) //
@@ -352,13 +352,13 @@ public class Lot {
 //
 //		String s = (this.expireTransaction != null) ? "Lot-exp(" : "Lot(";
 //
-//		s += this.createDate.longString;
+//		s += this.createDate.getLongString();
 //		if (this.sourceLot == null) {
 //			s += "(" + this.createTransaction.getAction() + ")";
 //		}
 //
 //		if ((this.expireTransaction != null)) {
-//			s += "-" + this.expireTransaction.getDate().longString;
+//			s += "-" + this.expireTransaction.getDate().getLongString();
 //			s += "(" + this.expireTransaction.getAction() //
 //					+ " " + Common.formatAmount3(this.expireTransaction.getShares()).trim() //
 //					+ ")";
@@ -0,0 +1,27 @@
+package moneymgr.model;
+
+import moneymgr.util.QDate;
+
+/** Support responding to changes in a model after it is loaded */
+public interface ModelChangeListener {
+
+	void transactionAdded(SimpleTxn txn);
+
+	void transactionRemoved(SimpleTxn txn);
+
+	void transactionDateChanged(GenericTxn txn, QDate olddate);
+
+	void transactionAmountChanged(SimpleTxn txn);
+
+	void transactionCleared(Statement statement, GenericTxn txn, boolean cleared);
+
+	void statementAdded(Statement statement);
+
+	void lotAdded(Lot lot);
+
+	void stockOptionAdded(StockOption option);
+
+	/** Prices for a security on/after a date were added or changed */
+	void securityPricesChanged(Security sec, QDate date);
+
+}
@@ -9,6 +9,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 import moneymgr.io.AccountDetailsFixer;
 import moneymgr.model.compare.CompareModels;
@@ -26,9 +28,6 @@ public class MoneyMgrModel {
 
 	public static MoneyMgrModel currModel;
 
-	/** Dummy transaction for binary search */
-	private static GenericTxn SEARCH_TX;
-
 	// -------------------------------------
 
 	public static void deleteModel(String name) {
@@ -55,8 +54,9 @@ public class MoneyMgrModel {
 		return MoneyMgrModel.currModel;
 	}
 
-	public static void compareModels(String m1, String m2) {
-		CompareModels.compareModels(models.get(m1), models.get(m2));
+	/** Report differences between two models, returning how many were found */
+	public static int compareModels(String m1, String m2) {
+		return CompareModels.compareModels(models.get(m1), models.get(m2));
 	}
 
 	// -------------------------------------
@@ -67,6 +67,9 @@ public class MoneyMgrModel {
 
 	private final List<Category> categories = new ArrayList<>();
 
+	/** Map name to category */
+	private final Map<String, Category> categoriesByName = new HashMap<>();
+
 	/** The global history of all securities */
 	public SecurityPortfolio portfolio = new SecurityPortfolio(this, null);
 
@@ -76,31 +79,26 @@ public class MoneyMgrModel {
 	/** Map symbol to security */
 	private final Map<String, Security> securities = new HashMap<>();
 
+	/** Map name (any of the security's names) to security */
+	private final Map<String, Security> securitiesByName = new HashMap<>();
+
 	/** Account list ordered by first/last txn dates (no gaps/nulls) */
 	private final List<Account> accounts = new ArrayList<>();
 
 	/** Account list indexed by acctid (size > numAccounts, may have gaps/nulls) */
 	private final List<Account> accountsByID = new ArrayList<>();
 
+	/** Map name (lower case) to account */
+	private final Map<String, Account> accountsByName = new HashMap<>();
+
 	/** Tracks current context as we are loading */
 	public Account currAccountBeingLoaded = null;
 
-	/**
-	 * Indicator for which transaction index to return from get by date.
-	 *
-	 * @value INSERT The index at which to insert a new transaction
-	 * @value FIRST The first transaction on the date (-1 if not found)
-	 * @value LAST The last transaction on the date (-1 if not found)
-	 */
-	private enum TxIndexType {
-		INSERT, FIRST, LAST
-	}
-
 	/** All transactions indexed by ID. May contain gaps/null values */
 	private final List<SimpleTxn> allTransactionsByID = new ArrayList<>();
 
 	/** All transactions sorted by date. Will not contain null values */
-	private final List<GenericTxn> allTransactionsByDate = new ArrayList<>();
+	private final TransactionDateIndex allTransactionsByDate = new TransactionDateIndex();
 
 	private List<Lot> lots = new ArrayList<Lot>();
 
@@ -111,6 +109,13 @@ public class MoneyMgrModel {
 
 	private final AccountDetailsFixer accountDetailsFixer;
 
+	/** Notified of changes to the model (none while loading) */
+	private final List<ModelChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+	/** Count of name lookups (category, security, account), for reporting */
+	private final LongAdder lookupCount = new LongAdder();
+	private long bulkLoadStartNanos = 0;
+
 	// -------------------------------------
 
 	public MoneyMgrModel(String name) {
@@ -157,7 +162,12 @@ public class MoneyMgrModel {
 			categories.add(null);
 		}
 
-		categories.set(cat.catid, cat);
+		Category oldcat = categories.set(cat.catid, cat);
+		if (oldcat != null) {
+			categoriesByName.remove(oldcat.name, oldcat);
+		}
+
+		categoriesByName.putIfAbsent(cat.name, cat);
 	}
 
 	public Category getCategory(int catid) {
@@ -167,15 +177,14 @@ public class MoneyMgrModel {
 	}
 
 	public Category findCategory(String name) {
-		if (!name.isEmpty()) {
-			for (Category cat : categories) {
-				if ((cat != null) && cat.name.equals(name)) {
-					return cat;
-				}
-			}
+		if (name.isEmpty()) {
+			return null;
 		}
 
-		return null;
+		Category cat = categoriesByName.get(name);
+		this.lookupCount.increment();
+
+		return cat;
 	}
 
 	public int parseCategory(String s) {
@@ -239,6 +248,17 @@ public class MoneyMgrModel {
 
 		securitiesByID.set(sec.secid, sec);
 		securities.put(sec.symbol.toUpperCase(), sec);
+
+		for (String name : sec.names) {
+			securitiesByName.putIfAbsent(name, sec);
+		}
+	}
+
+	/** Update the name index when a security gets an additional name */
+	void securityNameAdded(Security sec, String name) {
+		if (getSecurity(sec.secid) == sec) {
+			securitiesByName.putIfAbsent(name, sec);
+		}
 	}
 
 	public Security getSecurity(int secid) {
@@ -259,13 +279,10 @@ public class MoneyMgrModel {
 	 * Quicken windows QIF export uses security name, not symbol.
 	 */
 	public Security findSecurityByName(String name) {
-		for (Security sec : securities.values()) {
-			if ((sec != null) && sec.names.contains(name)) {
-				return sec;
-			}
-		}
+		Security sec = securitiesByName.get(name);
+		this.lookupCount.increment();
 
-		return null;
+		return sec;
 	}
 
 	/** Look up a security whose symbol matches an input string. */
@@ -340,10 +357,11 @@ public class MoneyMgrModel {
 	public Account findAccount(String name) {
 		name = name.toLowerCase();
 
-		for (Account acct : getAccounts()) {
-			if (acct.name.equalsIgnoreCase(name)) {
-				return acct;
-			}
+		Account exact = accountsByName.get(name);
+		this.lookupCount.increment();
+
+		if (exact != null) {
+			return exact;
 		}
 
 		for (Account acct : getAccounts()) {
@@ -370,6 +388,7 @@ public class MoneyMgrModel {
 
 		this.accountsByID.set(acct.acctid, acct);
 		this.accounts.add(acct);
+		this.accountsByName.putIfAbsent(acct.name.toLowerCase(), acct);
 
 		this.currAccountBeingLoaded = acct;
 
@@ -449,8 +468,15 @@ public class MoneyMgrModel {
 	 * Date is close, amount matches (or the amount of a split).
 	 */
 	public List<SimpleTxn> findMatchingTransactions(Account acct, SimpleTxn tx) {
-		List<SimpleTxn> ret = acct.findMatchingTransactions(tx, false);
+		return selectMatchingTransactions(tx, acct.findMatchingTransactions(tx, false));
+	}
 
+	/**
+	 * Narrow down the candidate matches for a transaction being loaded.<br>
+	 * Prefers candidates on the same date with the same category, then a
+	 * unique check number or memo match.
+	 */
+	public List<SimpleTxn> selectMatchingTransactions(SimpleTxn tx, List<SimpleTxn> ret) {
 		if (ret.size() > 1) {
 			List<SimpleTxn> newret = new ArrayList<>(ret);
 			for (Iterator<SimpleTxn> iter = newret.iterator(); iter.hasNext();) {
@@ -557,23 +583,28 @@ public class MoneyMgrModel {
 
 	// -------------------------------------
 
-	public int createTxid() {
-		return this.nextTxid++;
+	/** Return the listeners to notify of changes */
+	public List<ModelChangeListener> getChangeListeners() {
+		return this.changeListeners;
 	}
 
-	/** Compare two transactions by date, ascending */
-	private static final Comparator<GenericTxn> compareByDate = new Comparator<GenericTxn>() {
-		public int compare(GenericTxn o1, GenericTxn o2) {
-			return o1.getDate().subtract(o2.getDate());
-		}
-	};
+	public void addChangeListener(ModelChangeListener listener) {
+		this.changeListeners.add(listener);
+	}
 
-	public static GenericTxn SEARCH() {
-		if (SEARCH_TX == null) {
-			SEARCH_TX = new NonInvestmentTxn(0);
-		}
+	public void removeChangeListener(ModelChangeListener listener) {
+		this.changeListeners.remove(listener);
+	}
 
-		return SEARCH_TX;
+	// -------------------------------------
+
+	public int createTxid() {
+		return this.nextTxid++;
+	}
+
+	/** Make sure new transaction IDs follow those already loaded */
+	public void reserveTransactionIds(int lastTxid) {
+		this.nextTxid = Math.max(this.nextTxid, lastTxid + 1);
 	}
 
 	/** Return transaction list indexed by ID */
@@ -623,6 +654,10 @@ public class MoneyMgrModel {
 		if ((txn instanceof GenericTxn) && (txn.getDate() != null)) {
 			addTransactionDate((GenericTxn) txn);
 		}
+
+		for (ModelChangeListener listener : this.changeListeners) {
+			listener.transactionAdded(txn);
+		}
 	}
 
 	public void removeTransaction(SimpleTxn txn) {
@@ -632,26 +667,79 @@ public class MoneyMgrModel {
 		}
 
 		this.allTransactionsByID.set(txn.getTxid(), null);
-		this.allTransactionsByDate.remove(txn);
+
+		if (txn instanceof GenericTxn) {
+			this.allTransactionsByDate.removeTransaction((GenericTxn) txn);
+		}
+
+		for (ModelChangeListener listener : this.changeListeners) {
+			listener.transactionRemoved(txn);
+		}
 	}
 
 	/** Insert a transaction into the date-sorted list */
 	private void addTransactionDate(GenericTxn txn) {
-		int idx = getTransactionInsertIndexByDate(allTransactionsByDate, txn);
-
-		allTransactionsByDate.add(idx, txn);
+		this.allTransactionsByDate.addTransaction(txn);
 	}
 
 	/** Fix up information about a transaction whose date has changed */
 	public void changeTransactionDate(GenericTxn txn, QDate olddate) {
 		if (txn.getAccountID() != 0) {
-			// TODOif (olddate != null) {
-			this.allTransactionsByDate.remove(txn);
-			// }
+			Account acct = txn.getAccount();
+			if ((olddate != null) && (txn.getDate() != null) && (acct != null)) {
+				acct.changeTransactionDate(txn, olddate);
+			}
+
+			if ((olddate != null) && (txn.getDate() != null)) {
+				this.portfolio.changeTransactionDate(txn);
+			}
+
+			// The index tracks the date each txn was added under
+			this.allTransactionsByDate.removeTransaction(txn);
 
 			if (txn.getDate() != null) {
 				addTransactionDate(txn);
 			}
+
+			for (ModelChangeListener listener : this.changeListeners) {
+				listener.transactionDateChanged(txn, olddate);
+			}
+		}
+	}
+
+	/** Report a change in the amount of a transaction */
+	public void changeTransactionAmount(SimpleTxn txn) {
+		for (ModelChangeListener listener : this.changeListeners) {
+			listener.transactionAmountChanged(txn);
+		}
+	}
+
+	/**
+	 * Begin loading a large number of transactions.<br>
+	 * The date index is built in a single pass when the load ends.
+	 */
+	public void beginBulkLoad() {
+		this.allTransactionsByDate.beginBulkLoad();
+
+		this.lookupCount.reset();
+		this.bulkLoadStartNanos = System.nanoTime();
+	}
+
+	/** Finish loading transactions, building the date index */
+	public void endBulkLoad() {
+		this.allTransactionsByDate.endBulkLoad();
+
+		reportLookups();
+	}
+
+	/** Report the number of name lookups during the load, per second of load */
+	private void reportLookups() {
+		long count = this.lookupCount.sumThenReset();
+		long nanos = System.nanoTime() - this.bulkLoadStartNanos;
+
+		if (count > 0) {
+			Common.reportInfo(String.format("Name lookups: %d (%,.0f/s of load)", //
+					count, count * 1e9 / Math.max(nanos, 1)));
 		}
 	}
 
@@ -694,37 +782,8 @@ public class MoneyMgrModel {
 	 * @param end   Latest date to include
 	 */
 	private List<GenericTxn> getTransactions(QDate start, QDate end) {
-		// TODO Why not firstOnOrAfter(start) to lastOnOrBefore(end)?????
-		int idx1 = getFirstTransactionIndexByDate(allTransactionsByDate, start);
-		int idx2 = getLastTransactionIndexByDate(allTransactionsByDate, end);
-
-		if (idx1 < 0) {
-			// Calculate closest index for no match (see Collections.binarySearch)
-			// This will be the first transaction after the start date (or end
-			// of the list)
-			idx1 = -idx1 - 1;
-		}
-
-		if (idx2 < 0) {
-			// Calculate closest index for no match (see Collections.binarySearch)
-			// This will be the first tx after the target date
-			idx2 = -idx2 - 1;
-
-			// Move idx back to previous transaction if possible
-			// (If it is already zero, there are no transactions to return)
-			if (idx2 > 0) {
-				--idx2;
-			}
-		} else {
-			// Advance index to the last matching transaction
-			while ((idx2 >= 0) //
-					&& ((idx2 + 1) < allTransactionsByDate.size()) //
-					&& allTransactionsByDate.get(idx2 + 1).getDate().equals(end)) {
-				++idx2;
-			}
-		}
-
-		return allTransactionsByDate.subList(idx1, idx2);
+		return this.allTransactionsByDate.getTransactions( //
+				start.getRawValue(), end.getRawValue());
 	}
 
 	/** Return the largest current transaction ID */
@@ -733,144 +792,37 @@ public class MoneyMgrModel {
 	}
 
 	/**
-	 * Return the index of the last transaction on or prior to a given date.<br>
+	 * Return the index (in getTransactionsByDate()) of the last transaction on or
+	 * prior to a given date.<br>
 	 * Return -1 if there is no such transaction.
 	 */
-	public int getLastTransactionIndexOnOrBeforeDate( //
-			List<? extends GenericTxn> txns, QDate d) {
-		if (txns.isEmpty()) {
-			return -1;
-		}
-
-		int idx = getLastTransactionIndexByDate(txns, d);
-		if (idx >= 0) {
-			return idx;
-		}
-
-		idx = getTransactionInsertIndexByDate(txns, SEARCH());
-
-		return (idx > 0) ? idx - 1 : -1;
-	}
-
-	/** Return the index of the first transaction on a date. (<0 if none) */
-	private static int getFirstTransactionIndexByDate( //
-			List<? extends GenericTxn> txns, QDate date) {
-		SEARCH().setDate(date);
-
-		return getTransactionIndexByDate(txns, SEARCH(), TxIndexType.FIRST);
-	}
-
-	/** Return the index of the last transaction on a date. (<0 if none) */
-	private static int getLastTransactionIndexByDate( //
-			List<? extends GenericTxn> txns, QDate date) {
-		SEARCH().setDate(date);
-
-		return getTransactionIndexByDate(txns, SEARCH(), TxIndexType.LAST);
-	}
-
-	/** Return the index for inserting a transaction into a list sorted by date */
-	public int getTransactionInsertIndexByDate( //
-			List<? extends GenericTxn> txns, GenericTxn txn) {
-		return getTransactionIndexByDate(txns, txn, TxIndexType.INSERT);
-	}
-
-	/**
-	 * Return the index for inserting a transaction into a list sorted by date
-	 *
-	 * @param txn
-	 * @param before If true, the insertion point before the first txn on the date
-	 *               otherwise, the point after all txns on the date.
-	 * @return Index for insert (cannot be negative)
-	 */
-	private int getTransactionInsertIndexByDate( //
-			List<? extends GenericTxn> txns, QDate date) {
-		SEARCH().setDate(date);
-
-		return getTransactionIndexByDate(txns, SEARCH(), TxIndexType.INSERT);
+	public int getLastTransactionIndexOnOrBeforeDate(QDate d) {
+		return this.allTransactionsByDate.getLastIndexOnOrBefore(d.getRawValue());
 	}
 
 	/**
-	 * Return the index of a transaction in a list sorted by date
-	 *
-	 * @param txn
-	 * @param TxIndexType If FIRST/LAST, the index of the first/last txn on that
-	 *                    date (<0 if no such txn exists);<br>
-	 *                    If INSERT the index after all txns on or before the date.
-	 * @return Index; -(insert index + 1) if FIRST/LAST and no match exists
+	 * Return the index of the last transaction on or prior to a given date in a
+	 * date-sorted list.<br>
+	 * Return -1 if there is no such transaction.<br>
+	 * Prefer the DateKeyIndex kept by accounts/positions where available.
 	 */
-	private static int getTransactionIndexByDate(List<? extends GenericTxn> txns, GenericTxn txn, TxIndexType which) {
-		if (txns.isEmpty()) {
-			return (which == TxIndexType.INSERT) ? 0 : -1;
-		}
-
-		int sz = txns.size();
-
-		int idx = Collections.binarySearch(txns, txn, compareByDate);
-
-		// TODO If idx is >= 0, we found a match. If so, the date should match
-		// exactly so I don't think this will do anything
-		while ((idx >= 0) && (idx < sz)) {
-			QDate dt = txns.get(idx).getDate();
-			int diff = dt.subtract(txn.getDate());
-			if (diff == 0) {
-				break;
-			}
-
-			Common.reportError("getTransactionIndexByDate: strange date comparison");
-		}
-
-		if (idx < 0) {
-			// There is no match - Return an insertion point that maintains order.
-			int insertIdx = -idx - 1;
-
-			if (which == TxIndexType.INSERT) {
-				// Return the insertion point indicated by the search result.
-				return insertIdx;
-			}
-
-			if (insertIdx >= txns.size()) {
-				// make sure insertIdx is a valid transaction index
-				insertIdx = txns.size() - 1;
-			}
-
-			// TODO It seems this is guaranteed since we did not find a match
-			if (!txns.get(insertIdx).getDate().equals(txn.getDate())) {
-				return idx;
-			}
-
-			// TODO Therefore this should be unreachable
-			idx = insertIdx;
-		}
-
-		// We have a match for the date. Traverse to the requested position in
-		// the list.
-		switch (which) {
-		case FIRST:
-			// Go to the index of the first matching transaction
-			while ((idx > 0) //
-					&& txns.get(idx - 1).getDate().equals(txn.getDate())) {
-				--idx;
-			}
-			break;
+	public static int getLastTransactionIndexOnOrBeforeDate( //
+			List<? extends GenericTxn> txns, QDate d) {
+		final int key = d.getRawValue();
+		int lo = 0;
+		int hi = txns.size();
 
-		case LAST:
-			// Go to the index of the last matching transaction
-			while (((idx + 1) < sz) //
-					&& txns.get(idx + 1).getDate().equals(txn.getDate())) {
-				++idx;
-			}
-			break;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
 
-		case INSERT:
-			// Go to the index after the last matching transaction
-			while ((idx < sz) //
-					&& txns.get(idx).getDate().equals(txn.getDate())) {
-				++idx;
+			if (txns.get(mid).getDate().getRawValue() <= key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
 			}
-			break;
 		}
 
-		return idx;
+		return lo - 1;
 	}
 
 	// -------------------------------------
@@ -885,6 +837,10 @@ public class MoneyMgrModel {
 		}
 
 		this.lots.set(lot.lotid, lot);
+
+		for (ModelChangeListener listener : this.changeListeners) {
+			listener.lotAdded(lot);
+		}
 	}
 
 	public final List<Lot> getLots() {
@@ -911,6 +867,10 @@ public class MoneyMgrModel {
 		}
 
 		this.stockOptions.set(opt.optid, opt);
+
+		for (ModelChangeListener listener : this.changeListeners) {
+			listener.stockOptionAdded(opt);
+		}
 	}
 
 	public StockOption getStockOption(int optid) {
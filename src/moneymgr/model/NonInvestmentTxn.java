@@ -47,7 +47,7 @@ public class NonInvestmentTxn extends GenericTxn {
 	public String toStringShort(boolean veryshort) {
 		return (veryshort) //
 				? String.format("%s %s  %s", //
-						getDate().shortString, //
+						getDate().getShortString(), //
 						Common.formatAmount(getAmount()), //
 						getPayee()) //
 				: String.format("%s %s %5s %s %s", //
@@ -0,0 +1,232 @@
+package moneymgr.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import moneymgr.util.QDate;
+
+/**
+ * Compact price history for a security.<br>
+ * Dates (epoch days) and prices (fixed point) are kept in parallel primitive
+ * arrays sorted by date. Split-adjusted prices (which may carry more precision
+ * than the fixed point format allows) are kept as decimals alongside them.
+ * Once the history is stable, a table indexed by day gives the price in effect
+ * on any date without searching.
+ */
+public class PriceHistory {
+	/** Number of decimal places kept for prices */
+	public static final int PRICE_SCALE = 8;
+
+	/** Fixed point value for a missing price */
+	public static final long NO_PRICE = Long.MIN_VALUE;
+
+	/** Number of lookups after a change before we build the day table */
+	private static final int DAY_TABLE_THRESHOLD = 32;
+
+	/** Convert a decimal price to fixed point */
+	public static long toFixed(BigDecimal price) {
+		return (price != null) //
+				? price.setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValue() //
+				: NO_PRICE;
+	}
+
+	/** Convert a fixed point price to decimal (null for NO_PRICE) */
+	public static BigDecimal toDecimal(long price) {
+		if (price == NO_PRICE) {
+			return null;
+		}
+
+		BigDecimal value = BigDecimal.valueOf(price, PRICE_SCALE).stripTrailingZeros();
+
+		return (value.scale() < 0) ? value.setScale(0) : value;
+	}
+
+	private int[] days = new int[0];
+	private long[] prices = new long[0];
+	private BigDecimal[] splitAdjustedPrices = new BigDecimal[0];
+	private int size = 0;
+
+	/** Decimal values of prices, created on demand */
+	private BigDecimal[] priceValues = new BigDecimal[0];
+
+	/**
+	 * Index of the last price on or before (dayTableStart + n).<br>
+	 * Volatile so lookups from several threads see the start with the table.
+	 */
+	private volatile int[] dayTable = null;
+	private int dayTableStart = 0;
+	private int lookupsSinceChange = 0;
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/** Return the date (epoch day) of the Nth price */
+	public int getDay(int idx) {
+		return this.days[idx];
+	}
+
+	public QDate getDate(int idx) {
+		return QDate.fromEpochDay(this.days[idx]);
+	}
+
+	/** Return the fixed point value of the Nth price */
+	public long getFixedPrice(int idx) {
+		return this.prices[idx];
+	}
+
+	/** Return the split-adjusted value of the Nth price (null if not known) */
+	public BigDecimal getSplitAdjustedPrice(int idx) {
+		return this.splitAdjustedPrices[idx];
+	}
+
+	/** Return the Nth price as a decimal value */
+	public BigDecimal getPrice(int idx) {
+		BigDecimal value = this.priceValues[idx];
+
+		if (value == null) {
+			value = toDecimal(this.prices[idx]);
+			this.priceValues[idx] = value;
+		}
+
+		return value;
+	}
+
+	/** Return the index of the price on a date (-(insert index + 1) if none) */
+	public int indexOf(int day) {
+		int idx = Arrays.binarySearch(this.days, 0, this.size, day);
+
+		return idx;
+	}
+
+	/**
+	 * Return the index of the price in effect on a date (i.e. the last price on
+	 * or before the date). Return -1 if the date precedes the history.
+	 */
+	public int indexOnOrBefore(int day) {
+		if ((this.size == 0) || (day < this.days[0])) {
+			return -1;
+		}
+
+		if (day >= this.days[this.size - 1]) {
+			return this.size - 1;
+		}
+
+		int[] table = this.dayTable;
+		if (table == null) {
+			if (++this.lookupsSinceChange < DAY_TABLE_THRESHOLD) {
+				int idx = indexOf(day);
+
+				return (idx >= 0) ? idx : -idx - 2;
+			}
+
+			table = buildDayTable();
+		}
+
+		return table[day - this.dayTableStart];
+	}
+
+	/** Set the price for a date, replacing any existing price for the date */
+	public void setPrice(int day, long price, BigDecimal splitAdjustedPrice) {
+		int idx = indexOf(day);
+
+		if (idx >= 0) {
+			this.prices[idx] = price;
+			this.splitAdjustedPrices[idx] = splitAdjustedPrice;
+			this.priceValues[idx] = null;
+			return;
+		}
+
+		insert(-idx - 1, day, price, splitAdjustedPrice);
+	}
+
+	/** Update the split-adjusted price for an existing entry */
+	public void setSplitAdjustedPrice(int idx, BigDecimal splitAdjustedPrice) {
+		this.splitAdjustedPrices[idx] = splitAdjustedPrice;
+	}
+
+	/**
+	 * Add prices in bulk. Entries that are not in ascending date order after
+	 * the current last entry are merged individually.
+	 */
+	public void addPrices(int[] newDays, long[] newPrices, BigDecimal[] newSplitAdjustedPrices, int count) {
+		ensureCapacity(this.size + count);
+
+		for (int ii = 0; ii < count; ++ii) {
+			if ((this.size == 0) || (newDays[ii] > this.days[this.size - 1])) {
+				this.days[this.size] = newDays[ii];
+				this.prices[this.size] = newPrices[ii];
+				this.splitAdjustedPrices[this.size] = newSplitAdjustedPrices[ii];
+				this.priceValues[this.size] = null;
+				++this.size;
+			} else {
+				setPrice(newDays[ii], newPrices[ii], newSplitAdjustedPrices[ii]);
+			}
+		}
+
+		historyChanged();
+	}
+
+	private void insert(int idx, int day, long price, BigDecimal splitAdjustedPrice) {
+		ensureCapacity(this.size + 1);
+
+		int count = this.size - idx;
+		System.arraycopy(this.days, idx, this.days, idx + 1, count);
+		System.arraycopy(this.prices, idx, this.prices, idx + 1, count);
+		System.arraycopy(this.splitAdjustedPrices, idx, this.splitAdjustedPrices, idx + 1, count);
+		System.arraycopy(this.priceValues, idx, this.priceValues, idx + 1, count);
+
+		this.days[idx] = day;
+		this.prices[idx] = price;
+		this.splitAdjustedPrices[idx] = splitAdjustedPrice;
+		this.priceValues[idx] = null;
+		++this.size;
+
+		historyChanged();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= this.days.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(capacity, Math.max(16, this.days.length * 2));
+
+		this.days = Arrays.copyOf(this.days, newCapacity);
+		this.prices = Arrays.copyOf(this.prices, newCapacity);
+		this.splitAdjustedPrices = Arrays.copyOf(this.splitAdjustedPrices, newCapacity);
+		this.priceValues = Arrays.copyOf(this.priceValues, newCapacity);
+	}
+
+	/** Discard the day table when dates are added */
+	private void historyChanged() {
+		this.dayTable = null;
+		this.lookupsSinceChange = 0;
+	}
+
+	/** Build the table mapping each day in the history to its price index */
+	private int[] buildDayTable() {
+		int first = this.days[0];
+		int last = this.days[this.size - 1];
+		int[] table = new int[last - first + 1];
+
+		int idx = 0;
+		for (int day = first; day <= last; ++day) {
+			while ((idx + 1 < this.size) && (this.days[idx + 1] <= day)) {
+				++idx;
+			}
+
+			table[day - first] = idx;
+		}
+
+		this.dayTableStart = first;
+		this.dayTable = table;
+
+		return table;
+	}
+}
@@ -3,7 +3,6 @@ package moneymgr.model;
 import java.math.BigDecimal;
 
 import moneymgr.io.qif.QFileReader;
-import moneymgr.model.Security.StockSplitInfo;
 import moneymgr.util.Common;
 import moneymgr.util.QDate;
 
@@ -35,15 +34,15 @@ public class QPrice implements Comparable<QPrice> {
 		return this.price;
 	}
 
+	/** Return the split-adjusted price if it is known (without calculating it) */
+	BigDecimal getKnownSplitAdjustedPrice() {
+		return this.splitAdjustedPrice;
+	}
+
 	public BigDecimal getSplitAdjustedPrice() {
 		if (this.splitAdjustedPrice == null) {
-			this.splitAdjustedPrice = this.price;
-
-			for (StockSplitInfo split : this.model.getSecurity(this.secid).splits) {
-				if (split.splitDate.compareTo(this.date) > 0) {
-					this.splitAdjustedPrice = this.splitAdjustedPrice.divide(split.splitRatio);
-				}
-			}
+			this.splitAdjustedPrice = this.model.getSecurity(this.secid) //
+					.adjustPriceForSplits(this.price, this.date.getEpochDay());
 		}
 
 		return this.splitAdjustedPrice;
@@ -1,9 +1,9 @@
 package moneymgr.model;
 
 import java.math.BigDecimal;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,8 +54,9 @@ public class Security {
 	public final MoneyMgrModel model;
 	public final int secid;
 
-	/** Names the security is known by (first is default) */
-	public final List<String> names;
+	/** Names the security is known by (first is default) - see addName() */
+	private final List<String> nameList = new ArrayList<>();
+	public final List<String> names = Collections.unmodifiableList(this.nameList);
 
 	/** Ticker symbol of security */
 	public final String symbol;
@@ -75,11 +76,103 @@ public class Security {
 	/** All of our transactions involving this security */
 	private final List<InvestmentTxn> transactions = new ArrayList<>();
 
-	/** TODO make private - Price history for this security sorted by date */
-	public final List<QPrice> prices = new ArrayList<>();
+	/** Price history for this security sorted by date */
+	private final PriceHistory prices = new PriceHistory();
 
-	/** TODO make private - Information about splits for this security */
-	public final List<StockSplitInfo> splits = new ArrayList<>();
+	/** Read-only view of the price history as QPrice objects */
+	private final List<QPrice> priceList = new AbstractList<QPrice>() {
+		public QPrice get(int idx) {
+			return getPrice(idx);
+		}
+
+		public int size() {
+			return Security.this.prices.size();
+		}
+	};
+
+	/** Splits for this security (see splits) */
+	private final List<StockSplitInfo> splitList = new ArrayList<>();
+
+	/**
+	 * TODO make private - Information about splits for this security.<br>
+	 * Changes discard the split factor table.
+	 */
+	public final List<StockSplitInfo> splits = new AbstractList<StockSplitInfo>() {
+		public StockSplitInfo get(int idx) {
+			return Security.this.splitList.get(idx);
+		}
+
+		public int size() {
+			return Security.this.splitList.size();
+		}
+
+		public StockSplitInfo set(int idx, StockSplitInfo split) {
+			Security.this.splitTable = null;
+			return Security.this.splitList.set(idx, split);
+		}
+
+		public void add(int idx, StockSplitInfo split) {
+			Security.this.splitTable = null;
+			Security.this.splitList.add(idx, split);
+		}
+
+		public StockSplitInfo remove(int idx) {
+			Security.this.splitTable = null;
+			return Security.this.splitList.remove(idx);
+		}
+	};
+
+	/**
+	 * Cumulative split factors: the combined ratio of all splits on or after
+	 * each split date. Adjusting a price or share quantity for later splits is
+	 * then a search and a single multiply/divide.
+	 */
+	private static class SplitTable {
+		/** Split dates (epoch days), ascending */
+		final int[] days;
+
+		/** ratios[i] is the product of the ratios of splits i..n-1 (ratios[n] is 1) */
+		final BigDecimal[] ratios;
+
+		SplitTable(List<StockSplitInfo> splits) {
+			List<StockSplitInfo> sorted = new ArrayList<>(splits);
+			sorted.sort((s1, s2) -> s1.splitDate.compareTo(s2.splitDate));
+
+			int count = sorted.size();
+			this.days = new int[count];
+			this.ratios = new BigDecimal[count + 1];
+			this.ratios[count] = BigDecimal.ONE;
+
+			for (int ii = count - 1; ii >= 0; --ii) {
+				StockSplitInfo split = sorted.get(ii);
+
+				this.days[ii] = split.splitDate.getEpochDay();
+				this.ratios[ii] = this.ratios[ii + 1].multiply(split.splitRatio);
+			}
+		}
+
+		/** Combined ratio of splits after a date (or on/after if inclusive) */
+		BigDecimal getRatio(int day, boolean inclusive) {
+			int lo = 0;
+			int hi = this.days.length;
+
+			// Find the first split after (or on) the day
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+
+				if ((this.days[mid] < day) || (!inclusive && (this.days[mid] == day))) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+
+			return this.ratios[lo];
+		}
+	}
+
+	/** Built when first needed after splits change */
+	private volatile SplitTable splitTable = null;
 
 	public Security(int secid, String symbol, String name, String type, String goal) {
 		this.model = MoneyMgrModel.currModel;
@@ -88,8 +181,7 @@ public class Security {
 		this.type = type;
 		this.goal = (goal != null) ? goal : "";
 
-		this.names = new ArrayList<>();
-		this.names.add(name);
+		this.nameList.add(name);
 	}
 
 	/** Constructor - quicken-style info */
@@ -109,10 +201,37 @@ public class Security {
 		return (this.names.isEmpty()) ? "" : this.names.get(0);
 	}
 
+	/** Add another name the security is known by */
+	public void addName(String name) {
+		this.nameList.add(name);
+
+		if (this.model != null) {
+			this.model.securityNameAdded(this, name);
+		}
+	}
+
 	public List<InvestmentTxn> getTransactions() {
 		return Collections.unmodifiableList(this.transactions);
 	}
 
+	/** Return the price history (sorted by date) */
+	public List<QPrice> getPrices() {
+		return this.priceList;
+	}
+
+	public PriceHistory getPriceHistory() {
+		return this.prices;
+	}
+
+	/** Construct a QPrice for the Nth entry in the price history */
+	private QPrice getPrice(int idx) {
+		return new QPrice(this.model, //
+				this.prices.getDate(idx), //
+				this.secid, //
+				this.prices.getPrice(idx), //
+				this.prices.getSplitAdjustedPrice(idx));
+	}
+
 	public List<Lot> getLots() {
 		return Collections.unmodifiableList(this.lots);
 	}
@@ -202,6 +321,9 @@ public class Security {
 	 */
 	public static Map<String, Integer> dupQuotes = new HashMap<String, Integer>();
 
+	/** Prices at or below this (fixed point) value are treated as zero */
+	private static final long MIN_PRICE = PriceHistory.toFixed(new BigDecimal("0.005"));
+
 	public boolean addPrice(QPrice newPrice) {
 		if ((newPrice == null) //
 				// Price in options txns is zero
@@ -209,46 +331,97 @@ public class Security {
 			return true;
 		}
 
-		if (this.prices.isEmpty()) {
-			this.prices.add(newPrice);
-			return true;
+		int day = newPrice.date.getEpochDay();
+		long price = PriceHistory.toFixed(newPrice.getPrice());
+		BigDecimal saprice = newPrice.getKnownSplitAdjustedPrice();
+
+		return mergePrice(day, price, saprice);
+	}
+
+	/**
+	 * Add prices (sorted by date) to the history of this security in bulk.<br>
+	 * Prices following the existing history are appended in a single pass,
+	 * others are merged as with addPrice().
+	 * 
+	 * @return The number of existing quotes that were replaced
+	 */
+	public int addPrices(int[] days, long[] prices, BigDecimal[] splitAdjustedPrices, int count) {
+		int replaced = 0;
+		int idx = 0;
+
+		// Merge any prices that overlap the existing history
+		while ((idx < count) //
+				&& !this.prices.isEmpty() //
+				&& (days[idx] <= this.prices.getDay(this.prices.size() - 1))) {
+			if (!isEffectivelyZero(prices[idx]) //
+					&& !mergePrice(days[idx], prices[idx], splitAdjustedPrices[idx])) {
+				++replaced;
+			}
+
+			++idx;
 		}
 
-		int idx = getPriceIndexForDate(newPrice.date);
-		if ((idx < 0) || (idx >= this.prices.size())) {
-			this.prices.add(newPrice);
-			return true;
+		// Append the rest
+		int[] newDays = new int[count - idx];
+		long[] newPrices = new long[count - idx];
+		BigDecimal[] newSplitAdjustedPrices = new BigDecimal[count - idx];
+		int newCount = 0;
+
+		for (; idx < count; ++idx) {
+			// Price in options txns is zero
+			if (!isEffectivelyZero(prices[idx])) {
+				newDays[newCount] = days[idx];
+				newPrices[newCount] = prices[idx];
+				newSplitAdjustedPrices[newCount] = splitAdjustedPrices[idx];
+				++newCount;
+			}
 		}
 
-		QPrice p = this.prices.get(idx);
-		int diff = newPrice.date.compareTo(p.date);
+		this.prices.addPrices(newDays, newPrices, newSplitAdjustedPrices, newCount);
 
-		if (diff == 0) {
-			BigDecimal oldp = p.getPrice(); // p.getSplitAdjustedPrice();
-			BigDecimal newp = newPrice.getPrice(); // newPrice.getSplitAdjustedPrice();
+		return replaced;
+	}
 
-			this.prices.set(idx, newPrice);
+	/** Notify listeners that prices on/after a date were added or changed */
+	public void pricesChanged(QDate date) {
+		for (ModelChangeListener listener : this.model.getChangeListeners()) {
+			listener.securityPricesChanged(this, date);
+		}
+	}
 
-			if (!Common.isEffectivelyEqual(oldp, newp)) {
-				Integer n = dupQuotes.get(this.symbol.toUpperCase());
-				if (n == null) {
-					n = new Integer(0);
-				}
-				dupQuotes.put(this.symbol.toUpperCase(), new Integer(n + 1));
+	/** Fixed point equivalent of Common.isEffectivelyZero() */
+	private static boolean isEffectivelyZero(long price) {
+		return Math.abs(price) <= MIN_PRICE;
+	}
 
-				if (QifDom.verbose) {
-					Common.reportWarning(String.format( //
-							"Security price (%s) was replaced (%s)", //
-							Common.formatAmount3(oldp).trim(), //
-							Common.formatAmount3(newp).trim()));
-				}
+	/** Add/replace the price for a date (returns false if a different price was replaced) */
+	private boolean mergePrice(int day, long price, BigDecimal saprice) {
+		int idx = this.prices.indexOf(day);
+		if (idx < 0) {
+			this.prices.setPrice(day, price, saprice);
+			return true;
+		}
 
-				return false;
+		BigDecimal oldp = this.prices.getPrice(idx);
+		BigDecimal newp = PriceHistory.toDecimal(price);
+
+		this.prices.setPrice(day, price, saprice);
+
+		if (!Common.isEffectivelyEqual(oldp, newp)) {
+			Integer n = dupQuotes.get(this.symbol.toUpperCase());
+			if (n == null) {
+				n = new Integer(0);
+			}
+			dupQuotes.put(this.symbol.toUpperCase(), new Integer(n + 1));
+
+			if (QifDom.verbose) {
+				Common.reportWarning(String.format( //
+						"Security price (%s) was replaced (%s)", //
+						Common.formatAmount3(oldp).trim(), //
+						Common.formatAmount3(newp).trim()));
 			}
-		} else if (diff > 0) {
-			this.prices.add(idx + 1, newPrice);
-		} else {
-			this.prices.add(idx, newPrice);
+
+			return false;
 		}
 
 		return true;
@@ -256,68 +429,74 @@ public class Security {
 
 	/** Get Security price on a given date */
 	public QPrice getPriceForDate(QDate date) {
-		int idx = getPriceIndexForDate(date);
-
-		if (idx >= 0) {
-			QPrice ret = this.prices.get(idx);
-
-			if (ret.date.compareTo(date) <= 0) {
-				return ret;
-			}
-		}
+		int idx = this.prices.indexOnOrBefore(date.getEpochDay());
 
 		// We either have no price history, or the date is before the start
-		return new QPrice(this.model, date, this.secid, BigDecimal.ZERO);
+		return (idx >= 0) //
+				? getPrice(idx) //
+				: new QPrice(this.model, date, this.secid, BigDecimal.ZERO);
 	}
 
-	/**
-	 * Find position in the price history nearest/prior to a given date.<br>
-	 * Return exact match if possible.<br>
-	 * Else return closest date before if possible.<br>
-	 * Return first date if argument is before the start of the history.
-	 */
-	private int getPriceIndexForDate(QDate date) {
-		int idx = Collections.binarySearch(this.prices, //
-				new QPrice(this.model, date, 1, BigDecimal.ZERO), //
-				new Comparator<QPrice>() {
-					public int compare(QPrice p1, QPrice p2) {
-						return p1.date.compareTo(p2.date);
-					}
-				});
+	/** Get Security price value on a given date (zero if unknown) */
+	public BigDecimal getPriceValueForDate(QDate date) {
+		int idx = this.prices.indexOnOrBefore(date.getEpochDay());
 
-		// Adjust position when we don't have an exact match
+		return (idx >= 0) ? this.prices.getPrice(idx) : BigDecimal.ZERO;
+	}
+
+	/** Get the price on a given date, adjusted for any later splits */
+	public BigDecimal getSplitAdjustedPriceForDate(QDate date) {
+		int idx = this.prices.indexOnOrBefore(date.getEpochDay());
 		if (idx < 0) {
-			idx = -(idx + 1); // insertion point
+			return BigDecimal.ZERO;
+		}
 
-			// Use the date prior to the insertion point, if not at beginning
-			if (idx > 0) {
-				--idx;
-			}
+		BigDecimal saprice = this.prices.getSplitAdjustedPrice(idx);
+		if (saprice == null) {
+			saprice = adjustPriceForSplits(this.prices.getPrice(idx), this.prices.getDay(idx));
 
-			if (idx >= this.prices.size()) {
-				idx = this.prices.size() - 1;
-			}
+			this.prices.setSplitAdjustedPrice(idx, saprice);
+		}
+
+		return saprice;
+	}
+
+	private SplitTable getSplitTable() {
+		SplitTable table = this.splitTable;
+
+		if (table == null) {
+			table = new SplitTable(this.splitList);
+			this.splitTable = table;
 		}
 
-		return idx;
+		return table;
 	}
 
 	/**
-	 * Return the cumulative split multiplier for this security from the start of
-	 * the history up to a specific date.
+	 * Return the cumulative split multiplier for splits on or after a date
+	 * (i.e. shares held on that date are this many shares now).
 	 */
 	public BigDecimal getSplitRatioForDate(QDate d) {
-		BigDecimal ret = BigDecimal.ONE;
+		return getSplitTable().getRatio(d.getEpochDay(), true);
+	}
 
-		for (StockSplitInfo si : this.splits) {
-			if (si.splitDate.compareTo(d) < 0) {
-				break;
-			}
+	/** Return the cumulative split multiplier for splits after a date */
+	public BigDecimal getSplitRatioAfterDate(QDate d) {
+		return getSplitTable().getRatio(d.getEpochDay(), false);
+	}
 
-			ret = ret.multiply(si.splitRatio);
-		}
+	/** Adjust a price on a date (epoch day) for any later splits */
+	BigDecimal adjustPriceForSplits(BigDecimal price, int day) {
+		BigDecimal ratio = getSplitTable().getRatio(day, false);
+
+		return (ratio == BigDecimal.ONE) ? price : price.divide(ratio);
+	}
+
+	/** Adjust a number of shares held on a date for any later splits */
+	public BigDecimal adjustSharesForSplits(BigDecimal shares, QDate date) {
+		BigDecimal ratio = getSplitRatioAfterDate(date);
 
-		return ret;
+		return (ratio == BigDecimal.ONE) ? shares : shares.multiply(ratio);
 	}
 
 	public String toString() {
@@ -401,8 +580,8 @@ public class Security {
 		}
 
 		for (int idx = 0; idx < this.prices.size(); ++idx) {
-			QPrice price = this.prices.get(idx);
-			QPrice oprice = other.prices.get(idx);
+			QPrice price = getPrice(idx);
+			QPrice oprice = other.getPrice(idx);
 
 			if (!price.matches(oprice)) {
 				return "price";
@@ -94,6 +94,17 @@ public class SecurityPortfolio {
 		}
 	}
 
+	/** Reposition a transaction whose date has changed, if it affects a position */
+	public void changeTransactionDate(GenericTxn txn) {
+		Security sec = txn.getSecurity();
+		if (sec != null) {
+			SecurityPosition pos = findPosition(sec);
+			if (pos != null) {
+				pos.changeTransactionDate((InvestmentTxn) txn);
+			}
+		}
+	}
+
 	/** Find a position for a security, if it exists */
 	public SecurityPosition findPosition(Security sec) {
 		for (SecurityPosition pos : getPositions()) {
@@ -2,11 +2,13 @@ package moneymgr.model;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
 import moneymgr.util.Common;
+import moneymgr.util.DateKeyIndex;
 import moneymgr.util.QDate;
 
 /** Holdings/price history for a single security */
@@ -25,7 +27,7 @@ public class SecurityPosition {
 			this.date = date;
 
 			this.shares = BigDecimal.ZERO;
-			this.price = security.getPriceForDate(date).getPrice();
+			this.price = security.getPriceValueForDate(date);
 			this.value = BigDecimal.ZERO;
 		}
 
@@ -85,8 +87,7 @@ public class SecurityPosition {
 		 * transactions
 		 */
 		private void analyzeTransactions() {
-			int idx = this.pos.getModel().getLastTransactionIndexOnOrBeforeDate( //
-					this.pos.transactions, this.start);
+			int idx = this.pos.getLastTransactionIndexOnOrBeforeDate(this.start);
 			if (idx < 0) {
 				return;
 			}
@@ -145,7 +146,7 @@ public class SecurityPosition {
 		}
 
 		public BigDecimal getStartPrice() {
-			return this.pos.security.getPriceForDate(this.start).getPrice();
+			return this.pos.security.getPriceValueForDate(this.start);
 		}
 
 		public BigDecimal getStartValue() {
@@ -153,7 +154,7 @@ public class SecurityPosition {
 		}
 
 		public BigDecimal getEndPrice() {
-			return this.pos.security.getPriceForDate(this.end).getPrice();
+			return this.pos.security.getPriceValueForDate(this.end);
 		}
 
 		public BigDecimal getEndValue() {
@@ -170,8 +171,14 @@ public class SecurityPosition {
 	/** Transactions for this security */
 	private final List<InvestmentTxn> transactions;
 
-	/** Running share balance per transaction */
-	private final List<BigDecimal> shrBalance;
+	/** Date keys for transactions (parallel to transactions) */
+	private final DateKeyIndex txDates;
+
+	/**
+	 * Running share balance per transaction (parallel to transactions/txDates,
+	 * so txDates and this form a date/shares step function)
+	 */
+	private BigDecimal[] shrBalance;
 
 	/** Set if this represents a PIT (i.e. statement). Null otherwise. */
 	private BigDecimal endingValue;
@@ -190,7 +197,8 @@ public class SecurityPosition {
 		this.security = sec;
 
 		this.transactions = new ArrayList<>();
-		this.shrBalance = new ArrayList<>();
+		this.txDates = new DateKeyIndex();
+		this.shrBalance = new BigDecimal[8];
 
 		this.expectedEndingShares = endShares;
 		this.endingValue = value;
@@ -248,10 +256,9 @@ public class SecurityPosition {
 
 	/** Check whether this position has any holdings on a given date */
 	public boolean isEmptyForDate(QDate d) {
-		int ii = getModel().getLastTransactionIndexOnOrBeforeDate( //
-				getTransactions(), d);
+		int ii = getLastTransactionIndexOnOrBeforeDate(d);
 
-		return (ii >= 0) && Common.isEffectivelyZero(this.shrBalance.get(ii));
+		return (ii >= 0) && Common.isEffectivelyZero(this.shrBalance[ii]);
 	}
 
 	public BigDecimal getEndingValue() {
@@ -263,12 +270,14 @@ public class SecurityPosition {
 	}
 
 	public List<BigDecimal> getShareBalances() {
-		return Collections.unmodifiableList(this.shrBalance);
+		return Collections.unmodifiableList( //
+				Arrays.asList(this.shrBalance).subList(0, this.transactions.size()));
 	}
 
 	/** Reset transactions and sharecount */
 	public void initializeTransactions() {
 		this.transactions.clear();
+		this.txDates.clear();
 		SecurityPosition ppos = getPreviousPosition();
 		this.actualEndingShares = (ppos != null) //
 				? ppos.getExpectedEndingShares() //
@@ -291,6 +300,14 @@ public class SecurityPosition {
 		return Collections.unmodifiableList(this.transactions);
 	}
 
+	/**
+	 * Return the index of the last transaction on or prior to a given date.<br>
+	 * Return -1 if there is no such transaction.
+	 */
+	public int getLastTransactionIndexOnOrBeforeDate(QDate date) {
+		return this.txDates.lastIndexOnOrBefore(date.getRawValue());
+	}
+
 	public BigDecimal getStartingShares() {
 		SecurityPosition prevpos = getPreviousPosition();
 
@@ -319,11 +336,8 @@ public class SecurityPosition {
 
 	/** Add a transaction, adjust share count and adjust for split */
 	public void addTransaction(InvestmentTxn txn) {
-		if (this.transactions.size() != this.shrBalance.size()) {
-			Common.reportError("SecurityPosition tx/bal sizes don't match");
-		}
-		if (this.transactions.contains(txn)) {
-			Common.reportError("Transaction added to portfolio twice");
+		if (this.transactions.size() != this.txDates.size()) {
+			Common.reportError("SecurityPosition tx/date sizes don't match");
 		}
 
 		switch (txn.getAction()) {
@@ -353,19 +367,21 @@ public class SecurityPosition {
 			return;
 		}
 
-		int idx = 0;
-		while ((idx < this.transactions.size()) //
-				&& (compareByDate.compare(txn, this.transactions.get(idx)) > 0)) {
-			++idx;
-		}
+		int key = txn.getDate().getRawValue();
+		int idx = this.txDates.lowerBound(key);
 
 		boolean hassplit = false;
 		BigDecimal splitratio = null;
 
 		while (idx < this.transactions.size() //
-				&& (compareByDate.compare(txn, this.transactions.get(idx)) == 0)) {
+				&& (this.txDates.get(idx) == key)) {
 			InvestmentTxn tx = this.transactions.get(idx);
 
+			// N.B. A transaction can only be here in its date's range
+			if (tx == txn) {
+				Common.reportError("Transaction added to portfolio twice");
+			}
+
 			if (tx.getAction() == TxAction.STOCKSPLIT) {
 				if (hassplit) {
 					if (tx.getSplitRatio().compareTo(splitratio) != 0) {
@@ -384,17 +400,22 @@ public class SecurityPosition {
 			return;
 		}
 
+		insertBalance(idx);
 		this.transactions.add(idx, txn);
-		this.shrBalance.add(idx, null);
+		this.txDates.insert(idx, key);
 
-		for (; idx < this.transactions.size(); ++idx) {
-			BigDecimal prevbal = (idx > 0) //
-					? this.shrBalance.get(idx - 1) //
-					: getStartingShares();
+		// Only balances from the new transaction on change
+		updateBalances(idx);
+	}
 
-			txn = this.transactions.get(idx);
+	/** Recalculate running share balances from a transaction on */
+	private void updateBalances(int idx) {
+		BigDecimal shrbal = (idx > 0) //
+				? this.shrBalance[idx - 1] //
+				: getStartingShares();
 
-			BigDecimal shrbal = prevbal;
+		for (; idx < this.transactions.size(); ++idx) {
+			InvestmentTxn txn = this.transactions.get(idx);
 
 			if (txn.getAction() == TxAction.STOCKSPLIT) {
 				shrbal = shrbal.multiply(txn.getSplitRatio());
@@ -406,9 +427,10 @@ public class SecurityPosition {
 				}
 			}
 
-			this.shrBalance.set(idx, shrbal);
-			this.actualEndingShares = shrbal;
+			this.shrBalance[idx] = shrbal;
 		}
+
+		this.actualEndingShares = shrbal;
 	}
 
 	private static Comparator<InvestmentTxn> compareByDate = //
@@ -419,10 +441,27 @@ public class SecurityPosition {
 		int idx = this.transactions.indexOf(itx);
 
 		if (idx >= 0) {
-			this.transactions.remove(idx);
-			this.shrBalance.remove(idx);
+			removeTransaction(idx);
+		}
+	}
+
+	/** Remove the Nth transaction and update the following balances */
+	private void removeTransaction(int idx) {
+		removeBalance(idx);
+		this.transactions.remove(idx);
+		this.txDates.remove(idx);
 
-			setTransactions(this.transactions);
+		updateBalances(idx);
+	}
+
+	/** Move a transaction whose date has changed to its new position */
+	public void changeTransactionDate(InvestmentTxn itx) {
+		// N.B. The date key is out of date, so we look for the transaction
+		int idx = this.transactions.indexOf(itx);
+
+		if (idx >= 0) {
+			removeTransaction(idx);
+			addTransaction(itx);
 		}
 	}
 
@@ -434,7 +473,7 @@ public class SecurityPosition {
 		Collections.sort(txns, compareByDate);
 
 		this.transactions.clear();
-		this.shrBalance.clear();
+		this.txDates.clear();
 		this.actualEndingShares = getStartingShares();
 
 		for (InvestmentTxn txn : txns) {
@@ -444,44 +483,66 @@ public class SecurityPosition {
 
 	/** Update running share totals in this position */
 	public void updateShareBalances() {
-		this.shrBalance.clear();
-
 		BigDecimal shrbal = (getPreviousPosition() != null) //
 				? getPreviousPosition().getEndingShares() //
 				: BigDecimal.ZERO;
 
-		for (InvestmentTxn t : this.transactions) {
+		for (int idx = 0; idx < this.transactions.size(); ++idx) {
+			InvestmentTxn t = this.transactions.get(idx);
+
 			if (t.getAction() == TxAction.STOCKSPLIT) {
 				shrbal = shrbal.multiply(t.getSplitRatio());
 			} else if (t.getShares() != null) {
 				shrbal = shrbal.add(t.getShares());
 			}
 
-			this.shrBalance.add(shrbal);
+			this.shrBalance[idx] = shrbal;
+		}
+	}
+
+	/** Make room for the balance of a new transaction at an index */
+	private void insertBalance(int idx) {
+		int count = this.transactions.size();
+
+		if (count == this.shrBalance.length) {
+			this.shrBalance = Arrays.copyOf(this.shrBalance, count * 2);
 		}
+
+		System.arraycopy(this.shrBalance, idx, this.shrBalance, idx + 1, count - idx);
+		this.shrBalance[idx] = null;
+	}
+
+	/** Remove the balance of a transaction at an index */
+	private void removeBalance(int idx) {
+		int count = this.transactions.size();
+
+		System.arraycopy(this.shrBalance, idx + 1, this.shrBalance, idx, count - idx - 1);
+		this.shrBalance[count - 1] = null;
+	}
+
+	/** Get the shares held for the Nth transaction (or before the first) */
+	private BigDecimal getSharesForIndex(int idx) {
+		return (idx >= 0) ? this.shrBalance[idx] : getStartingShares();
 	}
 
 	/** Get the value for the Nth transaction */
-	private BigDecimal getValueForIndex(QDate date, int idx) {
+	private BigDecimal getValueForIndex(int idx, BigDecimal price) {
 		if (idx < 0) {
 			return BigDecimal.ZERO;
 		}
 
-		BigDecimal shares = this.shrBalance.get(idx);
-		BigDecimal price = this.security.getPriceForDate(date).getPrice();
-
-		BigDecimal value = shares.multiply(price);
-
-		return value;
+		return this.shrBalance[idx].multiply(price);
 	}
 
 	/** Get value as of a given date */
 	public BigDecimal getValueForDate(QDate d) {
 		try {
-			int txidx = getModel().getLastTransactionIndexOnOrBeforeDate( //
-					this.transactions, d);
+			int txidx = getLastTransactionIndexOnOrBeforeDate(d);
+			if (txidx < 0) {
+				return BigDecimal.ZERO;
+			}
 
-			return getValueForIndex(d, txidx);
+			return getValueForIndex(txidx, this.security.getPriceValueForDate(d));
 		} catch (Exception e) {
 			e.printStackTrace();
 			return BigDecimal.ZERO;
@@ -490,22 +551,32 @@ public class SecurityPosition {
 
 	/** Get shares held on a given date */
 	public BigDecimal getSharesForDate(QDate date) {
-		int idx = getModel().getLastTransactionIndexOnOrBeforeDate( //
-				this.transactions, date);
-		return (idx >= 0) ? this.shrBalance.get(idx) : getStartingShares();
+		return getSharesForIndex(getLastTransactionIndexOnOrBeforeDate(date));
 	}
 
-	/** Create a PositionInfo summarizing the position/value on a given date */
+	/**
+	 * Create a PositionInfo summarizing the position/value on a given date.<br>
+	 * This searches the transactions and price history once each.
+	 */
 	public PositionInfo getPositionForDate(QDate date) {
-		BigDecimal shares = getSharesForDate(date);
-		return (shares == null) //
-				? null //
-				: new PositionInfo( //
-						this.security, //
-						date, //
-						shares, //
-						this.security.getPriceForDate(date).getPrice(), //
-						getValueForDate(date));
+		return getPositionForDate(this.security, date);
+	}
+
+	/**
+	 * Create a PositionInfo for a given date using the prices of a specified
+	 * security (e.g. for account positions whose security isn't set)
+	 */
+	PositionInfo getPositionForDate(Security sec, QDate date) {
+		int idx = getLastTransactionIndexOnOrBeforeDate(date);
+		BigDecimal shares = getSharesForIndex(idx);
+
+		if (shares == null) {
+			return null;
+		}
+
+		BigDecimal price = sec.getPriceValueForDate(date);
+
+		return new PositionInfo(sec, date, shares, price, getValueForIndex(idx, price));
 	}
 
 	public String toString() {
@@ -483,6 +483,14 @@ public abstract class SimpleTxn implements Txn {
 		if (amount != null && //
 				(this.amount == null || amount.compareTo(this.amount) != 0)) {
 			this.amount = amount;
+
+			// Running balances from this transaction on are out of date
+			Account acct = getAccount();
+			if (acct != null) {
+				acct.invalidateBalances(getDate());
+			}
+
+			this.model.changeTransactionAmount(this);
 		}
 	}
 
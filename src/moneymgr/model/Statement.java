@@ -16,6 +16,11 @@ public class Statement {
 	private static String stmtLogFile = "statementLog.dat";
 	private static String stmtLogFileCsv = "statementLog.csv.dat";
 
+	/** Binary statement log, replacing the text file */
+	private static String stmtLogStore = "statementLog.bin";
+	private static String stmtLogStoreCsv = "statementLog.csv.bin";
+
+	/** The text statement log (before conversion to the binary log) */
 	public static File getStatementLogFileForModel(MoneyMgrModel model) {
 		String name = (model.name.equals(MoneyMgrModel.CSV_MODEL_NAME)) //
 				? stmtLogFileCsv //
@@ -24,6 +29,14 @@ public class Statement {
 		return new File(QifDom.qifDir, name);
 	}
 
+	public static File getStatementLogStoreForModel(MoneyMgrModel model) {
+		String name = (model.name.equals(MoneyMgrModel.CSV_MODEL_NAME)) //
+				? stmtLogStoreCsv //
+				: stmtLogStore;
+
+		return new File(QifDom.qifDir, name);
+	}
+
 	public final MoneyMgrModel model;
 	public final int acctid;
 	public final QDate date;
@@ -222,6 +235,10 @@ public class Statement {
 			txn.setStatementDate(this.date);
 
 			addTransaction(txn);
+
+			for (ModelChangeListener listener : this.model.getChangeListeners()) {
+				listener.transactionCleared(this, txn, true);
+			}
 		}
 	}
 
@@ -232,6 +249,10 @@ public class Statement {
 
 			this.holdings.removeTransaction(txn);
 			this.unclearedTransactions.add(txn);
+
+			for (ModelChangeListener listener : this.model.getChangeListeners()) {
+				listener.transactionCleared(this, txn, false);
+			}
 		}
 	}
 
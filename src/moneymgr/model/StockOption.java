@@ -626,6 +626,40 @@ public class StockOption {
 		this.cancelDate = date;
 	}
 
+	/** Restore a saved option with all of its state */
+	public StockOption( //
+			MoneyMgrModel model, StockOption srcopt, int optid, String name, QDate date, //
+			int acctid, int secid, BigDecimal shares, //
+			BigDecimal strikeprice, BigDecimal marketprice, //
+			BigDecimal cost, BigDecimal origmarketvalue, //
+			int lifetimeMonths, int vestFrequency, int vestCount, //
+			int vestCurrent, BigDecimal sharesRemaining) {
+		this.model = model;
+
+		this.optid = optid;
+
+		this.srcOption = srcopt;
+		this.cancelDate = null;
+
+		this.name = name;
+		this.date = date;
+
+		this.acctid = acctid;
+		this.secid = secid;
+		this.grantShares = shares;
+		this.strikePrice = strikeprice;
+		this.marketPrice = marketprice;
+		this.cost = cost;
+		this.marketValueAtPurchase = origmarketvalue;
+
+		this.lifetimeMonths = lifetimeMonths;
+		this.vestFrequencyMonths = vestFrequency;
+		this.vestCount = vestCount;
+		this.vestCurrent = vestCurrent;
+
+		this.sharesRemaining = sharesRemaining;
+	}
+
 	public StockOption( //
 			StockOption srcopt, int optid, String name, QDate date, //
 			int acctid, int secid, BigDecimal shares, //
@@ -688,8 +722,8 @@ public class StockOption {
 		}
 
 		BigDecimal shares = getAvailableShares(date, true);
-		QPrice qprice = getSecurity().getPriceForDate(date);
-		BigDecimal netPrice = qprice.getPrice().subtract(this.strikePrice);
+		BigDecimal price = getSecurity().getPriceValueForDate(date);
+		BigDecimal netPrice = price.subtract(this.strikePrice);
 
 		return (netPrice.signum() > 0) ? shares.multiply(netPrice) : BigDecimal.ZERO;
 	}
@@ -774,7 +808,7 @@ public class StockOption {
 		String s = "Option(";
 
 		s += this.name;
-		s += ", " + this.date.longString;
+		s += ", " + this.date.getLongString();
 		s += ", " + this.model.getAccountByID(this.acctid).name;
 		s += ", " + getSecurity().getSymbol();
 		s += ", " + this.grantShares;
@@ -803,7 +837,7 @@ public class StockOption {
 
 		ret.append("\n");
 
-		BigDecimal price = getSecurity().getPriceForDate(date).getPrice();
+		BigDecimal price = getSecurity().getPriceValueForDate(date);
 
 		BigDecimal val = this.sharesRemaining.multiply(price);
 		BigDecimal cost = this.sharesRemaining.multiply(this.strikePrice);
@@ -0,0 +1,450 @@
+package moneymgr.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Date-ordered index of all transactions in a model.<br>
+ * Entries are ordered by (date, txid) and stored in fixed-size chunks so that
+ * insert/remove only shift a single chunk and lookups are a pair of binary
+ * searches (over chunks, then within a chunk).<br>
+ * During a load, transactions can be accumulated unsorted and the index built
+ * in a single pass (see beginBulkLoad/endBulkLoad).
+ */
+class TransactionDateIndex extends AbstractList<GenericTxn> {
+	/** Maximum number of entries in a chunk */
+	private static final int CHUNK_SIZE = 512;
+
+	/** Number of entries per chunk when (re)building the index */
+	private static final int CHUNK_FILL = (CHUNK_SIZE * 3) / 4;
+
+	/** A sorted run of transactions with their keys */
+	private static final class Chunk {
+		final int[] dates = new int[CHUNK_SIZE];
+		final int[] txids = new int[CHUNK_SIZE];
+		final GenericTxn[] txns = new GenericTxn[CHUNK_SIZE];
+		int size = 0;
+
+		/** Position of the first entry >= (date, txid) in this chunk */
+		int lowerBound(int date, int txid) {
+			int lo = 0;
+			int hi = this.size;
+
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+
+				if (compareKeys(this.dates[mid], this.txids[mid], date, txid) < 0) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+
+			return lo;
+		}
+
+		/** Position of the first entry whose date is after a given date */
+		int upperBoundDate(int date) {
+			int lo = 0;
+			int hi = this.size;
+
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+
+				if (this.dates[mid] <= date) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+
+			return lo;
+		}
+
+		void insert(int pos, GenericTxn txn, int date) {
+			int count = this.size - pos;
+
+			System.arraycopy(this.dates, pos, this.dates, pos + 1, count);
+			System.arraycopy(this.txids, pos, this.txids, pos + 1, count);
+			System.arraycopy(this.txns, pos, this.txns, pos + 1, count);
+
+			this.dates[pos] = date;
+			this.txids[pos] = txn.getTxid();
+			this.txns[pos] = txn;
+			++this.size;
+		}
+
+		void remove(int pos) {
+			int count = this.size - pos - 1;
+
+			System.arraycopy(this.dates, pos + 1, this.dates, pos, count);
+			System.arraycopy(this.txids, pos + 1, this.txids, pos, count);
+			System.arraycopy(this.txns, pos + 1, this.txns, pos, count);
+
+			--this.size;
+			this.txns[this.size] = null;
+		}
+
+		/** Move the upper half of this chunk into a new chunk */
+		Chunk split() {
+			Chunk other = new Chunk();
+			int keep = this.size / 2;
+			int count = this.size - keep;
+
+			System.arraycopy(this.dates, keep, other.dates, 0, count);
+			System.arraycopy(this.txids, keep, other.txids, 0, count);
+			System.arraycopy(this.txns, keep, other.txns, 0, count);
+			Arrays.fill(this.txns, keep, this.size, null);
+
+			other.size = count;
+			this.size = keep;
+
+			return other;
+		}
+	}
+
+	private static int compareKeys(int date1, int txid1, int date2, int txid2) {
+		if (date1 != date2) {
+			return (date1 < date2) ? -1 : 1;
+		}
+
+		return Integer.compare(txid1, txid2);
+	}
+
+	/** Compare two indexed transactions using the dates they are indexed under */
+	private int compareTxns(GenericTxn t1, GenericTxn t2) {
+		return compareKeys( //
+				this.dateByTxid[t1.getTxid()], t1.getTxid(), //
+				this.dateByTxid[t2.getTxid()], t2.getTxid());
+	}
+
+	private final List<Chunk> chunks = new ArrayList<>();
+
+	/** Global index of the first entry in each chunk */
+	private int[] chunkOffsets = new int[0];
+	private boolean offsetsValid = true;
+
+	/** Number of transactions in the chunks (excluding pending) */
+	private int numTransactions = 0;
+
+	/** Date (YYYYMMDD) each txid is indexed under (0 if not in the index) */
+	private int[] dateByTxid = new int[1024];
+
+	/** Unsorted transactions added during a bulk load (null if not loading) */
+	private List<GenericTxn> pending = null;
+
+	/** Enter bulk mode - adds are collected and sorted all at once later */
+	public void beginBulkLoad() {
+		if (this.pending == null) {
+			this.pending = new ArrayList<>();
+		}
+	}
+
+	/** Leave bulk mode, merging any collected transactions into the index */
+	public void endBulkLoad() {
+		flushPending();
+
+		this.pending = null;
+	}
+
+	/** Add a transaction (replaces any existing entry for the txn) */
+	public void addTransaction(GenericTxn txn) {
+		int txid = txn.getTxid();
+
+		if (txid < this.dateByTxid.length && this.dateByTxid[txid] != 0) {
+			removeTransaction(txn);
+		}
+
+		int date = txn.getDate().getRawValue();
+		setDateForTxid(txid, date);
+
+		if (this.pending != null) {
+			this.pending.add(txn);
+			return;
+		}
+
+		if (this.chunks.isEmpty()) {
+			this.chunks.add(new Chunk());
+		}
+
+		int cidx = findChunk(date, txid);
+		Chunk chunk = this.chunks.get(cidx);
+
+		if (chunk.size == CHUNK_SIZE) {
+			Chunk upper = chunk.split();
+			this.chunks.add(cidx + 1, upper);
+
+			if (compareKeys(date, txid, upper.dates[0], upper.txids[0]) >= 0) {
+				chunk = upper;
+			}
+		}
+
+		chunk.insert(chunk.lowerBound(date, txid), txn, date);
+
+		++this.numTransactions;
+		this.offsetsValid = false;
+	}
+
+	/** Remove a transaction if it is present. Return whether it was present. */
+	public boolean removeTransaction(GenericTxn txn) {
+		int txid = txn.getTxid();
+
+		if (txid >= this.dateByTxid.length || this.dateByTxid[txid] == 0) {
+			return false;
+		}
+
+		flushPending();
+
+		int date = this.dateByTxid[txid];
+		this.dateByTxid[txid] = 0;
+
+		int cidx = findChunk(date, txid);
+		Chunk chunk = this.chunks.get(cidx);
+		int pos = chunk.lowerBound(date, txid);
+
+		if (pos >= chunk.size || chunk.txns[pos] != txn) {
+			return false;
+		}
+
+		chunk.remove(pos);
+
+		if (chunk.size == 0) {
+			this.chunks.remove(cidx);
+		}
+
+		--this.numTransactions;
+		this.offsetsValid = false;
+
+		return true;
+	}
+
+	/** Return the index of the first transaction on or after a date */
+	public int getFirstIndexOnOrAfter(int date) {
+		flushPending();
+
+		// Key (date, 0) sorts before any real transaction on the date
+		int cidx = findChunk(date, 0);
+		if (cidx >= this.chunks.size()) {
+			return this.numTransactions;
+		}
+
+		return getChunkOffset(cidx) + this.chunks.get(cidx).lowerBound(date, 0);
+	}
+
+	/** Return the index of the last transaction on or before a date (or -1) */
+	public int getLastIndexOnOrBefore(int date) {
+		flushPending();
+
+		int cidx = findChunk(date, Integer.MAX_VALUE);
+		if (cidx >= this.chunks.size()) {
+			return this.numTransactions - 1;
+		}
+
+		return getChunkOffset(cidx) + this.chunks.get(cidx).upperBoundDate(date) - 1;
+	}
+
+	/** Return a list of the transactions between two dates (inclusive) */
+	public List<GenericTxn> getTransactions(int startDate, int endDate) {
+		flushPending();
+
+		List<GenericTxn> txns = new ArrayList<>();
+
+		int cidx = findChunk(startDate, 0);
+		if (cidx >= this.chunks.size()) {
+			return txns;
+		}
+
+		int pos = this.chunks.get(cidx).lowerBound(startDate, 0);
+
+		for (; cidx < this.chunks.size(); ++cidx, pos = 0) {
+			Chunk chunk = this.chunks.get(cidx);
+
+			for (; pos < chunk.size; ++pos) {
+				if (chunk.dates[pos] > endDate) {
+					return txns;
+				}
+
+				txns.add(chunk.txns[pos]);
+			}
+		}
+
+		return txns;
+	}
+
+	public GenericTxn get(int index) {
+		flushPending();
+
+		if ((index < 0) || (index >= this.numTransactions)) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+
+		updateChunkOffsets();
+
+		int lo = 0;
+		int hi = this.chunks.size() - 1;
+
+		// Find the last chunk whose offset is <= index
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+
+			if (this.chunkOffsets[mid] <= index) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+
+		return this.chunks.get(lo).txns[index - this.chunkOffsets[lo]];
+	}
+
+	public int size() {
+		return this.numTransactions //
+				+ ((this.pending != null) ? this.pending.size() : 0);
+	}
+
+	public Iterator<GenericTxn> iterator() {
+		flushPending();
+
+		return new Iterator<GenericTxn>() {
+			private int cidx = 0;
+			private int pos = 0;
+
+			public boolean hasNext() {
+				while ((this.cidx < chunks.size()) //
+						&& (this.pos >= chunks.get(this.cidx).size)) {
+					++this.cidx;
+					this.pos = 0;
+				}
+
+				return this.cidx < chunks.size();
+			}
+
+			public GenericTxn next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				return chunks.get(this.cidx).txns[this.pos++];
+			}
+		};
+	}
+
+	/**
+	 * Locate the chunk that holds (or should hold) a key.<br>
+	 * This is the first chunk whose last entry is >= the key, or the last chunk
+	 * if the key is beyond the end of the index. If the index is empty, returns
+	 * zero (i.e. chunks.size()).
+	 */
+	private int findChunk(int date, int txid) {
+		int lo = 0;
+		int hi = this.chunks.size() - 1;
+
+		if (hi < 0) {
+			return 0;
+		}
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			Chunk chunk = this.chunks.get(mid);
+			int last = chunk.size - 1;
+
+			if (compareKeys(chunk.dates[last], chunk.txids[last], date, txid) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		return lo;
+	}
+
+	private int getChunkOffset(int cidx) {
+		updateChunkOffsets();
+
+		return this.chunkOffsets[cidx];
+	}
+
+	private void updateChunkOffsets() {
+		if (this.offsetsValid) {
+			return;
+		}
+
+		if (this.chunkOffsets.length < this.chunks.size()) {
+			this.chunkOffsets = new int[this.chunks.size() * 2];
+		}
+
+		int offset = 0;
+		for (int ii = 0; ii < this.chunks.size(); ++ii) {
+			this.chunkOffsets[ii] = offset;
+			offset += this.chunks.get(ii).size;
+		}
+
+		this.offsetsValid = true;
+	}
+
+	private void setDateForTxid(int txid, int date) {
+		if (txid >= this.dateByTxid.length) {
+			this.dateByTxid = Arrays.copyOf(this.dateByTxid, //
+					Math.max(txid + 1, this.dateByTxid.length * 2));
+		}
+
+		this.dateByTxid[txid] = date;
+	}
+
+	/** Sort any transactions collected in bulk mode and merge them in */
+	private void flushPending() {
+		if ((this.pending == null) || this.pending.isEmpty()) {
+			return;
+		}
+
+		GenericTxn[] added = this.pending.toArray(new GenericTxn[0]);
+		this.pending.clear();
+		Arrays.sort(added, this::compareTxns);
+
+		GenericTxn[] merged = new GenericTxn[this.numTransactions + added.length];
+		int idx = 0;
+		int addidx = 0;
+
+		for (Chunk chunk : this.chunks) {
+			for (int pos = 0; pos < chunk.size; ++pos) {
+				GenericTxn txn = chunk.txns[pos];
+
+				while ((addidx < added.length) //
+						&& (compareTxns(added[addidx], txn) < 0)) {
+					merged[idx++] = added[addidx++];
+				}
+
+				merged[idx++] = txn;
+			}
+		}
+
+		while (addidx < added.length) {
+			merged[idx++] = added[addidx++];
+		}
+
+		rebuild(merged);
+	}
+
+	/** Replace the contents of the index with a sorted array of transactions */
+	private void rebuild(GenericTxn[] sorted) {
+		this.chunks.clear();
+
+		Chunk chunk = null;
+
+		for (GenericTxn txn : sorted) {
+			if ((chunk == null) || (chunk.size == CHUNK_FILL)) {
+				chunk = new Chunk();
+				this.chunks.add(chunk);
+			}
+
+			chunk.insert(chunk.size, txn, this.dateByTxid[txn.getTxid()]);
+		}
+
+		this.numTransactions = sorted.length;
+		this.offsetsValid = false;
+	}
+}
@@ -14,7 +14,13 @@ import moneymgr.util.Common;
 import moneymgr.util.QDate;
 
 public class CompareModels {
-	public static void compareModels(MoneyMgrModel m1, MoneyMgrModel m2) {
+	/** Number of differences reported by the current comparison */
+	private static int numDifferences = 0;
+
+	/** Report differences between two models, returning how many were found */
+	public static synchronized int compareModels(MoneyMgrModel m1, MoneyMgrModel m2) {
+		numDifferences = 0;
+
 		Common.reportInfo(String.format("Categories: %s", MoneyMgrApp.elapsedTime()));
 		compareCategories(m1, m2);
 
@@ -44,9 +50,12 @@ public class CompareModels {
 		compareBalances(m1, m2);
 
 		Common.reportInfo(String.format("Complete: %s", MoneyMgrApp.elapsedTime()));
+
+		return numDifferences;
 	}
 
 	private static void reportError(String msg) {
+		++numDifferences;
 		System.out.println(msg);
 	}
 
@@ -571,7 +571,7 @@ class AccountTests {
 	@Test
 	void testGetCurrentValue() {
 		BigDecimal val = bank.getCurrentValue();
-		Assert.assertTrue(Common.isEffectivelyZero(val));
+		Assert.assertTrue(Common.isEffectivelyEqual(new BigDecimal("9.99"), val));
 
 		// TODO fail("Not yet implemented");
 	}
@@ -579,9 +579,15 @@ class AccountTests {
 	@Test
 	void testGetValueForDate() {
 		BigDecimal val = bank.getValueForDate(today);
+		Assert.assertTrue(Common.isEffectivelyEqual(new BigDecimal("9.99"), val));
+
+		val = bank.getValueForDate(today.addDays(-1));
 		Assert.assertTrue(Common.isEffectivelyZero(val));
 
-		// TODO fail("Not yet implemented");
+		// Changing an amount updates the balance
+		this.ntx.setAmount(new BigDecimal("12.34"));
+		val = bank.getValueForDate(today);
+		Assert.assertTrue(Common.isEffectivelyEqual(new BigDecimal("12.34"), val));
 	}
 
 	@Test
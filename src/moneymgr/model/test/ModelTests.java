@@ -15,11 +15,17 @@ import org.junit.runner.RunWith;
 		CategoryTest.class, //
 		ITxTest.class, //
 		LotTest.class, //
+		QDateTest.class, //
+		QuoteRefreshTest.class, //
+		QuoteStoreTest.class, //
 		SecurityTest.class, //
 		SecurityPositionTest.class, //
 		SecurityPortfolioTest.class, //
+		SnapshotTest.class, //
+		StatementLogTest.class, //
 		StatementTest.class, //
 		StockOptionTest.class, //
+		TransactionIndexTest.class, //
 		TxTest.class //
 })
 public class ModelTests {
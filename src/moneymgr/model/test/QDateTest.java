@@ -0,0 +1,70 @@
+package moneymgr.model.test;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import moneymgr.util.QDate;
+
+public class QDateTest {
+
+	@Test
+	void testEpochDay() {
+		QDate d = new QDate(2020, 2, 29);
+
+		Assert.assertEquals(20200229, d.getRawValue());
+		Assert.assertEquals(18321, d.getEpochDay());
+		Assert.assertEquals(d, QDate.fromEpochDay(18321));
+		Assert.assertEquals(d, QDate.fromRawData(20200229));
+
+		// Dates from static methods are shared
+		Assert.assertSame(QDate.fromEpochDay(18321), QDate.fromRawData(20200229));
+	}
+
+	@Test
+	void testArithmetic() {
+		QDate d = new QDate(2019, 12, 31);
+
+		Assert.assertEquals(new QDate(2020, 1, 1), d.addDays(1));
+		Assert.assertEquals(new QDate(2020, 3, 1), d.addDays(61));
+		Assert.assertEquals(new QDate(2018, 12, 31), d.addDays(-365));
+
+		Assert.assertEquals(366, new QDate(2021, 1, 1).subtract(new QDate(2020, 1, 1)));
+		Assert.assertEquals(-1, d.subtract(d.addDays(1)));
+
+		// addMonths returns the end of the resulting month
+		Assert.assertEquals(new QDate(2020, 2, 29), d.addMonths(2));
+		Assert.assertEquals(new QDate(2019, 11, 30), d.addMonths(-1));
+		Assert.assertEquals(new QDate(2017, 12, 31), d.addMonths(-24));
+	}
+
+	@Test
+	void testStrings() {
+		QDate d = new QDate(2021, 3, 4);
+
+		Assert.assertEquals("3/4/21", d.toString());
+		Assert.assertEquals("03/04", d.getShortString());
+		Assert.assertEquals("03/04/2021", d.getLongString());
+		Assert.assertEquals("03/2021", d.getMonthYearString());
+	}
+
+	@Test
+	void testAdjust() {
+		Assert.assertEquals(new QDate(1985, 3, 4), new QDate(85, 3, 4));
+		Assert.assertEquals(new QDate(2021, 3, 3), new QDate(2021, 2, 31));
+		Assert.assertEquals(new QDate(2022, 1, 15), new QDate(2021, 13, 15));
+	}
+
+	@Test
+	void testDayZero() {
+		// Day zero is kept (as it always has been) but counts as the day before
+		QDate d = new QDate(2020, 3, 0);
+
+		Assert.assertEquals(20200300, d.getRawValue());
+		Assert.assertEquals(0, d.getDay());
+		Assert.assertEquals(new QDate(2020, 2, 29).getEpochDay(), d.getEpochDay());
+		Assert.assertEquals(d, QDate.fromRawData(20200300));
+		Assert.assertEquals(new QDate(2020, 3, 1), d.addDays(1));
+		Assert.assertTrue(d.compareTo(new QDate(2020, 2, 29)) > 0);
+		Assert.assertTrue(d.compareTo(new QDate(2020, 3, 1)) < 0);
+	}
+}
@@ -0,0 +1,207 @@
+package moneymgr.model.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import moneymgr.io.LocalQuoteService;
+import moneymgr.io.QuoteDownloader;
+import moneymgr.io.QuoteDownloader.QuoteSeries;
+import moneymgr.io.QuoteRefreshScheduler;
+import moneymgr.io.QuoteStore;
+import moneymgr.util.QDate;
+import moneymgr.util.TokenBucket;
+
+/** Background quote refresh: rate limiting, the refresh queue and responses */
+class QuoteRefreshTest {
+	private static final String FUNC_DAILY = "TIME_SERIES_DAILY_ADJUSTED";
+
+	File quoteDir;
+	File serviceDir;
+	QuoteRefreshScheduler scheduler = null;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		File dir = Files.createTempDirectory("quoterefreshtest").toFile();
+
+		this.quoteDir = new File(dir, "quotes");
+		this.serviceDir = new File(dir, "service");
+		this.quoteDir.mkdir();
+		this.serviceDir.mkdir();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (this.scheduler != null) {
+			this.scheduler.shutdown();
+		}
+
+		delete(this.quoteDir.getParentFile());
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+
+		if (files != null) {
+			for (File f : files) {
+				delete(f);
+			}
+		}
+
+		file.delete();
+	}
+
+	/** Create a service response with daily quotes (price depends on date) ending on a date */
+	private void writeQuotes(String symbol, QDate lastDate, int numDays) throws IOException {
+		StringBuilder json = new StringBuilder();
+
+		json.append("{\n  \"Meta Data\": {\n    \"2. Symbol\": \"" + symbol + "\",\n" //
+				+ "    \"4. Output Size\": \"Full size\"\n  },\n" //
+				+ "  \"Time Series (Daily)\": {\n");
+
+		for (int ii = 0; ii < numDays; ++ii) {
+			QDate date = lastDate.addDays(-ii);
+			String price = String.format("%d.00", 10 + date.getEpochDay() % 100);
+
+			json.append(String.format("    \"%04d-%02d-%02d\": {\n" //
+					+ "      \"4. close\": \"%s\",\n" //
+					+ "      \"5. adjusted close\": \"%s\",\n" //
+					+ "      \"7. dividend amount\": \"0.0000\",\n" //
+					+ "      \"8. split coefficient\": \"1.0\"\n" //
+					+ "    }%s\n", //
+					date.getYear(), date.getMonth(), date.getDay(), price, price, //
+					(ii < numDays - 1) ? "," : ""));
+		}
+
+		json.append("  }\n}\n");
+
+		Files.write(new File(this.serviceDir, symbol + ".json").toPath(), json.toString().getBytes());
+	}
+
+	private QuoteRefreshScheduler createScheduler(LocalQuoteService service) {
+		this.scheduler = new QuoteRefreshScheduler(this.quoteDir, service, new TokenBucket(100, 6000), 2);
+
+		return this.scheduler;
+	}
+
+	@Test
+	void testTokenBucketThrottle() {
+		// A burst of three, then one a minute
+		TokenBucket bucket = new TokenBucket(3, 1);
+
+		Assert.assertEquals(3, bucket.available());
+		Assert.assertTrue(bucket.tryAcquire());
+		Assert.assertTrue(bucket.tryAcquire());
+		Assert.assertTrue(bucket.tryAcquire());
+		Assert.assertFalse(bucket.tryAcquire());
+		Assert.assertEquals(0, bucket.available());
+	}
+
+	@Test
+	void testTokenBucketPause() throws Exception {
+		TokenBucket bucket = new TokenBucket(5, 60000);
+
+		Assert.assertTrue(bucket.tryAcquire());
+
+		bucket.pause(200);
+		Assert.assertEquals(0, bucket.available());
+		Assert.assertFalse(bucket.tryAcquire());
+
+		// acquire() waits for the pause to end
+		long start = System.nanoTime();
+		bucket.acquire();
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+		Assert.assertTrue("waited " + elapsedMillis + "ms", elapsedMillis >= 150);
+	}
+
+	@Test
+	void testServiceResponses() throws Exception {
+		QDate last = new QDate(2021, 7, 1);
+		writeQuotes("AAA", last, LocalQuoteService.COMPACT_SIZE + 50);
+
+		LocalQuoteService service = new LocalQuoteService(this.serviceDir, 2);
+
+		// A full response has all the quotes, a compact one only the latest
+		QuoteSeries full = QuoteDownloader.parseQuoteJson("AAA", //
+				new StringReader(service.query(FUNC_DAILY, "AAA", true)));
+		QuoteSeries compact = QuoteDownloader.parseQuoteJson("AAA", //
+				new StringReader(service.query(FUNC_DAILY, "AAA", false)));
+
+		Assert.assertEquals(LocalQuoteService.COMPACT_SIZE + 50, full.size);
+		Assert.assertEquals(LocalQuoteService.COMPACT_SIZE, compact.size);
+		Assert.assertEquals(last.getEpochDay(), compact.days[compact.size - 1]);
+		Assert.assertEquals(last.addDays(1 - LocalQuoteService.COMPACT_SIZE).getEpochDay(), compact.days[0]);
+
+		// Requests beyond the rate limit are refused
+		Assert.assertEquals(LocalQuoteService.THROTTLE_RESPONSE, service.query(FUNC_DAILY, "AAA", true));
+
+		// Unknown symbols get an error
+		Assert.assertEquals(LocalQuoteService.ERROR_RESPONSE, //
+				new LocalQuoteService(this.serviceDir).query(FUNC_DAILY, "ZZZ", true));
+	}
+
+	@Test
+	void testResumeQueue() throws Exception {
+		QDate last = new QDate(2021, 7, 1);
+		writeQuotes("AAA", last, 10);
+		writeQuotes("BBB", last, 20);
+
+		// Refreshes left over from a previous session
+		File queueFile = new File(this.quoteDir, QuoteRefreshScheduler.QUEUE_FILE);
+		Files.write(queueFile.toPath(), "AAA\nBBB\n".getBytes());
+
+		LocalQuoteService service = new LocalQuoteService(this.serviceDir);
+		QuoteRefreshScheduler sched = createScheduler(service);
+
+		Assert.assertEquals(2, sched.getPending().size());
+		Assert.assertTrue(sched.isPending("AAA"));
+		Assert.assertTrue(sched.isPending("BBB"));
+
+		sched.resume();
+		Assert.assertTrue(sched.awaitIdle(10000));
+
+		Assert.assertTrue(sched.getPending().isEmpty());
+		Assert.assertFalse(queueFile.exists());
+		Assert.assertEquals(2, service.getRequestCount());
+
+		Assert.assertEquals(10, QuoteStore.load("AAA", QuoteStore.getStoreFile(this.quoteDir, "AAA")).size);
+		Assert.assertEquals(20, QuoteStore.load("BBB", QuoteStore.getStoreFile(this.quoteDir, "BBB")).size);
+	}
+
+	@Test
+	void testCompactRefresh() throws Exception {
+		QDate last = new QDate(2021, 7, 1);
+		File storeFile = QuoteStore.getStoreFile(this.quoteDir, "AAA");
+
+		// We have quotes up to a few days ago
+		writeQuotes("AAA", last.addDays(-10), LocalQuoteService.COMPACT_SIZE + 50);
+		LocalQuoteService service = new LocalQuoteService(this.serviceDir);
+		Assert.assertTrue(QuoteStore.save(storeFile, QuoteDownloader.parseQuoteJson("AAA", //
+				new StringReader(service.query(FUNC_DAILY, "AAA", true)))));
+
+		writeQuotes("AAA", last, LocalQuoteService.COMPACT_SIZE + 60);
+
+		QuoteRefreshScheduler sched = createScheduler(service);
+		QuoteSeries[] refreshed = new QuoteSeries[1];
+		sched.addListener((symbol, quotes) -> refreshed[0] = quotes);
+
+		sched.schedule("AAA");
+		Assert.assertTrue(sched.awaitIdle(10000));
+
+		// A compact request was enough, and only the new quotes were added
+		Assert.assertEquals(2, service.getRequestCount());
+		Assert.assertNotNull(refreshed[0]);
+		Assert.assertEquals(10, refreshed[0].size);
+
+		QuoteSeries stored = QuoteStore.load("AAA", storeFile);
+		Assert.assertEquals(LocalQuoteService.COMPACT_SIZE + 60, stored.size);
+		Assert.assertEquals(last.getEpochDay(), stored.days[stored.size - 1]);
+	}
+}
@@ -0,0 +1,246 @@
+package moneymgr.model.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import moneymgr.io.QuoteDownloader;
+import moneymgr.io.QuoteDownloader.QuoteSeries;
+import moneymgr.io.QuoteStore;
+import moneymgr.model.PriceHistory;
+
+/** Saving quote stores, merging new quotes into them and converting JSON files */
+class QuoteStoreTest {
+	private static final String SYMBOL = "TEST";
+
+	/** First day of the stored quotes */
+	private static final int DAY0 = 18000;
+
+	File dir;
+	File storeFile;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		this.dir = Files.createTempDirectory("quotestoretest").toFile();
+		this.storeFile = QuoteStore.getStoreFile(this.dir, SYMBOL);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		for (File f : this.dir.listFiles()) {
+			f.delete();
+		}
+
+		this.dir.delete();
+	}
+
+	private static BigDecimal price(int day) {
+		return new BigDecimal(day % 1000).movePointLeft(2).add(BigDecimal.TEN);
+	}
+
+	/** Quotes for consecutive days, adjusted prices scaled by a factor */
+	private static QuoteSeries quotes(int firstDay, int count, String adjustment) {
+		QuoteSeries series = new QuoteSeries(SYMBOL);
+
+		for (int day = firstDay; day < firstDay + count; ++day) {
+			addQuote(series, day, adjustment);
+		}
+
+		return series;
+	}
+
+	private static void addQuote(QuoteSeries series, int day, String adjustment) {
+		BigDecimal price = price(day);
+
+		series.add(day, PriceHistory.toFixed(price), price.multiply(new BigDecimal(adjustment)), //
+				0, QuoteSeries.NO_SPLIT);
+	}
+
+	private void save(QuoteSeries series) {
+		Assert.assertTrue(QuoteStore.save(this.storeFile, series));
+	}
+
+	private QuoteSeries load() {
+		QuoteSeries series = QuoteStore.load(SYMBOL, this.storeFile);
+		Assert.assertNotNull(series);
+
+		return series;
+	}
+
+	/** Check that a series has the expected quotes for consecutive days */
+	private static void checkQuotes(QuoteSeries series, int firstDay, int count) {
+		Assert.assertEquals(count, series.size);
+
+		for (int ii = 0; ii < count; ++ii) {
+			Assert.assertEquals(firstDay + ii, series.days[ii]);
+			Assert.assertEquals(PriceHistory.toFixed(price(firstDay + ii)), series.prices[ii]);
+			Assert.assertEquals(QuoteSeries.NO_SPLIT, series.splitCoefficients[ii]);
+		}
+	}
+
+	@Test
+	void testSaveLoad() throws Exception {
+		QuoteSeries quotes = quotes(DAY0, 50, "1");
+		quotes.splitAdjustedPrices[10] = null;
+		save(quotes);
+
+		QuoteSeries loaded = load();
+		checkQuotes(loaded, DAY0, 50);
+		Assert.assertNull(loaded.splitAdjustedPrices[10]);
+		Assert.assertEquals(quotes.splitAdjustedPrices[11], loaded.splitAdjustedPrices[11]);
+
+		// Not a quote store
+		Files.write(this.storeFile.toPath(), "{ \"Note\": \"\" }".getBytes());
+		Assert.assertNull(QuoteStore.load(SYMBOL, this.storeFile));
+	}
+
+	@Test
+	void testMergeNewStore() throws Exception {
+		QuoteSeries added = QuoteStore.merge(this.storeFile, quotes(DAY0, 20, "1"));
+
+		Assert.assertEquals(20, added.size);
+		checkQuotes(load(), DAY0, 20);
+	}
+
+	@Test
+	void testAppend() throws Exception {
+		// More stored quotes than we read to find the overlap
+		save(quotes(DAY0, 200, "1"));
+		long length = this.storeFile.length();
+
+		QuoteSeries added = QuoteStore.merge(this.storeFile, quotes(DAY0 + 190, 20, "1"));
+
+		checkQuotes(added, DAY0 + 200, 10);
+		checkQuotes(load(), DAY0, 210);
+		Assert.assertEquals(length + 10 * ((length - 8) / 200), this.storeFile.length());
+
+		// No new quotes
+		added = QuoteStore.merge(this.storeFile, quotes(DAY0 + 200, 10, "1"));
+		Assert.assertEquals(0, added.size);
+		checkQuotes(load(), DAY0, 210);
+	}
+
+	@Test
+	void testMergeStoredAll() throws Exception {
+		// The whole store is read along with the overlap
+		save(quotes(DAY0, 10, "1"));
+
+		QuoteSeries added = QuoteStore.merge(this.storeFile, quotes(DAY0 + 5, 10, "1"));
+		checkQuotes(added, DAY0 + 10, 5);
+		checkQuotes(load(), DAY0, 15);
+
+		// The update covers everything stored, so replaces it
+		added = QuoteStore.merge(this.storeFile, quotes(DAY0 - 5, 30, "1"));
+		checkQuotes(added, DAY0 - 5, 30);
+		checkQuotes(load(), DAY0 - 5, 30);
+	}
+
+	@Test
+	void testMergePartialRead() throws Exception {
+		save(quotes(DAY0, 300, "1"));
+
+		// The update starts before the stored quotes we read first
+		QuoteSeries update = new QuoteSeries(SYMBOL);
+		addQuote(update, DAY0 + 200, "1");
+		addQuote(update, DAY0 + 300, "1");
+		addQuote(update, DAY0 + 301, "1");
+
+		QuoteSeries added = QuoteStore.merge(this.storeFile, update);
+		checkQuotes(added, DAY0 + 300, 2);
+		checkQuotes(load(), DAY0, 302);
+
+		// Nothing stored after the gap
+		Assert.assertNull(QuoteStore.merge(this.storeFile, quotes(DAY0 + 310, 5, "1")));
+		checkQuotes(load(), DAY0, 302);
+	}
+
+	@Test
+	void testRescale() throws Exception {
+		save(quotes(DAY0, 300, "1.00"));
+
+		// A 2:1 split halves the adjusted price of earlier quotes
+		QuoteSeries added = QuoteStore.merge(this.storeFile, quotes(DAY0 + 295, 10, "0.50"));
+		Assert.assertEquals(305, added.size);
+
+		QuoteSeries stored = load();
+		checkQuotes(stored, DAY0, 305);
+
+		for (int ii = 0; ii < stored.size; ++ii) {
+			BigDecimal expected = price(DAY0 + ii).multiply(new BigDecimal("0.50"));
+
+			Assert.assertEquals(0, expected.compareTo(stored.splitAdjustedPrices[ii]));
+		}
+
+		// Closing prices are unchanged
+		Assert.assertEquals(PriceHistory.toFixed(price(DAY0)), stored.prices[0]);
+	}
+
+	@Test
+	void testRescaleStoredAll() throws Exception {
+		save(quotes(DAY0, 10, "1"));
+
+		QuoteSeries added = QuoteStore.merge(this.storeFile, quotes(DAY0 + 5, 10, "0.25"));
+		Assert.assertEquals(15, added.size);
+
+		QuoteSeries stored = load();
+		checkQuotes(stored, DAY0, 15);
+		Assert.assertEquals(0, price(DAY0).divide(new BigDecimal(4)) //
+				.compareTo(stored.splitAdjustedPrices[0]));
+	}
+
+	@Test
+	void testIncompleteRecord() throws Exception {
+		save(quotes(DAY0, 10, "1"));
+		long length = this.storeFile.length();
+
+		// An append that was interrupted part way through a record
+		try (FileOutputStream out = new FileOutputStream(this.storeFile, true)) {
+			out.write(new byte[] { 1, 2, 3, 4, 5 });
+		}
+
+		checkQuotes(load(), DAY0, 10);
+
+		// The partial record is dropped before appending
+		QuoteSeries added = QuoteStore.merge(this.storeFile, quotes(DAY0 + 9, 3, "1"));
+		checkQuotes(added, DAY0 + 10, 2);
+		checkQuotes(load(), DAY0, 12);
+		Assert.assertEquals(length + 2 * ((length - 8) / 10), this.storeFile.length());
+	}
+
+	@Test
+	void testConvertJson() throws Exception {
+		File jsonFile = new File(this.dir, SYMBOL + ".quote");
+		Files.write(jsonFile.toPath(), ("{\n \"Meta Data\": { \"2. Symbol\": \"TEST\" },\n" //
+				+ " \"Time Series (Daily)\": {\n" //
+				+ "  \"2021-07-02\": { \"4. close\": \"11.00\", \"5. adjusted close\": \"5.50\" },\n" //
+				+ "  \"2021-07-01\": { \"4. close\": \"10.00\", \"5. adjusted close\": \"5.00\" }\n" //
+				+ " }\n}\n").getBytes());
+		jsonFile.setLastModified(jsonFile.lastModified() - 86400000L);
+
+		QuoteDownloader downloader = new QuoteDownloader(null);
+
+		// Parsing doesn't write anything
+		QuoteSeries parsed = downloader.parseQuoteFile(SYMBOL, jsonFile);
+		Assert.assertEquals(2, parsed.size);
+		Assert.assertFalse(this.storeFile.exists());
+
+		File converted = downloader.convertQuoteFile(SYMBOL, jsonFile);
+		Assert.assertEquals(this.storeFile, converted);
+		Assert.assertEquals(jsonFile.lastModified(), this.storeFile.lastModified());
+
+		QuoteSeries stored = downloader.parseQuoteFile(SYMBOL, converted);
+		Assert.assertEquals(2, stored.size);
+		Assert.assertEquals(parsed.days[0], stored.days[0]);
+		Assert.assertEquals(parsed.prices[1], stored.prices[1]);
+		Assert.assertEquals(parsed.splitAdjustedPrices[1], stored.splitAdjustedPrices[1]);
+
+		// Stores are left alone
+		Assert.assertEquals(this.storeFile, downloader.convertQuoteFile(SYMBOL, this.storeFile));
+	}
+}
@@ -244,6 +244,52 @@ class SecurityPositionTest {
 		// fail("Not yet implemented");
 	}
 
+	private InvestmentTxn addBuy(QDate date, String shares) {
+		InvestmentTxn newtx = new InvestmentTxn(this.invest.acctid);
+		newtx.setAction(TxAction.BUY);
+		newtx.setDate(date);
+		newtx.setSecurity(stock);
+		newtx.setQuantity(new BigDecimal(shares));
+
+		this.position.addTransaction(newtx);
+
+		return newtx;
+	}
+
+	@Test
+	void testRemoveTransactionBalances() {
+		InvestmentTxn tx2 = addBuy(this.today.addDays(1), "2.0");
+		addBuy(this.today.addDays(2), "4.0");
+
+		Assert.assertEquals(0, new BigDecimal("7.0").compareTo(this.position.getEndingShares()));
+
+		// Following balances are adjusted
+		this.position.removeTransaction(tx2);
+
+		List<BigDecimal> balances = this.position.getShareBalances();
+		Assert.assertEquals(2, balances.size());
+		Assert.assertEquals(0, new BigDecimal("1.0").compareTo(balances.get(0)));
+		Assert.assertEquals(0, new BigDecimal("5.0").compareTo(balances.get(1)));
+		Assert.assertEquals(0, new BigDecimal("5.0").compareTo(this.position.getEndingShares()));
+	}
+
+	@Test
+	void testChangeTransactionDate() {
+		InvestmentTxn tx2 = addBuy(this.today.addDays(1), "2.0");
+		addBuy(this.today.addDays(2), "4.0");
+
+		tx2.setDate(this.today.addDays(-1));
+		this.position.changeTransactionDate(tx2);
+
+		Assert.assertEquals(tx2, this.position.getTransactions().get(0));
+		Assert.assertEquals(this.today.addDays(-1), this.position.getFirstTransactionDate());
+
+		List<BigDecimal> balances = this.position.getShareBalances();
+		Assert.assertEquals(0, new BigDecimal("2.0").compareTo(balances.get(0)));
+		Assert.assertEquals(0, new BigDecimal("3.0").compareTo(balances.get(1)));
+		Assert.assertEquals(0, new BigDecimal("7.0").compareTo(balances.get(2)));
+	}
+
 	@Test
 	void testSetTransactions() {
 		List<InvestmentTxn> txns = new ArrayList<>();
@@ -208,13 +208,59 @@ class SecurityTest {
 		// TODO fail("Not yet implemented");
 	}
 
+	@Test
+	void testGetPriceValueForDate() {
+		QDate d1 = today.addDays(-100);
+		QDate d2 = today.addDays(-50);
+
+		foo.addPrice(new QPrice(this.model, d2, foo.secid, new BigDecimal("2.50")));
+		foo.addPrice(new QPrice(this.model, d1, foo.secid, new BigDecimal("1.25")));
+		Assert.assertEquals(2, foo.getPrices().size());
+
+		// Repeat lookups so the day table gets used as well as the search
+		for (int ii = 0; ii < 50; ++ii) {
+			Assert.assertEquals(0, BigDecimal.ZERO.compareTo(foo.getPriceValueForDate(d1.addDays(-1))));
+			Assert.assertEquals(0, new BigDecimal("1.25").compareTo(foo.getPriceValueForDate(d1)));
+			Assert.assertEquals(0, new BigDecimal("1.25").compareTo(foo.getPriceValueForDate(d2.addDays(-1))));
+			Assert.assertEquals(0, new BigDecimal("2.50").compareTo(foo.getPriceValueForDate(today)));
+		}
+
+		Assert.assertEquals(d1, foo.getPriceForDate(d1.addDays(10)).date);
+
+		// Replace an existing price
+		Assert.assertFalse(foo.addPrice(new QPrice(this.model, d1, foo.secid, new BigDecimal("1.50"))));
+		Assert.assertEquals(2, foo.getPrices().size());
+		Assert.assertEquals(0, new BigDecimal("1.50").compareTo(foo.getPriceValueForDate(d1)));
+	}
+
 	@Test
 	void testGetSplitRatioForDate() {
 		BigDecimal ratio = foo.getSplitRatioForDate(today);
 		Assert.assertNotNull(ratio);
 		Assert.assertTrue(Common.isEffectivelyEqual(BigDecimal.ONE, ratio));
 
-		// TODO fail("Not yet implemented");
+		// 2:1 and 3:1 splits (added out of order)
+		QDate d1 = this.today.addDays(-100);
+		QDate d2 = this.today.addDays(-50);
+		foo.splits.add(new Security.StockSplitInfo(d2, new BigDecimal(3)));
+		foo.splits.add(new Security.StockSplitInfo(d1, new BigDecimal(2)));
+
+		Assert.assertEquals(0, new BigDecimal(6).compareTo(foo.getSplitRatioForDate(d1.addDays(-1))));
+		Assert.assertEquals(0, new BigDecimal(6).compareTo(foo.getSplitRatioForDate(d1)));
+		Assert.assertEquals(0, new BigDecimal(3).compareTo(foo.getSplitRatioAfterDate(d1)));
+		Assert.assertEquals(0, new BigDecimal(3).compareTo(foo.getSplitRatioForDate(d2)));
+		Assert.assertEquals(0, BigDecimal.ONE.compareTo(foo.getSplitRatioAfterDate(d2)));
+		Assert.assertEquals(0, BigDecimal.ONE.compareTo(foo.getSplitRatioForDate(this.today)));
+
+		Assert.assertEquals(0, new BigDecimal(60).compareTo( //
+				foo.adjustSharesForSplits(BigDecimal.TEN, d1.addDays(-1))));
+
+		QPrice price = new QPrice(this.model, d1.addDays(-1), foo.secid, new BigDecimal("12.00"));
+		Assert.assertEquals(0, new BigDecimal("2.00").compareTo(price.getSplitAdjustedPrice()));
+
+		// Changing splits rebuilds the table
+		foo.splits.clear();
+		Assert.assertEquals(0, BigDecimal.ONE.compareTo(foo.getSplitRatioForDate(d1)));
 	}
 
 	@Test
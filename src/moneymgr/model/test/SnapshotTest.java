@@ -0,0 +1,220 @@
+package moneymgr.model.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import app.QifDom;
+import moneymgr.io.LocalQuoteService;
+import moneymgr.io.QuoteDownloader;
+import moneymgr.io.QuoteDownloader.QuoteSeries;
+import moneymgr.io.QuoteRefreshScheduler;
+import moneymgr.io.QuoteStore;
+import moneymgr.io.mm.ChangeJournal;
+import moneymgr.io.mm.Snapshot;
+import moneymgr.io.qif.QifDomReader;
+import moneymgr.model.Account;
+import moneymgr.model.GenericTxn;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.NonInvestmentTxn;
+import moneymgr.model.PriceHistory;
+import moneymgr.model.Security;
+import moneymgr.util.QDate;
+
+/** Load the sample data from QIF and from a snapshot plus journal */
+class SnapshotTest {
+	private static final String QIF_MODEL = "snapshot-test-qif";
+	private static final String SNAPSHOT_MODEL = "snapshot-test-snapshot";
+
+	File dataDir;
+	File qifFile;
+	File snapshotFile;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		this.dataDir = Files.createTempDirectory("snapshottest").toFile();
+
+		File sampleDir = new File("qif");
+		for (String name : new String[] { "75to87.qif", "options.txt", "statementLog.dat" }) {
+			copy(new File(sampleDir, name), new File(this.dataDir, name));
+		}
+
+		File quoteDir = new File(this.dataDir, "quotes");
+		quoteDir.mkdir();
+
+		for (File f : new File(sampleDir, "quotes").listFiles()) {
+			copy(f, new File(quoteDir, f.getName()));
+		}
+
+		this.qifFile = new File(this.dataDir, "75to87.qif");
+		this.snapshotFile = new File(this.dataDir, "test.snapshot");
+
+		// Don't go to the web service for quotes
+		QuoteDownloader.setQuoteService(new LocalQuoteService(new File(this.dataDir, "service")));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		QuoteDownloader.setQuoteService(null);
+		QifDom.qifDir = null;
+
+		MoneyMgrModel.deleteModel(QIF_MODEL);
+		MoneyMgrModel.deleteModel(SNAPSHOT_MODEL);
+
+		delete(this.dataDir);
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		if (from.isFile()) {
+			Files.copy(from.toPath(), to.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+		}
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+
+		if (files != null) {
+			for (File f : files) {
+				delete(f);
+			}
+		}
+
+		file.delete();
+	}
+
+	/** Add a day's quote after the last one in a security's quote store */
+	private QuoteSeries refreshQuotes(Security sec) throws IOException {
+		File storeFile = QuoteStore.getStoreFile(new File(this.dataDir, "quotes"), sec.getSymbol());
+		QuoteSeries stored = QuoteStore.load(sec.getSymbol(), storeFile);
+		int last = stored.size - 1;
+
+		QuoteSeries update = new QuoteSeries(sec.getSymbol());
+		update.add(stored, last);
+		update.add(stored.days[last] + 1, stored.prices[last] + 100, null, 0, QuoteSeries.NO_SPLIT);
+
+		return QuoteStore.merge(storeFile, update);
+	}
+
+	/** Add a security with a quote store (the sample data has no quotes) */
+	private void addSecurity(String symbol) throws IOException {
+		Files.write(this.qifFile.toPath(), //
+				("!Type:Security\r\nNSnapshot test\r\nS" + symbol + "\r\nTStock\r\n^\r\n").getBytes(), //
+				StandardOpenOption.APPEND);
+
+		QuoteSeries quotes = new QuoteSeries(symbol);
+		int day = new QDate(2021, 7, 1).getEpochDay();
+
+		for (int ii = 0; ii < 5; ++ii) {
+			quotes.add(day + ii, PriceHistory.toFixed(new BigDecimal(10 + ii)), //
+					null, 0, QuoteSeries.NO_SPLIT);
+		}
+
+		File storeFile = QuoteStore.getStoreFile(new File(this.dataDir, "quotes"), symbol);
+		Assert.assertTrue(QuoteStore.save(storeFile, quotes));
+	}
+
+	@Test
+	void testRoundTrip() throws Exception {
+		addSecurity("SNAPTEST");
+
+		MoneyMgrModel qifModel = MoneyMgrModel.changeModel(QIF_MODEL);
+		QifDomReader.loadDom(qifModel, new String[] { this.qifFile.getPath() });
+
+		Security refreshed = qifModel.findSecurityBySymbol("SNAPTEST");
+		Assert.assertNotNull(refreshed);
+		Assert.assertEquals(5, refreshed.getPrices().size());
+
+		ChangeJournal journal = new ChangeJournal(this.snapshotFile, this.qifFile);
+		journal.saveSnapshot(qifModel);
+		Assert.assertTrue(Snapshot.isCurrent(this.snapshotFile, this.qifFile));
+
+		// Changes after the snapshot go to the journal
+		Account acct = null;
+		for (Account a : qifModel.getAccounts()) {
+			if (!a.isInvestmentAccount() && (a.getTransactions().size() > 1)) {
+				acct = a;
+				break;
+			}
+		}
+
+		Assert.assertNotNull(acct);
+
+		GenericTxn redated = acct.getTransactions().get(0);
+		redated.setDate(redated.getDate().addDays(3));
+
+		GenericTxn changed = acct.getTransactions().get(1);
+		changed.setAmount(changed.getAmount().add(new BigDecimal("1.00")));
+
+		// Changes are written as they happen
+		File journalFile = journal.getJournalFile(journal.getGeneration());
+		Assert.assertTrue(journalFile.isFile());
+		long journalLength = journalFile.length();
+
+		NonInvestmentTxn added = new NonInvestmentTxn(acct.acctid);
+		added.setDate(acct.getTransactions().get(acct.getTransactions().size() - 1).getDate());
+		added.setAmount(new BigDecimal("12.34"));
+		added.setPayee("Snapshot test");
+		acct.addTransaction(added);
+
+		// A new transaction is written when its details are complete
+		journal.flush();
+		Assert.assertTrue(journalFile.length() > journalLength);
+
+		// Quotes refreshed in the background don't make the snapshot out of date
+		QuoteSeries quotes = refreshQuotes(refreshed);
+		refreshed.addPrices(quotes.days, quotes.prices, quotes.splitAdjustedPrices, quotes.size);
+		Files.write(new File(new File(this.dataDir, "quotes"), QuoteRefreshScheduler.QUEUE_FILE).toPath(), //
+				new byte[0]);
+
+		Assert.assertTrue(Snapshot.isCurrent(this.snapshotFile, this.qifFile));
+
+		// Load the snapshot and journal, and add the refreshed quotes
+		ChangeJournal journal2 = new ChangeJournal(this.snapshotFile, this.qifFile);
+		MoneyMgrModel snapModel = journal2.loadSnapshot(SNAPSHOT_MODEL);
+		Assert.assertNotNull(snapModel);
+
+		QifDomReader.postSnapshotLoad(snapModel, this.snapshotFile);
+
+		QDate quoteDate = QDate.fromEpochDay(quotes.days[quotes.size - 1]);
+		Assert.assertEquals(refreshed.getPriceForDate(quoteDate).getPrice(), //
+				snapModel.findSecurityBySymbol(refreshed.getSymbol()).getPriceForDate(quoteDate).getPrice());
+
+		Assert.assertEquals(0, MoneyMgrModel.compareModels(QIF_MODEL, SNAPSHOT_MODEL));
+	}
+
+	@Test
+	void testFailedReplay() throws Exception {
+		MoneyMgrModel qifModel = MoneyMgrModel.changeModel(QIF_MODEL);
+		QifDomReader.loadDom(qifModel, new String[] { this.qifFile.getPath() });
+
+		ChangeJournal journal = new ChangeJournal(this.snapshotFile, this.qifFile);
+		journal.saveSnapshot(qifModel);
+
+		GenericTxn redated = qifModel.getAccounts().get(0).getTransactions().get(0);
+		redated.setDate(redated.getDate().addDays(3));
+
+		// A date change record that is too short to read
+		File journalFile = journal.getJournalFile(journal.getGeneration());
+		Files.write(journalFile.toPath(), new byte[] { 0, 0, 0, 3, 0, 0, 0, 2, 0, 0 }, //
+				StandardOpenOption.APPEND);
+
+		ChangeJournal journal2 = new ChangeJournal(this.snapshotFile, this.qifFile);
+		Assert.assertNull(journal2.loadSnapshot(SNAPSHOT_MODEL));
+
+		// Saving a new snapshot keeps the journal and the snapshot it applies to
+		long generation = journal.getGeneration();
+		journal2.saveSnapshot(qifModel);
+
+		Assert.assertTrue(journalFile.isFile());
+		Assert.assertTrue(journal2.getFailedSnapshotFile(generation).isFile());
+		Assert.assertTrue(journal2.getGeneration() > generation);
+	}
+}
@@ -0,0 +1,195 @@
+package moneymgr.model.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import moneymgr.io.StatementDetails;
+import moneymgr.io.StatementLog;
+import moneymgr.io.StatementTxInfo;
+import moneymgr.model.Account;
+import moneymgr.model.AccountType;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.NonInvestmentTxn;
+import moneymgr.model.Security;
+import moneymgr.model.Statement;
+import moneymgr.util.QDate;
+
+/** Converting, reading and appending to the binary statement log */
+class StatementLogTest {
+	private static final String MODEL_NAME = "statementlog-test";
+
+	private static final String TEXT_LOG = "4\n" //
+			+ "Checking;02/28/1987;4437.49;4437.49;2;0;" //
+			+ "T;02/05/1987;0;824.88;T;02/11/1987;1001;-8.50;\n" //
+			+ "Broker;03/31/1987;1000.00;250.00;1;1;" //
+			+ "I;03/10/1987;BUY;FOO;10.00;-750.00;FOO;1;0;10.000000;\n" //
+			+ "Bad;line\n";
+
+	MoneyMgrModel model;
+	Account bank;
+	Account broker;
+	Security stock;
+
+	File dir;
+	File textFile;
+	File logFile;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		new MoneyMgrModel(MODEL_NAME);
+		this.model = MoneyMgrModel.changeModel(MODEL_NAME);
+
+		this.bank = new Account("Checking", AccountType.Bank);
+		this.model.addAccount(this.bank);
+
+		this.broker = new Account("Broker", AccountType.Invest);
+		this.model.addAccount(this.broker);
+
+		this.stock = new Security("FOO", "Foo, Inc");
+		this.model.addSecurity(this.stock);
+
+		this.dir = Files.createTempDirectory("statementlogtest").toFile();
+		this.textFile = new File(this.dir, "statementLog.dat");
+		this.logFile = new File(this.dir, "statementLog.bin");
+
+		Files.write(this.textFile.toPath(), TEXT_LOG.getBytes());
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		MoneyMgrModel.deleteModel(MODEL_NAME);
+
+		for (File f : this.dir.listFiles()) {
+			f.delete();
+		}
+
+		this.dir.delete();
+	}
+
+	/** Create a statement with one check */
+	private Statement createStatement(QDate date, String checkAmount) {
+		NonInvestmentTxn txn = new NonInvestmentTxn(this.bank.acctid);
+		txn.setDate(date.addDays(-10));
+		txn.setCheckNumber("1002");
+		txn.setAmount(new BigDecimal(checkAmount));
+
+		Statement stmt = new Statement(this.bank.acctid, date, new BigDecimal("100.00"), null, null);
+		stmt.addTransaction(txn);
+
+		return stmt;
+	}
+
+	@Test
+	void testConvert() throws Exception {
+		// The bad line is skipped
+		Assert.assertEquals(2, StatementLog.convert(this.textFile, this.logFile));
+
+		StatementLog log = StatementLog.open(this.logFile);
+		Assert.assertEquals(StatementDetails.CURRENT_VERSION, log.getVersion());
+		Assert.assertEquals(2, log.getEntries().size());
+		Assert.assertEquals("Checking", log.getEntries().get(0).acctname);
+		Assert.assertEquals(new QDate(1987, 3, 31), log.getEntries().get(1).date);
+
+		StatementDetails details = log.getDetails(this.bank, new QDate(1987, 2, 28));
+		Assert.assertNotNull(details);
+		Assert.assertEquals(this.bank.acctid, details.acctid);
+		Assert.assertEquals(new BigDecimal("4437.49"), details.closingBalance);
+		Assert.assertEquals(2, details.transactions.size());
+
+		StatementTxInfo tx = details.transactions.get(1);
+		Assert.assertEquals(new QDate(1987, 2, 11), tx.date);
+		Assert.assertEquals(1001, tx.cknum);
+		Assert.assertEquals(new BigDecimal("-8.50"), tx.cashAmount);
+		Assert.assertNull(tx.security);
+
+		details = log.getDetails(this.broker, new QDate(1987, 3, 31));
+		Assert.assertNotNull(details);
+		Assert.assertEquals(1, details.transactions.size());
+
+		tx = details.transactions.get(0);
+		Assert.assertEquals("BUY", tx.action);
+		Assert.assertEquals(this.stock, tx.security);
+		Assert.assertEquals(new BigDecimal("10.00"), tx.shares);
+		Assert.assertEquals(new BigDecimal("-750.00"), tx.cashAmount);
+
+		Assert.assertNull(log.getDetails(this.bank, new QDate(1987, 3, 31)));
+	}
+
+	@Test
+	void testAppend() throws Exception {
+		StatementLog.convert(this.textFile, this.logFile);
+
+		QDate date = new QDate(1987, 3, 31);
+		StatementLog.append(this.logFile, createStatement(date, "-12.345"));
+
+		StatementLog log = StatementLog.open(this.logFile);
+		Assert.assertEquals(3, log.getEntries().size());
+
+		// Entries are found by account name regardless of case
+		List<StatementLog.Entry> entries = log.getEntries("CHECKING");
+		Assert.assertEquals(2, entries.size());
+		Assert.assertEquals(date, entries.get(1).date);
+
+		StatementDetails details = log.getDetails(this.bank, entries.get(1));
+		Assert.assertEquals(new BigDecimal("100.00"), details.closingBalance);
+		Assert.assertEquals(1, details.transactions.size());
+
+		StatementTxInfo tx = details.transactions.get(0);
+		Assert.assertEquals(date.addDays(-10), tx.date);
+		Assert.assertEquals(1002, tx.cknum);
+		Assert.assertEquals(new BigDecimal("-12.35"), tx.cashAmount);
+
+		// A statement saved again replaces the earlier one
+		StatementLog.append(this.logFile, createStatement(date, "-20.00"));
+
+		log = StatementLog.open(this.logFile);
+		Assert.assertEquals(3, log.getEntries("checking").size());
+		Assert.assertEquals(new BigDecimal("-20.00"), //
+				log.getDetails(this.bank, date).transactions.get(0).cashAmount);
+	}
+
+	@Test
+	void testAppendNewLog() throws Exception {
+		QDate date = new QDate(1987, 3, 31);
+		StatementLog.append(this.logFile, createStatement(date, "-5.00"));
+
+		StatementLog log = StatementLog.open(this.logFile);
+		Assert.assertEquals(StatementDetails.CURRENT_VERSION, log.getVersion());
+		Assert.assertEquals(1, log.getEntries().size());
+		Assert.assertNotNull(log.getDetails(this.bank, date));
+
+		Assert.assertNull(StatementLog.open(new File(this.dir, "missing.bin")));
+	}
+
+	@Test
+	void testIncompleteRecord() throws Exception {
+		StatementLog.convert(this.textFile, this.logFile);
+		long length = this.logFile.length();
+
+		// An append that was interrupted part way through a record
+		try (FileOutputStream out = new FileOutputStream(this.logFile, true)) {
+			out.write(new byte[] { 0, 0, 1, 0, 5, 6 });
+		}
+
+		StatementLog log = StatementLog.open(this.logFile);
+		Assert.assertEquals(2, log.getEntries().size());
+		Assert.assertEquals(length, this.logFile.length());
+
+		// New records follow the last complete one
+		QDate date = new QDate(1987, 3, 31);
+		StatementLog.append(this.logFile, createStatement(date, "-5.00"));
+
+		log = StatementLog.open(this.logFile);
+		Assert.assertEquals(3, log.getEntries().size());
+		Assert.assertEquals(new BigDecimal("-5.00"), //
+				log.getDetails(this.bank, date).transactions.get(0).cashAmount);
+	}
+}
@@ -0,0 +1,173 @@
+package moneymgr.model.test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import moneymgr.model.Account;
+import moneymgr.model.AccountType;
+import moneymgr.model.GenericTxn;
+import moneymgr.model.InvestmentTxn;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.NonInvestmentTxn;
+import moneymgr.model.Security;
+import moneymgr.model.SecurityPosition;
+import moneymgr.model.TxAction;
+import moneymgr.util.QDate;
+
+class TransactionIndexTest {
+
+	MoneyMgrModel model;
+	Account bank;
+	QDate start;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		new MoneyMgrModel("test-model");
+		this.model = MoneyMgrModel.changeModel("test-model");
+
+		this.bank = new Account("bank", AccountType.Bank);
+		this.model.addAccount(this.bank);
+
+		this.start = new QDate(2000, 1, 1);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		MoneyMgrModel.deleteModel("test-model");
+	}
+
+	private NonInvestmentTxn addTxn(QDate date) {
+		NonInvestmentTxn tx = new NonInvestmentTxn(this.bank.acctid);
+		tx.setDate(date);
+		tx.setAmount(BigDecimal.ONE);
+
+		this.bank.addTransaction(tx);
+
+		return tx;
+	}
+
+	private void checkOrder() {
+		List<GenericTxn> txns = this.model.getTransactionsByDate();
+
+		for (int ii = 1; ii < txns.size(); ++ii) {
+			Assert.assertTrue(txns.get(ii - 1).getDate().compareTo(txns.get(ii).getDate()) <= 0);
+		}
+	}
+
+	@Test
+	void testAddRemove() {
+		// Add enough transactions (in reverse order) to use multiple chunks
+		for (int ii = 2000; ii > 0; --ii) {
+			addTxn(this.start.addDays(ii % 700));
+		}
+
+		Assert.assertEquals(2000, this.model.getTransactionsByDate().size());
+		checkOrder();
+
+		GenericTxn tx = this.model.getTransactionsByDate().get(1000);
+		this.model.removeTransaction(tx);
+
+		Assert.assertEquals(1999, this.model.getTransactionsByDate().size());
+		Assert.assertFalse(this.model.getTransactionsByDate().contains(tx));
+		checkOrder();
+	}
+
+	@Test
+	void testChangeDate() {
+		NonInvestmentTxn tx1 = addTxn(this.start);
+		NonInvestmentTxn tx2 = addTxn(this.start.addDays(5));
+
+		tx1.setDate(this.start.addDays(10));
+
+		List<GenericTxn> txns = this.model.getTransactionsByDate();
+		Assert.assertEquals(2, txns.size());
+		Assert.assertSame(tx2, txns.get(0));
+		Assert.assertSame(tx1, txns.get(1));
+		Assert.assertEquals(this.start.addDays(5), this.model.getFirstTransactionDate());
+		Assert.assertEquals(this.start.addDays(10), this.model.getLastTransactionDate());
+	}
+
+	@Test
+	void testChangeDateInAccountAndPosition() {
+		Account invest = new Account("invest", AccountType.Invest);
+		this.model.addAccount(invest);
+
+		Security stock = new Security("FOO", "Foo, Inc");
+		this.model.addSecurity(stock);
+
+		InvestmentTxn buy1 = addBuy(invest, stock, this.start, "10");
+		InvestmentTxn buy2 = addBuy(invest, stock, this.start.addDays(5), "5");
+
+		buy1.setDate(this.start.addDays(10));
+
+		// Account date keys follow the new date
+		Assert.assertEquals(-1, invest.getLastTransactionIndexOnOrBeforeDate(this.start.addDays(4)));
+		Assert.assertEquals(0, invest.getLastTransactionIndexOnOrBeforeDate(this.start.addDays(5)));
+		Assert.assertSame(buy1, invest.getTransactions().get(1));
+
+		// As do the account and model positions
+		for (SecurityPosition pos : new SecurityPosition[] { //
+				invest.securities.findPosition(stock), //
+				this.model.portfolio.findPosition(stock) }) {
+			Assert.assertSame(buy2, pos.getTransactions().get(0));
+			Assert.assertSame(buy1, pos.getTransactions().get(1));
+
+			Assert.assertEquals(0, pos.getSharesForDate(this.start.addDays(1)).signum());
+			Assert.assertEquals(0, new BigDecimal("5").compareTo(pos.getSharesForDate(this.start.addDays(5))));
+			Assert.assertEquals(0, new BigDecimal("15").compareTo(pos.getSharesForDate(this.start.addDays(10))));
+		}
+	}
+
+	private InvestmentTxn addBuy(Account acct, Security sec, QDate date, String shares) {
+		InvestmentTxn tx = new InvestmentTxn(acct.acctid);
+		tx.setAction(TxAction.BUY);
+		tx.setDate(date);
+		tx.setSecurity(sec);
+		tx.setQuantity(new BigDecimal(shares));
+		tx.setAmount(BigDecimal.TEN);
+
+		acct.addTransaction(tx);
+		acct.securities.addTransaction(tx);
+		this.model.portfolio.addTransaction(tx);
+
+		return tx;
+	}
+
+	@Test
+	void testBulkLoad() {
+		this.model.beginBulkLoad();
+
+		for (int ii = 1000; ii > 0; --ii) {
+			addTxn(this.start.addDays(ii));
+		}
+
+		this.model.endBulkLoad();
+
+		Assert.assertEquals(1000, this.model.getTransactionsByDate().size());
+		Assert.assertEquals(this.start.addDays(1), this.model.getFirstTransactionDate());
+		checkOrder();
+	}
+
+	@Test
+	void testLastIndexOnOrBeforeDate() {
+		Assert.assertEquals(-1, this.model.getLastTransactionIndexOnOrBeforeDate(this.start));
+
+		addTxn(this.start);
+		addTxn(this.start);
+		addTxn(this.start.addDays(2));
+
+		Assert.assertEquals(-1, //
+				this.model.getLastTransactionIndexOnOrBeforeDate(this.start.addDays(-1)));
+		Assert.assertEquals(1, //
+				this.model.getLastTransactionIndexOnOrBeforeDate(this.start));
+		Assert.assertEquals(1, //
+				this.model.getLastTransactionIndexOnOrBeforeDate(this.start.addDays(1)));
+		Assert.assertEquals(2, //
+				this.model.getLastTransactionIndexOnOrBeforeDate(this.start.addDays(30)));
+	}
+}
@@ -2,6 +2,7 @@ package moneymgr.report;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -252,8 +253,10 @@ public class InvestmentPerformanceModel {
 		this.summary = new Summary();
 		this.sections = Section.getSections();
 
-		this.startStatusModel = new StatusForDateModel(model, startDate);
-		this.endStatusModel = new StatusForDateModel(model, endDate);
+		List<StatusForDateModel> status = StatusForDateModel.getStatusForDates( //
+				model, Arrays.asList(startDate, endDate), true);
+		this.startStatusModel = status.get(0);
+		this.endStatusModel = status.get(1);
 
 		this.txns = MainFrame.appFrame.model.getInvestmentTransactions(startDate, endDate);
 
@@ -0,0 +1,238 @@
+package moneymgr.report;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import moneymgr.model.Account;
+import moneymgr.model.AccountCategory;
+import moneymgr.model.GenericTxn;
+import moneymgr.model.Lot;
+import moneymgr.model.ModelChangeListener;
+import moneymgr.model.MoneyMgrModel;
+import moneymgr.model.Security;
+import moneymgr.model.SimpleTxn;
+import moneymgr.model.Statement;
+import moneymgr.model.StockOption;
+import moneymgr.util.Common;
+import moneymgr.util.DateKeyIndex;
+import moneymgr.util.QDate;
+
+/**
+ * Account category subtotals (the data for net worth/balance charts) for
+ * dates, calculated when first requested and kept until an edit affects
+ * them.<br>
+ * Values are in cents, one per category in the order of
+ * AccountCategory.accountCategoryInfoForChart. Changing a transaction only
+ * discards values on or after its date.
+ */
+public class NetWorthHistory implements ModelChangeListener {
+	/**
+	 * Get the history for a model, creating it if necessary.<br>
+	 * The history is kept by the model as a change listener (so it goes away
+	 * with the model), rather than in a map of our own.
+	 */
+	public static synchronized NetWorthHistory getHistory(MoneyMgrModel model) {
+		for (ModelChangeListener listener : model.getChangeListeners()) {
+			if (listener instanceof NetWorthHistory) {
+				return (NetWorthHistory) listener;
+			}
+		}
+
+		return new NetWorthHistory(model);
+	}
+
+	/** Return the chart index of an account category */
+	public static int getCategoryIndex(AccountCategory category) {
+		AccountCategory[] categories = AccountCategory.accountCategoryInfoForChart;
+
+		for (int idx = 0; idx < categories.length; ++idx) {
+			if (categories[idx] == category) {
+				return idx;
+			}
+		}
+
+		return -1;
+	}
+
+	public final MoneyMgrModel model;
+
+	/** Dates with calculated values, and the values (parallel lists) */
+	private final DateKeyIndex dates = new DateKeyIndex();
+	private final List<long[]> values = new ArrayList<>();
+
+	/** Incremented when values are discarded */
+	private int generation = 0;
+
+	private NetWorthHistory(MoneyMgrModel model) {
+		this.model = model;
+
+		model.addChangeListener(this);
+	}
+
+	/** Get category subtotals (cents) for a date */
+	public synchronized long[] getCategoryValues(QDate date) {
+		int key = date.getRawValue();
+		int idx = this.dates.firstIndexOf(key);
+
+		if (idx >= 0) {
+			return this.values.get(idx);
+		}
+
+		long[] vals = calculateValues(date);
+
+		idx = -idx - 1;
+		this.dates.insert(idx, key);
+		this.values.add(idx, vals);
+
+		return vals;
+	}
+
+	/** Get category subtotals (cents) for a series of dates [category][date] */
+	public long[][] getCategoryValues(List<QDate> dateList) {
+		calculateMissingValues(dateList);
+
+		long[][] ret = new long[AccountCategory.numCategories()][dateList.size()];
+
+		for (int dateIndex = 0; dateIndex < dateList.size(); ++dateIndex) {
+			long[] vals = getCategoryValues(dateList.get(dateIndex));
+
+			for (int cat = 0; cat < vals.length; ++cat) {
+				ret[cat][dateIndex] = vals[cat];
+			}
+		}
+
+		return ret;
+	}
+
+	/** Get net worth for a date */
+	public BigDecimal getNetWorth(QDate date) {
+		long total = 0;
+
+		for (long val : getCategoryValues(date)) {
+			total += val;
+		}
+
+		return Common.fromCents(total);
+	}
+
+	/** Calculate values for dates that are not cached, in parallel */
+	private void calculateMissingValues(List<QDate> dateList) {
+		List<QDate> missing = new ArrayList<>();
+		int gen;
+
+		synchronized (this) {
+			for (QDate date : dateList) {
+				if (this.dates.firstIndexOf(date.getRawValue()) < 0) {
+					missing.add(date);
+				}
+			}
+
+			gen = this.generation;
+		}
+
+		if (missing.size() < 2) {
+			return;
+		}
+
+		List<long[]> vals = missing.parallelStream() //
+				.map(this::calculateValues) //
+				.collect(Collectors.toList());
+
+		synchronized (this) {
+			// Discard the results if the model changed while we were busy
+			if (gen != this.generation) {
+				return;
+			}
+
+			for (int ii = 0; ii < missing.size(); ++ii) {
+				int key = missing.get(ii).getRawValue();
+				int idx = this.dates.firstIndexOf(key);
+
+				if (idx < 0) {
+					idx = -idx - 1;
+					this.dates.insert(idx, key);
+					this.values.add(idx, vals.get(ii));
+				}
+			}
+		}
+	}
+
+	/** Calculate category subtotals as in StatusForDateModel */
+	private long[] calculateValues(QDate date) {
+		long[] vals = new long[AccountCategory.numCategories()];
+
+		for (Account acct : this.model.getAccounts()) {
+			if (acct.isOpenOn(date)) {
+				vals[getCategoryIndex(acct.acctCategory)] += //
+						Common.toCents(acct.getValueForDate(date));
+			}
+		}
+
+		return vals;
+	}
+
+	/** Discard values on or after a date (e.g. prices changed) */
+	public synchronized void invalidate(QDate date) {
+		if (date == null) {
+			return;
+		}
+
+		++this.generation;
+
+		int idx = this.dates.lowerBound(date.getRawValue());
+
+		this.dates.removeFrom(idx);
+		this.values.subList(idx, this.values.size()).clear();
+	}
+
+	/** Discard all values */
+	public synchronized void invalidateAll() {
+		++this.generation;
+
+		this.dates.clear();
+		this.values.clear();
+	}
+
+	public void transactionAdded(SimpleTxn txn) {
+		invalidate(txn.getDate());
+	}
+
+	public void transactionRemoved(SimpleTxn txn) {
+		invalidate(txn.getDate());
+	}
+
+	public void transactionDateChanged(GenericTxn txn, QDate olddate) {
+		if ((olddate == null) || //
+				((txn.getDate() != null) && (txn.getDate().compareTo(olddate) < 0))) {
+			invalidate(txn.getDate());
+		} else {
+			invalidate(olddate);
+		}
+	}
+
+	public void transactionAmountChanged(SimpleTxn txn) {
+		invalidate(txn.getDate());
+	}
+
+	public void transactionCleared(Statement statement, GenericTxn txn, boolean cleared) {
+		// Doesn't affect values
+	}
+
+	public void statementAdded(Statement statement) {
+		// Doesn't affect values
+	}
+
+	public void lotAdded(Lot lot) {
+		// Values come from transactions/positions, not lots
+	}
+
+	public void stockOptionAdded(StockOption option) {
+		invalidate(option.date);
+	}
+
+	public void securityPricesChanged(Security sec, QDate date) {
+		invalidate(date);
+	}
+}
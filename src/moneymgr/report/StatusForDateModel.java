@@ -3,6 +3,9 @@ package moneymgr.report;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import moneymgr.model.Account;
 import moneymgr.model.AccountCategory;
@@ -10,7 +13,6 @@ import moneymgr.model.MoneyMgrModel;
 import moneymgr.model.Security;
 import moneymgr.model.SecurityPosition;
 import moneymgr.model.StockOption;
-import moneymgr.ui.MainFrame;
 import moneymgr.util.Common;
 import moneymgr.util.QDate;
 
@@ -78,11 +80,27 @@ public class StatusForDateModel {
 
 	/** Construct status for a particular date */
 	public StatusForDateModel(MoneyMgrModel model, QDate date) {
+		this(model, date, false);
+	}
+
+	/** Construct status for a date, optionally summarizing accounts in parallel */
+	public StatusForDateModel(MoneyMgrModel model, QDate date, boolean parallel) {
 		this.model = model;
 		this.date = date;
 		this.sections = Section.getSections(true);
 
-		build();
+		build(parallel);
+	}
+
+	/** Construct status for a list of dates, optionally in parallel */
+	public static List<StatusForDateModel> getStatusForDates( //
+			MoneyMgrModel model, List<QDate> dates, boolean parallel) {
+		Stream<QDate> stream = (parallel) ? dates.parallelStream() : dates.stream();
+
+		// Results are in the order of the dates regardless of evaluation order
+		return stream //
+				.map(d -> new StatusForDateModel(model, d, parallel)) //
+				.collect(Collectors.toList());
 	}
 
 	/** Determine which section an account belongs to */
@@ -97,80 +115,101 @@ public class StatusForDateModel {
 	}
 
 	/** Construct model from account info */
-	private void build() {
-		for (Account acct : this.model.getAccounts()) {
-			if (!acct.isOpenOn(this.date)) {
-				continue;
-			}
+	private void build(boolean parallel) {
+		List<Account> accts = this.model.getAccounts();
+		AccountSummary[] summaries = new AccountSummary[accts.size()];
 
-			BigDecimal amt = acct.getValueForDate(this.date);
+		IntStream indexes = IntStream.range(0, accts.size());
+		if (parallel) {
+			indexes = indexes.parallel();
+		}
 
-			if (Common.isEffectivelyZero(amt) //
-					&& (acct.getFirstUnclearedTransaction() == null) //
-					&& acct.securities.isEmptyForDate(this.date)) {
+		indexes.forEach(idx -> summaries[idx] = buildAccountSummary(accts.get(idx)));
+
+		// Merge in account order so subtotals don't depend on evaluation order
+		for (int idx = 0; idx < summaries.length; ++idx) {
+			AccountSummary asummary = summaries[idx];
+			if (asummary == null) {
 				continue;
 			}
 
-			StatusForDateModel.Section modelsect = getSectionForAccount(acct);
+			BigDecimal amt = asummary.balance;
 
-			StatusForDateModel.AccountSummary asummary = new StatusForDateModel.AccountSummary();
+			StatusForDateModel.Section modelsect = getSectionForAccount(accts.get(idx));
 			modelsect.accounts.add(asummary);
 			modelsect.subtotal = modelsect.subtotal.add(amt);
 
-			asummary.name = acct.getDisplayName(36);
-			asummary.balance = asummary.cashBalance = amt;
+			if (modelsect.acctCategory.isAsset) {
+				this.assets = this.assets.add(amt);
+			} else {
+				this.liabilities = this.liabilities.add(amt);
+			}
 
-			List<StockOption> opts = StockOption.getOpenOptions(acct, this.date);
-			if (!opts.isEmpty()) {
-				StatusForDateModel.SecuritySummary ssummary = new StatusForDateModel.SecuritySummary();
+			this.netWorth = this.netWorth.add(amt);
+		}
+	}
 
-				StockOption opt = opts.get(0);
-				Security sec = MainFrame.appFrame.model.getSecurity(opt.secid);
+	/** Summarize an account's value/holdings (null if not worth reporting) */
+	private AccountSummary buildAccountSummary(Account acct) {
+		if (!acct.isOpenOn(this.date)) {
+			return null;
+		}
 
-				ssummary.name = "Options:" + sec.getName();
-				ssummary.shares = opt.getAvailableShares(true);
-				ssummary.price = sec.getPriceForDate(this.date).getPrice();
-				ssummary.value = opt.getValueForDate(this.date);
+		BigDecimal amt = acct.getValueForDate(this.date);
 
-				asummary.securities.add(ssummary);
-			}
+		if (Common.isEffectivelyZero(amt) //
+				&& (acct.getFirstUnclearedTransaction() == null) //
+				&& acct.securities.isEmptyForDate(this.date)) {
+			return null;
+		}
+
+		StatusForDateModel.AccountSummary asummary = new StatusForDateModel.AccountSummary();
+
+		asummary.name = acct.getDisplayName(36);
+		asummary.balance = asummary.cashBalance = amt;
 
-			if (!acct.securities.isEmptyForDate(this.date)) {
-				BigDecimal portValue = acct.getSecuritiesValueForDate(this.date);
+		List<StockOption> opts = StockOption.getOpenOptions(acct, this.date);
+		if (!opts.isEmpty()) {
+			StatusForDateModel.SecuritySummary ssummary = new StatusForDateModel.SecuritySummary();
 
-				if (!Common.isEffectivelyZero(portValue)) {
-					asummary.cashBalance = amt.subtract(portValue);
+			StockOption opt = opts.get(0);
+			Security sec = this.model.getSecurity(opt.secid);
 
-					for (SecurityPosition pos : acct.securities.getPositions()) {
-						BigDecimal posval = pos.getValueForDate(this.date);
+			ssummary.name = "Options:" + sec.getName();
+			ssummary.shares = opt.getAvailableShares(true);
+			ssummary.price = sec.getPriceValueForDate(this.date);
+			ssummary.value = opt.getValueForDate(this.date);
+
+			asummary.securities.add(ssummary);
+		}
 
-						if (!Common.isEffectivelyZero(posval)) {
-							StatusForDateModel.SecuritySummary ssummary = new StatusForDateModel.SecuritySummary();
-							asummary.securities.add(ssummary);
+		if (!acct.securities.isEmptyForDate(this.date)) {
+			BigDecimal portValue = acct.getSecuritiesValueForDate(this.date);
 
-							String nn = pos.security.getName();
-							if (nn.length() > 34) {
-								nn = nn.substring(0, 31) + "...";
-							}
+			if (!Common.isEffectivelyZero(portValue)) {
+				asummary.cashBalance = amt.subtract(portValue);
 
-							ssummary.name = nn;
-							ssummary.value = posval;
-							ssummary.price = pos.security.getPriceForDate(this.date).getPrice();
-							ssummary.shares = pos.getSharesForDate(this.date);
+				for (SecurityPosition pos : acct.securities.getPositions()) {
+					BigDecimal posval = pos.getValueForDate(this.date);
+
+					if (!Common.isEffectivelyZero(posval)) {
+						StatusForDateModel.SecuritySummary ssummary = new StatusForDateModel.SecuritySummary();
+						asummary.securities.add(ssummary);
+
+						String nn = pos.security.getName();
+						if (nn.length() > 34) {
+							nn = nn.substring(0, 31) + "...";
 						}
+
+						ssummary.name = nn;
+						ssummary.value = posval;
+						ssummary.price = pos.security.getPriceValueForDate(this.date);
+						ssummary.shares = pos.getSharesForDate(this.date);
 					}
 				}
 			}
-
-			modelsect.subtotal.add(amt);
-
-			if (modelsect.acctCategory.isAsset) {
-				this.assets = this.assets.add(amt);
-			} else {
-				this.liabilities = this.liabilities.add(amt);
-			}
-
-			this.netWorth = this.netWorth.add(amt);
 		}
+
+		return asummary;
 	}
-}
\ No newline at end of file
+}
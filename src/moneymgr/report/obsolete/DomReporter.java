@@ -93,7 +93,7 @@ public class DomReporter {
 
 			for (GenericTxn t : txns) {
 				if (includePseudoStatements) {
-					String txmonth = t.getDate().monthYearString;
+					String txmonth = t.getDate().getMonthYearString();
 
 					if (!curMonth.isEmpty() && !curMonth.equals(txmonth)) {
 						System.out.println(curMonth //
@@ -56,7 +56,7 @@ public class QifReporter {
 		for (GenericTxn t : a.getTransactions()) {
 			int thisyear = t.getDate().getYear();
 			int thismonth = t.getDate().getMonth();
-			String thisMonthStr = t.getDate().monthYearString;
+			String thisMonthStr = t.getDate().getMonthYearString();
 
 			if (!lastMonthStr.isEmpty() && !lastMonthStr.equals(thisMonthStr)) {
 				// End of month
@@ -71,7 +71,7 @@ public class QifReporter {
 						System.out.println();
 					}
 
-					System.out.print("M" + t.getDate().monthYearString);
+					System.out.print("M" + t.getDate().getMonthYearString());
 				}
 
 				lastyear = thisyear;
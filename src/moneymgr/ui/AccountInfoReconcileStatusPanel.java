@@ -146,12 +146,12 @@ public class AccountInfoReconcileStatusPanel extends JPanel //
 
 	/** Refresh the information in this pane */
 	private void updateValues() {
-		String datestr = (this.stmt != null) ? this.stmt.date.longString : "---";
+		String datestr = (this.stmt != null) ? this.stmt.date.getLongString() : "---";
 		this.dateLabel.setText(datestr);
 
 		Statement laststmt = (this.stmt != null) ? this.stmt.prevStatement : null;
 		this.lastStmtDateLabel.setText((laststmt != null) //
-				? laststmt.date.longString //
+				? laststmt.date.getLongString() //
 				: "---");
 
 		AccountInfoReconcileTransactionsPanel reconcilePanel = (this.stmt != null) //
@@ -66,7 +66,7 @@ public class Dashboard extends JPanel {
 
 		this.netWorthReporter = new NetWorthReporter(model);
 		;
-		StatusForDateModel balancesModel = new StatusForDateModel(model, aod);
+		StatusForDateModel balancesModel = new StatusForDateModel(model, aod, true);
 		this.balancesText.setText(this.netWorthReporter.generateReportStatusForDate(balancesModel));
 
 		CashFlowModel cashFlowModel = new CashFlowModel(aod);
@@ -81,7 +81,7 @@ public class Dashboard extends JPanel {
 	public void changeDate() {
 		QDate aod = MainWindow.instance.getAsOfDate();
 
-		StatusForDateModel balancesModel = new StatusForDateModel(this.model, aod);
+		StatusForDateModel balancesModel = new StatusForDateModel(this.model, aod, true);
 		this.balancesText.setText(this.netWorthReporter.generateReportStatusForDate(balancesModel));
 		this.balancesText.setCaretPosition(0);
 
@@ -6,10 +6,11 @@ import java.util.List;
 import moneymgr.model.Account;
 import moneymgr.model.AccountCategory;
 import moneymgr.model.MoneyMgrModel;
+import moneymgr.report.NetWorthHistory;
 import moneymgr.report.StatusForDateModel;
-import moneymgr.report.StatusForDateModel.Section;
 import moneymgr.ui.MainWindow;
 import moneymgr.ui.MainWindow.IntervalUnit;
+import moneymgr.util.Common;
 import moneymgr.util.QDate;
 
 /** This data class is used by various charts */
@@ -38,32 +39,24 @@ public class BalanceChartData {
 	private BalanceChartData(MoneyMgrModel model, QDate start, QDate end, IntervalUnit units) {
 		this.model = model;
 
-		List<StatusForDateModel> balances = getNetWorthData(start, end, units);
-
-		getData(balances);
+		getData(getDates(start, end, units));
 	}
 
-	private void getData(List<StatusForDateModel> balances) {
-		this.dates = new QDate[balances.size()];
-		this.accountCategoryLabels = AccountCategory.accountCategoryLabelsForChart;
-		this.accountCategoryValues = new double[AccountCategory.numCategories()][balances.size()];
-		this.netWorthValues = new double[1][balances.size()];
-
-		for (int dateIndex = 0; dateIndex < balances.size(); ++dateIndex) {
-			Section[] sections = balances.get(dateIndex).sections;
+	/** Fill in values from the (cached) net worth history */
+	private void getData(List<QDate> dateList) {
+		long[][] values = NetWorthHistory.getHistory(this.model).getCategoryValues(dateList);
 
-			this.dates[dateIndex] = balances.get(dateIndex).date;
-			this.netWorthValues[0][dateIndex] = 0.0;
-
-			double[] massagedValues = new double[sections.length];
-			for (int ii = 0; ii < massagedValues.length; ++ii) {
-				massagedValues[ii] = Math.floor(sections[ii].subtotal.floatValue() / 1000);
-			}
+		this.dates = dateList.toArray(new QDate[dateList.size()]);
+		this.accountCategoryLabels = AccountCategory.accountCategoryLabelsForChart;
+		this.accountCategoryValues = new double[AccountCategory.numCategories()][dateList.size()];
+		this.netWorthValues = new double[1][dateList.size()];
 
-			for (int sectionNum = 0; sectionNum < sections.length; ++sectionNum) {
-				double val = Math.floor(sections[sectionNum].subtotal.floatValue() / 1000);
+		for (int dateIndex = 0; dateIndex < dateList.size(); ++dateIndex) {
+			for (int catIndex = 0; catIndex < values.length; ++catIndex) {
+				double val = Math.floor( //
+						Common.fromCents(values[catIndex][dateIndex]).floatValue() / 1000);
 
-				this.accountCategoryValues[sectionNum][dateIndex] = val;
+				this.accountCategoryValues[catIndex][dateIndex] = val;
 				this.netWorthValues[0][dateIndex] += val;
 			}
 		}
@@ -83,7 +76,12 @@ public class BalanceChartData {
 	/** Construct a skeleton list of values to be filled in later */
 	public List<StatusForDateModel> getNetWorthData( //
 			QDate start, QDate end, MainWindow.IntervalUnit unit) {
-		List<StatusForDateModel> balances = new ArrayList<StatusForDateModel>();
+		return StatusForDateModel.getStatusForDates(this.model, getDates(start, end, unit), true);
+	}
+
+	/** Get the dates to chart for an interval */
+	private List<QDate> getDates(QDate start, QDate end, MainWindow.IntervalUnit unit) {
+		List<QDate> dates = new ArrayList<>();
 
 		QDate d = (start != null) ? start : getFirstTransactionDate();
 		QDate lastTxDate = (end != null) ? end : QDate.today(); // getLastTransactionDate();
@@ -93,14 +91,12 @@ public class BalanceChartData {
 		d = QDate.getDateForEndOfMonth(year, month);
 
 		do {
-			StatusForDateModel b = new StatusForDateModel(this.model, d);
-
-			balances.add(b);
+			dates.add(d);
 
 			d = unit.nextDate(d);
 		} while (d.compareTo(lastTxDate) <= 0);
 
-		return balances;
+		return dates;
 	}
 
 	private QDate getFirstTransactionDate() {
@@ -187,7 +187,7 @@ public abstract class GenericTransactionTableModel //
 			return ""; // Common.stringValue(tx.runningTotal);
 
 		case 7:
-			return Common.stringValue(tx.getRunningTotal());
+			return Common.stringValue(tx.getRunningBalance());
 		}
 
 		return null;
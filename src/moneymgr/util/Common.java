@@ -1,8 +1,9 @@
 package moneymgr.util;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.DateFormat;
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Comparator;
@@ -66,12 +67,44 @@ public class Common {
 	}
 
 	/** Parse a decimal value string (possibly with separators) */
-	public static BigDecimal getDecimal(String value) {
-		return parseDecimal(value.trim().replace(",", ""));
+	public static BigDecimal getDecimal(CharSequence value) {
+		BigDecimal d = getDecimalOrNull(value);
+
+		return (d != null) ? d : parseDecimal(value.toString().trim().replace(",", ""));
+	}
+
+	/** Parse a value as getDecimal() does, but return null for a bad value */
+	public static BigDecimal getDecimalOrNull(CharSequence value) {
+		int start = 0;
+		int end = value.length();
+
+		// Trim whitespace as String.trim() would
+		while ((start < end) && (value.charAt(start) <= ' ')) {
+			++start;
+		}
+		while ((end > start) && (value.charAt(end - 1) <= ' ')) {
+			--end;
+		}
+
+		BigDecimal d = parseFixedPoint(value, start, end, true);
+		if (d != null) {
+			return d;
+		}
+
+		try {
+			return new BigDecimal(value.toString().trim().replace(",", ""));
+		} catch (final NumberFormatException e) {
+			return null;
+		}
 	}
 
 	/** Parse a decimal value string */
 	public static BigDecimal parseDecimal(String s) {
+		BigDecimal d = parseFixedPoint(s, 0, s.length(), false);
+		if (d != null) {
+			return d;
+		}
+
 		try {
 			return new BigDecimal(s);
 		} catch (final Exception e) {
@@ -81,6 +114,57 @@ public class Common {
 		return null;
 	}
 
+	/**
+	 * Parse a plain decimal number (e.g. "-1234.56") from part of a string
+	 * without creating intermediate objects, optionally ignoring commas.<br>
+	 * The result has the same value and scale as new BigDecimal(). Return null
+	 * for anything else (exponents, over 18 digits, bad characters) and let
+	 * the caller fall back on BigDecimal.
+	 */
+	private static BigDecimal parseFixedPoint(CharSequence s, int start, int end, boolean skipCommas) {
+		int idx = start;
+		boolean negative = false;
+
+		if (idx < end) {
+			char c = s.charAt(idx);
+
+			if ((c == '-') || (c == '+')) {
+				negative = (c == '-');
+				++idx;
+			}
+		}
+
+		long value = 0;
+		int digits = 0;
+		int scale = -1;
+
+		for (; idx < end; ++idx) {
+			char c = s.charAt(idx);
+
+			if ((c >= '0') && (c <= '9')) {
+				if (++digits > 18) {
+					return null;
+				}
+
+				value = value * 10 + (c - '0');
+
+				if (scale >= 0) {
+					++scale;
+				}
+			} else if ((c == '.') && (scale < 0)) {
+				scale = 0;
+			} else if ((c != ',') || !skipCommas) {
+				return null;
+			}
+		}
+
+		if (digits == 0) {
+			return null;
+		}
+
+		return BigDecimal.valueOf((negative) ? -value : value, Math.max(scale, 0));
+	}
+
 	/** Is a value zero (or very close) */
 	public static boolean isEffectivelyZero(BigDecimal n) {
 		return (n.signum() == 0) || (CLOSE_ENOUGH_TO_ZERO.compareTo(n.abs()) > 0);
@@ -91,6 +175,18 @@ public class Common {
 		return (n == null) || isEffectivelyZero(n);
 	}
 
+	/** Convert an amount to a whole number of cents */
+	public static long toCents(BigDecimal amt) {
+		return (amt.scale() == 2) //
+				? amt.unscaledValue().longValue() //
+				: amt.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+	}
+
+	/** Convert a number of cents to an amount */
+	public static BigDecimal fromCents(long cents) {
+		return BigDecimal.valueOf(cents, 2);
+	}
+
 	/** Are two values equal (or very close) */
 	public static boolean isEffectivelyEqual(BigDecimal d1, BigDecimal d2) {
 		if (d1 == null) {
@@ -127,41 +223,201 @@ public class Common {
 	}
 
 	/** Parse a date in various formats. Return QDate object */
-	public static QDate parseQDate(String value) {
-		return new QDate(parseDate(value));
+	public static QDate parseQDate(CharSequence value) {
+		QDate date = parseQDateFast(value);
+
+		return (date != null) ? date : new QDate(parseDate(value.toString()));
 	}
 
-	/** Parse a date in various formats. Return Java Date object */
-	public static Date parseDate(String value) {
-		try {
-			// Format found in QIF transactions
-			final DateFormat dateFormat = new SimpleDateFormat("MM/dd/yy");
-			final String s = convertQIFDateString(value);
+	/** Abbreviated month names for dd-MMM-yy dates */
+	private static final String MONTH_NAMES = "janfebmaraprmayjunjulaugsepoctnovdec";
 
-			final Date d = dateFormat.parse(s);
-			return d;
-		} catch (final ParseException e) {
-			// e.printStackTrace();
+	/**
+	 * Parse the usual forms of the date formats accepted by parseDate()
+	 * directly. Return null if the string is anything else (e.g. out of range
+	 * values that SimpleDateFormat would adjust) and leave it to parseDate().
+	 */
+	private static QDate parseQDateFast(CharSequence value) {
+		int len = value.length();
+		int[] fields = new int[3];
+		int[] widths = new int[3];
+		int nfields = 0;
+		char sep = 0;
+		int month = 0;
+		boolean apostrophe = false;
+
+		for (int idx = 0; idx < len;) {
+			char c = value.charAt(idx);
+
+			if ((c >= '0' && c <= '9') || (c == ' ')) {
+				if (nfields == 3) {
+					return null;
+				}
+
+				int num = 0;
+				int width = 0;
+
+				// As convertQIFDateString does, treat spaces as zeros
+				for (; idx < len; ++idx) {
+					c = value.charAt(idx);
+					if (c == ' ') {
+						c = '0';
+					} else if ((c < '0') || (c > '9')) {
+						break;
+					}
+
+					if (++width > 4) {
+						return null;
+					}
+
+					num = num * 10 + (c - '0');
+				}
+
+				fields[nfields] = num;
+				widths[nfields] = width;
+				++nfields;
+
+				continue;
+			}
+
+			if ((c == '\'') && !apostrophe) {
+				// convertQIFDateString changes the first "'" to "/"
+				apostrophe = true;
+				c = '/';
+			}
+
+			if ((c == '/') || (c == '-')) {
+				if (((sep != 0) && (c != sep)) || (nfields == 0) || (nfields == 3)) {
+					return null;
+				}
+
+				sep = c;
+				++idx;
+
+				if ((sep == '-') && (nfields == 1) && (idx + 3 < len) //
+						&& (value.charAt(idx + 3) == '-')) {
+					// dd-MMM-yy
+					int mi = MONTH_NAMES.indexOf(value.subSequence(idx, idx + 3).toString().toLowerCase());
+					if ((mi < 0) || (mi % 3 != 0)) {
+						return null;
+					}
+
+					month = mi / 3 + 1;
+					idx += 4;
+					fields[nfields] = month;
+					widths[nfields] = 3;
+					++nfields;
+				}
+
+				continue;
+			}
+
+			return null;
 		}
 
-		try {
-			final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-			final String s = convertQIFDateString(value);
+		if (nfields != 3) {
+			return null;
+		}
 
-			final Date d = dateFormat.parse(s);
-			return d;
-		} catch (final ParseException e) {
-			// e.printStackTrace();
+		int y;
+		int m;
+		int d;
+		boolean twoDigitYear;
+
+		if (sep == '/') {
+			// MM/dd/yy
+			if ((widths[0] > 2) || (widths[1] > 2) || ((widths[2] != 2) && (widths[2] != 4))) {
+				return null;
+			}
+
+			m = fields[0];
+			d = fields[1];
+			y = fields[2];
+			twoDigitYear = (widths[2] == 2);
+		} else if (month > 0) {
+			// dd-MMM-yy
+			if ((widths[0] > 2) || ((widths[2] != 2) && (widths[2] != 4))) {
+				return null;
+			}
+
+			d = fields[0];
+			m = month;
+			y = fields[2];
+			twoDigitYear = (widths[2] == 2);
+		} else {
+			// yyyy-MM-dd
+			if ((widths[0] != 4) || (widths[1] > 2) || (widths[2] > 2)) {
+				return null;
+			}
+
+			y = fields[0];
+			m = fields[1];
+			d = fields[2];
+			twoDigitYear = false;
 		}
 
-		try {
-			final DateFormat dateFormat = new SimpleDateFormat("dd-MMM-yy");
-			final String s = convertQIFDateString(value);
+		if ((m < 1) || (m > 12) || (d < 1)) {
+			return null;
+		}
 
-			final Date d = dateFormat.parse(s);
-			return d;
-		} catch (final ParseException e) {
-			// e.printStackTrace();
+		if (twoDigitYear) {
+			y = adjustTwoDigitYear(y, m, d);
+		}
+
+		if (d > QDate.lastDayOfMonth(y, m)) {
+			return null;
+		}
+
+		return QDate.fromEpochDay(QDate.epochDay(y, m, d));
+	}
+
+	/**
+	 * Convert a two digit year as SimpleDateFormat does - the result is within
+	 * 80 years before and 20 years after the present.
+	 */
+	private static int adjustTwoDigitYear(int y, int m, int d) {
+		QDate today = QDate.today();
+		int startYear = today.getYear() - 80;
+
+		y += startYear - (startYear % 100);
+
+		// Like SimpleDateFormat, compare midnight on the date with this moment
+		if ((y < startYear) //
+				|| ((y == startYear) && ((m * 100 + d) <= today.getRawValue() % 10000))) {
+			y += 100;
+		}
+
+		return y;
+	}
+
+	/** Date formats accepted by parseDate, in the order we try them */
+	private static final String[] DATE_FORMATS = { //
+			"MM/dd/yy", // Format found in QIF transactions
+			"yyyy-MM-dd", //
+			"dd-MMM-yy" //
+	};
+
+	/** SimpleDateFormat is not thread-safe, so each thread gets its own */
+	private static final ThreadLocal<DateFormat[]> dateFormats = ThreadLocal.withInitial(() -> {
+		DateFormat[] formats = new DateFormat[DATE_FORMATS.length];
+
+		for (int ii = 0; ii < formats.length; ++ii) {
+			formats[ii] = new SimpleDateFormat(DATE_FORMATS[ii]);
+		}
+
+		return formats;
+	});
+
+	/** Parse a date in various formats. Return Java Date object */
+	public static Date parseDate(String value) {
+		final String s = convertQIFDateString(value);
+
+		for (DateFormat dateFormat : dateFormats.get()) {
+			final Date d = dateFormat.parse(s, new ParsePosition(0));
+
+			if (d != null) {
+				return d;
+			}
 		}
 
 		return null;
@@ -290,11 +546,29 @@ public class Common {
 			return BigDecimal.ZERO;
 		}
 
+		// Handle the usual cases ("48.25", "48 3/4") without string operations
+		int slash = pricestr.indexOf('/');
+		if (slash < 0) {
+			BigDecimal price = parseFixedPoint(pricestr, 0, pricestr.length(), true);
+			if (price != null) {
+				return price;
+			}
+		} else {
+			int space = pricestr.indexOf(' ');
+
+			if ((space > 0) && (space == pricestr.length() - 4) && (slash == space + 2)) {
+				BigDecimal price = parseFixedPoint(pricestr, 0, space, true);
+				if (price != null) {
+					return getFraction(pricestr.charAt(space + 1), pricestr.charAt(space + 3)).add(price);
+				}
+			}
+		}
+
 		pricestr = pricestr.replaceAll(",", "");
 
 		// Separate decimal and fraction part
 		String fracstr = null;
-		int slash = pricestr.indexOf('/');
+		slash = pricestr.indexOf('/');
 		if (slash > 0) {
 			final int space = pricestr.indexOf(' ');
 
@@ -314,6 +588,17 @@ public class Common {
 		return price;
 	}
 
+	/** Fraction values (eighths, quarters, halves) indexed [numerator][denominator] */
+	private static final BigDecimal[][] FRACTIONS = new BigDecimal[8][9];
+
+	static {
+		for (int den = 2; den <= 8; den *= 2) {
+			for (int num = 1; num <= 7; num += 2) {
+				FRACTIONS[num][den] = new BigDecimal(num).divide(new BigDecimal(den));
+			}
+		}
+	}
+
 	/** Parse fractional part of price */
 	public static BigDecimal parseFraction(String fracstr) {
 		if ((fracstr.length() != 4) || //
@@ -322,18 +607,25 @@ public class Common {
 			return BigDecimal.ZERO;
 		}
 
-		final int numerator = " 1 3 5 7".indexOf(fracstr.charAt(1));
+		return getFraction(fracstr.charAt(1), fracstr.charAt(3));
+	}
+
+	/** Get the value of a fraction n/d (odd numerator, d = 2, 4, or 8) */
+	private static BigDecimal getFraction(char numchar, char denchar) {
+		final int numerator = " 1 3 5 7".indexOf(numchar);
 		if ((numerator < 1) || ((numerator & 1) == 0)) {
 			return BigDecimal.ZERO;
 		}
 
-		int denominator = " 248".indexOf(fracstr.charAt(3));
+		int denominator = " 248".indexOf(denchar);
 		if (denominator < 1) {
 			return BigDecimal.ZERO;
 		}
 		denominator = 1 << denominator;
 
-		return new BigDecimal(numerator).divide(new BigDecimal(denominator));
+		BigDecimal frac = FRACTIONS[numerator][denominator];
+
+		return (frac != null) ? frac : BigDecimal.ZERO;
 	}
 
 	public static BigDecimal sumCashAmounts(List<GenericTxn> txns) {
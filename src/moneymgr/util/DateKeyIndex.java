@@ -0,0 +1,142 @@
+package moneymgr.util;
+
+import java.util.Arrays;
+
+/**
+ * Ascending list of date keys (QDate raw values, YYYYMMDD) kept parallel to a
+ * date-sorted list of objects (e.g. transactions).<br>
+ * Searches use only local variables and never allocate, so any number of
+ * threads may search concurrently (as long as nobody is modifying the list).
+ */
+public class DateKeyIndex {
+	private int[] keys;
+	private int size;
+
+	public DateKeyIndex() {
+		this.keys = new int[16];
+		this.size = 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int get(int idx) {
+		return this.keys[idx];
+	}
+
+	public void clear() {
+		this.size = 0;
+	}
+
+	/** Insert a key at a position (which must maintain ascending order) */
+	public void insert(int idx, int key) {
+		if (this.size == this.keys.length) {
+			this.keys = Arrays.copyOf(this.keys, this.size * 2);
+		}
+
+		System.arraycopy(this.keys, idx, this.keys, idx + 1, this.size - idx);
+		this.keys[idx] = key;
+		++this.size;
+	}
+
+	/** Append a key (which must be >= the last key) */
+	public void add(int key) {
+		insert(this.size, key);
+	}
+
+	public void remove(int idx) {
+		System.arraycopy(this.keys, idx + 1, this.keys, idx, this.size - idx - 1);
+		--this.size;
+	}
+
+	/** Remove all keys from an index on */
+	public void removeFrom(int idx) {
+		if (idx < this.size) {
+			this.size = idx;
+		}
+	}
+
+	/** Return the index of the first entry on a date (<0 if none) */
+	public int firstIndexOf(int key) {
+		return firstIndexOf(this.keys, this.size, key);
+	}
+
+	/** Return the index of the last entry on a date (<0 if none) */
+	public int lastIndexOf(int key) {
+		return lastIndexOf(this.keys, this.size, key);
+	}
+
+	/** Return the index of the first entry on or after a date */
+	public int lowerBound(int key) {
+		return lowerBound(this.keys, this.size, key);
+	}
+
+	/** Return the index after the last entry on or before a date */
+	public int insertIndexOf(int key) {
+		return upperBound(this.keys, this.size, key);
+	}
+
+	/** Return the index of the last entry on or before a date (-1 if none) */
+	public int lastIndexOnOrBefore(int key) {
+		return upperBound(this.keys, this.size, key) - 1;
+	}
+
+	// -------------------------------------
+
+	/** Index of the first key >= a value (size if none) */
+	public static int lowerBound(int[] keys, int size, int key) {
+		int lo = 0;
+		int hi = size;
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (keys[mid] < key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		return lo;
+	}
+
+	/** Index of the first key > a value (size if none) */
+	public static int upperBound(int[] keys, int size, int key) {
+		int lo = 0;
+		int hi = size;
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (keys[mid] <= key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		return lo;
+	}
+
+	/**
+	 * Index of the first occurrence of a key.<br>
+	 * If not found, -(insert index + 1) (see Collections.binarySearch)
+	 */
+	public static int firstIndexOf(int[] keys, int size, int key) {
+		int idx = lowerBound(keys, size, key);
+
+		return ((idx < size) && (keys[idx] == key)) ? idx : -idx - 1;
+	}
+
+	/**
+	 * Index of the last occurrence of a key.<br>
+	 * If not found, -(insert index + 1) (see Collections.binarySearch)
+	 */
+	public static int lastIndexOf(int[] keys, int size, int key) {
+		int idx = upperBound(keys, size, key);
+
+		return ((idx > 0) && (keys[idx - 1] == key)) ? idx - 1 : -idx - 1;
+	}
+}
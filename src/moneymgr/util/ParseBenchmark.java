@@ -0,0 +1,233 @@
+package moneymgr.util;
+
+import java.math.BigDecimal;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Compare the date/decimal parsers in Common with the original
+ * implementations (SimpleDateFormat/BigDecimal based) for correctness and
+ * throughput, single threaded and in parallel.
+ */
+public class ParseBenchmark {
+	/** Original Common.parseDate() */
+	private static Date oldParseDate(String value) {
+		String[] formats = { "MM/dd/yy", "yyyy-MM-dd", "dd-MMM-yy" };
+
+		for (String format : formats) {
+			try {
+				final DateFormat dateFormat = new SimpleDateFormat(format);
+				final String s = Common.convertQIFDateString(value);
+
+				return dateFormat.parse(s);
+			} catch (final ParseException e) {
+				// try the next format
+			}
+		}
+
+		return null;
+	}
+
+	/** Original Common.parseQDate() */
+	private static QDate oldParseQDate(String value) {
+		return new QDate(oldParseDate(value));
+	}
+
+	/** Original Common.getDecimal() */
+	private static BigDecimal oldGetDecimal(String value) {
+		return new BigDecimal(value.trim().replace(",", ""));
+	}
+
+	/** Original Common.parsePrice() */
+	private static BigDecimal oldParsePrice(String pricestr) {
+		if (pricestr.length() == 0) {
+			return BigDecimal.ZERO;
+		}
+
+		pricestr = pricestr.replaceAll(",", "");
+
+		String fracstr = null;
+		int slash = pricestr.indexOf('/');
+		if (slash > 0) {
+			final int space = pricestr.indexOf(' ');
+
+			fracstr = (space > 0) ? pricestr.substring(space) : pricestr;
+			pricestr = (space > 0) ? pricestr.substring(0, space) : "0";
+		}
+
+		BigDecimal price = new BigDecimal(pricestr);
+
+		if (fracstr != null) {
+			price = Common.parseFraction(fracstr).add(price);
+		}
+
+		return price;
+	}
+
+	/** Generate date strings in the forms found in QIF/CSV/quote files */
+	private static List<String> getDateStrings(int count, Random rand) {
+		String[] months = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", //
+				"Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+		List<String> strings = new ArrayList<>();
+
+		for (int ii = 0; ii < count; ++ii) {
+			QDate d = QDate.fromEpochDay(1000 + rand.nextInt(20000));
+			int y = d.getYear();
+			int m = d.getMonth();
+			int day = d.getDay();
+
+			switch (ii % 6) {
+			case 0:
+				strings.add(String.format("%d/%d/%02d", m, day, y % 100));
+				break;
+			case 1:
+				// QIF format for dates after 1999
+				strings.add(String.format("%2d/%2d'%2d", m, day, y % 100));
+				break;
+			case 2:
+				strings.add(String.format("%02d/%02d/%04d", m, day, y));
+				break;
+			case 3:
+				strings.add(String.format("%04d-%02d-%02d", y, m, day));
+				break;
+			case 4:
+				strings.add(String.format("%02d-%s-%02d", day, months[m - 1], y % 100));
+				break;
+			default:
+				// Things the simple parser leaves to SimpleDateFormat
+				strings.add(String.format("%d/%d/%02d", m + 12, day, y % 100));
+				break;
+			}
+		}
+
+		return strings;
+	}
+
+	/** Generate amount strings in the forms found in QIF/CSV files */
+	private static List<String> getAmountStrings(int count, Random rand) {
+		List<String> strings = new ArrayList<>();
+
+		for (int ii = 0; ii < count; ++ii) {
+			long cents = rand.nextInt(20000000) - 10000000;
+
+			switch (ii % 4) {
+			case 0:
+				strings.add(BigDecimal.valueOf(cents, 2).toPlainString());
+				break;
+			case 1:
+				strings.add(String.format("%,.2f", cents / 100.0));
+				break;
+			case 2:
+				strings.add(" " + BigDecimal.valueOf(cents, 3).toPlainString() + " ");
+				break;
+			default:
+				strings.add(Long.toString(cents));
+				break;
+			}
+		}
+
+		return strings;
+	}
+
+	/** Generate price strings, including fractional prices */
+	private static List<String> getPriceStrings(int count, Random rand) {
+		String[] fracs = { "1/2", "1/4", "3/4", "1/8", "3/8", "5/8", "7/8" };
+		List<String> strings = new ArrayList<>();
+
+		for (int ii = 0; ii < count; ++ii) {
+			int whole = rand.nextInt(2000);
+
+			switch (ii % 3) {
+			case 0:
+				strings.add(String.format("%d %s", whole, fracs[ii % fracs.length]));
+				break;
+			case 1:
+				strings.add(BigDecimal.valueOf(rand.nextInt(10000000), 4).toPlainString());
+				break;
+			default:
+				strings.add(String.format("%,d.%03d", whole * 10, rand.nextInt(1000)));
+				break;
+			}
+		}
+
+		return strings;
+	}
+
+	/** Verify that two parsers give the same results (value and scale) */
+	private static <T> int compare(String what, List<String> inputs, //
+			Function<String, T> oldParser, Function<String, T> newParser) {
+		int errors = 0;
+
+		for (String s : inputs) {
+			T oldval = oldParser.apply(s);
+			T newval = newParser.apply(s);
+
+			if (!oldval.equals(newval)) {
+				if (++errors <= 5) {
+					System.out.println(String.format("%s mismatch '%s': %s vs %s", //
+							what, s, oldval, newval));
+				}
+			}
+		}
+
+		return errors;
+	}
+
+	/** Time a parser, returning the number of values parsed per second */
+	private static <T> double time(List<String> inputs, Function<String, T> parser, //
+			boolean parallel, int reps) {
+		long start = System.nanoTime();
+
+		for (int rep = 0; rep < reps; ++rep) {
+			if (parallel) {
+				// NB count() alone would skip the map() for a sized stream
+				inputs.parallelStream().map(parser).filter(v -> v != null).count();
+			} else {
+				for (String s : inputs) {
+					parser.apply(s);
+				}
+			}
+		}
+
+		double secs = (System.nanoTime() - start) / 1e9;
+
+		return (inputs.size() * reps) / secs;
+	}
+
+	private static <T> void report(String what, List<String> inputs, //
+			Function<String, T> oldParser, Function<String, T> newParser) {
+		int errors = compare(what, inputs, oldParser, newParser);
+
+		// Warm up before timing
+		time(inputs, oldParser, false, 2);
+		time(inputs, newParser, false, 2);
+
+		for (boolean parallel : new boolean[] { false, true }) {
+			double oldrate = time(inputs, oldParser, parallel, 5);
+			double newrate = time(inputs, newParser, parallel, 5);
+
+			System.out.println(String.format("%-10s %-8s old %,12.0f/s  new %,12.0f/s  x%5.1f  errors %d", //
+					what, (parallel) ? "parallel" : "serial", //
+					oldrate, newrate, newrate / oldrate, errors));
+		}
+	}
+
+	public static void main(String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		Random rand = new Random(1);
+
+		List<String> dates = getDateStrings(count, rand);
+		List<String> amounts = getAmountStrings(count, rand);
+		List<String> prices = getPriceStrings(count, rand);
+
+		report("parseQDate", dates, ParseBenchmark::oldParseQDate, Common::parseQDate);
+		report("getDecimal", amounts, ParseBenchmark::oldGetDecimal, Common::getDecimal);
+		report("parsePrice", prices, ParseBenchmark::oldParsePrice, Common::parsePrice);
+	}
+}
@@ -2,11 +2,55 @@ package moneymgr.util;
 
 import java.util.Calendar;
 import java.util.Date;
-
-/** Efficient date wrapper supporting quick comparison and display */
+import java.util.TimeZone;
+
+/**
+ * Efficient date wrapper supporting quick comparison and display.<br>
+ * Holds the raw (YYYYMMDD) value and the day number since 1/1/1970, so
+ * comparison and date arithmetic are simple integer operations. Display
+ * strings are created when first used. Dates created via the static methods
+ * (fromRawData, fromEpochDay, addDays, etc) share one object per day.
+ */
 public class QDate implements Comparable<QDate> {
+	private static final long MS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	/** Range of days (1/1/1900 - 12/31/2099) whose QDate objects are shared */
+	private static final int CACHE_FIRST_DAY = epochDay(1900, 1, 1);
+	private static final int CACHE_LAST_DAY = epochDay(2099, 12, 31);
+
+	/** Shared date objects, created on demand, indexed by day */
+	private static final QDate[] dateCache = new QDate[CACHE_LAST_DAY - CACHE_FIRST_DAY + 1];
+
+	/** Today's date and the time (ms) at which it changes */
+	private static final class Today {
+		final QDate date;
+		final long endTime;
+
+		Today(QDate date, long endTime) {
+			this.date = date;
+			this.endTime = endTime;
+		}
+	}
+
+	private static volatile Today todayInfo = null;
+
 	public static QDate today() {
-		return new QDate(new Date());
+		long now = System.currentTimeMillis();
+		Today info = todayInfo;
+
+		if ((info == null) || (now >= info.endTime) || (now < info.endTime - MS_PER_DAY)) {
+			TimeZone zone = TimeZone.getDefault();
+			int day = localEpochDay(now, zone);
+
+			// Midnight local time, allowing for a change in UTC offset overnight
+			long midnight = (day + 1) * MS_PER_DAY - zone.getOffset(now);
+			midnight = (day + 1) * MS_PER_DAY - zone.getOffset(midnight);
+
+			info = new Today(fromEpochDay(day), midnight);
+			todayInfo = info;
+		}
+
+		return info.date;
 	}
 
 	public static QDate fromRawData(int raw) {
@@ -14,19 +58,31 @@ public class QDate implements Comparable<QDate> {
 			return null;
 		}
 
-		return new QDate(raw / 10000, (raw / 100) % 100, raw % 100);
+		int y = raw / 10000;
+		int m = (raw / 100) % 100;
+		int d = raw % 100;
+
+		if ((m >= 1) && (m <= 12) && (d >= 1) && (d <= lastDayOfMonth(y, m)) && (y >= 100)) {
+			return fromEpochDay(epochDay(y, m, d));
+		}
+
+		return new QDate(y, m, d);
 	}
 
 	/** Raw integer date value (YYYYMMDD) */
 	private final int datevalue;
 
-	private final String datestring;
-	public final String shortString;
-	public final String longString;
-	public final String monthYearString;
+	/** Days since 1/1/1970 */
+	private final int epochDay;
+
+	/** Display strings, created on demand */
+	private String datestring = null;
+	private String shortString = null;
+	private String longString = null;
+	private String monthYearString = null;
 
 	public QDate(long time) {
-		this(new Date(time));
+		this(localEpochDay(time, TimeZone.getDefault()));
 	}
 
 	/** Days in months (with February complication of course) */
@@ -52,7 +108,7 @@ public class QDate implements Comparable<QDate> {
 
 	/** Return the correct date for the last day in a given year/month */
 	public static QDate getDateForEndOfMonth(int year, int month) {
-		return new QDate(year, month, lastDayOfMonth(year, month));
+		return fromEpochDay(epochDay(year, month, lastDayOfMonth(year, month)));
 	}
 
 	/** Construct a date y/m/d */
@@ -65,41 +121,39 @@ public class QDate implements Comparable<QDate> {
 		y = adjustYear(y);
 
 		int lastday = lastDayOfMonth(y, m);
+		int day;
 
 		if (d > lastday) {
 			Common.reportWarning(String.format( //
 					"Adjusting days for QDate: %d/%d/%d", m, d, y));
 
-			QDate qd = new QDate(y, m, lastday).addDays(d - lastday);
-
-			y = qd.getYear();
-			m = qd.getMonth();
-			d = qd.getDay();
+			day = epochDay(y, m, lastday) + (d - lastday);
+		} else {
+			day = epochDay(y, m, d);
 		}
 
-		this.datevalue = y * 10000 + m * 100 + d;
+		this.epochDay = day;
 
-		this.datestring = String.format("%d/%d/%02d", m, d, y % 100);
-		this.longString = String.format("%02d/%02d/%04d", m, d, y);
-		this.shortString = String.format("%02d/%02d", m, d);
-		this.monthYearString = String.format("%02d/%04d", m, y);
+		// NB A day before the first (e.g. 0) is kept as given, not moved into
+		// the previous month; the epoch day is the equivalent date.
+		this.datevalue = (d >= 1) ? rawValue(day) : y * 10000 + m * 100 + d;
 	}
 
 	/** Construct from a Date object */
 	public QDate(Date dt) {
-		Calendar cal = Calendar.getInstance();
-		cal.setTime((dt != null) ? dt : new Date());
-
-		int y = cal.get(Calendar.YEAR);
-		int m = cal.get(Calendar.MONTH) + 1;
-		int d = cal.get(Calendar.DAY_OF_MONTH);
+		this(localEpochDay((dt != null) ? dt.getTime() : System.currentTimeMillis(), //
+				TimeZone.getDefault()));
+	}
 
-		this.datevalue = y * 10000 + m * 100 + d;
+	/** Construct a date from the number of days since 1/1/1970 */
+	private QDate(int epochDay) {
+		this.epochDay = epochDay;
+		this.datevalue = rawValue(epochDay);
+	}
 
-		this.datestring = String.format("%d/%d/%02d", m, d, y % 100);
-		this.longString = String.format("%02d/%02d/%04d", m, d, y);
-		this.shortString = String.format("%02d/%02d", m, d);
-		this.monthYearString = String.format("%02d/%04d", m, y);
+	/** Return the local day number (since 1/1/1970) for a time in ms */
+	private static int localEpochDay(long time, TimeZone zone) {
+		return (int) Math.floorDiv(time + zone.getOffset(time), MS_PER_DAY);
 	}
 
 	/** Return integer value (YYYYMMDD) */
@@ -107,6 +161,58 @@ public class QDate implements Comparable<QDate> {
 		return this.datevalue;
 	}
 
+	/** Return the number of days since 1/1/1970 */
+	public int getEpochDay() {
+		return this.epochDay;
+	}
+
+	/** Calculate the number of days since 1/1/1970 for y/m/d */
+	public static int epochDay(int y, int m, int d) {
+		// Count years from March so the leap day falls at the end of the year
+		if (m <= 2) {
+			--y;
+		}
+
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (m + ((m > 2) ? -3 : 9)) + 2) / 5 + d - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/** Calculate the raw value (YYYYMMDD) for a number of days since 1/1/1970 */
+	private static int rawValue(int epochDay) {
+		int z = epochDay + 719468;
+		int era = Math.floorDiv(z, 146097);
+		int dayOfEra = z - era * 146097;
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int d = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int m = mp + ((mp < 10) ? 3 : -9);
+		int y = yearOfEra + era * 400 + ((m <= 2) ? 1 : 0);
+
+		return y * 10000 + m * 100 + d;
+	}
+
+	/** Get the (shared) date for a number of days since 1/1/1970 */
+	public static QDate fromEpochDay(int epochDay) {
+		if ((epochDay < CACHE_FIRST_DAY) || (epochDay > CACHE_LAST_DAY)) {
+			return new QDate(epochDay);
+		}
+
+		// A race here at worst creates an extra (equal) object
+		QDate date = dateCache[epochDay - CACHE_FIRST_DAY];
+
+		if (date == null) {
+			date = new QDate(epochDay);
+			dateCache[epochDay - CACHE_FIRST_DAY] = date;
+		}
+
+		return date;
+	}
+
 	public int getYear() {
 		return this.datevalue / 10000;
 	}
@@ -121,12 +227,12 @@ public class QDate implements Comparable<QDate> {
 
 	/** Return the first day of the month for this date */
 	public QDate getFirstDayOfMonth() {
-		return new QDate(getYear(), getMonth(), 1);
+		return fromEpochDay(this.epochDay - getDay() + 1);
 	}
 
 	/** Return the last day of the month for this date */
 	public QDate getLastDayOfMonth() {
-		return new QDate(getYear(), getMonth() + 1, 1).addDays(-1);
+		return getDateForEndOfMonth(getYear(), getMonth());
 	}
 
 	/** Calculate the date (given day of month) nearest to this date */
@@ -137,7 +243,7 @@ public class QDate implements Comparable<QDate> {
 
 		// e.g. For 2/5 and 24 (24-5 > 15) 2/24 is nearer to 3/5 than 3/24
 		if (day - getDay() > 15) {
-			QDate lastMonth = new QDate(getYear(), getMonth(), 1).addDays(-1);
+			QDate lastMonth = getFirstDayOfMonth().addDays(-1);
 
 			return lastMonth.getDateNearestTo(day);
 		}
@@ -152,7 +258,7 @@ public class QDate implements Comparable<QDate> {
 		// current/desired day are near to each other - usually the same month
 		// Check for day near end of month
 		if (day < MONTH_DAYS[getMonth() - 1]) {
-			return new QDate(getYear(), getMonth(), day);
+			return fromEpochDay(this.epochDay - getDay() + day);
 		}
 
 		return getLastDayOfMonth();
@@ -173,51 +279,17 @@ public class QDate implements Comparable<QDate> {
 
 	/** Get a date a given number of days away from this date */
 	public QDate addDays(int days) {
-		Calendar cal = Calendar.getInstance();
-		Date d = toDate();
-		cal.setTime(d);
-		cal.add(Calendar.DAY_OF_MONTH, days);
-		d = cal.getTime();
-
-		return new QDate(d);
+		return fromEpochDay(this.epochDay + days);
 	}
 
-	/** Get a date a given number of months away from this date */
+	/**
+	 * Get a date a given number of months away from this date.<br>
+	 * The result is the last day of the resulting month.
+	 */
 	public QDate addMonths(int months) {
-		int year = getYear();
-		int month = getMonth();
+		int monthNum = getYear() * 12 + (getMonth() - 1) + months;
 
-		while (months >= 12) {
-			++year;
-			months -= 12;
-		}
-		while (-months >= 12) {
-			--year;
-			months += 12;
-		}
-
-		if (months > 0) {
-			if (month + months <= 12) {
-				month += months;
-			} else {
-				++year;
-				month = (month + months) - 12;
-			}
-
-			months = 0;
-		}
-		if (months < 0) {
-			if (month > -months) {
-				month += months;
-			} else {
-				--year;
-				month = (month + months) + 12;
-			}
-
-			months = 0;
-		}
-
-		return QDate.getDateForEndOfMonth(year, month);
+		return getDateForEndOfMonth(Math.floorDiv(monthNum, 12), Math.floorMod(monthNum, 12) + 1);
 	}
 
 	public int hashCode() {
@@ -235,19 +307,7 @@ public class QDate implements Comparable<QDate> {
 
 	/** Return the number of days separating this date from another */
 	public int subtract(QDate o) {
-		int diff = this.datevalue - o.datevalue;
-		if (Math.abs(diff) <= 31) {
-			return diff;
-		}
-
-		Calendar c1 = Calendar.getInstance();
-		c1.setTime(toDate());
-		Calendar c2 = Calendar.getInstance();
-		c2.setTime(o.toDate());
-
-		long msdiff = c1.getTimeInMillis() - c2.getTimeInMillis();
-
-		return Common.msToDays(msdiff);
+		return this.epochDay - o.epochDay;
 	}
 
 	/** Convert this date to a Java date object */
@@ -258,10 +318,42 @@ public class QDate implements Comparable<QDate> {
 		return cal.getTime();
 	}
 
+	/** Date formatted as M/D/YY */
 	public String toString() {
+		if (this.datestring == null) {
+			this.datestring = String.format("%d/%d/%02d", getMonth(), getDay(), getYear() % 100);
+		}
+
 		return this.datestring;
 	}
 
+	/** Date formatted as MM/DD */
+	public String getShortString() {
+		if (this.shortString == null) {
+			this.shortString = String.format("%02d/%02d", getMonth(), getDay());
+		}
+
+		return this.shortString;
+	}
+
+	/** Date formatted as MM/DD/YYYY */
+	public String getLongString() {
+		if (this.longString == null) {
+			this.longString = String.format("%02d/%02d/%04d", getMonth(), getDay(), getYear());
+		}
+
+		return this.longString;
+	}
+
+	/** Date formatted as MM/YYYY */
+	public String getMonthYearString() {
+		if (this.monthYearString == null) {
+			this.monthYearString = String.format("%02d/%04d", getMonth(), getYear());
+		}
+
+		return this.monthYearString;
+	}
+
 	/** Unit test */
 	public static void main(String[] args) {
 		for (int month = 1; month <= 12; ++month) {
@@ -0,0 +1,102 @@
+package moneymgr.util;
+
+/**
+ * Rate limiter allowing bursts of up to a fixed number of operations, with
+ * tokens replenished at a steady rate.<br>
+ * Callers take a token before each operation, waiting if none is available.
+ * If the limit turns out to be too generous (e.g. a service reports we have
+ * made too many calls), pause() empties the bucket for a while.
+ */
+public class TokenBucket {
+	/** Maximum number of tokens held */
+	private final int capacity;
+
+	/** Time (ns) to replenish one token */
+	private final long nanosPerToken;
+
+	/** Tokens available as of lastRefill */
+	private double tokens;
+	private long lastRefill;
+
+	/** No tokens are available before this time (ns) */
+	private long pausedUntil;
+
+	/**
+	 * @param capacity        Maximum burst size
+	 * @param tokensPerMinute Sustained rate
+	 */
+	public TokenBucket(int capacity, int tokensPerMinute) {
+		this.capacity = Math.max(1, capacity);
+		this.nanosPerToken = 60000000000L / Math.max(1, tokensPerMinute);
+		this.tokens = this.capacity;
+		this.lastRefill = System.nanoTime();
+		this.pausedUntil = this.lastRefill;
+	}
+
+	/** Take a token if one is available */
+	public synchronized boolean tryAcquire() {
+		return getWaitTime() == 0;
+	}
+
+	/** Take a token, waiting until one is available */
+	public void acquire() throws InterruptedException {
+		for (;;) {
+			long wait;
+
+			synchronized (this) {
+				wait = getWaitTime();
+
+				if (wait == 0) {
+					return;
+				}
+			}
+
+			Thread.sleep(Math.max(1, wait / 1000000));
+		}
+	}
+
+	/** Discard available tokens and refuse requests for a time */
+	public synchronized void pause(long millis) {
+		this.tokens = 0;
+		this.lastRefill = System.nanoTime();
+		this.pausedUntil = Math.max(this.pausedUntil, this.lastRefill + millis * 1000000);
+	}
+
+	/** The number of tokens currently available */
+	public synchronized int available() {
+		refill(System.nanoTime());
+
+		return (int) this.tokens;
+	}
+
+	/** Take a token if available, else return the wait time (ns) for one */
+	private long getWaitTime() {
+		long now = System.nanoTime();
+
+		if (now - this.pausedUntil < 0) {
+			return this.pausedUntil - now;
+		}
+
+		refill(now);
+
+		if (this.tokens >= 1) {
+			this.tokens -= 1;
+			return 0;
+		}
+
+		return Math.max(1, (long) ((1 - this.tokens) * this.nanosPerToken));
+	}
+
+	private void refill(long now) {
+		if (now - this.pausedUntil < 0) {
+			this.lastRefill = now;
+			return;
+		}
+
+		long start = (this.lastRefill - this.pausedUntil < 0) ? this.pausedUntil : this.lastRefill;
+
+		this.tokens = Math.min(this.capacity, //
+				this.tokens + (double) (now - start) / this.nanosPerToken);
+		this.lastRefill = now;
+	}
+}